@@ -0,0 +1,246 @@
+package communication;
+
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.javatuples.Pair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import crypto.CryptoProvider.EncryptionAlgorithm;
+import crypto.RSAHelper;
+import exceptions.FBaseEncryptionException;
+import model.JSONable;
+import model.config.KeygroupConfig;
+import model.config.NodeConfig;
+import model.config.ReplicaNodeConfig;
+import model.config.TriggerNodeConfig;
+import model.data.ClientID;
+import model.data.KeygroupID;
+import model.data.NodeID;
+import model.messages.Command;
+import model.messages.Envelope;
+import model.messages.Message;
+import model.messages.ResponseCode;
+
+/**
+ * Measures each step {@link NamespaceReceiver} performs per message, and the whole pipeline
+ * without the data storage lookup and the command execution.
+ *
+ * The payload is the content of the request and of the response. With 0 clients it is a node
+ * ID, as for a node lookup, otherwise it is a keygroup config with the given number of clients
+ * and ten replica nodes. Run the main method, or pass "-prof gc" to JMH, to see the allocation
+ * rate of each step next to its throughput.
+ *
+ * @author jonathanhasenburg
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class ReceiverPipelineBenchmark {
+
+	@Param({ "1024", "2048", "4096" })
+	public int keySize;
+
+	@Param({ "0", "10", "1000", "5000" })
+	public int clients;
+
+	private String servicePrivateKey;
+	private String servicePublicKey;
+	private String nodePrivateKey;
+	private String nodePublicKey;
+
+	private NodeID senderID = new NodeID("sender");
+	private String senderConfig;
+	private String payload;
+	private Class<? extends JSONable> payloadType;
+
+	/**
+	 * A request as it arrives at the receiver
+	 */
+	private String envelopeJSON;
+
+	/**
+	 * The message of {@link #envelopeJSON} after decryption
+	 */
+	private Message decrypted;
+
+	/**
+	 * A signed and encrypted response message
+	 */
+	private Message encrypted;
+
+	@Setup
+	public void setUp() throws FBaseEncryptionException {
+		// debug logging would dominate all measurements
+		Logger.getRootLogger().setLevel(Level.WARN);
+
+		Pair<PublicKey, PrivateKey> keys = RSAHelper.generateKeyPair(keySize);
+		servicePublicKey = RSAHelper.getEncodedStringFromKey(keys.getValue0());
+		servicePrivateKey = RSAHelper.getEncodedStringFromKey(keys.getValue1());
+		keys = RSAHelper.generateKeyPair(keySize);
+		nodePublicKey = RSAHelper.getEncodedStringFromKey(keys.getValue0());
+		nodePrivateKey = RSAHelper.getEncodedStringFromKey(keys.getValue1());
+
+		List<String> machines = new ArrayList<String>();
+		machines.add("m1");
+		senderConfig = JSONable.toJSON(new NodeConfig(senderID, nodePublicKey,
+				EncryptionAlgorithm.RSA, machines, 1001, 2001, 3001, "location", "description"));
+
+		if (clients == 0) {
+			payload = JSONable.toJSON(new NodeID("node1"));
+			payloadType = NodeID.class;
+		} else {
+			payload = JSONable.toJSON(keygroupConfig(clients));
+			payloadType = KeygroupConfig.class;
+		}
+
+		// the request a node sends
+		Message request = new Message(Command.KEYGROUP_CONFIG_READ, payload);
+		request.signMessage(nodePrivateKey, EncryptionAlgorithm.RSA);
+		request.encryptFields(servicePublicKey, EncryptionAlgorithm.RSA);
+		envelopeJSON = JSONable.toJSON(new Envelope(senderID, request));
+
+		decrypted = JSONable.fromJSON(envelopeJSON, Envelope.class).getMessage();
+		decrypted.decryptFields(servicePrivateKey, EncryptionAlgorithm.RSA);
+
+		encrypted = response();
+		encrypted.signMessage(servicePrivateKey, EncryptionAlgorithm.RSA);
+		encrypted.encryptFields(nodePublicKey, EncryptionAlgorithm.RSA);
+	}
+
+	@Benchmark
+	public Envelope deserializeRequest() {
+		return JSONable.fromJSON(envelopeJSON, Envelope.class);
+	}
+
+	/**
+	 * Decrypts a freshly deserialized request, as decryption modifies the message. Subtract
+	 * {@link #deserializeRequest()} to get the decryption alone.
+	 */
+	@Benchmark
+	public Message decryptFields() throws FBaseEncryptionException {
+		Message m = JSONable.fromJSON(envelopeJSON, Envelope.class).getMessage();
+		m.decryptFields(servicePrivateKey, EncryptionAlgorithm.RSA);
+		return m;
+	}
+
+	@Benchmark
+	public NodeConfig parseSenderConfig() {
+		return JSONable.fromJSON(senderConfig, NodeConfig.class);
+	}
+
+	@Benchmark
+	public boolean verifyMessage() throws FBaseEncryptionException {
+		return decrypted.verifyMessage(nodePublicKey, EncryptionAlgorithm.RSA);
+	}
+
+	@Benchmark
+	public JSONable parsePayload() {
+		return JSONable.fromJSON(decrypted.getContent(), payloadType);
+	}
+
+	@Benchmark
+	public Message signMessage() throws FBaseEncryptionException {
+		Message m = response();
+		m.signMessage(servicePrivateKey, EncryptionAlgorithm.RSA);
+		return m;
+	}
+
+	/**
+	 * Encrypts an unsigned response, as encryption modifies the message.
+	 */
+	@Benchmark
+	public Message encryptFields() throws FBaseEncryptionException {
+		Message m = response();
+		m.encryptFields(nodePublicKey, EncryptionAlgorithm.RSA);
+		return m;
+	}
+
+	@Benchmark
+	public String serializeResponse() {
+		return JSONable.toJSON(encrypted);
+	}
+
+	/**
+	 * All steps of {@link NamespaceReceiver} for one request, with the response content
+	 * given instead of read from the data storage.
+	 */
+	@Benchmark
+	public String pipeline() throws FBaseEncryptionException {
+		Envelope envelope = JSONable.fromJSON(envelopeJSON, Envelope.class);
+		Message m = envelope.getMessage();
+		m.decryptFields(servicePrivateKey, EncryptionAlgorithm.RSA);
+		NodeConfig sender = JSONable.fromJSON(senderConfig, NodeConfig.class);
+		if (!m.verifyMessage(sender.getPublicKey(), EncryptionAlgorithm.RSA)) {
+			throw new IllegalStateException("Request not authenticated");
+		}
+		JSONable.fromJSON(m.getContent(), payloadType);
+
+		Message response = response();
+		response.signMessage(servicePrivateKey, EncryptionAlgorithm.RSA);
+		response.encryptFields(sender.getPublicKey(), EncryptionAlgorithm.RSA);
+		return JSONable.toJSON(response);
+	}
+
+	private Message response() {
+		Message m = new Message();
+		m.setContent(payload);
+		m.setTextualInfo(ResponseCode.SUCCESS.toString());
+		return m;
+	}
+
+	private static KeygroupConfig keygroupConfig(int clients) {
+		Set<ClientID> clientIDs = new HashSet<ClientID>();
+		for (int i = 0; i < clients; i++) {
+			clientIDs.add(new ClientID("client" + i));
+		}
+		Set<ReplicaNodeConfig> replicaNodes = new HashSet<ReplicaNodeConfig>();
+		for (int i = 0; i < 10; i++) {
+			replicaNodes.add(new ReplicaNodeConfig(new NodeID("node" + i)));
+		}
+		return new KeygroupConfig(new KeygroupID("benchmark", "tenant", "group"), clientIDs,
+				replicaNodes, new HashSet<TriggerNodeConfig>(), null, null);
+	}
+
+	/**
+	 * Runs this benchmark with the GC profiler and writes the results to
+	 * target/jmh-pipeline.json.
+	 */
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder()
+				.include(ReceiverPipelineBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class)
+				.resultFormat(ResultFormatType.JSON)
+				.result("target/jmh-pipeline.json")
+				.build();
+		new Runner(options).run();
+	}
+
+}
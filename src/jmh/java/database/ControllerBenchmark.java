@@ -0,0 +1,188 @@
+package database;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.zookeeper.ZooKeeper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import database.localfiles.LocalFileController;
+import database.memory.InMemoryController;
+import database.mvstore.MVStoreController;
+import database.zookeeper.EmbeddedZkServer;
+import database.zookeeper.ZkController;
+
+/**
+ * Compares the single node data storages for the given number of stored entities. Each entity
+ * is a node below /entity/active, like the clients and nodes of the namespace. ZooKeeper runs
+ * embedded and without the cache of the {@link ZkController}, so each operation is a round
+ * trip to the server.
+ *
+ * @author jonathanhasenburg
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgs = "-Xmx3g")
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class ControllerBenchmark {
+
+	public static final String MEMORY = "memory";
+	public static final String LOCAL = "local";
+	public static final String MVSTORE = "mvstore";
+	public static final String ZOOKEEPER = "zookeeper";
+
+	private static final int sessionTimeout = 10000;
+	private static final int batchSize = 1000;
+	private static final String root = "/entity";
+	private static final String active = root + "/active";
+
+	@Param({ MEMORY, LOCAL, MVSTORE, ZOOKEEPER })
+	public String backend;
+
+	@Param({ "10000", "100000", "1000000" })
+	public int entities;
+
+	/**
+	 * Milliseconds until MVStore writes are written to the file, 0 to write them synchronously
+	 */
+	@Param({ "1000" })
+	public int commitDelay;
+
+	private File dataDir;
+	private EmbeddedZkServer zkServer;
+	private ZooKeeper zk;
+	private IControllable controller;
+	private final AtomicLong created = new AtomicLong();
+
+	@Setup
+	public void setUp() throws IOException, InterruptedException {
+		// debug logging would dominate all measurements
+		Logger.getRootLogger().setLevel(Level.WARN);
+
+		dataDir = Files.createTempDirectory("fbase-benchmark").toFile();
+		switch (backend) {
+		case MEMORY:
+			controller = new InMemoryController();
+			break;
+		case LOCAL:
+			controller = new LocalFileController(dataDir, "/");
+			break;
+		case MVSTORE:
+			controller = new MVStoreController(new File(dataDir, "fbase.mv.db"), commitDelay);
+			break;
+		case ZOOKEEPER:
+			zkServer = new EmbeddedZkServer(dataDir, 0);
+			zkServer.start();
+			zk = zkServer.connect(sessionTimeout);
+			controller = new ZkController(zk, false);
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown backend " + backend);
+		}
+
+		fill(controller, entities);
+	}
+
+	/**
+	 * Adds /entity, /entity/active, /entity/tombstoned and the given number of entities below
+	 * /entity/active in batches.
+	 */
+	static void fill(IControllable controller, int entities) throws InterruptedException {
+		List<String> paths = new ArrayList<String>();
+		paths.add(root);
+		paths.add(active);
+		paths.add(root + "/tombstoned");
+		for (int i = 0; i < entities; i++) {
+			paths.add(entity(i));
+			if (paths.size() == batchSize || i == entities - 1) {
+				controller.addNodesIfAbsent(paths, "data");
+				paths.clear();
+			}
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws InterruptedException {
+		if (controller instanceof MVStoreController) {
+			((MVStoreController) controller).close();
+		}
+		if (zk != null) {
+			zk.close();
+		}
+		if (zkServer != null) {
+			zkServer.close();
+		}
+		delete(dataDir);
+	}
+
+	@Benchmark
+	public String readNode() throws InterruptedException {
+		return controller.readNode(randomEntity());
+	}
+
+	@Benchmark
+	public boolean exists() throws InterruptedException {
+		return controller.exists(randomEntity());
+	}
+
+	@Benchmark
+	public void updateNode() throws InterruptedException {
+		controller.updateNode(randomEntity(), "updated");
+	}
+
+	@Benchmark
+	public void createAndDeleteNode() throws InterruptedException {
+		String path = root + "/tombstoned/created" + created.incrementAndGet();
+		controller.addNode(path, "created");
+		controller.deleteNode(path);
+	}
+
+	/**
+	 * Lists the two children of /entity, which has all entities as descendants.
+	 */
+	@Benchmark
+	public List<String> getChildren() throws InterruptedException {
+		return controller.getChildren(root);
+	}
+
+	private String randomEntity() {
+		return entity(ThreadLocalRandom.current().nextInt(entities));
+	}
+
+	private static String entity(int i) {
+		return active + "/entity" + i;
+	}
+
+	private static void delete(File file) {
+		File[] contents = file.listFiles();
+		if (contents != null) {
+			for (File f : contents) {
+				delete(f);
+			}
+		}
+		file.delete();
+	}
+
+}
@@ -0,0 +1,145 @@
+package database.zookeeper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.ZooKeeper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the latency of reads, updates and deletes of the {@link ZkController} against an
+ * embedded ZooKeeper server or ensemble, without its cache. With {@link #EXISTS_FIRST}, each
+ * operation first calls exists to get the stat or version of the znode, as the controller did
+ * before; with {@link #SINGLE_CALL}, the controller performs it in one round trip.
+ *
+ * @author jonathanhasenburg
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class ZkRoundTripBenchmark {
+
+	public static final String SINGLE_CALL = "singleCall";
+	public static final String EXISTS_FIRST = "existsFirst";
+
+	private static final int sessionTimeout = 10000;
+	private static final int znodes = 1000;
+	private static final String root = "/benchmark";
+
+	@Param({ SINGLE_CALL, EXISTS_FIRST })
+	public String mode;
+
+	@Param({ "1", "3" })
+	public int servers;
+
+	private File dataDir;
+	private EmbeddedZkServer server;
+	private EmbeddedZkEnsemble ensemble;
+	private ZooKeeper zk;
+	private ZkController controller;
+	private boolean existsFirst;
+	private final AtomicLong created = new AtomicLong();
+
+	@Setup
+	public void setUp() throws IOException, InterruptedException {
+		// debug logging would dominate all measurements
+		Logger.getRootLogger().setLevel(Level.WARN);
+
+		dataDir = Files.createTempDirectory("fbase-benchmark").toFile();
+		if (servers == 1) {
+			server = new EmbeddedZkServer(dataDir, 0);
+			server.start();
+			zk = server.connect(sessionTimeout);
+		} else {
+			ensemble = new EmbeddedZkEnsemble(dataDir, servers);
+			ensemble.start();
+			zk = ensemble.connect(sessionTimeout);
+		}
+		controller = new ZkController(zk, false);
+		existsFirst = EXISTS_FIRST.equals(mode);
+
+		controller.addNode(root, "");
+		for (int i = 0; i < znodes; i++) {
+			controller.addNode(root + "/znode" + i, "data" + i);
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws InterruptedException {
+		zk.close();
+		if (server != null) {
+			server.close();
+		}
+		if (ensemble != null) {
+			ensemble.close();
+		}
+		delete(dataDir);
+	}
+
+	@Benchmark
+	public String readNode() throws KeeperException, InterruptedException {
+		String path = randomZnode();
+		if (existsFirst) {
+			return new String(zk.getData(path, false, zk.exists(path, false)));
+		}
+		return controller.readNode(path);
+	}
+
+	@Benchmark
+	public void updateNode() throws KeeperException, InterruptedException {
+		String path = randomZnode();
+		if (existsFirst) {
+			zk.setData(path, "updated".getBytes(), zk.exists(path, false).getVersion());
+		} else {
+			controller.updateNode(path, "updated");
+		}
+	}
+
+	@Benchmark
+	public void createAndDeleteNode() throws KeeperException, InterruptedException {
+		String path = root + "/created" + created.incrementAndGet();
+		controller.addNode(path, "created");
+		if (existsFirst) {
+			zk.delete(path, zk.exists(path, false).getVersion());
+		} else {
+			controller.deleteNode(path);
+		}
+	}
+
+	private String randomZnode() {
+		return root + "/znode" + ThreadLocalRandom.current().nextInt(znodes);
+	}
+
+	private static void delete(File file) {
+		File[] contents = file.listFiles();
+		if (contents != null) {
+			for (File f : contents) {
+				delete(f);
+			}
+		}
+		file.delete();
+	}
+
+}
@@ -0,0 +1,177 @@
+package namespace;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.zookeeper.ZooKeeper;
+
+import control.NamingService;
+import crypto.CryptoProvider.EncryptionAlgorithm;
+import crypto.RSAHelper;
+import database.IControllable;
+import database.localfiles.LocalFileController;
+import database.memory.InMemoryController;
+import database.mvstore.MVStoreController;
+import database.zookeeper.EmbeddedZkEnsemble;
+import database.zookeeper.EmbeddedZkServer;
+import database.zookeeper.ZkController;
+import model.config.ClientConfig;
+import model.config.KeygroupConfig;
+import model.config.NodeConfig;
+import model.config.ReplicaNodeConfig;
+import model.config.TriggerNodeConfig;
+import model.data.ClientID;
+import model.data.KeygroupID;
+import model.data.NodeID;
+
+/**
+ * A data storage filled with a namespace of a given size, used by the benchmarks. The
+ * namespace contains the given number of nodes and clients, and one keygroup with the given
+ * number of clients and replica nodes.
+ *
+ * @author jonathanhasenburg
+ *
+ */
+public class BenchmarkNamespace implements Closeable {
+
+	public static final String MEMORY = "memory";
+	public static final String LOCAL = "local";
+	public static final String MVSTORE = "mvstore";
+	public static final String ZOOKEEPER = "zookeeper";
+	public static final String ZOOKEEPER_ENSEMBLE = "zookeeperEnsemble";
+
+	private static final int sessionTimeout = 10000;
+	private static final int commitDelay = 1000;
+
+	final IControllable controller;
+	final NodeID[] nodeIDs;
+	final ClientID[] clientIDs;
+	final KeygroupID keygroupID = new KeygroupID("benchmark", "tenant", "group");
+	final String publicKey;
+
+	private File dataDir;
+	private EmbeddedZkServer zkServer;
+	private EmbeddedZkEnsemble zkEnsemble;
+	private ZooKeeper zk;
+
+	/**
+	 * Creates a data storage and fills it.
+	 *
+	 * @param backend {@link #MEMORY}, {@link #LOCAL}, {@link #MVSTORE}, {@link #ZOOKEEPER} or
+	 *            {@link #ZOOKEEPER_ENSEMBLE}, three ZooKeeper servers
+	 * @param entities The number of nodes and of clients
+	 * @param members The number of clients and of replica nodes of the keygroup, at most
+	 *            entities
+	 */
+	public BenchmarkNamespace(String backend, int entities, int members)
+			throws IOException, InterruptedException {
+		// debug logging would dominate all measurements
+		Logger.getRootLogger().setLevel(Level.WARN);
+
+		switch (backend) {
+		case MEMORY:
+			controller = new InMemoryController();
+			break;
+		case LOCAL:
+			dataDir = Files.createTempDirectory("fbase-benchmark").toFile();
+			controller = new LocalFileController(dataDir, "/");
+			break;
+		case MVSTORE:
+			dataDir = Files.createTempDirectory("fbase-benchmark").toFile();
+			controller = new MVStoreController(new File(dataDir, "fbase.mv.db"), commitDelay);
+			break;
+		case ZOOKEEPER:
+			dataDir = Files.createTempDirectory("fbase-benchmark").toFile();
+			zkServer = new EmbeddedZkServer(dataDir, 0);
+			zkServer.start();
+			zk = zkServer.connect(sessionTimeout);
+			controller = new ZkController(zk);
+			break;
+		case ZOOKEEPER_ENSEMBLE:
+			dataDir = Files.createTempDirectory("fbase-benchmark").toFile();
+			zkEnsemble = new EmbeddedZkEnsemble(dataDir, 3);
+			zkEnsemble.start();
+			zk = zkEnsemble.connect(sessionTimeout);
+			controller = new ZkController(zk);
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown backend " + backend);
+		}
+
+		controller.addNodesIfAbsent(NamingService.SYSTEM_NODE_PATHS, "");
+		publicKey = RSAHelper.getEncodedStringFromKey(RSAHelper.generateKeyPair(2048).getValue0());
+
+		nodeIDs = new NodeID[entities];
+		clientIDs = new ClientID[entities];
+		for (int i = 0; i < entities; i++) {
+			nodeIDs[i] = new NodeID("node" + i);
+			Node.getInstance().createNode(controller, nodeConfig(nodeIDs[i]));
+			clientIDs[i] = new ClientID("client" + i);
+			Client.getInstance().createClient(controller, clientConfig(clientIDs[i]));
+		}
+
+		Set<ClientID> clients = new HashSet<ClientID>();
+		Set<ReplicaNodeConfig> replicaNodes = new HashSet<ReplicaNodeConfig>();
+		for (int i = 0; i < Math.min(members, entities); i++) {
+			clients.add(clientIDs[i]);
+			replicaNodes.add(new ReplicaNodeConfig(nodeIDs[i]));
+		}
+		KeygroupConfig keygroup = new KeygroupConfig(keygroupID, clients, replicaNodes,
+				new HashSet<TriggerNodeConfig>(), null, null);
+		Keygroup.getInstance().createKeygroup(controller, keygroup, nodeIDs[0]);
+	}
+
+	NodeConfig nodeConfig(NodeID id) {
+		List<String> machines = new ArrayList<String>();
+		machines.add("m1");
+		machines.add("m2");
+		return new NodeConfig(id, publicKey, EncryptionAlgorithm.RSA, machines, 1001, 2001, 3001,
+				"location", "description");
+	}
+
+	ClientConfig clientConfig(ClientID id) {
+		return new ClientConfig(id, publicKey, EncryptionAlgorithm.RSA);
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			if (zk != null) {
+				zk.close();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (controller instanceof MVStoreController) {
+			((MVStoreController) controller).close();
+		}
+		if (zkServer != null) {
+			zkServer.close();
+		}
+		if (zkEnsemble != null) {
+			zkEnsemble.close();
+		}
+		if (dataDir != null) {
+			delete(dataDir);
+		}
+	}
+
+	private static void delete(File file) {
+		File[] contents = file.listFiles();
+		if (contents != null) {
+			for (File f : contents) {
+				delete(f);
+			}
+		}
+		file.delete();
+	}
+
+}
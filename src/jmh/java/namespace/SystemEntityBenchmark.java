@@ -0,0 +1,106 @@
+package namespace;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import model.data.ClientID;
+import model.data.NodeID;
+import model.messages.Response;
+
+/**
+ * Measures client, node and keygroup operations through {@link SystemEntity} against each data
+ * storage. The number of threads is set with the JMH option -t, e.g., -t 4.
+ *
+ * @author jonathanhasenburg
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class SystemEntityBenchmark {
+
+	@Param({ BenchmarkNamespace.MEMORY, BenchmarkNamespace.LOCAL, BenchmarkNamespace.MVSTORE,
+			BenchmarkNamespace.ZOOKEEPER, BenchmarkNamespace.ZOOKEEPER_ENSEMBLE })
+	public String backend;
+
+	@Param({ "100", "10000" })
+	public int entities;
+
+	@Param({ "10", "1000" })
+	public int members;
+
+	private BenchmarkNamespace namespace;
+	private final AtomicLong createdClients = new AtomicLong();
+
+	@Setup
+	public void setUp() throws IOException, InterruptedException {
+		namespace = new BenchmarkNamespace(backend, entities, members);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		namespace.close();
+	}
+
+	@Benchmark
+	public Response<String> readNode() {
+		return Node.getInstance().readNode(namespace.controller, randomNode());
+	}
+
+	@Benchmark
+	public Response<String> readClient() {
+		return Client.getInstance().readClient(namespace.controller, randomClient());
+	}
+
+	@Benchmark
+	public Response<Boolean> updateNode() {
+		return Node.getInstance().updateNode(namespace.controller, namespace.nodeConfig(randomNode()));
+	}
+
+	@Benchmark
+	public Response<Boolean> createAndDeleteClient() {
+		ClientID id = new ClientID("created" + createdClients.incrementAndGet());
+		Client.getInstance().createClient(namespace.controller, namespace.clientConfig(id));
+		return Client.getInstance().deleteClient(namespace.controller, id);
+	}
+
+	@Benchmark
+	public Response<String> readKeygroup() {
+		return Keygroup.getInstance().readKeygroup(namespace.controller, namespace.keygroupID,
+				namespace.nodeIDs[0]);
+	}
+
+	@Benchmark
+	public Response<String> addAndRemoveKeygroupClient() {
+		ClientID id = new ClientID("member" + createdClients.incrementAndGet());
+		Keygroup.getInstance().addClient(namespace.controller, id, namespace.keygroupID);
+		return Keygroup.getInstance().removeClient(namespace.controller, id, namespace.keygroupID);
+	}
+
+	private NodeID randomNode() {
+		return namespace.nodeIDs[ThreadLocalRandom.current().nextInt(namespace.nodeIDs.length)];
+	}
+
+	private ClientID randomClient() {
+		return namespace.clientIDs[ThreadLocalRandom.current().nextInt(namespace.clientIDs.length)];
+	}
+
+}
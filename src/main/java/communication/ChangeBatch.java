@@ -0,0 +1,77 @@
+package communication;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import database.StorageChange;
+import model.JSONable;
+
+/**
+ * Changes of the primary's data storage sent to a follower in reply to a poll.
+ *
+ * @author jonathanhasenburg
+ *
+ */
+public class ChangeBatch implements JSONable {
+
+	/**
+	 * The epoch of the primary's change log
+	 */
+	private long epoch;
+
+	/**
+	 * The sequence number the follower has reached after applying the batch
+	 */
+	private long sequence;
+
+	/**
+	 * If true, the changes describe the whole data storage, which must be emptied first
+	 */
+	private boolean snapshot;
+
+	private List<StorageChange> changes = new ArrayList<StorageChange>();
+
+	public ChangeBatch() {
+
+	}
+
+	public ChangeBatch(long epoch, long sequence, boolean snapshot, List<StorageChange> changes) {
+		this.epoch = epoch;
+		this.sequence = sequence;
+		this.snapshot = snapshot;
+		this.changes = changes;
+	}
+
+	public long getEpoch() {
+		return epoch;
+	}
+
+	public void setEpoch(long epoch) {
+		this.epoch = epoch;
+	}
+
+	public long getSequence() {
+		return sequence;
+	}
+
+	public void setSequence(long sequence) {
+		this.sequence = sequence;
+	}
+
+	public boolean isSnapshot() {
+		return snapshot;
+	}
+
+	public void setSnapshot(boolean snapshot) {
+		this.snapshot = snapshot;
+	}
+
+	public List<StorageChange> getChanges() {
+		return changes;
+	}
+
+	public void setChanges(List<StorageChange> changes) {
+		this.changes = changes;
+	}
+
+}
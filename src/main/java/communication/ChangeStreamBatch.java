@@ -0,0 +1,95 @@
+package communication;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import model.JSONable;
+import namespace.ChangeStream;
+import namespace.EntityChange;
+
+/**
+ * Consecutive changes of a {@link ChangeStream} sent to a consumer in reply to a poll.
+ *
+ * @author jonathanhasenburg
+ *
+ */
+public class ChangeStreamBatch implements JSONable {
+
+	/**
+	 * The offsets of the changes, in the same order
+	 */
+	private List<Long> offsets = new ArrayList<Long>();
+
+	private List<EntityChange> changes = new ArrayList<EntityChange>();
+
+	/**
+	 * The offset the consumer polls next
+	 */
+	private long nextOffset;
+
+	/**
+	 * The offset the next change of the stream will be assigned, so the consumer can tell how
+	 * far it is behind
+	 */
+	private long headOffset;
+
+	/**
+	 * If true, changes following the polled offset are not retained anymore and the consumer
+	 * missed them
+	 */
+	private boolean truncated;
+
+	public ChangeStreamBatch() {
+
+	}
+
+	public ChangeStreamBatch(List<Long> offsets, List<EntityChange> changes, long nextOffset,
+			long headOffset, boolean truncated) {
+		this.offsets = offsets;
+		this.changes = changes;
+		this.nextOffset = nextOffset;
+		this.headOffset = headOffset;
+		this.truncated = truncated;
+	}
+
+	public List<Long> getOffsets() {
+		return offsets;
+	}
+
+	public void setOffsets(List<Long> offsets) {
+		this.offsets = offsets;
+	}
+
+	public List<EntityChange> getChanges() {
+		return changes;
+	}
+
+	public void setChanges(List<EntityChange> changes) {
+		this.changes = changes;
+	}
+
+	public long getNextOffset() {
+		return nextOffset;
+	}
+
+	public void setNextOffset(long nextOffset) {
+		this.nextOffset = nextOffset;
+	}
+
+	public long getHeadOffset() {
+		return headOffset;
+	}
+
+	public void setHeadOffset(long headOffset) {
+		this.headOffset = headOffset;
+	}
+
+	public boolean isTruncated() {
+		return truncated;
+	}
+
+	public void setTruncated(boolean truncated) {
+		this.truncated = truncated;
+	}
+
+}
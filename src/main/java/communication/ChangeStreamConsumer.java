@@ -0,0 +1,135 @@
+package communication;
+
+import org.apache.log4j.Logger;
+import org.zeromq.ZMQ;
+import org.zeromq.ZMQ.Context;
+import org.zeromq.ZMQ.Socket;
+
+import crypto.CryptoProvider.EncryptionAlgorithm;
+import exceptions.FBaseEncryptionException;
+import model.JSONable;
+import model.messages.Message;
+import namespace.EntityChange;
+import namespace.EntityChangeListener;
+
+/**
+ * Reads the change stream of a naming service from its {@link ChangeStreamServer}.
+ *
+ * The socket is created on the first poll and must only be used by one thread.
+ *
+ * @author jonathanhasenburg
+ *
+ */
+public class ChangeStreamConsumer {
+
+	private static Logger logger = Logger.getLogger(ChangeStreamConsumer.class.getName());
+
+	private static final int receiveTimeout = 10000;
+
+	private final String address;
+	private final int port;
+	private final String servicePublicKey;
+
+	private Context context;
+	private Socket socket;
+
+	/**
+	 * Creates a consumer.
+	 *
+	 * @param address The address of the naming service, e.g., tcp://localhost
+	 * @param port The port the naming service serves its change stream on
+	 * @param servicePublicKey The public key of the naming service
+	 */
+	public ChangeStreamConsumer(String address, int port, String servicePublicKey) {
+		this.address = address;
+		this.port = port;
+		this.servicePublicKey = servicePublicKey;
+	}
+
+	/**
+	 * Reads the changes following an offset.
+	 *
+	 * @param offset The offset of the first change to read, 1 to read the stream from its start
+	 * @param max The maximum number of changes to read
+	 * @return the batch of changes, null if no reply was received or the reply is not signed by
+	 *         the naming service
+	 */
+	public ChangeStreamBatch poll(long offset, int max) {
+		if (socket == null) {
+			context = ZMQ.context(1);
+			socket = context.socket(ZMQ.REQ);
+			socket.setLinger(0);
+			socket.setReceiveTimeOut(receiveTimeout);
+			socket.connect(address + ":" + port);
+		}
+
+		socket.send(offset + " " + max);
+		String reply = socket.recvStr();
+		if (reply == null || reply.isEmpty()) {
+			// a REQ socket without reply cannot send again
+			logger.warn(address + ":" + port + " did not reply to poll of offset " + offset);
+			close();
+			return null;
+		}
+
+		try {
+			Message m = JSONable.fromJSON(reply, Message.class);
+			if (!m.verifyMessage(servicePublicKey, EncryptionAlgorithm.RSA)) {
+				logger.error("Change stream batch not signed by naming service, ignoring it");
+				return null;
+			}
+			return JSONable.fromJSON(m.getContent(), ChangeStreamBatch.class);
+		} catch (FBaseEncryptionException | RuntimeException e) {
+			logger.error("Cannot read change stream batch", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Hands all changes following an offset to a listener, until the calling thread is
+	 * interrupted. Once caught up, the stream is polled again after the poll interval.
+	 *
+	 * @param offset The offset of the first change
+	 * @param max The maximum number of changes per poll
+	 * @param pollInterval Milliseconds between two polls once caught up or without reply
+	 * @param listener The listener, called by the calling thread
+	 * @return the offset of the next change that was not handed to the listener
+	 */
+	public long tail(long offset, int max, long pollInterval, EntityChangeListener listener) {
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+				ChangeStreamBatch batch = poll(offset, max);
+				if (batch == null) {
+					Thread.sleep(pollInterval);
+					continue;
+				}
+				if (batch.isTruncated()) {
+					logger.warn("Missed changes following offset " + offset
+							+ ", they are not retained anymore");
+				}
+				for (EntityChange change : batch.getChanges()) {
+					listener.entityChanged(change);
+				}
+				offset = batch.getNextOffset();
+				if (batch.getChanges().isEmpty()) {
+					Thread.sleep(pollInterval);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return offset;
+	}
+
+	/**
+	 * Closes the socket, the next poll creates a new one.
+	 */
+	public void close() {
+		if (socket != null) {
+			socket.close();
+			context.term();
+			socket = null;
+		}
+	}
+
+}
@@ -0,0 +1,133 @@
+package communication;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+import org.apache.log4j.Logger;
+import org.zeromq.ZMQ;
+import org.zeromq.ZMQ.Context;
+import org.zeromq.ZMQ.Socket;
+
+import crypto.CryptoProvider.EncryptionAlgorithm;
+import model.JSONable;
+import model.messages.Message;
+import namespace.ChangeStream;
+import namespace.EntityChange;
+
+/**
+ * Serves a {@link ChangeStream} to consumers on a ZMQ REP socket.
+ *
+ * A consumer polls with "&lt;offset&gt; &lt;max&gt;", the offset of the next change it wants
+ * and the maximum number of changes it can take, and receives a {@link Message} signed with
+ * the private key of the naming service, whose content is a {@link ChangeStreamBatch}. As
+ * consumers only receive the changes they asked for, a slow consumer falls behind instead of
+ * being flooded; if it falls behind the retention of the stream, the batch is marked as
+ * truncated and continues with the oldest retained change.
+ *
+ * @author jonathanhasenburg
+ *
+ */
+public class ChangeStreamServer {
+
+	private static Logger logger = Logger.getLogger(ChangeStreamServer.class.getName());
+
+	public static final int MAX_BATCH_SIZE = 1000;
+	private static final int receiveTimeout = 500;
+
+	private final ChangeStream stream;
+	private final String address;
+	private final int port;
+	private final String privateKey;
+
+	private Thread thread;
+	private volatile boolean running;
+
+	public ChangeStreamServer(ChangeStream stream, String address, int port, String privateKey) {
+		this.stream = stream;
+		this.address = address;
+		this.port = port;
+		this.privateKey = privateKey;
+	}
+
+	public void start() {
+		running = true;
+		thread = new Thread(this::serve, "ChangeStreamServer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public void stop() {
+		running = false;
+		if (thread != null) {
+			try {
+				thread.join(2 * receiveTimeout);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private void serve() {
+		Context context = ZMQ.context(1);
+		Socket socket = context.socket(ZMQ.REP);
+		socket.setLinger(0);
+		socket.setReceiveTimeOut(receiveTimeout);
+		socket.bind(address + ":" + port);
+		logger.info("Serving change stream on " + address + ":" + port);
+
+		try {
+			while (running) {
+				String poll = socket.recvStr();
+				if (poll == null) {
+					continue;
+				}
+
+				String reply;
+				try {
+					reply = reply(poll);
+				} catch (Exception e) {
+					logger.error("Cannot answer poll " + poll, e);
+					reply = "";
+				}
+				socket.send(reply);
+			}
+		} finally {
+			socket.close();
+			context.term();
+		}
+	}
+
+	private String reply(String poll) throws Exception {
+		String[] parts = poll.trim().split(" ");
+		long offset = Long.parseLong(parts[0]);
+		int max = parts.length > 1 ? Math.min(Integer.parseInt(parts[1]), MAX_BATCH_SIZE) : MAX_BATCH_SIZE;
+
+		// changes are appended at the head, so all changes before it are read below
+		long head = stream.getNextOffset();
+		ChangeStreamBatch batch;
+		if (offset > head) {
+			// the stream was reset, e.g., its directory was removed
+			batch = new ChangeStreamBatch(new ArrayList<Long>(), new ArrayList<EntityChange>(), head,
+					head, true);
+		} else {
+			boolean truncated = offset < stream.getFirstOffset();
+			SortedMap<Long, EntityChange> changes = stream.read(offset, Math.max(max, 1));
+			List<Long> offsets = new ArrayList<Long>(changes.size());
+			List<EntityChange> entries = new ArrayList<EntityChange>(changes.size());
+			for (Map.Entry<Long, EntityChange> change : changes.entrySet()) {
+				offsets.add(change.getKey());
+				entries.add(change.getValue());
+			}
+			long next = changes.isEmpty() ? head : changes.lastKey() + 1;
+			batch = new ChangeStreamBatch(offsets, entries, next, stream.getNextOffset(), truncated);
+		}
+
+		Message m = new Message();
+		m.setContent(JSONable.toJSON(batch));
+		m.signMessage(privateKey, EncryptionAlgorithm.RSA);
+		return JSONable.toJSON(m);
+	}
+
+}
@@ -0,0 +1,257 @@
+package communication;
+
+import java.io.IOException;
+
+import org.apache.log4j.Logger;
+import org.zeromq.ZMQ;
+import org.zeromq.ZMQ.Context;
+import org.zeromq.ZMQ.Socket;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import crypto.CryptoProvider.EncryptionAlgorithm;
+import database.LeasedCachingController;
+import exceptions.FBaseEncryptionException;
+import model.JSONable;
+import model.data.ConfigID;
+import model.messages.Command;
+import model.messages.Message;
+import namespace.EntityChange;
+import namespace.EntityChangeListener;
+import namespace.SystemEntity;
+
+/**
+ * Runs a naming service as a proxy of an upstream naming service, e.g., at a fog site with a
+ * high-latency link to the cloud.
+ *
+ * The proxy answers read commands from a {@link LeasedCachingController} that reads missing
+ * nodes from the data storage of the upstream naming service. It subscribes to the
+ * {@link NamespacePublisher} of the upstream naming service and invalidates cached entities
+ * when they change, unless the cache already holds the changed version. Changes are relayed to
+ * a listener, e.g., the proxy's own publisher, so nodes at the site can subscribe locally.
+ * Cached nodes expire after their lease, which bounds how long a missed invalidation goes
+ * unnoticed. Expired nodes are still served while the upstream naming service is unreachable,
+ * up to the max staleness of the cache.
+ *
+ * All other commands are forwarded to the upstream naming service, as are reads with a minimum
+ * sequence number, as only the upstream naming service knows whether it was reached. Proxies
+ * have their own key pair, which the nodes of the site use, and the upstream naming service
+ * only hands them data without the encryption secrets of keygroups. Keygroup reads, which
+ * return the secret to the keygroup's nodes, are therefore forwarded as well.
+ *
+ * @author jonathanhasenburg
+ *
+ */
+public class EdgeProxy {
+
+	private static Logger logger = Logger.getLogger(EdgeProxy.class.getName());
+
+	private static final ObjectMapper mapper = new ObjectMapper();
+
+	private final LeasedCachingController cache;
+	private final String upstreamAddress;
+	private final int upstreamPublisherPort;
+	private final String upstreamPublicKey;
+
+	/**
+	 * Milliseconds between two sweeps of expired nodes
+	 */
+	private final int sweepInterval;
+
+	/**
+	 * Forwards requests to the upstream naming service, only used by the receiving thread
+	 */
+	private final RequestForwarder forwarder;
+
+	private volatile EntityChangeListener listener;
+
+	private Thread thread;
+	private volatile boolean running;
+
+	/**
+	 * Creates a proxy.
+	 *
+	 * @param cache The cache of the upstream data storage
+	 * @param upstreamAddress The address of the upstream naming service, e.g., tcp://localhost
+	 * @param upstreamPort The port the upstream naming service receives requests on
+	 * @param upstreamPublisherPort The port the upstream naming service publishes changes on, 0
+	 *            if it does not publish them
+	 * @param upstreamPublicKey The public key of the upstream naming service
+	 * @param leaseMillis Milliseconds a read node is served from the cache
+	 */
+	public EdgeProxy(LeasedCachingController cache, String upstreamAddress, int upstreamPort,
+			int upstreamPublisherPort, String upstreamPublicKey, long leaseMillis) {
+		this.cache = cache;
+		this.upstreamAddress = upstreamAddress;
+		this.upstreamPublisherPort = upstreamPublisherPort;
+		this.upstreamPublicKey = upstreamPublicKey;
+		this.sweepInterval = (int) Math.max(1, Math.min(leaseMillis / 2, 1000));
+		this.forwarder = new RequestForwarder(upstreamAddress, upstreamPort, upstreamPublicKey);
+	}
+
+	/**
+	 * Sets the listener the changes of the upstream naming service are relayed to.
+	 *
+	 * @param listener The listener, null to relay no changes
+	 */
+	public void setChangeListener(EntityChangeListener listener) {
+		this.listener = listener;
+	}
+
+	public void start() {
+		running = true;
+		thread = new Thread(this::subscribe, "EdgeProxy");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public void stop() {
+		running = false;
+		if (thread != null) {
+			try {
+				thread.join(2 * sweepInterval);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		forwarder.close();
+		if (cache.getDelegate() instanceof UpstreamController) {
+			((UpstreamController) cache.getDelegate()).close();
+		}
+	}
+
+	/**
+	 * Checks whether a request must be processed by the upstream naming service.
+	 *
+	 * @param command The command of the request
+	 * @param minSequence The minimum sequence number of the request, null if there is none
+	 * @return true, if the request must be forwarded
+	 */
+	public boolean mustForward(Command command, Long minSequence) {
+		if (command == null) {
+			// stats requests are answered locally
+			return false;
+		}
+		// the cached keygroups have no encryption secrets
+		return !command.name().endsWith("_READ") || Command.KEYGROUP_CONFIG_READ.equals(command)
+				|| minSequence != null;
+	}
+
+	/**
+	 * Forwards a request to the upstream naming service. Must only be called by one thread.
+	 *
+	 * @param senderID The sender of the request
+	 * @param message The decrypted message of the request, it is encrypted again
+	 * @return the reply of the upstream naming service, null if none was received
+	 * @throws FBaseEncryptionException
+	 */
+	public String forward(ConfigID senderID, Message message) throws FBaseEncryptionException {
+		return forwarder.forward(senderID, message);
+	}
+
+	/**
+	 * Invalidates the cached nodes of a changed entity, unless the cache already holds the
+	 * changed version, and relays the change.
+	 *
+	 * @param change The change of the upstream naming service
+	 */
+	public void invalidate(EntityChange change) {
+		String activePath = "/" + change.getType() + "/active/" + change.getEntityID();
+		boolean current = (EntityChange.Kind.CREATED.equals(change.getKind())
+				|| EntityChange.Kind.UPDATED.equals(change.getKind()))
+				&& versionOf(cache.getCached(activePath)) >= change.getVersion();
+
+		if (!current) {
+			logger.debug("Invalidating " + change);
+			cache.invalidate(activePath);
+			cache.invalidate("/" + change.getType() + "/tombstoned/" + change.getEntityID());
+			SystemEntity.forgetVersion(cache, change.getType(), change.getEntityID());
+		}
+
+		EntityChangeListener l = listener;
+		if (l != null) {
+			l.entityChanged(change);
+		}
+	}
+
+	private void subscribe() {
+		Context context = ZMQ.context(1);
+		Socket socket = null;
+		if (upstreamPublisherPort > 0) {
+			socket = context.socket(ZMQ.SUB);
+			socket.setLinger(0);
+			socket.setReceiveTimeOut(sweepInterval);
+			socket.connect(upstreamAddress + ":" + upstreamPublisherPort);
+			socket.subscribe("".getBytes());
+			logger.info("Receiving invalidations from " + upstreamAddress + ":" + upstreamPublisherPort);
+		} else {
+			logger.warn("Upstream naming service publishes no changes, relying on leases only");
+		}
+
+		long nextSweep = System.currentTimeMillis() + sweepInterval;
+		try {
+			while (running) {
+				if (socket != null) {
+					String topic = socket.recvStr();
+					if (topic != null) {
+						receive(topic, socket.recvStr());
+					}
+				} else {
+					Thread.sleep(sweepInterval);
+				}
+
+				if (System.currentTimeMillis() >= nextSweep) {
+					sweep();
+					nextSweep = System.currentTimeMillis() + sweepInterval;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			if (socket != null) {
+				socket.close();
+			}
+			context.term();
+		}
+	}
+
+	private void receive(String topic, String publication) {
+		try {
+			Message m = JSONable.fromJSON(publication, Message.class);
+			if (!m.verifyMessage(upstreamPublicKey, EncryptionAlgorithm.RSA)) {
+				logger.error("Change of " + topic + " not signed by upstream naming service, ignoring it");
+				return;
+			}
+			invalidate(JSONable.fromJSON(m.getContent(), EntityChange.class));
+		} catch (FBaseEncryptionException | RuntimeException e) {
+			logger.error("Cannot read change of " + topic, e);
+		}
+	}
+
+	/**
+	 * Forgets the versions of entities whose lease expired, so that reads with a known version
+	 * are not answered from memory after the lease. The expired nodes stay cached, they are
+	 * replaced by the next successful read of the upstream naming service.
+	 */
+	private void sweep() {
+		for (String path : cache.collectExpired()) {
+			// paths of entities are /<type>/active/<ID>
+			String[] parts = path.split("/", 4);
+			if (parts.length == 4 && "active".equals(parts[2])) {
+				SystemEntity.forgetVersion(cache, parts[1], parts[3]);
+			}
+		}
+	}
+
+	private static int versionOf(String data) {
+		if (data == null) {
+			return 0;
+		}
+		try {
+			return mapper.readTree(data).path("version").asInt(0);
+		} catch (IOException e) {
+			return 0;
+		}
+	}
+
+}
@@ -0,0 +1,344 @@
+package communication;
+
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.log4j.Logger;
+import org.zeromq.ZMQ;
+import org.zeromq.ZMQ.Context;
+import org.zeromq.ZMQ.Socket;
+
+import crypto.CryptoProvider.EncryptionAlgorithm;
+import database.IControllable;
+import database.StorageChange;
+import exceptions.FBaseEncryptionException;
+import model.JSONable;
+import model.data.ConfigID;
+import model.messages.Command;
+import model.messages.Message;
+import namespace.SystemEntity;
+
+/**
+ * Keeps the data storage of a follower naming service in sync with its primary and forwards
+ * requests the follower must not answer itself.
+ *
+ * The follower polls the {@link ReplicationServer} of the primary and applies the received
+ * changes in order to its own data storage. Once caught up, it polls again after the poll
+ * interval. Followers answer read commands from their data storage; all other commands are
+ * forwarded to the primary, as are reads whose minimum sequence number is not applied yet. Followers must use the key pair of the primary, so that
+ * forwarded requests and their responses can be passed on unchanged.
+ *
+ * Each batch of changes is applied while holding the write lock of {@link #getReadLock()}, and
+ * requests access the data storage while holding its read lock, so they never see a partially
+ * applied batch or snapshot, e.g., a data storage whose nodes were deleted for a snapshot.
+ *
+ * A follower may replicate only some top level nodes of the primary, e.g., the clients and
+ * nodes of a sharded deployment. Changes of other nodes are not applied, and requests for
+ * entities stored below them are processed by the follower itself.
+ *
+ * @author jonathanhasenburg
+ *
+ */
+public class Follower {
+
+	private static Logger logger = Logger.getLogger(Follower.class.getName());
+
+	private static final int receiveTimeout = 10000;
+
+	private final IControllable controller;
+	private final List<String> roots;
+	private final String primaryAddress;
+	private final int primaryReplicationPort;
+	private final String servicePublicKey;
+	private final String servicePrivateKey;
+	private final long pollInterval;
+
+	private Thread thread;
+	private volatile boolean running;
+
+	private final ReentrantReadWriteLock storageLock = new ReentrantReadWriteLock();
+
+	private final Object applied = new Object();
+	private volatile long appliedEpoch = -1;
+	private volatile long appliedSequence = -1;
+
+	/**
+	 * Forwards requests to the primary, only used by the receiving thread
+	 */
+	private final RequestForwarder forwarder;
+
+	/**
+	 * Creates a follower.
+	 *
+	 * @param controller The data storage of the follower
+	 * @param roots The paths of the replicated top level nodes of the data storage
+	 * @param primaryAddress The address of the primary, e.g., tcp://localhost
+	 * @param primaryPort The port the primary receives requests on
+	 * @param primaryReplicationPort The port the primary serves its change log on
+	 * @param servicePublicKey The public key of the primary
+	 * @param servicePrivateKey The private key of the primary, to sign polls and decrypt changes
+	 * @param pollInterval Milliseconds between two polls once caught up
+	 */
+	public Follower(IControllable controller, List<String> roots, String primaryAddress,
+			int primaryPort, int primaryReplicationPort, String servicePublicKey,
+			String servicePrivateKey, long pollInterval) {
+		this.controller = controller;
+		this.roots = roots;
+		this.primaryAddress = primaryAddress;
+		this.primaryReplicationPort = primaryReplicationPort;
+		this.servicePublicKey = servicePublicKey;
+		this.servicePrivateKey = servicePrivateKey;
+		this.pollInterval = pollInterval;
+		this.forwarder = new RequestForwarder(primaryAddress, primaryPort, servicePublicKey);
+	}
+
+	public void start() {
+		running = true;
+		thread = new Thread(this::follow, "Follower");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public void stop() {
+		running = false;
+		if (thread != null) {
+			thread.interrupt();
+			try {
+				thread.join(receiveTimeout);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		forwarder.close();
+	}
+
+	/**
+	 * @return the sequence number of the last applied change of the primary, -1 before the
+	 *         first synchronization
+	 */
+	public long getAppliedSequence() {
+		return appliedSequence;
+	}
+
+	/**
+	 * Returns the lock that requests must hold while they access the data storage. It must not
+	 * be held while waiting for a sequence number, as changes are only applied while no request
+	 * holds it.
+	 *
+	 * @return the read lock of the data storage
+	 */
+	public Lock getReadLock() {
+		return storageLock.readLock();
+	}
+
+	/**
+	 * Blocks until the change with the given sequence number has been applied.
+	 *
+	 * @param sequence The sequence number
+	 * @param timeoutMillis The maximum time to wait in milliseconds
+	 * @return true, if the change has been applied
+	 * @throws InterruptedException
+	 */
+	public boolean awaitSequence(long sequence, long timeoutMillis) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		synchronized (applied) {
+			while (appliedSequence < sequence) {
+				long remaining = deadline - System.currentTimeMillis();
+				if (remaining <= 0) {
+					return false;
+				}
+				applied.wait(remaining);
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Checks whether a request must be processed by the primary, which is the case for all
+	 * requests that modify replicated entities, and for reads whose minimum sequence number has
+	 * not been applied yet. Never blocks, as requests are received by a single thread.
+	 *
+	 * @param command The command of the request
+	 * @param minSequence The minimum sequence number of the request, null if there is none
+	 * @return true, if the request must be forwarded
+	 */
+	public boolean mustForward(Command command, Long minSequence) {
+		if (command == null || !isReplicated(command)) {
+			// stats requests and entities that are not replicated are processed locally
+			return false;
+		}
+		if (!command.name().endsWith("_READ")) {
+			return true;
+		}
+		return minSequence != null && appliedSequence < minSequence;
+	}
+
+	/**
+	 * Checks whether a request for entities that are not replicated, e.g., a keygroup command
+	 * on a shard, must be retried by the sender because its minimum sequence number has not
+	 * been applied yet. Such requests may refer to replicated entities, e.g., a node just
+	 * created at the primary, but cannot be forwarded, as the primary does not store them.
+	 *
+	 * @param command The command of the request
+	 * @param minSequence The minimum sequence number of the request, null if there is none
+	 * @return true, if the request must be retried
+	 */
+	public boolean mustRetry(Command command, Long minSequence) {
+		return command != null && !isReplicated(command) && minSequence != null
+				&& appliedSequence < minSequence;
+	}
+
+	private boolean isReplicated(Command command) {
+		String root = rootOf(command);
+		return root == null || roots.contains(root);
+	}
+
+	/**
+	 * Forwards a request to the primary. Must only be called by one thread.
+	 *
+	 * @param senderID The sender of the request
+	 * @param message The decrypted message of the request, it is encrypted again
+	 * @return the reply of the primary, null if none was received
+	 * @throws FBaseEncryptionException
+	 */
+	public String forward(ConfigID senderID, Message message) throws FBaseEncryptionException {
+		return forwarder.forward(senderID, message);
+	}
+
+	private void follow() {
+		Context context = ZMQ.context(1);
+		Socket socket = null;
+		try {
+			while (running) {
+				if (socket == null) {
+					socket = context.socket(ZMQ.REQ);
+					socket.setLinger(0);
+					socket.setReceiveTimeOut(receiveTimeout);
+					socket.connect(primaryAddress + ":" + primaryReplicationPort);
+				}
+
+				socket.send(ReplicationServer.createPoll(
+						appliedSequence < 0 ? "" : appliedEpoch + ":" + appliedSequence, servicePrivateKey));
+				String reply = socket.recvStr();
+				if (reply == null || reply.isEmpty()) {
+					logger.warn("No changes received from primary, polling again");
+					socket.close();
+					socket = null;
+					Thread.sleep(pollInterval);
+					continue;
+				}
+
+				if (apply(reply) == 0) {
+					Thread.sleep(pollInterval);
+				}
+			}
+		} catch (FBaseEncryptionException e) {
+			logger.fatal("Cannot sign polls, stopping to follow the primary", e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			if (socket != null) {
+				socket.close();
+			}
+			context.term();
+		}
+	}
+
+	/**
+	 * @return true, if the node at the given path is below one of the replicated roots
+	 */
+	private boolean isReplicated(String path) {
+		for (String root : roots) {
+			if (path.equals(root) || path.startsWith(root + "/")) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the path of the top level node storing the entities of a command, null if the
+	 *         command concerns no entity type
+	 */
+	private static String rootOf(Command command) {
+		String name = command.name();
+		if (name.startsWith("CLIENT_")) {
+			return "/client";
+		} else if (name.startsWith("NODE_")) {
+			return "/node";
+		} else if (name.startsWith("KEYGROUP_")) {
+			return "/keygroup";
+		}
+		return null;
+	}
+
+	/**
+	 * Applies a reply of the primary.
+	 *
+	 * @return the number of applied changes
+	 */
+	private int apply(String reply) throws InterruptedException {
+		ChangeBatch batch;
+		try {
+			Message m = JSONable.fromJSON(reply, Message.class);
+			m.decryptFields(servicePrivateKey, EncryptionAlgorithm.RSA);
+			if (!m.verifyMessage(servicePublicKey, EncryptionAlgorithm.RSA)) {
+				logger.error("Changes not signed by the primary, ignoring them");
+				return 0;
+			}
+			batch = JSONable.fromJSON(m.getContent(), ChangeBatch.class);
+		} catch (FBaseEncryptionException | RuntimeException e) {
+			logger.error("Cannot read changes from primary", e);
+			return 0;
+		}
+
+		if (!batch.isSnapshot() && batch.getChanges().isEmpty()) {
+			updateApplied(batch);
+			return 0;
+		}
+
+		storageLock.writeLock().lock();
+		try {
+			// versions remembered by reads may be outdated now
+			SystemEntity.forgetVersions(controller);
+			if (batch.isSnapshot()) {
+				logger.info("Applying snapshot of " + batch.getChanges().size() + " nodes at sequence "
+						+ batch.getSequence());
+				for (String root : roots) {
+					try {
+						controller.deleteNodeRecursive(root);
+					} catch (NoSuchFileException e) {
+						// nothing to delete
+					}
+				}
+			}
+			for (StorageChange change : batch.getChanges()) {
+				if (isReplicated(change.getPath())) {
+					change.applyTo(controller);
+				}
+			}
+		} catch (IOException | RuntimeException e) {
+			// start over with a snapshot
+			logger.error("Cannot apply changes, requesting a snapshot", e);
+			appliedSequence = -1;
+			return 0;
+		} finally {
+			storageLock.writeLock().unlock();
+		}
+
+		updateApplied(batch);
+		return batch.getChanges().size();
+	}
+
+	private void updateApplied(ChangeBatch batch) {
+		synchronized (applied) {
+			appliedEpoch = batch.getEpoch();
+			appliedSequence = batch.getSequence();
+			applied.notifyAll();
+		}
+	}
+
+}
@@ -0,0 +1,136 @@
+package communication;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+import org.zeromq.ZMQ;
+import org.zeromq.ZMQ.Context;
+import org.zeromq.ZMQ.Socket;
+
+import crypto.CryptoProvider.EncryptionAlgorithm;
+import model.JSONable;
+import model.messages.Message;
+import namespace.EntityChange;
+import namespace.EntityChangeListener;
+
+/**
+ * Publishes changes of clients, nodes and keygroups on a ZMQ PUB socket, so that nodes do not
+ * have to poll the naming service for membership and crypto changes, and edge proxies can
+ * invalidate their caches.
+ *
+ * Each publication consists of two frames: the entity ID as topic and a {@link Message} whose
+ * content is the JSON representation of an {@link EntityChange}. The message is signed with the
+ * private key of the naming service. It is not encrypted and therefore only contains the
+ * changed entity's type, ID and new version; subscribers read the actual config with a normal
+ * read command, e.g., KEYGROUP_CONFIG_READ. As ZMQ matches topics by prefix, subscribers must
+ * compare the topic frame with their keygroup ID. A subscriber that receives a version larger
+ * than the last known version + 1 missed an update and should read the config again.
+ *
+ * All socket operations are executed by a single publishing thread, so the threads that
+ * modify entities are never blocked by signing or sending.
+ *
+ * @author jonathanhasenburg
+ *
+ */
+public class NamespacePublisher implements EntityChangeListener {
+
+	private static Logger logger = Logger.getLogger(NamespacePublisher.class.getName());
+
+	private final String address;
+	private final int port;
+	private final String privateKey;
+
+	private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+		Thread t = new Thread(r, "NamespacePublisher");
+		t.setDaemon(true);
+		return t;
+	});
+
+	/**
+	 * Number of changes waiting for being published
+	 */
+	private final AtomicInteger pending = new AtomicInteger();
+
+	private Context context;
+	private Socket publisher;
+
+	public NamespacePublisher(String address, int port, String privateKey) {
+		this.address = address;
+		this.port = port;
+		this.privateKey = privateKey;
+	}
+
+	/**
+	 * Binds the publisher socket.
+	 */
+	public void startPublishing() {
+		executor.execute(() -> {
+			context = ZMQ.context(1);
+			publisher = context.socket(ZMQ.PUB);
+			publisher.setLinger(0);
+			publisher.bind(address + ":" + port);
+			logger.info("Publishing entity changes on " + address + ":" + port);
+		});
+	}
+
+	/**
+	 * Closes the publisher socket, pending publications are discarded.
+	 */
+	public void stopPublishing() {
+		executor.execute(() -> {
+			if (publisher != null) {
+				publisher.close();
+				context.term();
+				publisher = null;
+			}
+		});
+		executor.shutdown();
+		try {
+			executor.awaitTermination(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public void entityChanged(EntityChange change) {
+		if (executor.isShutdown()) {
+			return;
+		}
+		pending.incrementAndGet();
+		executor.execute(() -> {
+			pending.decrementAndGet();
+			publish(change);
+		});
+	}
+
+	/**
+	 * @return the number of changes waiting for being published
+	 */
+	public int getQueueDepth() {
+		return pending.get();
+	}
+
+	private void publish(EntityChange change) {
+		if (publisher == null) {
+			return;
+		}
+
+		try {
+			Message m = new Message();
+			m.setContent(JSONable.toJSON(change));
+			m.setTextualInfo(change.getKind().toString());
+			m.signMessage(privateKey, EncryptionAlgorithm.RSA);
+
+			publisher.sendMore(change.getEntityID());
+			publisher.send(JSONable.toJSON(m));
+			logger.debug("Published " + change);
+		} catch (Exception e) {
+			logger.error("Could not publish " + change, e);
+		}
+	}
+
+}
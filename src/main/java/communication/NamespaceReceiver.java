@@ -1,6 +1,10 @@
 package communication;
 
 import java.io.FileNotFoundException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.log4j.Logger;
 import org.zeromq.ZMQ;
@@ -9,9 +13,14 @@ import org.zeromq.ZMQ.Socket;
 import communication.AbstractReceiver;
 import control.NamingService;
 import crypto.CryptoProvider.EncryptionAlgorithm;
+import metrics.MetricsRegistry;
+import metrics.RequestEvent;
+import metrics.RequestTimer;
+import metrics.RequestTimer.Phase;
 import exceptions.FBaseEncryptionException;
 import model.JSONable;
 import model.config.NodeConfig;
+import model.data.KeygroupID;
 import model.data.NodeID;
 import model.messages.Command;
 import model.messages.Envelope;
@@ -20,13 +29,42 @@ import model.messages.Response;
 import model.messages.ResponseCode;
 import namespace.MessageParser;
 import namespace.Node;
+import namespace.RequestOptions;
+import namespace.ShardMap;
 
 public class NamespaceReceiver extends AbstractReceiver {
 
 	private NamingService ns;
 
+	/**
+	 * Parsed configs of senders, by node ID. An entry is only used while the stored config
+	 * still equals the data it was parsed from.
+	 */
+	private final Map<String, ParsedSender> senders = new ConcurrentHashMap<String, ParsedSender>();
+
 	private static Logger logger = Logger.getLogger(NamespaceReceiver.class.getName());
 
+	/**
+	 * Logger for requests exceeding the slow request threshold, so they can be routed to their
+	 * own appender
+	 */
+	private static Logger slowRequestLogger = Logger.getLogger("SlowRequests");
+
+	/**
+	 * Timer of the request being processed, requests are processed one at a time
+	 */
+	private final RequestTimer timer = new RequestTimer();
+
+	/**
+	 * Number of processed requests, used for sampling
+	 */
+	private long requests = 0;
+
+	/**
+	 * Forwarders to the other shards of a sharded deployment, by address
+	 */
+	private final Map<String, RequestForwarder> shardForwarders = new HashMap<String, RequestForwarder>();
+
 	public NamespaceReceiver(NamingService ns, String address, int port) {
 		super(address, port, ZMQ.REP);
 		this.ns = ns;
@@ -34,44 +72,103 @@ public class NamespaceReceiver extends AbstractReceiver {
 
 	@Override
 	protected void interpreteReceivedEnvelope(Envelope envelope, Socket responseSocket) {
+		try {
+			ns.awaitReady();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			logger.warn("Interrupted while waiting for startup, dropping message");
+			return;
+		}
+
+		long arrival = System.nanoTime();
+		RequestEvent event = new RequestEvent();
+		event.begin();
+		timer.start();
+		Response<?> response = null;
 		try {
 			logger.debug("Interpreting message.");
 			// Decrypt with own private key
 			envelope.getMessage().decryptFields(ns.configuration.getPrivateKey(),
 					EncryptionAlgorithm.RSA);
+			timer.mark(Phase.DECRYPT);
 
 			// Verify authenticity
 			NodeID senderID = (NodeID) envelope.getConfigID();
-			Response<String> r = Node.getInstance().readNode(ns.controller, senderID);
-			NodeConfig sender = JSONable.fromJSON(r.getValue(), NodeConfig.class);
-			boolean authenticated = envelope.getMessage().verifyMessage(sender.getPublicKey(),
-					EncryptionAlgorithm.RSA);
+			NodeConfig sender;
+			lockStorage();
+			try {
+				Response<String> r = Node.getInstance().readNode(ns.controller, senderID);
+				timer.mark(Phase.LOOKUP);
+				sender = parseSender(senderID.toString(), r.getValue());
+			} finally {
+				unlockStorage();
+			}
+			timer.mark(Phase.PARSE);
+			boolean authenticated = sender != null && envelope.getMessage().verifyMessage(
+					sender.getPublicKey(), EncryptionAlgorithm.RSA);
+			timer.mark(Phase.VERIFY);
 
 			if (authenticated) {
 				logger.debug("Node " + senderID +  " authenticated for message " + envelope.getMessage().getCommand());
+				if (ns.capture != null) {
+					ns.capture.record(arrival, senderID.getID(), envelope.getMessage());
+				}
 
-				Response<?> response = null;
-				if (Command.RESET_NAMING_SERVICE.equals(envelope.getMessage().getCommand())) {
-					// process delete request
-					if (ns.configuration.isDebugMode()) {
-						logger.debug("Resetting namingserivce data");
-						try {
-							response = new Response<Boolean>(ns.initializeDataStorage(true),
-									ResponseCode.SUCCESS);
-						} catch (InterruptedException | FileNotFoundException e) {
-							logger.error("Could not wipe storage: " + e.getMessage());
-							response = new Response<Boolean>(false, ResponseCode.ERROR_INTERNAL);
-							e.printStackTrace();
+				RequestOptions options = RequestOptions.parse(envelope.getMessage().getTextualInfo());
+				String owner = owningShard(envelope.getMessage());
+				if (owner == null && ns.follower != null
+						&& ns.follower.mustRetry(envelope.getMessage().getCommand(), options.getMinSequence())) {
+					// answered with the sequence reached so far, the sender retries later
+					logger.debug("Sequence " + options.getMinSequence() + " not applied yet for "
+							+ envelope.getMessage().getCommand());
+					response = new Response<String>(null, ResponseCode.ERROR_INTERNAL);
+				} else if (owner != null || mustForward(envelope.getMessage().getCommand(), options)) {
+					String forwarded = owner != null
+							? shardForwarder(owner).forward(senderID, envelope.getMessage())
+							: forward(senderID, envelope.getMessage());
+					if (forwarded != null) {
+						// already signed and encrypted for the sender by the upstream service
+						timer.mark(Phase.EXECUTE);
+						responseSocket.send(forwarded);
+						timer.mark(Phase.SEND);
+						return;
+					}
+					logger.warn("Could not forward " + envelope.getMessage().getCommand());
+					response = new Response<String>(null, ResponseCode.ERROR_INTERNAL);
+				}
+
+				lockStorage();
+				try {
+					if (response != null) {
+						// not processed, see above
+					} else if (Command.RESET_NAMING_SERVICE.equals(envelope.getMessage().getCommand())) {
+						// process delete request
+						if (ns.configuration.isDebugMode()) {
+							logger.debug("Resetting namingserivce data");
+							try {
+								response = new Response<Boolean>(ns.initializeDataStorage(true),
+										ResponseCode.SUCCESS);
+							} catch (InterruptedException | FileNotFoundException e) {
+								logger.error("Could not wipe storage: " + e.getMessage());
+								response = new Response<Boolean>(false, ResponseCode.ERROR_INTERNAL);
+								e.printStackTrace();
+							}
+						} else {
+							logger.debug("Received request to reset namingservice data, "
+									+ "but not in debug mode");
+							response = new Response<Boolean>(false, ResponseCode.ERROR_ILLEGAL_COMMAND);
 						}
+					} else if (isStatsRequest(envelope.getMessage())) {
+						response = new Response<String>(MetricsRegistry.getInstance().toJSON(),
+								ResponseCode.SUCCESS);
 					} else {
-						logger.debug("Received request to reset namingservice data, "
-								+ "but not in debug mode");
-						response = new Response<Boolean>(false, ResponseCode.ERROR_ILLEGAL_COMMAND);
+						// normally process command
+						response = MessageParser.runCommand(ns.controller, envelope);
 					}
-				} else {
-					// normally process command
-					response = MessageParser.runCommand(ns.controller, envelope);
+				} finally {
+					unlockStorage();
 				}
+				timer.mark(Phase.EXECUTE);
 
 				Message m = new Message();
 				if (response.getValue() != null) {
@@ -79,13 +176,25 @@ public class NamespaceReceiver extends AbstractReceiver {
 				} else {
 					m.setContent(response.getResponseCode().toString());
 				}
-				m.setTextualInfo(response.getResponseCode().toString());
+				if (options.getMinSequence() != null) {
+					m.setTextualInfo(RequestOptions.withSequence(response.getResponseCode().toString(),
+							ns.getSequence()));
+				} else {
+					m.setTextualInfo(response.getResponseCode().toString());
+				}
 				m.signMessage(ns.configuration.getPrivateKey(), EncryptionAlgorithm.RSA);
+				timer.mark(Phase.SIGN);
 				m.encryptFields(sender.getPublicKey(), EncryptionAlgorithm.RSA);
+				timer.mark(Phase.ENCRYPT);
+				String json = JSONable.toJSON(m);
+				timer.mark(Phase.SERIALIZE);
 				logger.debug("Sending response");
-				responseSocket.send(JSONable.toJSON(m));
+				responseSocket.send(json);
+				timer.mark(Phase.SEND);
 				logger.debug("Response send");
 
+			} else if (sender == null) {
+				logger.debug("Node " + senderID + " is unknown");
 			} else {
 				logger.debug("Node is not authenticated");
 				// TODO add unauthenticated stuff
@@ -93,6 +202,166 @@ public class NamespaceReceiver extends AbstractReceiver {
 
 		} catch (FBaseEncryptionException e) {
 			logger.error("Decryption failed", e);
+		} finally {
+			recordTiming(envelope);
+			event.finish(envelope.getMessage().getCommand(), envelope.getConfigID(),
+					response != null ? response.getResponseCode() : null, timer);
+		}
+	}
+
+	/**
+	 * Records the phase durations of every n-th request and logs requests that took longer
+	 * than the configured threshold.
+	 * 
+	 * @param envelope The processed envelope
+	 */
+	private void recordTiming(Envelope envelope) {
+		int sampleRate = ns.configuration.getRequestSampleRate();
+		if (sampleRate > 0 && requests++ % sampleRate == 0) {
+			timer.recordInto(MetricsRegistry.getInstance());
+		}
+
+		long threshold = ns.configuration.getSlowRequestThreshold();
+		if (threshold > 0 && timer.getTotal() > TimeUnit.MILLISECONDS.toNanos(threshold)) {
+			slowRequestLogger.warn("Slow request " + envelope.getMessage().getCommand() + " from "
+					+ envelope.getConfigID() + ": " + timer);
+		}
+	}
+
+	/**
+	 * Checks whether a request must be forwarded to the primary or upstream naming service,
+	 * which is the case for all requests of a follower or edge proxy that modify data, and for
+	 * reads whose minimum sequence number the follower did not reach yet or the edge proxy
+	 * cannot check.
+	 * 
+	 * @param command The command of the request
+	 * @param options The options of the request
+	 * @return true, if the request must be forwarded
+	 */
+	private boolean mustForward(Command command, RequestOptions options) {
+		if (ns.edgeProxy != null) {
+			return ns.edgeProxy.mustForward(command, options.getMinSequence());
+		}
+		if (ns.follower == null) {
+			return false;
+		}
+		return ns.follower.mustForward(command, options.getMinSequence());
+	}
+
+	/**
+	 * Holds the data storage of a follower against the application of changes, see
+	 * {@link communication.Follower#getReadLock()}.
+	 */
+	private void lockStorage() {
+		if (ns.follower != null) {
+			ns.follower.getReadLock().lock();
+		}
+	}
+
+	private void unlockStorage() {
+		if (ns.follower != null) {
+			ns.follower.getReadLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the shard storing the keygroup of a request, if it is not this instance. Senders
+	 * route requests to the owning shard, so this only happens if their shard map is outdated.
+	 * 
+	 * @param message The request
+	 * @return the address of the owning shard, null if the request is processed by this instance
+	 */
+	private String owningShard(Message message) {
+		if (ns.shardMap == null) {
+			return null;
+		}
+		KeygroupID keygroupID = ShardMap.keygroupOf(message);
+		if (keygroupID == null) {
+			return null;
+		}
+		String owner = ns.shardMap.ownerOf(keygroupID);
+		return owner.equals(ns.getShard()) ? null : owner;
+	}
+
+	private RequestForwarder shardForwarder(String shard) {
+		return shardForwarders.computeIfAbsent(shard, s -> {
+			int index = s.lastIndexOf(':');
+			return new RequestForwarder(s.substring(0, index), Integer.parseInt(s.substring(index + 1)),
+					ns.configuration.getPublicKey());
+		});
+	}
+
+	/**
+	 * Closes the connections to other shards. Must only be called once the reception stopped.
+	 */
+	public void closeShardForwarders() {
+		for (RequestForwarder forwarder : shardForwarders.values()) {
+			forwarder.close();
+		}
+		shardForwarders.clear();
+	}
+
+	/**
+	 * Forwards a request to the primary or upstream naming service.
+	 * 
+	 * @param senderID The sender of the request
+	 * @param message The decrypted message of the request
+	 * @return the reply, null if none was received
+	 * @throws FBaseEncryptionException
+	 */
+	private String forward(NodeID senderID, Message message) throws FBaseEncryptionException {
+		if (ns.edgeProxy != null) {
+			return ns.edgeProxy.forward(senderID, message);
+		}
+		return ns.follower.forward(senderID, message);
+	}
+
+	/**
+	 * Checks whether a message requests the metrics of the naming service. Commands are defined
+	 * by FBaseCommons, so such requests have no command and {@link MetricsRegistry#STATS_REQUEST}
+	 * as textual info.
+	 * 
+	 * @param message The message
+	 * @return true, if the message is a stats request
+	 */
+	private static boolean isStatsRequest(Message message) {
+		return message.getCommand() == null
+				&& MetricsRegistry.STATS_REQUEST.equals(message.getTextualInfo());
+	}
+
+	/**
+	 * Parses the config of a sender, or returns the cached config if it was already parsed from
+	 * the same data.
+	 * 
+	 * @param nodeID The ID of the sender
+	 * @param data The stored config of the sender
+	 * @return the parsed config
+	 */
+	public NodeConfig parseSender(String nodeID, String data) {
+		if (data == null) {
+			return null;
+		}
+
+		ParsedSender cached = senders.get(nodeID);
+		if (cached != null && cached.data.equals(data)) {
+			return cached.config;
+		}
+
+		NodeConfig config = JSONable.fromJSON(data, NodeConfig.class);
+		if (config != null) {
+			senders.put(nodeID, new ParsedSender(data, config));
+		}
+		return config;
+	}
+
+	private static class ParsedSender {
+
+		private final String data;
+		private final NodeConfig config;
+
+		ParsedSender(String data, NodeConfig config) {
+			this.data = data;
+			this.config = config;
 		}
 	}
 
@@ -18,7 +18,6 @@ import model.messages.Message;
  */
 public class NamespaceSender extends AbstractSender {
 	
-	private NamingService ns;
 	private String servicePublicKey;
 	private String nodePrivateKey;
 	
@@ -26,10 +25,26 @@ public class NamespaceSender extends AbstractSender {
 
 	/**
 	 * Initializes the NamespaceSender, it then can be used without further modifications.
+	 * Requests are encrypted with the public key of the given naming service, the private key
+	 * of the sending node must be set with {@link #setNodePrivateKey(String)}.
 	 */
 	public NamespaceSender(NamingService ns, String address, int port, String secret, EncryptionAlgorithm algorithm) {
 		super(address, port, ZMQ.REQ);
-		this.ns = ns;
+		this.servicePublicKey = ns.configuration.getPublicKey();
+	}
+
+	/**
+	 * Initializes a NamespaceSender for a node that is not part of this process.
+	 * 
+	 * @param address The address of the naming service
+	 * @param port The port of the naming service
+	 * @param servicePublicKey The public key of the naming service
+	 * @param nodePrivateKey The private key of the sending node
+	 */
+	public NamespaceSender(String address, int port, String servicePublicKey, String nodePrivateKey) {
+		super(address, port, ZMQ.REQ);
+		this.servicePublicKey = servicePublicKey;
+		this.nodePrivateKey = nodePrivateKey;
 	}
 
 	/**
@@ -41,27 +56,58 @@ public class NamespaceSender extends AbstractSender {
 	@Override
 	public String send(Envelope envelope, String secret, EncryptionAlgorithm algorithm) {
 		try {
-			logger.debug("Sending envelope with keygroup " + envelope.getNodeID());
-			
-			envelope.getMessage().signMessage(nodePrivateKey, EncryptionAlgorithm.RSA);
-			envelope.getMessage().encryptFields(ns.configuration.getPublicKey(), EncryptionAlgorithm.RSA);
-			
-			sender.sendMore(envelope.getNodeID().getID());
-			sender.send(JSONable.toJSON(envelope.getMessage()));
-			
-			logger.debug("Waiting for reply");
-			
-			Message m = JSONable.fromJSON(sender.recvStr(), Message.class);
-			m.decryptFields(nodePrivateKey, EncryptionAlgorithm.RSA);
-			m.verifyMessage(servicePublicKey, EncryptionAlgorithm.RSA);
-			
-			return m.getContent();
+			Message m = sendMessage(envelope);
+			return m == null ? null : m.getContent();
 		} catch (FBaseEncryptionException e) {
 			logger.error("Error signing message", e);
 			return null;
 		}
 	}
 
+	/**
+	 * Sends an envelope to the specified address. The message is signed with the private key
+	 * of the node and encrypted with the public key of the naming service.
+	 * 
+	 * @param envelope
+	 * @return the decrypted response message, its textual info contains the response code;
+	 *         null if no response was received or the response is not signed by the naming
+	 *         service
+	 * @throws FBaseEncryptionException
+	 */
+	public Message sendMessage(Envelope envelope) throws FBaseEncryptionException {
+		logger.debug("Sending envelope with keygroup " + envelope.getNodeID());
+
+		envelope.getMessage().signMessage(nodePrivateKey, EncryptionAlgorithm.RSA);
+		envelope.getMessage().encryptFields(servicePublicKey, EncryptionAlgorithm.RSA);
+
+		sender.sendMore(envelope.getNodeID().getID());
+		sender.send(JSONable.toJSON(envelope.getMessage()));
+
+		logger.debug("Waiting for reply");
+
+		String reply = sender.recvStr();
+		if (reply == null) {
+			logger.warn("No reply received");
+			return null;
+		}
+		Message m = JSONable.fromJSON(reply, Message.class);
+		m.decryptFields(nodePrivateKey, EncryptionAlgorithm.RSA);
+		if (!m.verifyMessage(servicePublicKey, EncryptionAlgorithm.RSA)) {
+			logger.warn("Reply not signed by the naming service");
+			return null;
+		}
+		return m;
+	}
+
+	/**
+	 * Sets how long to wait for a reply. After a timeout, the sender cannot be used anymore.
+	 * 
+	 * @param millis The timeout in milliseconds, -1 to wait forever
+	 */
+	public void setReceiveTimeout(int millis) {
+		sender.setReceiveTimeOut(millis);
+	}
+
 	public void setServicePublicKey(String publicKey) {
 		this.servicePublicKey = publicKey;
 	}
@@ -0,0 +1,271 @@
+package communication;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.zeromq.ZMQ;
+import org.zeromq.ZMQ.Context;
+import org.zeromq.ZMQ.Socket;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import crypto.CryptoProvider.EncryptionAlgorithm;
+import database.ChangeLog;
+import database.StorageChange;
+import exceptions.FBaseEncryptionException;
+import model.JSONable;
+import model.messages.Message;
+import model.messages.ResponseCode;
+
+/**
+ * Serves the {@link ChangeLog} of a primary naming service to its {@link Follower}s on a ZMQ
+ * REP socket.
+ *
+ * Every poll is a {@link Message} created by {@link #createPoll(String, String)}. Followers
+ * share the key pair of the naming service they poll and sign their polls with its private
+ * key. Edge proxies have their own key pair, which must be one of the configured proxy keys,
+ * and may only read single nodes. Polls with another signature are answered with an empty
+ * reply. All replies are signed with the private key of the naming service and encrypted with
+ * the public key of the poll's signer, so a recorded poll sent again does not reveal anything
+ * either. Followers receive all data including secrets, e.g., of keygroups; the encryption
+ * secrets of keygroups are removed from the nodes read by edge proxies, which forward the
+ * commands that need them.
+ *
+ * A follower polls with "&lt;epoch&gt;:&lt;sequence&gt;", the epoch and sequence number of the
+ * last change it applied, or with an empty poll if it has nothing applied yet. The content of
+ * the reply is a {@link ChangeBatch} with the following changes. If these are not retained
+ * anymore, or the follower's epoch differs, the batch contains a snapshot of the whole data
+ * storage instead.
+ *
+ * Edge proxies poll with "read &lt;path&gt;" to read a single node. The reply has the node's
+ * data as content and SUCCESS or ERROR_DOESNT_EXIST as textual info.
+ *
+ * @author jonathanhasenburg
+ *
+ */
+public class ReplicationServer {
+
+	private static Logger logger = Logger.getLogger(ReplicationServer.class.getName());
+
+	/**
+	 * Prefix of polls that read a single node
+	 */
+	public static final String READ = "read ";
+
+	private static final int maxBatchSize = 1000;
+	private static final int receiveTimeout = 500;
+
+	private final ChangeLog changeLog;
+	private final String address;
+	private final int port;
+	private final String publicKey;
+	private final String privateKey;
+	private final List<String> proxyPublicKeys;
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	private Thread thread;
+	private volatile boolean running;
+
+	/**
+	 * Creates a server.
+	 *
+	 * @param changeLog The change log of the naming service
+	 * @param address The address to bind to, e.g., tcp://localhost
+	 * @param port The port to bind to
+	 * @param publicKey The public key of the naming service
+	 * @param privateKey The private key of the naming service
+	 * @param proxyPublicKeys The public keys of the edge proxies that may read nodes
+	 */
+	public ReplicationServer(ChangeLog changeLog, String address, int port, String publicKey,
+			String privateKey, List<String> proxyPublicKeys) {
+		this.changeLog = changeLog;
+		this.address = address;
+		this.port = port;
+		this.publicKey = publicKey;
+		this.privateKey = privateKey;
+		this.proxyPublicKeys = proxyPublicKeys;
+	}
+
+	public void start() {
+		running = true;
+		thread = new Thread(this::serve, "ReplicationServer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public void stop() {
+		running = false;
+		if (thread != null) {
+			try {
+				thread.join(2 * receiveTimeout);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Creates a signed poll.
+	 *
+	 * @param poll The poll, e.g., "&lt;epoch&gt;:&lt;sequence&gt;" or "read &lt;path&gt;"
+	 * @param privateKey The private key of the polled naming service for followers, the
+	 *            proxy's own private key for edge proxies
+	 * @return the poll to send
+	 * @throws FBaseEncryptionException if the poll cannot be signed
+	 */
+	public static String createPoll(String poll, String privateKey) throws FBaseEncryptionException {
+		Message m = new Message();
+		m.setContent(poll);
+		m.signMessage(privateKey, EncryptionAlgorithm.RSA);
+		return JSONable.toJSON(m);
+	}
+
+	private void serve() {
+		Context context = ZMQ.context(1);
+		Socket socket = context.socket(ZMQ.REP);
+		socket.setLinger(0);
+		socket.setReceiveTimeOut(receiveTimeout);
+		socket.bind(address + ":" + port);
+		logger.info("Serving change log on " + address + ":" + port);
+
+		try {
+			while (running) {
+				String poll = socket.recvStr();
+				if (poll == null) {
+					continue;
+				}
+
+				String reply;
+				try {
+					reply = reply(poll);
+				} catch (Exception e) {
+					logger.error("Cannot answer poll " + poll, e);
+					reply = "";
+				}
+				socket.send(reply);
+			}
+		} finally {
+			socket.close();
+			context.term();
+		}
+	}
+
+	private String reply(String signedPoll) throws Exception {
+		Message pollMessage = JSONable.fromJSON(signedPoll, Message.class);
+		String poll = pollMessage.getContent() != null ? pollMessage.getContent() : "";
+		if (!pollMessage.verifyMessage(publicKey, EncryptionAlgorithm.RSA)) {
+			String proxyPublicKey = proxyPublicKeyOf(pollMessage);
+			if (proxyPublicKey == null) {
+				logger.warn("Rejecting poll that is not signed with the key of the naming service or a proxy");
+				return "";
+			} else if (!poll.startsWith(READ)) {
+				logger.warn("Rejecting poll of a proxy that does not read a single node");
+				return "";
+			}
+			return read(poll.substring(READ.length()), proxyPublicKey, true);
+		}
+		if (poll.startsWith(READ)) {
+			return read(poll.substring(READ.length()), publicKey, false);
+		}
+
+		long epoch = -1;
+		long after = -1;
+		int index = poll.indexOf(':');
+		if (index > 0) {
+			try {
+				epoch = Long.parseLong(poll.substring(0, index));
+				after = Long.parseLong(poll.substring(index + 1));
+			} catch (NumberFormatException e) {
+				logger.warn("Malformed poll " + poll);
+			}
+		}
+
+		ChangeBatch batch;
+		List<StorageChange> changes = changeLog.getChangesAfter(epoch, after, maxBatchSize);
+		if (changes != null) {
+			long sequence = changes.isEmpty() ? after : changes.get(changes.size() - 1).getSequence();
+			batch = new ChangeBatch(changeLog.getEpoch(), sequence, false, changes);
+		} else {
+			// holding the lock keeps the sequence number consistent with the snapshot
+			synchronized (changeLog) {
+				batch = new ChangeBatch(changeLog.getEpoch(), changeLog.getSequence(), true,
+						changeLog.snapshot());
+			}
+		}
+
+		Message m = new Message();
+		m.setContent(JSONable.toJSON(batch));
+		m.signMessage(privateKey, EncryptionAlgorithm.RSA);
+		m.encryptFields(publicKey, EncryptionAlgorithm.RSA);
+		return JSONable.toJSON(m);
+	}
+
+	/**
+	 * @return the key of the proxy that signed the poll, null if no proxy signed it
+	 */
+	private String proxyPublicKeyOf(Message pollMessage) {
+		for (String proxyPublicKey : proxyPublicKeys) {
+			try {
+				if (pollMessage.verifyMessage(proxyPublicKey, EncryptionAlgorithm.RSA)) {
+					return proxyPublicKey;
+				}
+			} catch (FBaseEncryptionException e) {
+				logger.warn("Cannot verify poll with proxy key " + proxyPublicKey, e);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Answers the read of a single node.
+	 *
+	 * @param path The path of the node
+	 * @param readerPublicKey The public key the reply is encrypted with
+	 * @param stripSecrets true, if encryption secrets must be removed from the data
+	 */
+	private String read(String path, String readerPublicKey, boolean stripSecrets) throws Exception {
+		Message m = new Message();
+		if (changeLog.exists(path)) {
+			String data;
+			try {
+				data = changeLog.readNode(path);
+			} catch (IllegalArgumentException e) {
+				// intermediate nodes, e.g., of keygroup apps, may have no data
+				data = null;
+			}
+			if (data != null && stripSecrets) {
+				data = stripSecrets(data);
+			}
+			m.setContent(data != null ? data : "");
+			m.setTextualInfo(ResponseCode.SUCCESS.toString());
+		} else {
+			m.setContent(ResponseCode.ERROR_DOESNT_EXIST.toString());
+			m.setTextualInfo(ResponseCode.ERROR_DOESNT_EXIST.toString());
+		}
+		m.signMessage(privateKey, EncryptionAlgorithm.RSA);
+		m.encryptFields(readerPublicKey, EncryptionAlgorithm.RSA);
+		return JSONable.toJSON(m);
+	}
+
+	/**
+	 * Replaces the encryption secret of keygroup data by null.
+	 *
+	 * @param data The data of a node
+	 * @return the data without secret
+	 * @throws IOException if the data mentions a secret but is not JSON
+	 */
+	String stripSecrets(String data) throws IOException {
+		if (!data.contains(TrafficCapture.SECRET_FIELD)) {
+			return data;
+		}
+		JsonNode tree = mapper.readTree(data);
+		if (tree instanceof ObjectNode && tree.has(TrafficCapture.SECRET_FIELD)) {
+			((ObjectNode) tree).putNull(TrafficCapture.SECRET_FIELD);
+		}
+		return mapper.writeValueAsString(tree);
+	}
+
+}
@@ -0,0 +1,91 @@
+package communication;
+
+import org.apache.log4j.Logger;
+import org.zeromq.ZMQ;
+import org.zeromq.ZMQ.Context;
+import org.zeromq.ZMQ.Socket;
+
+import crypto.CryptoProvider.EncryptionAlgorithm;
+import exceptions.FBaseEncryptionException;
+import model.JSONable;
+import model.data.ConfigID;
+import model.messages.Message;
+
+/**
+ * Forwards requests received by one naming service to another one, e.g., from a follower to
+ * its primary. The request, decrypted with the key of the forwarding naming service, is
+ * encrypted again for the other naming service, and its response, which is encrypted for the
+ * original sender, is passed on unchanged.
+ *
+ * The socket is created on the first request and must only be used by one thread.
+ *
+ * @author jonathanhasenburg
+ *
+ */
+public class RequestForwarder {
+
+	private static Logger logger = Logger.getLogger(RequestForwarder.class.getName());
+
+	private static final int receiveTimeout = 10000;
+
+	private final String address;
+	private final int port;
+	private final String servicePublicKey;
+
+	private Context context;
+	private Socket socket;
+
+	/**
+	 * Creates a forwarder.
+	 *
+	 * @param address The address of the receiving naming service, e.g., tcp://localhost
+	 * @param port The port the receiving naming service receives requests on
+	 * @param servicePublicKey The public key of the receiving naming service
+	 */
+	public RequestForwarder(String address, int port, String servicePublicKey) {
+		this.address = address;
+		this.port = port;
+		this.servicePublicKey = servicePublicKey;
+	}
+
+	/**
+	 * Forwards a request.
+	 *
+	 * @param senderID The sender of the request
+	 * @param message The decrypted message of the request, it is encrypted again
+	 * @return the reply of the receiving naming service, null if none was received
+	 * @throws FBaseEncryptionException
+	 */
+	public String forward(ConfigID senderID, Message message) throws FBaseEncryptionException {
+		message.encryptFields(servicePublicKey, EncryptionAlgorithm.RSA);
+		if (socket == null) {
+			context = ZMQ.context(1);
+			socket = context.socket(ZMQ.REQ);
+			socket.setLinger(0);
+			socket.setReceiveTimeOut(receiveTimeout);
+			socket.connect(address + ":" + port);
+		}
+
+		socket.sendMore(senderID.getID());
+		socket.send(JSONable.toJSON(message));
+		String reply = socket.recvStr();
+		if (reply == null) {
+			// a REQ socket without reply cannot send again
+			logger.warn(address + ":" + port + " did not reply to forwarded " + message.getCommand());
+			close();
+		}
+		return reply;
+	}
+
+	/**
+	 * Closes the socket, the next request creates a new one.
+	 */
+	public void close() {
+		if (socket != null) {
+			socket.close();
+			context.term();
+			socket = null;
+		}
+	}
+
+}
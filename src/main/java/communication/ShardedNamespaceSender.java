@@ -0,0 +1,104 @@
+package communication;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import exceptions.FBaseEncryptionException;
+import model.messages.Envelope;
+import model.messages.Message;
+import namespace.ShardMap;
+
+/**
+ * Sends requests to the shards of a sharded deployment. Each request is sent by the
+ * {@link NamespaceSender} of the shard that must process it according to the
+ * {@link ShardMap}, so keygroup commands reach the shard storing the keygroup and all other
+ * commands the global shard. All shards use the same key pair.
+ *
+ * Like a {@link NamespaceSender}, instances must only be used by one thread.
+ *
+ * @author jonathanhasenburg
+ *
+ */
+public class ShardedNamespaceSender {
+
+	private static Logger logger = Logger.getLogger(ShardedNamespaceSender.class.getName());
+
+	private final ShardMap shardMap;
+	private final String servicePublicKey;
+	private final String nodePrivateKey;
+
+	/**
+	 * Senders of the shards, by address, created on the first request to a shard
+	 */
+	private final Map<String, NamespaceSender> senders = new HashMap<String, NamespaceSender>();
+
+	private int receiveTimeout = -1;
+
+	/**
+	 * Creates a sender.
+	 *
+	 * @param shardMap The shard map of the deployment
+	 * @param servicePublicKey The public key of the naming service
+	 * @param nodePrivateKey The private key of the sending node
+	 */
+	public ShardedNamespaceSender(ShardMap shardMap, String servicePublicKey, String nodePrivateKey) {
+		this.shardMap = shardMap;
+		this.servicePublicKey = servicePublicKey;
+		this.nodePrivateKey = nodePrivateKey;
+	}
+
+	/**
+	 * Sends an envelope to the shard that must process it.
+	 *
+	 * @param envelope
+	 * @return the decrypted response message, null if no response was received or the response
+	 *         is not signed by the naming service
+	 * @throws FBaseEncryptionException
+	 * @see NamespaceSender#sendMessage(Envelope)
+	 */
+	public Message sendMessage(Envelope envelope) throws FBaseEncryptionException {
+		String shard = shardMap.route(envelope.getMessage());
+		logger.debug("Routing " + envelope.getMessage().getCommand() + " to " + shard);
+
+		NamespaceSender sender = senders.get(shard);
+		if (sender == null) {
+			int index = shard.lastIndexOf(':');
+			sender = new NamespaceSender(shard.substring(0, index),
+					Integer.parseInt(shard.substring(index + 1)), servicePublicKey, nodePrivateKey);
+			if (receiveTimeout >= 0) {
+				sender.setReceiveTimeout(receiveTimeout);
+			}
+			senders.put(shard, sender);
+		}
+
+		Message reply = sender.sendMessage(envelope);
+		if (reply == null) {
+			// a REQ socket without reply cannot send again
+			sender.shutdown();
+			senders.remove(shard);
+		}
+		return reply;
+	}
+
+	/**
+	 * Sets how long to wait for a reply of a shard.
+	 *
+	 * @param millis The timeout in milliseconds, -1 to wait forever
+	 */
+	public void setReceiveTimeout(int millis) {
+		receiveTimeout = millis;
+		for (NamespaceSender sender : senders.values()) {
+			sender.setReceiveTimeout(millis);
+		}
+	}
+
+	public void shutdown() {
+		for (NamespaceSender sender : senders.values()) {
+			sender.shutdown();
+		}
+		senders.clear();
+	}
+
+}
@@ -0,0 +1,339 @@
+package communication;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.log4j.Logger;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import model.messages.Command;
+import model.messages.Message;
+
+/**
+ * Records decrypted requests to a gzip compressed capture file, so that production traffic can
+ * be replayed against a test instance.
+ *
+ * The file starts with {@link #MAGIC}, a format version and the wall clock time of the capture
+ * start in milliseconds. Each record consists of the nanoseconds since the previous record as
+ * variable-length integer, the sender ID, the command name, the textual info and the content.
+ * Strings are stored as variable-length byte count + 1 followed by their UTF-8 bytes, with 0
+ * standing for null.
+ *
+ * Records are written by a single background thread. If it falls more than
+ * {@value #MAX_PENDING} records behind, further records are dropped instead of slowing down the
+ * receiver.
+ *
+ * The encryption secrets of keygroups, sent with KEYGROUP_CONFIG_CREATE and
+ * KEYGROUP_CONFIG_UPDATE_CRYPTO, are replaced by null before a record is written. All other
+ * content, e.g., node and client configs, is stored as received.
+ *
+ * @author jonathanhasenburg
+ *
+ */
+public class TrafficCapture implements Closeable {
+
+	private static Logger logger = Logger.getLogger(TrafficCapture.class.getName());
+
+	public static final String MAGIC = "FBNSCAP";
+	private static final int VERSION = 1;
+	private static final int MAX_PENDING = 10000;
+
+	/**
+	 * The JSON field of keygroup configs and crypto updates that holds the encryption secret
+	 */
+	public static final String SECRET_FIELD = "encryptionSecret";
+
+	private final DataOutputStream out;
+	private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+		Thread t = new Thread(r, "TrafficCapture");
+		t.setDaemon(true);
+		return t;
+	});
+
+	private final ObjectMapper mapper = new ObjectMapper();
+	private final AtomicInteger pending = new AtomicInteger();
+	private final AtomicLong dropped = new AtomicLong();
+
+	/**
+	 * Only accessed by the writing thread
+	 */
+	private long lastArrival;
+
+	/**
+	 * Creates the capture file, an existing file is overwritten.
+	 *
+	 * @param file The path of the capture file
+	 * @throws IOException if the file cannot be created
+	 */
+	public TrafficCapture(String file) throws IOException {
+		out = new DataOutputStream(new BufferedOutputStream(
+				new GZIPOutputStream(new FileOutputStream(file), 64 * 1024)));
+		out.writeUTF(MAGIC);
+		out.writeByte(VERSION);
+		out.writeLong(System.currentTimeMillis());
+		lastArrival = System.nanoTime();
+		logger.info("Capturing requests to " + file);
+	}
+
+	/**
+	 * Records a request.
+	 *
+	 * @param arrival The {@link System#nanoTime()} at which the request arrived
+	 * @param senderID The ID of the sending node
+	 * @param message The decrypted message
+	 */
+	public void record(long arrival, String senderID, Message message) {
+		if (executor.isShutdown()) {
+			return;
+		}
+		if (pending.incrementAndGet() > MAX_PENDING) {
+			pending.decrementAndGet();
+			dropped.incrementAndGet();
+			return;
+		}
+
+		Command command = message.getCommand();
+		String textualInfo = message.getTextualInfo();
+		String content = message.getContent();
+		try {
+			executor.execute(() -> {
+				pending.decrementAndGet();
+				try {
+					writeVarLong(out, Math.max(0, arrival - lastArrival));
+					lastArrival = Math.max(lastArrival, arrival);
+					writeString(out, senderID);
+					writeString(out, command != null ? command.name() : null);
+					writeString(out, textualInfo);
+					writeString(out, redact(content));
+				} catch (IOException e) {
+					logger.error("Could not capture request, stopping capture", e);
+					executor.shutdown();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			// the writer stopped the capture after an error since the check above, the request
+			// is still processed, only its record is dropped
+			pending.decrementAndGet();
+			dropped.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Replaces the values of all {@link #SECRET_FIELD} fields in the content by null. Content
+	 * that mentions the field but is not JSON is dropped entirely, as the secret cannot be
+	 * located in it.
+	 *
+	 * @param content The content of a request, may be null
+	 * @return the content without secrets
+	 */
+	String redact(String content) {
+		if (content == null || !content.contains(SECRET_FIELD)) {
+			return content;
+		}
+		try {
+			JsonNode tree = mapper.readTree(content);
+			removeSecrets(tree);
+			return mapper.writeValueAsString(tree);
+		} catch (IOException e) {
+			logger.debug("Dropping content that is not JSON but mentions " + SECRET_FIELD);
+			return null;
+		}
+	}
+
+	private static void removeSecrets(JsonNode node) {
+		if (node instanceof ObjectNode && node.has(SECRET_FIELD)) {
+			((ObjectNode) node).putNull(SECRET_FIELD);
+		}
+		for (Iterator<JsonNode> children = node.elements(); children.hasNext();) {
+			removeSecrets(children.next());
+		}
+	}
+
+	/**
+	 * @return the number of records dropped because the writer fell behind
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	/**
+	 * Writes all pending records and closes the file.
+	 */
+	@Override
+	public void close() throws IOException {
+		executor.shutdown();
+		try {
+			executor.awaitTermination(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		out.close();
+		if (dropped.get() > 0) {
+			logger.warn("Dropped " + dropped.get() + " requests while capturing");
+		}
+	}
+
+	private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.writeByte((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+
+	private static long readVarLong(DataInputStream in) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Malformed variable-length integer");
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		if (value == null) {
+			writeVarLong(out, 0);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		writeVarLong(out, bytes.length + 1L);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		long length = readVarLong(in);
+		if (length == 0) {
+			return null;
+		}
+		if (length - 1 > Integer.MAX_VALUE) {
+			throw new IOException("String too long: " + (length - 1));
+		}
+		byte[] bytes = new byte[(int) (length - 1)];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * A captured request.
+	 */
+	public static class Record {
+
+		private final long offsetNanos;
+		private final String senderID;
+		private final Command command;
+		private final String textualInfo;
+		private final String content;
+
+		Record(long offsetNanos, String senderID, Command command, String textualInfo, String content) {
+			this.offsetNanos = offsetNanos;
+			this.senderID = senderID;
+			this.command = command;
+			this.textualInfo = textualInfo;
+			this.content = content;
+		}
+
+		/**
+		 * @return the nanoseconds between the start of the capture and the arrival of the request
+		 */
+		public long getOffsetNanos() {
+			return offsetNanos;
+		}
+
+		public String getSenderID() {
+			return senderID;
+		}
+
+		public Command getCommand() {
+			return command;
+		}
+
+		public String getTextualInfo() {
+			return textualInfo;
+		}
+
+		public String getContent() {
+			return content;
+		}
+
+	}
+
+	/**
+	 * Reads a capture file record by record.
+	 */
+	public static class Reader implements Closeable {
+
+		private final DataInputStream in;
+		private final long startMillis;
+		private long offset = 0;
+
+		public Reader(String file) throws IOException {
+			in = new DataInputStream(new BufferedInputStream(
+					new GZIPInputStream(new FileInputStream(file), 64 * 1024)));
+			if (!MAGIC.equals(in.readUTF())) {
+				in.close();
+				throw new IOException(file + " is not a capture file");
+			}
+			int version = in.readUnsignedByte();
+			if (version != VERSION) {
+				in.close();
+				throw new IOException("Unsupported capture version " + version);
+			}
+			startMillis = in.readLong();
+		}
+
+		/**
+		 * @return the wall clock time of the capture start in milliseconds
+		 */
+		public long getStartMillis() {
+			return startMillis;
+		}
+
+		/**
+		 * @return the next record, null at the end of the file
+		 * @throws IOException
+		 */
+		public Record next() throws IOException {
+			long delta;
+			try {
+				delta = readVarLong(in);
+			} catch (EOFException e) {
+				return null;
+			}
+			offset += delta;
+			String senderID = readString(in);
+			String command = readString(in);
+			return new Record(offset, senderID, command != null ? Command.valueOf(command) : null,
+					readString(in), readString(in));
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+
+	}
+
+}
@@ -0,0 +1,152 @@
+package communication;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.zeromq.ZMQ;
+import org.zeromq.ZMQ.Context;
+import org.zeromq.ZMQ.Socket;
+
+import crypto.CryptoProvider.EncryptionAlgorithm;
+import database.IControllable;
+import exceptions.FBaseEncryptionException;
+import model.JSONable;
+import model.messages.Message;
+import model.messages.ResponseCode;
+
+/**
+ * A read-only {@link IControllable} that reads nodes from the data storage of an upstream
+ * naming service, using the read polls of its {@link ReplicationServer}. Every read is a
+ * round trip to the upstream naming service, so edge proxies wrap this controller in a cache.
+ *
+ * Writes are not supported, edge proxies forward all requests that modify data to the
+ * upstream naming service. Reads are signed with the proxy's own private key, and the
+ * upstream naming service removes the encryption secrets of keygroups from the read nodes.
+ *
+ * @author jonathanhasenburg
+ *
+ */
+public class UpstreamController implements IControllable {
+
+	private static Logger logger = Logger.getLogger(UpstreamController.class.getName());
+
+	private static final int receiveTimeout = 10000;
+
+	private final String address;
+	private final int replicationPort;
+	private final String upstreamPublicKey;
+	private final String proxyPrivateKey;
+
+	private Context context;
+	private Socket socket;
+
+	/**
+	 * Creates a controller.
+	 *
+	 * @param address The address of the upstream naming service, e.g., tcp://localhost
+	 * @param replicationPort The port the upstream naming service serves reads on
+	 * @param upstreamPublicKey The public key of the upstream naming service
+	 * @param proxyPrivateKey The private key of the proxy, its public key must be authorized by
+	 *            the upstream naming service
+	 */
+	public UpstreamController(String address, int replicationPort, String upstreamPublicKey,
+			String proxyPrivateKey) {
+		this.address = address;
+		this.replicationPort = replicationPort;
+		this.upstreamPublicKey = upstreamPublicKey;
+		this.proxyPrivateKey = proxyPrivateKey;
+	}
+
+	/**
+	 * Reads a node from the upstream naming service.
+	 *
+	 * @throws IllegalArgumentException if the node does not exist
+	 * @throws IllegalStateException if the upstream naming service did not reply
+	 */
+	@Override
+	public synchronized String readNode(String path) throws IllegalArgumentException, InterruptedException {
+		if (socket == null) {
+			context = ZMQ.context(1);
+			socket = context.socket(ZMQ.REQ);
+			socket.setLinger(0);
+			socket.setReceiveTimeOut(receiveTimeout);
+			socket.connect(address + ":" + replicationPort);
+		}
+
+		try {
+			socket.send(ReplicationServer.createPoll(ReplicationServer.READ + path, proxyPrivateKey));
+		} catch (FBaseEncryptionException e) {
+			throw new IllegalStateException("Cannot sign read of " + path, e);
+		}
+		String reply = socket.recvStr();
+		if (reply == null || reply.isEmpty()) {
+			// a REQ socket without reply cannot send again
+			close();
+			throw new IllegalStateException("Upstream naming service did not reply to read of " + path);
+		}
+
+		Message m = JSONable.fromJSON(reply, Message.class);
+		try {
+			m.decryptFields(proxyPrivateKey, EncryptionAlgorithm.RSA);
+			if (!m.verifyMessage(upstreamPublicKey, EncryptionAlgorithm.RSA)) {
+				throw new IllegalStateException("Read of " + path + " not signed by upstream naming service");
+			}
+		} catch (FBaseEncryptionException e) {
+			throw new IllegalStateException("Cannot decrypt read of " + path, e);
+		}
+
+		if (ResponseCode.ERROR_DOESNT_EXIST.toString().equals(m.getTextualInfo())) {
+			throw new IllegalArgumentException("Path '" + path + "' does not exist");
+		}
+		return m.getContent();
+	}
+
+	@Override
+	public boolean exists(String path) throws IllegalArgumentException, InterruptedException {
+		try {
+			readNode(path);
+			return true;
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+	}
+
+	@Override
+	public void addNode(String path, String data) throws IllegalArgumentException, InterruptedException {
+		throw new UnsupportedOperationException("Upstream data storage is read-only");
+	}
+
+	@Override
+	public void updateNode(String path, String data) throws IllegalArgumentException, InterruptedException {
+		throw new UnsupportedOperationException("Upstream data storage is read-only");
+	}
+
+	@Override
+	public void deleteNodeRecursive(String path) throws IOException {
+		throw new UnsupportedOperationException("Upstream data storage is read-only");
+	}
+
+	@Override
+	public void deleteNode(String path) throws IllegalArgumentException, InterruptedException {
+		throw new UnsupportedOperationException("Upstream data storage is read-only");
+	}
+
+	@Override
+	public List<String> getChildren(String path) throws IllegalArgumentException, InterruptedException {
+		throw new UnsupportedOperationException("Children are not read from the upstream data storage");
+	}
+
+	/**
+	 * Closes the socket, the next read creates a new one.
+	 */
+	public synchronized void close() {
+		if (socket != null) {
+			logger.debug("Closing connection to " + address + ":" + replicationPort);
+			socket.close();
+			context.term();
+			socket = null;
+		}
+	}
+
+}
@@ -3,6 +3,8 @@ package control;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 
 import org.apache.log4j.Logger;
@@ -18,6 +20,12 @@ public class Configuration {
 	private String address;
 	private int port;
 	private boolean debugMode;
+	private int publisherPort;
+	private boolean storageMetrics;
+	private int requestSampleRate;
+	private long slowRequestThreshold;
+	private int metricsPort;
+	private String captureFile;
 	
 	// Security
 	private String publicKey;
@@ -29,6 +37,63 @@ public class Configuration {
 	private String folderSeparator;
 	private String root;
 	
+	// Tombstone collection
+	private long tombstoneRetention;
+	private long tombstoneCollectionInterval;
+	private int tombstoneCollectionRate;
+	
+	// Caching
+	private boolean cacheWarmup;
+	private int cacheWarmupThreads;
+	
+	// Replication
+	private int replicationPort;
+	private int replicationLogSize;
+	private String primaryAddress;
+	private int primaryPort;
+	private int primaryReplicationPort;
+	private long replicationPollInterval;
+	
+	// Edge proxy
+	private String upstreamAddress;
+	private int upstreamPort;
+	private int upstreamReplicationPort;
+	private int upstreamPublisherPort;
+	private long proxyLease;
+	private long proxyMaxStaleness;
+	private String upstreamPublicKey;
+	private List<String> proxyPublicKeys;
+	
+	// Sharding
+	private List<String> shards;
+	private int shardIndex;
+	
+	// Change stream
+	private int changeStreamPort;
+	private String changeStreamDirectory;
+	private int changeStreamRetention;
+	
+	// Raft
+	private List<String> raftPeers;
+	private int raftIndex;
+	private String raftDirectory;
+	private int raftSnapshotInterval;
+	private long raftElectionTimeout;
+	private long raftHeartbeatInterval;
+	private long raftRequestTimeout;
+	
+	// ZooKeeper
+	private String zkConnectString;
+	private String zkChroot;
+	private int zkSessionTimeout;
+	private int zkConnectionTimeout;
+	private int zkSessions;
+	private boolean zkCache;
+	
+	// MVStore
+	private String mvstoreFile;
+	private int mvstoreCommitDelay;
+	
 	// Initialization
 	private String initNodeFile;
 	private String initClientFile;
@@ -55,6 +120,12 @@ public class Configuration {
 			address = properties.getProperty("address");
 			port = Integer.parseInt(properties.getProperty("port"));
 			debugMode = Boolean.parseBoolean(properties.getProperty("debugMode", "false"));
+			publisherPort = Integer.parseInt(properties.getProperty("publisherPort", "0"));
+			storageMetrics = Boolean.parseBoolean(properties.getProperty("storageMetrics", "false"));
+			requestSampleRate = Integer.parseInt(properties.getProperty("requestSampleRate", "10"));
+			slowRequestThreshold = Long.parseLong(properties.getProperty("slowRequestThreshold", "0"));
+			metricsPort = Integer.parseInt(properties.getProperty("metricsPort", "0"));
+			captureFile = properties.getProperty("captureFile", "");
 			
 			// Security 
 			publicKey = properties.getProperty("publicKey");
@@ -65,6 +136,79 @@ public class Configuration {
 			localOS = properties.getProperty("localOS").toLowerCase();
 			root = properties.getProperty("root");
 			
+			// Tombstone collection
+			tombstoneRetention = Long.parseLong(properties.getProperty("tombstoneRetention", "0"));
+			tombstoneCollectionInterval = Long.parseLong(properties.getProperty("tombstoneCollectionInterval", "3600"));
+			tombstoneCollectionRate = Integer.parseInt(properties.getProperty("tombstoneCollectionRate", "10"));
+			
+			// Caching
+			cacheWarmup = Boolean.parseBoolean(properties.getProperty("cacheWarmup", "false"));
+			cacheWarmupThreads = Integer.parseInt(properties.getProperty("cacheWarmupThreads",
+					String.valueOf(Runtime.getRuntime().availableProcessors())));
+			
+			// Replication
+			replicationPort = Integer.parseInt(properties.getProperty("replicationPort", "0"));
+			replicationLogSize = Integer.parseInt(properties.getProperty("replicationLogSize", "100000"));
+			primaryAddress = properties.getProperty("primaryAddress", "");
+			primaryPort = Integer.parseInt(properties.getProperty("primaryPort", "0"));
+			primaryReplicationPort = Integer.parseInt(properties.getProperty("primaryReplicationPort", "0"));
+			replicationPollInterval = Long.parseLong(properties.getProperty("replicationPollInterval", "20"));
+			
+			// Edge proxy
+			upstreamAddress = properties.getProperty("upstreamAddress", "");
+			upstreamPort = Integer.parseInt(properties.getProperty("upstreamPort", "0"));
+			upstreamReplicationPort = Integer.parseInt(properties.getProperty("upstreamReplicationPort", "0"));
+			upstreamPublisherPort = Integer.parseInt(properties.getProperty("upstreamPublisherPort", "0"));
+			proxyLease = Long.parseLong(properties.getProperty("proxyLease", "30000"));
+			proxyMaxStaleness = Long.parseLong(properties.getProperty("proxyMaxStaleness", "600000"));
+			upstreamPublicKey = properties.getProperty("upstreamPublicKey", "");
+			proxyPublicKeys = new ArrayList<String>();
+			for (String key : properties.getProperty("proxyPublicKeys", "").split(",")) {
+				if (!key.trim().isEmpty()) {
+					proxyPublicKeys.add(key.trim());
+				}
+			}
+			
+			// Sharding
+			shards = new ArrayList<String>();
+			for (String shard : properties.getProperty("shards", "").split(",")) {
+				if (!shard.trim().isEmpty()) {
+					shards.add(shard.trim());
+				}
+			}
+			shardIndex = Integer.parseInt(properties.getProperty("shardIndex", "0"));
+			
+			// Change stream
+			changeStreamPort = Integer.parseInt(properties.getProperty("changeStreamPort", "0"));
+			changeStreamDirectory = properties.getProperty("changeStreamDirectory", "changeStream/");
+			changeStreamRetention = Integer.parseInt(properties.getProperty("changeStreamRetention", "100"));
+			
+			// Raft
+			raftPeers = new ArrayList<String>();
+			for (String peer : properties.getProperty("raftPeers", "").split(",")) {
+				if (!peer.trim().isEmpty()) {
+					raftPeers.add(peer.trim());
+				}
+			}
+			raftIndex = Integer.parseInt(properties.getProperty("raftIndex", "0"));
+			raftDirectory = properties.getProperty("raftDirectory", "raftData/");
+			raftSnapshotInterval = Integer.parseInt(properties.getProperty("raftSnapshotInterval", "10000"));
+			raftElectionTimeout = Long.parseLong(properties.getProperty("raftElectionTimeout", "300"));
+			raftHeartbeatInterval = Long.parseLong(properties.getProperty("raftHeartbeatInterval", "50"));
+			raftRequestTimeout = Long.parseLong(properties.getProperty("raftRequestTimeout", "5000"));
+			
+			// ZooKeeper
+			zkConnectString = properties.getProperty("zkConnectString", "localhost:2181");
+			zkChroot = properties.getProperty("zkChroot", "");
+			zkSessionTimeout = Integer.parseInt(properties.getProperty("zkSessionTimeout", "10000"));
+			zkConnectionTimeout = Integer.parseInt(properties.getProperty("zkConnectionTimeout", "10000"));
+			zkSessions = Integer.parseInt(properties.getProperty("zkSessions", "2"));
+			zkCache = Boolean.parseBoolean(properties.getProperty("zkCache", "true"));
+			
+			// MVStore
+			mvstoreFile = properties.getProperty("mvstoreFile", "mvstoreData/fbase.mv.db");
+			mvstoreCommitDelay = Integer.parseInt(properties.getProperty("mvstoreCommitDelay", "1000"));
+			
 			// Initialization
 			initNodeFile = properties.getProperty("initNodeFile");
 			initClientFile = properties.getProperty("initClientFile");
@@ -100,6 +244,48 @@ public class Configuration {
 	public boolean isDebugMode() {
 		return debugMode;
 	}
+	
+	/**
+	 * @return the port entity changes are published on, 0 if publishing is disabled
+	 */
+	public int getPublisherPort() {
+		return publisherPort;
+	}
+
+	/**
+	 * @return true, if the latency of data storage operations is recorded
+	 */
+	public boolean isStorageMetrics() {
+		return storageMetrics;
+	}
+
+	/**
+	 * @return n, if the phase durations of every n-th request are recorded, 0 if never
+	 */
+	public int getRequestSampleRate() {
+		return requestSampleRate;
+	}
+	
+	/**
+	 * @return milliseconds after which a request is logged as slow, 0 if never
+	 */
+	public long getSlowRequestThreshold() {
+		return slowRequestThreshold;
+	}
+
+	/**
+	 * @return the HTTP port metrics are served on in the Prometheus format, 0 if disabled
+	 */
+	public int getMetricsPort() {
+		return metricsPort;
+	}
+
+	/**
+	 * @return the file authenticated requests are captured to, empty if disabled
+	 */
+	public String getCaptureFile() {
+		return captureFile;
+	}
 
 	public String getPublicKey() {
 		return publicKey;
@@ -125,6 +311,311 @@ public class Configuration {
 		return root;
 	}
 	
+	/**
+	 * @return seconds a tombstoned entity is kept before it is purged, 0 if never purged
+	 */
+	public long getTombstoneRetention() {
+		return tombstoneRetention;
+	}
+	
+	/**
+	 * @return seconds between two runs of the tombstone collector
+	 */
+	public long getTombstoneCollectionInterval() {
+		return tombstoneCollectionInterval;
+	}
+	
+	/**
+	 * @return the maximum number of tombstoned entities purged per second
+	 */
+	public int getTombstoneCollectionRate() {
+		return tombstoneCollectionRate;
+	}
+	
+	/**
+	 * @return true, if the namespace is cached in memory and loaded at startup
+	 */
+	public boolean isCacheWarmup() {
+		return cacheWarmup;
+	}
+	
+	/**
+	 * @return the number of threads loading the namespace at startup
+	 */
+	public int getCacheWarmupThreads() {
+		return cacheWarmupThreads;
+	}
+	
+	/**
+	 * @return the port the change log is served to followers on, 0 if disabled
+	 */
+	public int getReplicationPort() {
+		return replicationPort;
+	}
+	
+	/**
+	 * @return the number of changes kept in memory for followers that fell behind
+	 */
+	public int getReplicationLogSize() {
+		return replicationLogSize;
+	}
+	
+	/**
+	 * @return the address of the primary this instance follows, empty if it is no follower
+	 */
+	public String getPrimaryAddress() {
+		return primaryAddress;
+	}
+	
+	/**
+	 * @return true, if this instance follows a primary
+	 */
+	public boolean isFollower() {
+		return !primaryAddress.isEmpty();
+	}
+	
+	/**
+	 * @return the port the primary receives requests on
+	 */
+	public int getPrimaryPort() {
+		return primaryPort;
+	}
+	
+	/**
+	 * @return the port the primary serves its change log on
+	 */
+	public int getPrimaryReplicationPort() {
+		return primaryReplicationPort;
+	}
+	
+	/**
+	 * @return milliseconds between two polls of a follower that caught up
+	 */
+	public long getReplicationPollInterval() {
+		return replicationPollInterval;
+	}
+	
+	/**
+	 * @return the address of the naming service this instance is a proxy of, empty if it is no
+	 *         proxy
+	 */
+	public String getUpstreamAddress() {
+		return upstreamAddress;
+	}
+	
+	/**
+	 * @return true, if this instance is a proxy of an upstream naming service
+	 */
+	public boolean isEdgeProxy() {
+		return !upstreamAddress.isEmpty();
+	}
+	
+	/**
+	 * @return the port the upstream naming service receives requests on
+	 */
+	public int getUpstreamPort() {
+		return upstreamPort;
+	}
+	
+	/**
+	 * @return the port the upstream naming service serves reads of its data storage on
+	 */
+	public int getUpstreamReplicationPort() {
+		return upstreamReplicationPort;
+	}
+	
+	/**
+	 * @return the port the upstream naming service publishes entity changes on, 0 if it does
+	 *         not publish them
+	 */
+	public int getUpstreamPublisherPort() {
+		return upstreamPublisherPort;
+	}
+	
+	/**
+	 * @return milliseconds a proxy serves a read node from its cache
+	 */
+	public long getProxyLease() {
+		return proxyLease;
+	}
+	
+	/**
+	 * @return milliseconds after its lease a proxy serves a read node from its cache while the
+	 *         upstream naming service is unreachable
+	 */
+	public long getProxyMaxStaleness() {
+		return proxyMaxStaleness;
+	}
+	
+	/**
+	 * @return the public key of the naming service this instance is a proxy of, proxies use
+	 *         their own key pair
+	 */
+	public String getUpstreamPublicKey() {
+		return upstreamPublicKey;
+	}
+	
+	/**
+	 * @return the public keys of the edge proxies that may read the data storage of this
+	 *         instance
+	 */
+	public List<String> getProxyPublicKeys() {
+		return proxyPublicKeys;
+	}
+	
+	/**
+	 * @return the addresses of all shards of a sharded deployment, the first is the global
+	 *         shard; empty if the deployment is not sharded
+	 */
+	public List<String> getShards() {
+		return shards;
+	}
+	
+	/**
+	 * @return true, if this instance is a shard of a sharded deployment
+	 */
+	public boolean isSharded() {
+		return !shards.isEmpty();
+	}
+	
+	/**
+	 * @return the position of this instance in the list of shards
+	 */
+	public int getShardIndex() {
+		return shardIndex;
+	}
+	
+	/**
+	 * @return the port the change stream is served on, 0 if changes are not recorded
+	 */
+	public int getChangeStreamPort() {
+		return changeStreamPort;
+	}
+	
+	/**
+	 * @return the directory the change stream is stored in
+	 */
+	public String getChangeStreamDirectory() {
+		return changeStreamDirectory;
+	}
+	
+	/**
+	 * @return the number of change stream segments of 10000 changes kept on disk
+	 */
+	public int getChangeStreamRetention() {
+		return changeStreamRetention;
+	}
+	
+	/**
+	 * @return the addresses the replicas of a raft data storage exchange messages on, e.g.,
+	 *         tcp://localhost:54340
+	 */
+	public List<String> getRaftPeers() {
+		return raftPeers;
+	}
+	
+	/**
+	 * @return the position of this instance in the list of raft replicas
+	 */
+	public int getRaftIndex() {
+		return raftIndex;
+	}
+	
+	/**
+	 * @return the directory the raft log of this instance is stored in
+	 */
+	public String getRaftDirectory() {
+		return raftDirectory;
+	}
+
+	/**
+	 * @return the number of applied entries after which a raft replica stores a snapshot of its
+	 *         data and removes the included entries from its log
+	 */
+	public int getRaftSnapshotInterval() {
+		return raftSnapshotInterval;
+	}
+	
+	/**
+	 * @return minimum milliseconds without messages from a leader before a raft replica starts
+	 *         an election
+	 */
+	public long getRaftElectionTimeout() {
+		return raftElectionTimeout;
+	}
+	
+	/**
+	 * @return maximum milliseconds between two messages of a raft leader to its followers
+	 */
+	public long getRaftHeartbeatInterval() {
+		return raftHeartbeatInterval;
+	}
+	
+	/**
+	 * @return milliseconds a raft replica waits for a write being committed or a read being
+	 *         possible
+	 */
+	public long getRaftRequestTimeout() {
+		return raftRequestTimeout;
+	}
+	
+	/**
+	 * @return the comma separated host:port pairs of the ZooKeeper servers
+	 */
+	public String getZkConnectString() {
+		return zkConnectString;
+	}
+	
+	/**
+	 * @return the znode the data is stored under, e.g., /fbase, or an empty string for the root
+	 */
+	public String getZkChroot() {
+		return zkChroot;
+	}
+	
+	/**
+	 * @return the ZooKeeper session timeout in milliseconds
+	 */
+	public int getZkSessionTimeout() {
+		return zkSessionTimeout;
+	}
+	
+	/**
+	 * @return milliseconds to wait for the ZooKeeper sessions to connect on startup
+	 */
+	public int getZkConnectionTimeout() {
+		return zkConnectionTimeout;
+	}
+	
+	/**
+	 * @return the number of ZooKeeper sessions reads are spread across
+	 */
+	public int getZkSessions() {
+		return zkSessions;
+	}
+	
+	/**
+	 * @return true, if read znodes are cached until ZooKeeper reports a modification
+	 */
+	public boolean isZkCache() {
+		return zkCache;
+	}
+	
+	/**
+	 * @return the file the MVStore keeps all nodes in
+	 */
+	public String getMvstoreFile() {
+		return mvstoreFile;
+	}
+	
+	/**
+	 * @return maximum milliseconds until a write is written to the MVStore file, 0 to write it
+	 *         before the request is answered
+	 */
+	public int getMvstoreCommitDelay() {
+		return mvstoreCommitDelay;
+	}
+	
 	public String getInitNodeFile() {
 		return initNodeFile;
 	}
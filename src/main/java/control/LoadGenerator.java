@@ -0,0 +1,458 @@
+package control;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+import org.apache.log4j.Logger;
+
+import crypto.CryptoProvider.EncryptionAlgorithm;
+import metrics.LatencyHistogram;
+import model.JSONable;
+import model.config.ClientConfig;
+import model.config.KeygroupConfig;
+import model.config.NodeConfig;
+import model.config.ReplicaNodeConfig;
+import model.config.TriggerNodeConfig;
+import model.data.ClientID;
+import model.data.KeygroupID;
+import model.data.NodeID;
+import model.messages.Command;
+import model.messages.ConfigIDToKeygroupWrapper;
+import model.messages.ResponseCode;
+
+/**
+ * Simulates a fleet of FBase nodes that send requests to a running naming service, so the
+ * signing and encryption of the fleet can run on other machines than the service under test.
+ *
+ * Each simulated node has its own RSA key pair and is registered over the network by an
+ * already registered node, the registrar. Every node then registers a client with its own key,
+ * and the first node creates a keygroup that has all simulated nodes as replica nodes. The IDs
+ * of all of them contain the ID of the run, so several runs against the same naming service do
+ * not collide. Requests are signed and encrypted like requests of real nodes. The commands are
+ * drawn randomly from a weighted mix.
+ *
+ * Requests are sent by a fixed number of threads, each owning a share of the simulated nodes.
+ * With a target rate, every thread sends on a fixed schedule and latencies are measured from
+ * the scheduled send time, so a slow naming service cannot hide its latency by delaying
+ * requests that should have been sent already. Without a target rate, every thread sends as
+ * fast as it receives replies.
+ *
+ * @author jonathanhasenburg
+ *
+ */
+public class LoadGenerator {
+
+	private static Logger logger = Logger.getLogger(LoadGenerator.class.getName());
+
+	/**
+	 * Response code reported for requests without a reply
+	 */
+	public static final String NO_REPLY = SimulatedNode.NO_REPLY;
+
+	/**
+	 * Response code reported for requests that could not be sent or whose reply could not be
+	 * decrypted
+	 */
+	public static final String FAILED = SimulatedNode.FAILED;
+
+	private final String address;
+	private final int port;
+	private final String servicePublicKey;
+	private final int nodes;
+	private final int threads;
+	private final double rate;
+	private final int keySize;
+	private final Command[] commands;
+	private final int[] cumulativeWeights;
+
+	private final String runID;
+	private final KeygroupID keygroupID;
+	private SimulatedNode[] fleet;
+	private ClientID[] clients;
+
+	private final Map<Command, LatencyHistogram> latencies = new EnumMap<Command, LatencyHistogram>(Command.class);
+	private final LatencyHistogram total = new LatencyHistogram();
+	private final Map<String, LongAdder> responseCodes = new ConcurrentHashMap<String, LongAdder>();
+
+	/**
+	 * Creates a load generator for a running naming service.
+	 *
+	 * @param address The address of the naming service, e.g., tcp://localhost
+	 * @param port The port of the naming service
+	 * @param servicePublicKey The public key of the naming service
+	 * @param nodes The number of simulated nodes, also the number of registered clients
+	 * @param threads The number of sending threads
+	 * @param rate The target number of requests per second of all threads, 0 to send as fast as
+	 *            possible
+	 * @param keySize The size of the RSA keys of the simulated nodes
+	 * @param mix The weight of each command, supported are NODE_CONFIG_READ,
+	 *            NODE_CONFIG_UPDATE, CLIENT_CONFIG_READ, KEYGROUP_CONFIG_READ,
+	 *            KEYGROUP_CONFIG_ADD_CLIENT and KEYGROUP_CONFIG_DELETE_CLIENT
+	 */
+	public LoadGenerator(String address, int port, String servicePublicKey, int nodes, int threads,
+			double rate, int keySize, Map<Command, Integer> mix) {
+		if (nodes < threads) {
+			throw new IllegalArgumentException("Each thread needs at least one node");
+		}
+		this.address = address;
+		this.port = port;
+		this.servicePublicKey = servicePublicKey;
+		this.nodes = nodes;
+		this.threads = threads;
+		this.rate = rate;
+		this.keySize = keySize;
+		this.runID = Long.toString(System.currentTimeMillis(), 36);
+		this.keygroupID = new KeygroupID("load", runID, "fleet");
+
+		commands = new Command[mix.size()];
+		cumulativeWeights = new int[mix.size()];
+		int i = 0;
+		int sum = 0;
+		for (Map.Entry<Command, Integer> entry : mix.entrySet()) {
+			if (!isSupported(entry.getKey())) {
+				throw new IllegalArgumentException("Unsupported command " + entry.getKey());
+			}
+			sum += entry.getValue();
+			commands[i] = entry.getKey();
+			cumulativeWeights[i++] = sum;
+			latencies.put(entry.getKey(), new LatencyHistogram());
+		}
+		if (sum <= 0) {
+			throw new IllegalArgumentException("The command mix needs a positive weight");
+		}
+	}
+
+	/**
+	 * The default mix, dominated by reads as in a running FBase deployment.
+	 *
+	 * @return the mix
+	 */
+	public static Map<Command, Integer> defaultMix() {
+		Map<Command, Integer> mix = new LinkedHashMap<Command, Integer>();
+		mix.put(Command.KEYGROUP_CONFIG_READ, 50);
+		mix.put(Command.NODE_CONFIG_READ, 25);
+		mix.put(Command.CLIENT_CONFIG_READ, 15);
+		mix.put(Command.NODE_CONFIG_UPDATE, 4);
+		mix.put(Command.KEYGROUP_CONFIG_ADD_CLIENT, 3);
+		mix.put(Command.KEYGROUP_CONFIG_DELETE_CLIENT, 3);
+		return mix;
+	}
+
+	/**
+	 * Parses a mix given as comma separated command=weight pairs, e.g.,
+	 * "NODE_CONFIG_READ=9,NODE_CONFIG_UPDATE=1".
+	 *
+	 * @param mix The mix
+	 * @return the parsed mix
+	 */
+	public static Map<Command, Integer> parseMix(String mix) {
+		Map<Command, Integer> parsed = new LinkedHashMap<Command, Integer>();
+		for (String pair : mix.split(",")) {
+			int index = pair.indexOf('=');
+			if (index < 0) {
+				throw new IllegalArgumentException("Malformed mix entry " + pair);
+			}
+			parsed.put(Command.valueOf(pair.substring(0, index).trim()),
+					Integer.parseInt(pair.substring(index + 1).trim()));
+		}
+		return parsed;
+	}
+
+	private static boolean isSupported(Command command) {
+		switch (command) {
+		case NODE_CONFIG_READ:
+		case NODE_CONFIG_UPDATE:
+		case CLIENT_CONFIG_READ:
+		case KEYGROUP_CONFIG_READ:
+		case KEYGROUP_CONFIG_ADD_CLIENT:
+		case KEYGROUP_CONFIG_DELETE_CLIENT:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Generates the keys of the simulated nodes and registers nodes, clients and the keygroup
+	 * over the network.
+	 *
+	 * @param registrarID The ID of a node registered at the naming service
+	 * @param registrarPrivateKey The private key of the registrar
+	 * @throws IllegalStateException if a node, client or the keygroup could not be registered
+	 */
+	public void register(NodeID registrarID, String registrarPrivateKey) {
+		long start = System.currentTimeMillis();
+
+		// key generation dominates the registration of large fleets
+		fleet = IntStream.range(0, nodes).parallel()
+				.mapToObj(i -> new SimulatedNode(new NodeID("load_" + runID + "_node_" + i), keySize,
+						address, port, servicePublicKey))
+				.toArray(SimulatedNode[]::new);
+
+		SimulatedNode registrar = new SimulatedNode(registrarID, registrarPrivateKey, address, port,
+				servicePublicKey);
+		try {
+			for (SimulatedNode node : fleet) {
+				node.register(registrar);
+			}
+		} finally {
+			registrar.disconnect();
+		}
+
+		clients = new ClientID[nodes];
+		IntStream.range(0, nodes).parallel().forEach(i -> {
+			clients[i] = new ClientID("load_" + runID + "_client_" + i);
+			ClientConfig client = new ClientConfig(clients[i], fleet[i].config.getPublicKey(),
+					EncryptionAlgorithm.RSA);
+			try {
+				expectSuccess(fleet[i].request(Command.CLIENT_CONFIG_CREATE, JSONable.toJSON(client),
+						null), "client " + clients[i].getID());
+			} finally {
+				fleet[i].disconnect();
+			}
+		});
+
+		Set<ReplicaNodeConfig> replicaNodes = new HashSet<ReplicaNodeConfig>();
+		for (SimulatedNode node : fleet) {
+			replicaNodes.add(new ReplicaNodeConfig(node.getNodeID()));
+		}
+		KeygroupConfig keygroup = new KeygroupConfig(keygroupID, new HashSet<ClientID>(),
+				replicaNodes, new HashSet<TriggerNodeConfig>(), null, null);
+		try {
+			expectSuccess(fleet[0].request(Command.KEYGROUP_CONFIG_CREATE, JSONable.toJSON(keygroup),
+					null), "keygroup " + keygroupID);
+		} finally {
+			fleet[0].disconnect();
+		}
+
+		logger.info("Registered " + nodes + " nodes in " + (System.currentTimeMillis() - start) + " ms");
+	}
+
+	private static void expectSuccess(String code, String registered) {
+		if (!ResponseCode.SUCCESS.toString().equals(code)) {
+			throw new IllegalStateException("Could not register " + registered + ": " + code);
+		}
+	}
+
+	/**
+	 * Sends requests for the given duration. {@link #register(NodeID, String)} must have been called before.
+	 * Results of previous runs are discarded.
+	 *
+	 * @param duration The duration
+	 * @param unit The unit of the duration
+	 * @return the report
+	 * @throws InterruptedException
+	 */
+	public LoadReport run(long duration, TimeUnit unit) throws InterruptedException {
+		if (fleet == null) {
+			throw new IllegalStateException("Nodes not registered");
+		}
+		latencies.values().forEach(LatencyHistogram::reset);
+		total.reset();
+		responseCodes.clear();
+
+		long start = System.nanoTime();
+		long end = start + unit.toNanos(duration);
+		long interval = rate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) * threads / rate) : 0;
+
+		List<Thread> workers = new ArrayList<Thread>();
+		for (int i = 0; i < threads; i++) {
+			int offset = i;
+			Thread worker = new Thread(() -> send(offset, start, end, interval), "LoadGenerator-" + i);
+			workers.add(worker);
+			worker.start();
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		long elapsed = System.nanoTime() - start;
+
+		return new LoadReport(elapsed, total, latencies, responseCodes);
+	}
+
+	/**
+	 * Sends requests on behalf of every threads-th node, starting at the given offset.
+	 */
+	private void send(int offset, long start, long end, long interval) {
+		List<SimulatedNode> owned = new ArrayList<SimulatedNode>();
+		for (int i = offset; i < fleet.length; i += threads) {
+			owned.add(fleet[i]);
+		}
+
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		// spread the first requests of the threads over one interval
+		long scheduled = start + interval * offset / threads;
+		int next = 0;
+		try {
+			while (scheduled < end) {
+				long now = System.nanoTime();
+				if (interval > 0 && scheduled > now) {
+					TimeUnit.NANOSECONDS.sleep(scheduled - now);
+				} else if (interval == 0) {
+					scheduled = now;
+				}
+
+				SimulatedNode node = owned.get(next++ % owned.size());
+				Command command = drawCommand(random);
+				String code = node.request(command, content(node, command, random), null);
+
+				long latency = System.nanoTime() - scheduled;
+				latencies.get(command).record(latency);
+				total.record(latency);
+				responseCodes.computeIfAbsent(command + " " + code, k -> new LongAdder()).increment();
+
+				scheduled += interval;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			owned.forEach(SimulatedNode::disconnect);
+		}
+	}
+
+	private Command drawCommand(ThreadLocalRandom random) {
+		int value = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+		for (int i = 0; i < cumulativeWeights.length; i++) {
+			if (value < cumulativeWeights[i]) {
+				return commands[i];
+			}
+		}
+		return commands[commands.length - 1];
+	}
+
+	private String content(SimulatedNode node, Command command, ThreadLocalRandom random) {
+		switch (command) {
+		case NODE_CONFIG_READ:
+			return JSONable.toJSON(fleet[random.nextInt(fleet.length)].getNodeID());
+		case NODE_CONFIG_UPDATE:
+			return JSONable.toJSON(node.config);
+		case CLIENT_CONFIG_READ:
+			return JSONable.toJSON(clients[random.nextInt(clients.length)]);
+		case KEYGROUP_CONFIG_READ:
+			return JSONable.toJSON(keygroupID);
+		case KEYGROUP_CONFIG_ADD_CLIENT:
+		case KEYGROUP_CONFIG_DELETE_CLIENT:
+			return JSONable.toJSON(new ConfigIDToKeygroupWrapper<ClientID>(keygroupID,
+					clients[random.nextInt(clients.length)]));
+		default:
+			throw new IllegalArgumentException("Unsupported command " + command);
+		}
+	}
+
+	/**
+	 * The results of a run.
+	 */
+	public static class LoadReport {
+
+		private final long durationNanos;
+		private final long requests;
+		private final Map<String, String> latencies = new LinkedHashMap<String, String>();
+		private final Map<String, Long> responseCodes = new TreeMap<String, Long>();
+
+		LoadReport(long durationNanos, LatencyHistogram total, Map<Command, LatencyHistogram> perCommand,
+				Map<String, LongAdder> responseCodes) {
+			this.durationNanos = durationNanos;
+			this.requests = total.getCount();
+			latencies.put("ALL", summarize(total));
+			for (Map.Entry<Command, LatencyHistogram> entry : perCommand.entrySet()) {
+				latencies.put(entry.getKey().toString(), summarize(entry.getValue()));
+			}
+			responseCodes.forEach((code, count) -> this.responseCodes.put(code, count.sum()));
+		}
+
+		private static String summarize(LatencyHistogram histogram) {
+			return String.format("n=%d p50=%.2fms p90=%.2fms p99=%.2fms p99.9=%.2fms max=%.2fms",
+					histogram.getCount(), millis(histogram.getPercentile(0.5)),
+					millis(histogram.getPercentile(0.9)), millis(histogram.getPercentile(0.99)),
+					millis(histogram.getPercentile(0.999)), millis(histogram.getMax()));
+		}
+
+		private static double millis(long nanos) {
+			return nanos / 1e6;
+		}
+
+		public long getRequests() {
+			return requests;
+		}
+
+		/**
+		 * @return the number of replies per command and response code, e.g., "NODE_CONFIG_READ
+		 *         SUCCESS"
+		 */
+		public Map<String, Long> getResponseCodes() {
+			return responseCodes;
+		}
+
+		public double getThroughput() {
+			return requests / (durationNanos / 1e9);
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			sb.append(String.format("%d requests in %.1f s, %.1f requests/s%n", requests,
+					durationNanos / 1e9, getThroughput()));
+			latencies.forEach((command, summary) -> sb.append(command).append(": ").append(summary)
+					.append(System.lineSeparator()));
+			responseCodes.forEach((code, count) -> sb.append(code).append(": ").append(count)
+					.append(System.lineSeparator()));
+			return sb.toString();
+		}
+
+	}
+
+	/**
+	 * Runs a load test against a running naming service.
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 8) {
+			System.out.println("Usage: LoadGenerator <address> <port> <service public key file> "
+					+ "<registrar node ID> <registrar private key file> <nodes> "
+					+ "<requests per second, 0 for max> <duration in seconds> [threads] [key size] "
+					+ "[command=weight,...]");
+			System.exit(1);
+		}
+
+		String servicePublicKey = readKey(args[2]);
+		NodeID registrarID = new NodeID(args[3]);
+		String registrarPrivateKey = readKey(args[4]);
+		int nodes = Integer.parseInt(args[5]);
+		double rate = Double.parseDouble(args[6]);
+		long duration = Long.parseLong(args[7]);
+		int threads = args.length > 8 ? Integer.parseInt(args[8]) : Runtime.getRuntime().availableProcessors();
+		int keySize = args.length > 9 ? Integer.parseInt(args[9]) : 2048;
+		Map<Command, Integer> mix = args.length > 10 ? parseMix(args[10]) : defaultMix();
+
+		LoadGenerator generator = new LoadGenerator(args[0], Integer.parseInt(args[1]),
+				servicePublicKey, nodes, Math.min(threads, nodes), rate, keySize, mix);
+		generator.register(registrarID, registrarPrivateKey);
+		System.out.println(generator.run(duration, TimeUnit.SECONDS));
+		System.exit(0);
+	}
+
+	/**
+	 * Reads a Base64 encoded key from a file.
+	 *
+	 * @param file The file
+	 * @return the key
+	 * @throws IOException if the file cannot be read
+	 */
+	static String readKey(String file) throws IOException {
+		return new String(Files.readAllBytes(Paths.get(file)), "UTF-8").trim();
+	}
+
+}
@@ -0,0 +1,172 @@
+package control;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import database.IControllable;
+import namespace.Client;
+import namespace.IDAllocator;
+import namespace.Keygroup;
+import namespace.Node;
+import namespace.SystemEntity;
+
+/**
+ * Exports all clients, nodes and keygroups of a data storage as newline-delimited JSON. Each
+ * line describes one entity:
+ *
+ * <pre>
+ * {"type":"node","state":"active","id":"N1","version":1,"data":{...}}
+ * </pre>
+ *
+ * The last line holds the counter of the {@link IDAllocator}, so that an import does not hand
+ * out generated IDs again:
+ *
+ * <pre>
+ * {"type":"idCounter","next":2000}
+ * </pre>
+ *
+ * Entities are read and written one at a time, so apart from the IDs of one storage level,
+ * memory usage does not grow with the number of entities. The output can be loaded with the
+ * {@link NamespaceImporter}.
+ *
+ * @author jonathanhasenburg
+ *
+ */
+public class NamespaceExporter {
+
+	private static Logger logger = Logger.getLogger(NamespaceExporter.class.getName());
+
+	public static final String ACTIVE = "active";
+	public static final String TOMBSTONED = "tombstoned";
+	public static final String ID_COUNTER = "idCounter";
+
+	static final List<SystemEntity> entities =
+			Arrays.asList(Client.getInstance(), Node.getInstance(), Keygroup.getInstance());
+
+	private final IControllable controller;
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	public NamespaceExporter(IControllable controller) {
+		this.controller = controller;
+	}
+
+	/**
+	 * Writes all entities to the given writer. The writer is flushed but not closed.
+	 *
+	 * @param out The writer
+	 * @return the number of exported entities
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public long export(Writer out) throws IOException, InterruptedException {
+		long start = System.currentTimeMillis();
+		long[] count = { 0 };
+
+		JsonGenerator generator = mapper.getFactory().createGenerator(out);
+		generator.setRootValueSeparator(new SerializedString("\n"));
+
+		try {
+			for (SystemEntity entity : entities) {
+				for (boolean tombstoned : new boolean[] { false, true }) {
+					entity.forEachID(controller, tombstoned, id -> {
+						try {
+							write(generator, entity, tombstoned, id);
+							count[0]++;
+						} catch (IOException e) {
+							throw new UncheckedIOException(e);
+						}
+					});
+				}
+			}
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+
+		boolean counter = writeCounter(generator);
+
+		if (count[0] > 0 || counter) {
+			generator.writeRaw('\n');
+		}
+		generator.flush();
+
+		logger.info("Exported " + count[0] + " entities in "
+				+ (System.currentTimeMillis() - start) + " ms");
+		return count[0];
+	}
+
+	/**
+	 * Writes the counter of the {@link IDAllocator}, if any ID was leased.
+	 *
+	 * @return true, if the counter was written
+	 */
+	private boolean writeCounter(JsonGenerator generator) throws IOException, InterruptedException {
+		if (!controller.exists(IDAllocator.COUNTER_PATH)) {
+			return false;
+		}
+		String counter = controller.readNode(IDAllocator.COUNTER_PATH).trim();
+		if (counter.isEmpty()) {
+			return false;
+		}
+
+		generator.writeStartObject();
+		generator.writeStringField("type", ID_COUNTER);
+		generator.writeNumberField("next", Long.parseLong(counter));
+		generator.writeEndObject();
+		return true;
+	}
+
+	private void write(JsonGenerator generator, SystemEntity entity, boolean tombstoned, String id)
+			throws IOException {
+		String data;
+		try {
+			data = controller.readNode(entity.entityPath(id, tombstoned));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while reading " + id, e);
+		}
+		JsonNode config = mapper.readTree(data);
+
+		generator.writeStartObject();
+		generator.writeStringField("type", entity.getType());
+		generator.writeStringField("state", tombstoned ? TOMBSTONED : ACTIVE);
+		generator.writeStringField("id", id);
+		generator.writeNumberField("version", config.path("version").asInt());
+		generator.writeObjectField("data", config);
+		generator.writeEndObject();
+	}
+
+	/**
+	 * Exports the data storage specified in a configuration file.
+	 *
+	 * @param args the configuration file and the output file
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length != 2) {
+			System.out.println("Usage: NamespaceExporter <configuration> <output file>");
+			System.exit(1);
+		}
+
+		Configuration configuration = new Configuration(args[0]);
+		IControllable controller = Starter.createController(configuration);
+
+		try (Writer out = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(args[1]), StandardCharsets.UTF_8))) {
+			new NamespaceExporter(controller).export(out);
+		}
+	}
+
+}
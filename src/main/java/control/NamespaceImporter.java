@@ -0,0 +1,356 @@
+package control;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import database.IControllable;
+import namespace.IDAllocator;
+import namespace.SystemEntity;
+
+/**
+ * Loads newline-delimited JSON created by the {@link NamespaceExporter} into a data storage.
+ *
+ * Entities are written in batches of {@link IControllable#addNodes(Map)}. If a batch fails,
+ * e.g., because one of its entities already exists, its entities are written one by one and
+ * the failing ones are skipped. Entities that already exist with the same data count as
+ * imported, so an interrupted import can be repeated. The counter of the {@link IDAllocator}
+ * is raised to the exported one, so IDs handed out before the export are not handed out
+ * again. With parallel import enabled, the batches of each entity type
+ * are written by a separate thread; the number of pending batches is limited, so memory usage
+ * does not grow with the size of the input. Failures of the data storage other than already
+ * existing entities or missing parents abort the import in both modes.
+ *
+ * @author jonathanhasenburg
+ *
+ */
+public class NamespaceImporter {
+
+	private static Logger logger = Logger.getLogger(NamespaceImporter.class.getName());
+
+	/**
+	 * Number of imported entities between two progress reports
+	 */
+	private static final int progressInterval = 10000;
+
+	/**
+	 * Number of batches per entity type that may wait for being written
+	 */
+	private static final int pendingBatchesPerType = 2;
+
+	private final IControllable controller;
+	private final int batchSize;
+	private final boolean parallel;
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	private final Map<String, SystemEntity> entities = new HashMap<String, SystemEntity>();
+	private final Map<String, ExecutorService> writers = new HashMap<String, ExecutorService>();
+	private final Semaphore pendingBatches;
+	private final List<Future<Void>> pendingWrites = new ArrayList<Future<Void>>();
+
+	/**
+	 * Parent paths that are known to exist
+	 */
+	private final Set<String> existingParents = ConcurrentHashMap.newKeySet();
+
+	private final AtomicLong imported = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private long start;
+
+	/**
+	 * Creates a new importer.
+	 *
+	 * @param controller Controller for interfacing with base distributed system
+	 * @param batchSize Maximum number of entities written at once
+	 * @param parallel true, if the entity types should be written in parallel
+	 */
+	public NamespaceImporter(IControllable controller, int batchSize, boolean parallel) {
+		this.controller = controller;
+		this.batchSize = batchSize;
+		this.parallel = parallel;
+
+		for (SystemEntity entity : NamespaceExporter.entities) {
+			entities.put(entity.getType(), entity);
+		}
+		pendingBatches = new Semaphore(pendingBatchesPerType * entities.size());
+	}
+
+	/**
+	 * Imports all entities of the given reader.
+	 *
+	 * @param in The reader
+	 * @return the statistics of the import
+	 * @throws IOException if the input cannot be read or parsed
+	 * @throws IllegalStateException if the data storage failed to write a batch
+	 * @throws InterruptedException
+	 */
+	public ImportResult importFrom(Reader in) throws IOException, InterruptedException {
+		start = System.currentTimeMillis();
+		Map<String, LinkedHashMap<String, String>> batches = new HashMap<String, LinkedHashMap<String, String>>();
+
+		try {
+			BufferedReader reader = new BufferedReader(in);
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.trim().isEmpty()) {
+					continue;
+				}
+
+				JsonNode entry = mapper.readTree(line);
+				String type = entry.path("type").asText();
+				if (NamespaceExporter.ID_COUNTER.equals(type)) {
+					IDAllocator.advanceCounter(controller, entry.path("next").asLong());
+					continue;
+				}
+				SystemEntity entity = entities.get(type);
+				if (entity == null) {
+					throw new IOException("Unknown entity type '" + type + "'");
+				}
+
+				boolean tombstoned = NamespaceExporter.TOMBSTONED.equals(entry.path("state").asText());
+				String path = entity.entityPath(entry.path("id").asText(), tombstoned);
+				String data = mapper.writeValueAsString(entry.get("data"));
+
+				LinkedHashMap<String, String> batch = batches.get(type);
+				if (batch == null) {
+					batch = new LinkedHashMap<String, String>();
+					batches.put(type, batch);
+				}
+				batch.put(path, data);
+
+				if (batch.size() >= batchSize) {
+					submit(type, batch);
+					batches.remove(type);
+				}
+			}
+
+			for (Map.Entry<String, LinkedHashMap<String, String>> batch : batches.entrySet()) {
+				submit(batch.getKey(), batch.getValue());
+			}
+			checkWrites(true);
+		} finally {
+			for (ExecutorService writer : writers.values()) {
+				writer.shutdown();
+				writer.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			}
+			writers.clear();
+			pendingWrites.clear();
+		}
+
+		ImportResult result = new ImportResult(imported.get(), failed.get(),
+				System.currentTimeMillis() - start);
+		logger.info("Import finished: " + result);
+		return result;
+	}
+
+	private void submit(String type, LinkedHashMap<String, String> batch) throws InterruptedException {
+		if (!parallel) {
+			write(batch);
+			return;
+		}
+
+		ExecutorService writer = writers.get(type);
+		if (writer == null) {
+			writer = Executors.newSingleThreadExecutor();
+			writers.put(type, writer);
+		}
+
+		pendingBatches.acquire();
+		pendingWrites.add(writer.submit(() -> {
+			try {
+				write(batch);
+				return null;
+			} finally {
+				pendingBatches.release();
+			}
+		}));
+		checkWrites(false);
+	}
+
+	/**
+	 * Rethrows the failure of the first failed batch written in parallel.
+	 *
+	 * @param wait true, to wait for all pending batches, false to only check finished ones
+	 * @throws InterruptedException
+	 */
+	private void checkWrites(boolean wait) throws InterruptedException {
+		Iterator<Future<Void>> writes = pendingWrites.iterator();
+		while (writes.hasNext()) {
+			Future<Void> write = writes.next();
+			if (!wait && !write.isDone()) {
+				continue;
+			}
+			try {
+				write.get();
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				} else if (e.getCause() instanceof InterruptedException) {
+					throw (InterruptedException) e.getCause();
+				}
+				throw new IllegalStateException("Import of batch failed", e.getCause());
+			}
+			writes.remove();
+		}
+	}
+
+	private void write(LinkedHashMap<String, String> batch) throws InterruptedException {
+		for (String path : batch.keySet()) {
+			createParents(path);
+		}
+
+		try {
+			controller.addNodes(batch);
+			imported.addAndGet(batch.size());
+		} catch (IllegalArgumentException e) {
+			logger.warn("Batch import failed (" + e.getMessage() + "), importing one by one");
+			for (Map.Entry<String, String> node : batch.entrySet()) {
+				try {
+					// unlike addNode, addNodes reports all failures of the data storage
+					controller.addNodes(Collections.singletonMap(node.getKey(), node.getValue()));
+					imported.incrementAndGet();
+				} catch (IllegalArgumentException e1) {
+					if (isImported(node.getKey(), node.getValue())) {
+						// e.g., imported before an earlier import was interrupted
+						imported.incrementAndGet();
+						continue;
+					}
+					logger.warn("Could not import " + node.getKey() + ": " + e1.getMessage());
+					failed.incrementAndGet();
+				}
+			}
+		}
+
+		reportProgress(batch.size());
+	}
+
+	/**
+	 * @return true, if the node exists with the same JSON data
+	 */
+	private boolean isImported(String path, String data) throws InterruptedException {
+		if (!controller.exists(path)) {
+			return false;
+		}
+		try {
+			return mapper.readTree(data).equals(mapper.readTree(controller.readNode(path)));
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Creates all missing parents of a path, e.g., the type, state, app and tenant nodes.
+	 *
+	 * @param path The path of an entity
+	 * @throws InterruptedException
+	 */
+	private void createParents(String path) throws InterruptedException {
+		int index = path.indexOf('/', 1);
+		while (index > 0) {
+			String parent = path.substring(0, index);
+			if (!existingParents.contains(parent)) {
+				if (!controller.exists(parent)) {
+					controller.addNode(parent, "");
+				}
+				existingParents.add(parent);
+			}
+			index = path.indexOf('/', index + 1);
+		}
+	}
+
+	private void reportProgress(int batchSize) {
+		long done = imported.get() + failed.get();
+		if (done / progressInterval != (done - batchSize) / progressInterval) {
+			long millis = Math.max(1, System.currentTimeMillis() - start);
+			logger.info("Imported " + done + " entities (" + (done * 1000 / millis) + " entities/s)");
+		}
+	}
+
+	/**
+	 * Imports an export file into the data storage specified in a configuration file.
+	 *
+	 * @param args the configuration file, the input file, and optionally the batch size and
+	 *            "parallel"
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 2) {
+			System.out.println("Usage: NamespaceImporter <configuration> <input file> [batch size] [parallel]");
+			System.exit(1);
+		}
+
+		Configuration configuration = new Configuration(args[0]);
+		IControllable controller = Starter.createController(configuration);
+		int batchSize = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+		boolean parallel = args.length > 3 && "parallel".equals(args[3]);
+
+		try (Reader in = new InputStreamReader(new FileInputStream(args[1]), StandardCharsets.UTF_8)) {
+			new NamespaceImporter(controller, batchSize, parallel).importFrom(in);
+		}
+	}
+
+	/**
+	 * Statistics of an import.
+	 */
+	public static class ImportResult {
+
+		private final long imported;
+		private final long failed;
+		private final long durationMillis;
+
+		public ImportResult(long imported, long failed, long durationMillis) {
+			this.imported = imported;
+			this.failed = failed;
+			this.durationMillis = durationMillis;
+		}
+
+		public long getImported() {
+			return imported;
+		}
+
+		public long getFailed() {
+			return failed;
+		}
+
+		public long getDurationMillis() {
+			return durationMillis;
+		}
+
+		/**
+		 * @return imported entities per second
+		 */
+		public double getThroughput() {
+			return imported * 1000.0 / Math.max(1, durationMillis);
+		}
+
+		@Override
+		public String toString() {
+			return imported + " imported, " + failed + " failed in " + durationMillis + " ms ("
+					+ String.format("%.1f", getThroughput()) + " entities/s)";
+		}
+	}
+
+}
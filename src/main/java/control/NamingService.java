@@ -1,20 +1,51 @@
 package control;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.io.UncheckedIOException;
+import java.nio.file.NoSuchFileException;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
 
 import org.apache.log4j.Logger;
 
+import communication.ChangeStreamServer;
+import communication.EdgeProxy;
+import communication.Follower;
+import communication.NamespacePublisher;
 import communication.NamespaceReceiver;
+import communication.ReplicationServer;
+import communication.TrafficCapture;
+import communication.UpstreamController;
+import database.CachingController;
+import database.ChangeLog;
 import database.IControllable;
+import database.InstrumentedController;
+import database.LeasedCachingController;
+import database.raft.RaftController;
+import database.raft.RaftEntry;
+import database.zookeeper.ZkController;
+import metrics.MetricsRegistry;
+import metrics.PrometheusExporter;
 import model.JSONable;
 import model.config.ClientConfig;
 import model.config.NodeConfig;
+import model.messages.Response;
+import model.messages.ResponseCode;
+import namespace.ChangeStream;
 import namespace.Client;
+import namespace.IDAllocator;
+import namespace.Keygroup;
 import namespace.Node;
+import namespace.ShardMap;
+import namespace.SystemEntity;
 
 public class NamingService {
 
@@ -23,20 +54,190 @@ public class NamingService {
 	public IControllable controller;
 	public Configuration configuration;
 	public NamespaceReceiver receiver;
+	public NamespacePublisher publisher;
+	public TombstoneCollector tombstoneCollector;
+	public PrometheusExporter metricsExporter;
+	public TrafficCapture capture;
+	public ChangeLog changeLog;
+	public ReplicationServer replicationServer;
+	public Follower follower;
+	public EdgeProxy edgeProxy;
+	public ShardMap shardMap;
+	public ChangeStream changeStream;
+	public ChangeStreamServer changeStreamServer;
 
+	/**
+	 * Paths of the nodes every data storage contains, parents before their children
+	 */
+	public static final List<String> SYSTEM_NODE_PATHS = Collections.unmodifiableList(Arrays.asList(
+			"/client", "/client/active", "/client/tombstoned",
+			"/node", "/node/active", "/node/tombstoned",
+			"/keygroup", "/keygroup/active", "/keygroup/tombstoned",
+			IDAllocator.COUNTER_PATH));
+
+	/**
+	 * Paths of the top level nodes, deleting them removes all data
+	 */
+	public static final List<String> ROOT_PATHS = Collections.unmodifiableList(
+			SYSTEM_NODE_PATHS.stream().filter(path -> path.indexOf('/', 1) < 0).collect(Collectors.toList()));
+
+	/**
+	 * Released when the startup finished and requests may be processed
+	 */
+	private final CountDownLatch ready = new CountDownLatch(1);
+
+	private volatile long warmUpMillis = -1;
+
+	/**
+	 * Creates a naming service. Edge proxies do not use the given controller, they read the data
+	 * storage of the upstream naming service.
+	 * 
+	 * @param controller The controller of the data storage
+	 * @param configuration The configuration
+	 */
 	public NamingService(IControllable controller, Configuration configuration) {
+		IControllable storage = controller;
+		if (configuration.isEdgeProxy()) {
+			if (configuration.getUpstreamPublicKey().isEmpty()
+					|| configuration.getUpstreamPublicKey().equals(configuration.getPublicKey())) {
+				throw new IllegalArgumentException(
+						"Edge proxies need their own key pair and the upstreamPublicKey");
+			}
+			controller = new UpstreamController(configuration.getUpstreamAddress(),
+					configuration.getUpstreamReplicationPort(), configuration.getUpstreamPublicKey(),
+					configuration.getPrivateKey());
+		}
+		if (configuration.isStorageMetrics()) {
+			controller = new InstrumentedController(controller);
+		}
+		if (configuration.getReplicationPort() > 0 && !configuration.isEdgeProxy()) {
+			changeLog = new ChangeLog(controller, ROOT_PATHS, configuration.getReplicationLogSize());
+			controller = changeLog;
+			replicationServer = new ReplicationServer(changeLog, configuration.getAddress(),
+					configuration.getReplicationPort(), configuration.getPublicKey(),
+					configuration.getPrivateKey(), configuration.getProxyPublicKeys());
+		}
+		if (configuration.isEdgeProxy()) {
+			LeasedCachingController cache = new LeasedCachingController(controller,
+					configuration.getProxyLease(), configuration.getProxyMaxStaleness());
+			controller = cache;
+			edgeProxy = new EdgeProxy(cache, configuration.getUpstreamAddress(),
+					configuration.getUpstreamPort(), configuration.getUpstreamPublisherPort(),
+					configuration.getUpstreamPublicKey(), configuration.getProxyLease());
+		} else if (configuration.isCacheWarmup()
+				&& (storage instanceof RaftController || storage instanceof ZkController)) {
+			// the cache would never see the modifications of the other instances
+			logger.warn("Ignoring cacheWarmup, the data storage is shared with other instances");
+		} else if (configuration.isCacheWarmup()) {
+			controller = new CachingController(controller);
+		}
 		this.controller = controller;
+		if (storage instanceof RaftController && edgeProxy == null) {
+			// the other instances modify entities without using the SystemEntities of this one
+			((RaftController) storage).getNode().setReplicatedEntryListener(this::forgetVersions);
+		} else if (storage instanceof ZkController && edgeProxy == null) {
+			// modifications of other instances sharing the ensemble are not reported
+			SystemEntity.setSharedStorage(controller);
+		}
+		if (configuration.isSharded()) {
+			if (configuration.getShardIndex() < 0
+					|| configuration.getShardIndex() >= configuration.getShards().size()) {
+				throw new IllegalArgumentException("Shard index " + configuration.getShardIndex()
+						+ " is not in the list of " + configuration.getShards().size() + " shards");
+			}
+			shardMap = new ShardMap(configuration.getShards());
+		}
+		if (configuration.isFollower() && edgeProxy == null) {
+			// shards only replicate the global entities of the global shard
+			follower = new Follower(controller, shardMap != null ? ShardMap.GLOBAL_ROOTS : ROOT_PATHS,
+					configuration.getPrimaryAddress(), configuration.getPrimaryPort(),
+					configuration.getPrimaryReplicationPort(), configuration.getPublicKey(),
+					configuration.getPrivateKey(), configuration.getReplicationPollInterval());
+		}
 		this.configuration = configuration;
 		receiver = new NamespaceReceiver(this, configuration.getAddress(), configuration.getPort());
+		if (configuration.getPublisherPort() > 0) {
+			publisher = new NamespacePublisher(configuration.getAddress(),
+					configuration.getPublisherPort(), configuration.getPrivateKey());
+		}
+		if (configuration.getChangeStreamPort() > 0) {
+			try {
+				changeStream = new ChangeStream(new File(configuration.getChangeStreamDirectory()),
+						configuration.getChangeStreamRetention());
+				changeStreamServer = new ChangeStreamServer(changeStream, configuration.getAddress(),
+						configuration.getChangeStreamPort(), configuration.getPrivateKey());
+			} catch (IOException e) {
+				logger.error("Cannot open change stream in " + configuration.getChangeStreamDirectory(), e);
+			}
+		}
+		if (configuration.getMetricsPort() > 0) {
+			metricsExporter = new PrometheusExporter(MetricsRegistry.getInstance(),
+					configuration.getMetricsPort());
+		}
+		if (!configuration.getCaptureFile().isEmpty()) {
+			try {
+				capture = new TrafficCapture(configuration.getCaptureFile());
+			} catch (IOException e) {
+				logger.error("Cannot capture requests to " + configuration.getCaptureFile(), e);
+			}
+		}
+		if (configuration.getTombstoneRetention() > 0 && follower == null && edgeProxy == null) {
+			tombstoneCollector = new TombstoneCollector(controller,
+					configuration.getTombstoneRetention(),
+					configuration.getTombstoneCollectionInterval(),
+					configuration.getTombstoneCollectionRate());
+		} else if (configuration.getTombstoneRetention() > 0 && follower != null && shardMap != null) {
+			// clients and nodes are purged by the primary and replicated, keygroups by each shard
+			tombstoneCollector = new TombstoneCollector(controller,
+					Arrays.asList(Keygroup.getInstance()), configuration.getTombstoneRetention(),
+					configuration.getTombstoneCollectionInterval(),
+					configuration.getTombstoneCollectionRate());
+		}
 	}
 
 	public void tearDown() {
 		receiver.stopReception();
+		receiver.closeShardForwarders();
+		if (publisher != null) {
+			SystemEntity.removeChangeListener(publisher);
+			publisher.stopPublishing();
+		}
+		if (changeStream != null) {
+			SystemEntity.removeChangeListener(changeStream);
+			changeStreamServer.stop();
+			changeStream.close();
+		}
+		if (tombstoneCollector != null) {
+			tombstoneCollector.stop();
+		}
+		if (metricsExporter != null) {
+			metricsExporter.stop();
+		}
+		if (replicationServer != null) {
+			replicationServer.stop();
+		}
+		if (follower != null) {
+			follower.stop();
+		}
+		if (edgeProxy != null) {
+			edgeProxy.stop();
+		}
+		if (capture != null) {
+			try {
+				capture.close();
+			} catch (IOException e) {
+				logger.error("Could not close capture file", e);
+			}
+		}
 	}
 
 	/**
 	 * Initializes the data storage and wipes existent data if wipeExistent == true
 	 * 
+	 * All system nodes are created as one batch that tolerates already existing nodes, so no
+	 * existence checks are needed. The initial node and client files are parsed while the
+	 * storage is being prepared.
+	 * 
 	 * @param wipeExistent
 	 * @throws InterruptedException
 	 * @return true, if successful
@@ -47,97 +248,244 @@ public class NamingService {
 		logger.info("Initializing NamingService...");
 		boolean success = true;
 
-		List<String> initialNodePaths = new ArrayList<String>();
+		CompletableFuture<NodeConfig> initNode = CompletableFuture.supplyAsync(
+				() -> readInitFile(configuration.getInitNodeFile(), NodeConfig.class));
+		CompletableFuture<ClientConfig> initClient = CompletableFuture.supplyAsync(
+				() -> readInitFile(configuration.getInitClientFile(), ClientConfig.class));
 
-		initialNodePaths.add("/client");
-		initialNodePaths.add("/client/active");
-		initialNodePaths.add("/client/tombstoned");
-
-		initialNodePaths.add("/node");
-		initialNodePaths.add("/node/active");
-		initialNodePaths.add("/node/tombstoned");
-
-		initialNodePaths.add("/keygroup");
-		initialNodePaths.add("/keygroup/active");
-		initialNodePaths.add("/keygroup/tombstoned");
+		List<String> initialNodePaths = SYSTEM_NODE_PATHS;
 
 		if (wipeExistent) {
 			logger.info("Wiping existing data");
 
-			for (int j = initialNodePaths.size() - 1; j >= 0; j--) {
-				if (controller.exists(initialNodePaths.get(j))) {
-					try {
-						controller.deleteNodeRecursive((initialNodePaths.get(j)));
-					} catch (IOException e) {
-						logger.error("Failed to delete node: " + e.getMessage());
-						success = false;
-						e.printStackTrace();
-					}
+			// deleting the top level nodes removes all their children
+			for (String path : ROOT_PATHS) {
+				try {
+					controller.deleteNodeRecursive(path);
+				} catch (NoSuchFileException e) {
+					logger.debug("Nothing to delete at " + path);
+				} catch (IOException e) {
+					logger.error("Failed to delete node: " + e.getMessage());
+					success = false;
+					e.printStackTrace();
 				}
 			}
 
+			SystemEntity.forgetVersions(controller);
 			logger.debug("Deleted existing data");
 		}
 
 		// we consider it to be the first startup, if any of the initialNodePath nodes did not
 		// exist
-		boolean firstStartup = false;
-		for (String s : initialNodePaths) {
-			if (createSystemNodeIfDoesNotExist(s)) {
-				firstStartup = true;
-			}
-		}
+		List<String> created = controller.addNodesIfAbsent(initialNodePaths, "");
+		boolean firstStartup = !created.isEmpty();
 
 		if (firstStartup) {
-			FileInputStream isNode = new FileInputStream(configuration.getInitNodeFile());
-			NodeConfig initNode = JSONable.fromJSON(isNode, NodeConfig.class);
-			if (!Node.getInstance().exists(controller, initNode.getID())) {
-				logger.info("Creating initial node...");
-				Node.getInstance().createNode(controller, initNode);
-			} else {
-				logger.debug("Initial node already exists.");
-			}
-			
-			FileInputStream isClient = new FileInputStream(configuration.getInitClientFile());
-			ClientConfig initClient = JSONable.fromJSON(isClient, ClientConfig.class);
-			if (!Client.getInstance().exists(controller, initClient.getID())) {
-				logger.info("Creating initial client...");
-				Client.getInstance().createClient(controller, initClient);
-			} else {
-				logger.debug("Initial client already exists.");
-			}
+			logger.info("Creating initial node and client...");
+			NodeConfig node = await(initNode);
+			ClientConfig client = await(initClient);
+
+			CompletableFuture<Response<Boolean>> nodeCreation = CompletableFuture.supplyAsync(
+					() -> Node.getInstance().createNode(controller, node));
+			Response<Boolean> clientCreation = Client.getInstance().createClient(controller, client);
+			logInitialCreation("node", nodeCreation.join());
+			logInitialCreation("client", clientCreation);
+		} else {
+			initNode.cancel(false);
+			initClient.cancel(false);
 		}
 
 		return success;
 	}
 
+	/**
+	 * Starts the naming service. The receiver is bound before the data storage is initialized,
+	 * so requests are accepted right away; they are processed once the initialization finished.
+	 * 
+	 * @param wipeExistent
+	 */
 	public void start(boolean wipeExistent) {
+		MetricsRegistry metrics = MetricsRegistry.getInstance();
+		metrics.registerMBean();
+		if (metricsExporter != null) {
+			try {
+				metricsExporter.start();
+			} catch (IOException e) {
+				logger.error("Cannot serve metrics on port " + configuration.getMetricsPort(), e);
+			}
+		}
+		receiver.startReceiving();
+
 		try {
-			initializeDataStorage(wipeExistent);
+			if (follower != null) {
+				// the data storage is a copy of the primary's
+				follower.start();
+				logger.info("Waiting for the first synchronization with the primary...");
+				follower.awaitSequence(0, Long.MAX_VALUE);
+				if (shardMap != null) {
+					// keygroups are stored by the shard itself
+					controller.addNodesIfAbsent(SYSTEM_NODE_PATHS.stream()
+							.filter(path -> !ShardMap.GLOBAL_ROOTS.contains(rootOf(path)))
+							.collect(Collectors.toList()), "");
+				}
+			} else if (edgeProxy != null) {
+				// the data storage is the upstream's, nodes are read on demand
+				edgeProxy.start();
+			} else {
+				initializeDataStorage(wipeExistent);
+			}
 		} catch (InterruptedException | FileNotFoundException e) {
 			Thread.currentThread().interrupt();
 			logger.fatal("Cannot initialize NamingService. Quitting program.", e);
 			System.exit(1);
 		}
+		if (replicationServer != null) {
+			replicationServer.start();
+		}
 
-		receiver.startReceiving();
+		if (publisher != null) {
+			publisher.startPublishing();
+			SystemEntity.addChangeListener(publisher);
+			if (edgeProxy != null) {
+				edgeProxy.setChangeListener(publisher);
+			}
+			metrics.registerGauge("publisher.queue", publisher::getQueueDepth);
+		}
+		if (changeStream != null) {
+			SystemEntity.addChangeListener(changeStream);
+			changeStreamServer.start();
+			metrics.registerGauge("changestream.offset", changeStream::getNextOffset);
+		}
+		if (tombstoneCollector != null) {
+			tombstoneCollector.start();
+		}
+		if (controller instanceof CachingController) {
+			metrics.registerGauge("cache.size", ((CachingController) controller)::size);
+		} else if (controller instanceof LeasedCachingController) {
+			metrics.registerGauge("cache.size", ((LeasedCachingController) controller)::size);
+		}
+		ready.countDown();
+
+		if (controller instanceof CachingController) {
+			Thread warmUp = new Thread(this::warmUpCache, "CacheWarmup");
+			warmUp.setDaemon(true);
+			warmUp.start();
+		}
+	}
+
+	/**
+	 * Loads all active clients, nodes and keygroups into the cache and parses the node configs
+	 * used for authenticating senders. Requests are served meanwhile, cache misses are read
+	 * from the data storage.
+	 */
+	private void warmUpCache() {
+		long start = System.currentTimeMillis();
+		try {
+			int loaded = ((CachingController) controller).warmUp(
+					Arrays.asList("/node/active", "/keygroup/active", "/client/active"),
+					configuration.getCacheWarmupThreads());
+
+			for (String nodeID : controller.getChildren("/node/active")) {
+				receiver.parseSender(nodeID, controller.readNode("/node/active/" + nodeID));
+			}
+
+			warmUpMillis = System.currentTimeMillis() - start;
+			logger.info("Cache warm-up loaded " + loaded + " entries in " + warmUpMillis + " ms");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			logger.warn("Cache warm-up interrupted");
+		} catch (RuntimeException e) {
+			logger.error("Cache warm-up failed, continuing with a cold cache", e);
+		}
+	}
+
+	/**
+	 * Forgets the versions of the entities a raft entry of another instance modified, so that
+	 * reads with a known version are not answered from memory afterwards.
+	 */
+	private void forgetVersions(RaftEntry entry) {
+		switch (entry.getKind()) {
+		case ADD:
+		case UPDATE:
+		case UPDATE_IF_UNCHANGED:
+		case DELETE:
+			// paths of entities are /<type>/active/<ID> and /<type>/tombstoned/<ID>
+			String[] parts = entry.getPath().split("/", 4);
+			if (parts.length == 4) {
+				SystemEntity.forgetVersion(controller, parts[1], parts[3]);
+			}
+			break;
+		default:
+			SystemEntity.forgetVersions(controller);
+		}
 	}
 
 	/**
-	 * Create a system node if it does not exist yet.
+	 * @return the duration of the cache warm-up in milliseconds, -1 if it did not finish yet
+	 */
+	public long getWarmUpMillis() {
+		return warmUpMillis;
+	}
+
+	/**
+	 * @return the sequence number of the last change visible to this instance, 0 if changes
+	 *         are not numbered
+	 */
+	public long getSequence() {
+		if (follower != null) {
+			return follower.getAppliedSequence();
+		}
+		return changeLog != null ? changeLog.getSequence() : 0;
+	}
+
+	/**
+	 * @return the address of this instance in the shard map, null if the deployment is not
+	 *         sharded
+	 */
+	public String getShard() {
+		return shardMap != null ? shardMap.getShards().get(configuration.getShardIndex()) : null;
+	}
+
+	/**
+	 * Blocks until the naming service finished its startup.
 	 * 
-	 * @param path for the to be created node
-	 * @return true, if not existed before
-	 * @throws IllegalArgumentException
 	 * @throws InterruptedException
 	 */
-	private boolean createSystemNodeIfDoesNotExist(String path)
-			throws IllegalArgumentException, InterruptedException {
-		boolean firstStartup = false;
-		if (controller.exists(path) == false) {
-			controller.addNode(path, "");
-			firstStartup = true;
-		}
-		return firstStartup;
+	public void awaitReady() throws InterruptedException {
+		ready.await();
+	}
+
+	private static String rootOf(String path) {
+		int index = path.indexOf('/', 1);
+		return index < 0 ? path : path.substring(0, index);
+	}
+
+	private static <T> T readInitFile(String file, Class<T> type) {
+		try (FileInputStream is = new FileInputStream(file)) {
+			return JSONable.fromJSON(is, type);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static <T> T await(CompletableFuture<T> future)
+			throws InterruptedException, FileNotFoundException {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof UncheckedIOException
+					&& e.getCause().getCause() instanceof FileNotFoundException) {
+				throw (FileNotFoundException) e.getCause().getCause();
+			}
+			throw new IllegalStateException("Cannot read initial configuration", e.getCause());
+		}
+	}
+
+	private void logInitialCreation(String type, Response<?> response) {
+		if (ResponseCode.ERROR_ALREADY_EXISTS.equals(response.getResponseCode())) {
+			logger.debug("Initial " + type + " already exists.");
+		} else if (!ResponseCode.SUCCESS.equals(response.getResponseCode())) {
+			logger.error("Could not create initial " + type + ": " + response.getResponseCode());
+		}
 	}
 }
@@ -0,0 +1,157 @@
+package control;
+
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.javatuples.Pair;
+
+import communication.NamespaceSender;
+import crypto.CryptoProvider.EncryptionAlgorithm;
+import crypto.RSAHelper;
+import exceptions.FBaseEncryptionException;
+import model.JSONable;
+import model.config.NodeConfig;
+import model.data.NodeID;
+import model.messages.Command;
+import model.messages.Envelope;
+import model.messages.Message;
+import model.messages.ResponseCode;
+
+/**
+ * A node with its own RSA key pair that sends requests to a naming service over the network,
+ * used by the {@link LoadGenerator} and the {@link TrafficReplay}. A simulated node must only be
+ * used by one thread at a time.
+ *
+ * @author jonathanhasenburg
+ *
+ */
+class SimulatedNode {
+
+	private static Logger logger = Logger.getLogger(SimulatedNode.class.getName());
+
+	/**
+	 * Response code reported for requests without a reply
+	 */
+	static final String NO_REPLY = "NO_REPLY";
+
+	/**
+	 * Response code reported for requests that could not be sent or whose reply could not be
+	 * decrypted
+	 */
+	static final String FAILED = "FAILED";
+
+	private static final int receiveTimeout = 10000;
+
+	/**
+	 * The config of the node, null for a node that was registered by someone else
+	 */
+	final NodeConfig config;
+	private final NodeID id;
+	private final String privateKey;
+	private final String address;
+	private final int port;
+	private final String servicePublicKey;
+	private NamespaceSender sender;
+
+	/**
+	 * Generates the keys of a node that is not registered yet.
+	 *
+	 * @param id The ID of the node
+	 * @param keySize The size of the RSA keys
+	 * @param address The address of the naming service, e.g., tcp://localhost
+	 * @param port The port of the naming service
+	 * @param servicePublicKey The public key of the naming service
+	 */
+	SimulatedNode(NodeID id, int keySize, String address, int port, String servicePublicKey) {
+		Pair<PublicKey, PrivateKey> keys = RSAHelper.generateKeyPair(keySize);
+		List<String> machines = new ArrayList<String>();
+		machines.add("m1");
+		this.config = new NodeConfig(id, RSAHelper.getEncodedStringFromKey(keys.getValue0()),
+				EncryptionAlgorithm.RSA, machines, 1001, 2001, 3001, "localhost", "simulated node");
+		this.id = id;
+		this.privateKey = RSAHelper.getEncodedStringFromKey(keys.getValue1());
+		this.address = address;
+		this.port = port;
+		this.servicePublicKey = servicePublicKey;
+	}
+
+	/**
+	 * Uses the keys of a node that is already registered at the naming service, e.g., to
+	 * register simulated nodes.
+	 *
+	 * @param id The ID of the node
+	 * @param privateKey The private key of the node
+	 * @param address The address of the naming service, e.g., tcp://localhost
+	 * @param port The port of the naming service
+	 * @param servicePublicKey The public key of the naming service
+	 */
+	SimulatedNode(NodeID id, String privateKey, String address, int port, String servicePublicKey) {
+		this.config = null;
+		this.id = id;
+		this.privateKey = privateKey;
+		this.address = address;
+		this.port = port;
+		this.servicePublicKey = servicePublicKey;
+	}
+
+	NodeID getNodeID() {
+		return id;
+	}
+
+	/**
+	 * Registers the node over the network on behalf of an already registered node. The naming
+	 * service only lets nodes update their own configs, so a node with the same ID must not
+	 * exist.
+	 *
+	 * @param registrar The registered node that sends the request
+	 * @throws IllegalStateException if the node could not be registered
+	 */
+	void register(SimulatedNode registrar) {
+		String code = registrar.request(Command.NODE_CONFIG_CREATE, JSONable.toJSON(config), null);
+		if (!ResponseCode.SUCCESS.toString().equals(code)) {
+			throw new IllegalStateException("Could not register node " + id.getID() + ": " + code);
+		}
+	}
+
+	/**
+	 * Sends a request and waits for the reply.
+	 *
+	 * @param command The command, may be null
+	 * @param content The content
+	 * @param textualInfo The textual info, may be null
+	 * @return the response code, {@link #NO_REPLY} or {@link #FAILED}
+	 */
+	String request(Command command, String content, String textualInfo) {
+		if (sender == null) {
+			sender = new NamespaceSender(address, port, servicePublicKey, privateKey);
+			sender.setReceiveTimeout(receiveTimeout);
+		}
+
+		Message m = new Message(command, content);
+		m.setTextualInfo(textualInfo);
+		try {
+			Message reply = sender.sendMessage(new Envelope(id, m));
+			if (reply == null) {
+				// a REQ socket without reply cannot send again
+				disconnect();
+				return NO_REPLY;
+			}
+			return reply.getTextualInfo();
+		} catch (FBaseEncryptionException | RuntimeException e) {
+			logger.debug("Request failed", e);
+			disconnect();
+			return FAILED;
+		}
+	}
+
+	void disconnect() {
+		if (sender != null) {
+			sender.shutdown();
+			sender = null;
+		}
+	}
+
+}
@@ -1,11 +1,17 @@
 package control;
 
 import java.io.File;
+import java.io.IOException;
 
 import org.apache.log4j.Logger;
 
 import database.IControllable;
 import database.localfiles.LocalFileController;
+import database.mvstore.MVStoreController;
+import database.raft.RaftController;
+import database.raft.RaftNode;
+import database.zookeeper.ZkController;
+import database.zookeeper.ZkSessionPool;
 
 public class Starter {
 
@@ -21,12 +27,80 @@ public class Starter {
 			configuration = new Configuration();
 		}
 
-		IControllable controller =
-				new LocalFileController(new File(configuration.getRoot()), configuration.getFolderSeparator());
+		IControllable controller = createController(configuration);
 		NamingService ns = new NamingService(controller, configuration);
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			logger.info("Shutting down FBase Naming Service");
+			ns.tearDown();
+			closeController(controller);
+		}, "Shutdown"));
 		ns.start(wipeExistent);
 
 		logger.info("FBase Naming Service started");
 	}
 
+	/**
+	 * Creates the controller for the data storage specified in the configuration. A raft
+	 * replica is started right away, so that it can take part in elections, and the sessions
+	 * to ZooKeeper are connected.
+	 * 
+	 * @param configuration The configuration
+	 * @return the controller
+	 * @throws IllegalArgumentException if the configured system is unknown
+	 */
+	public static IControllable createController(Configuration configuration) {
+		switch (configuration.getSystem()) {
+		case "local":
+			return new LocalFileController(new File(configuration.getRoot()),
+					configuration.getFolderSeparator());
+		case "raft":
+			try {
+				RaftNode node = new RaftNode(configuration.getRaftIndex(),
+						configuration.getRaftPeers(), new File(configuration.getRaftDirectory()),
+						configuration.getRaftSnapshotInterval(),
+						configuration.getRaftElectionTimeout(),
+						configuration.getRaftHeartbeatInterval(),
+						configuration.getRaftRequestTimeout());
+				node.start();
+				return new RaftController(node);
+			} catch (IOException e) {
+				throw new IllegalStateException("Cannot open raft log in "
+						+ configuration.getRaftDirectory(), e);
+			}
+		case "zookeeper":
+			ZkSessionPool pool = new ZkSessionPool(configuration.getZkConnectString(),
+					configuration.getZkChroot(), configuration.getZkSessionTimeout(),
+					configuration.getZkConnectionTimeout(), configuration.getZkSessions());
+			try {
+				pool.connect();
+			} catch (IOException e) {
+				throw new IllegalStateException("Cannot connect to ZooKeeper at "
+						+ configuration.getZkConnectString(), e);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while connecting to ZooKeeper", e);
+			}
+			return new ZkController(pool, configuration.isZkCache());
+		case "mvstore":
+			return new MVStoreController(new File(configuration.getMvstoreFile()),
+					configuration.getMvstoreCommitDelay());
+		default:
+			throw new IllegalArgumentException("Unknown system " + configuration.getSystem());
+		}
+	}
+
+	/**
+	 * Closes the controller created by {@link #createController(Configuration)}, so that
+	 * writes not yet written to the MVStore file are not lost and raft replicas stop.
+	 * 
+	 * @param controller The controller
+	 */
+	public static void closeController(IControllable controller) {
+		if (controller instanceof MVStoreController) {
+			((MVStoreController) controller).close();
+		} else if (controller instanceof RaftController) {
+			((RaftController) controller).close();
+		}
+	}
+
 }
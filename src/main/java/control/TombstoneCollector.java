@@ -0,0 +1,215 @@
+package control;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import database.IControllable;
+import model.messages.Response;
+import model.messages.ResponseCode;
+import namespace.Client;
+import namespace.EntityChange;
+import namespace.EntityChangeListener;
+import namespace.Keygroup;
+import namespace.Node;
+import namespace.SystemEntity;
+
+/**
+ * Periodically purges clients, nodes and keygroups that have been tombstoned for longer than
+ * the configured retention period.
+ *
+ * The data storage does not record when an entity was tombstoned. The collector therefore
+ * learns the time from the change events of this naming service and, for entities tombstoned
+ * before it was started, uses the time it first saw them. After a restart, entities are kept
+ * for at least one full retention period.
+ *
+ * Collection runs on its own thread and purges at most the configured number of entities per
+ * second, so foreground requests are not blocked by a large backlog.
+ *
+ * @author jonathanhasenburg
+ *
+ */
+public class TombstoneCollector implements EntityChangeListener {
+
+	private static Logger logger = Logger.getLogger(TombstoneCollector.class.getName());
+
+	private final IControllable controller;
+	private final List<SystemEntity> entities;
+	private final long retentionMillis;
+	private final long intervalMillis;
+	private final long pauseMillis;
+
+	/**
+	 * Time an entity was tombstoned (or first seen tombstoned), by entity type and ID
+	 */
+	private final Map<String, Long> tombstonedSince = new ConcurrentHashMap<String, Long>();
+
+	private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread t = new Thread(r, "TombstoneCollector");
+		t.setDaemon(true);
+		return t;
+	});
+
+	private volatile CollectionRun lastRun = null;
+
+	/**
+	 * Creates a new collector that purges clients, nodes and keygroups.
+	 *
+	 * @param controller Controller for interfacing with base distributed system
+	 * @param retentionSeconds Seconds an entity stays tombstoned before it is purged
+	 * @param intervalSeconds Seconds between two collection runs
+	 * @param purgesPerSecond Maximum number of entities purged per second
+	 */
+	public TombstoneCollector(IControllable controller, long retentionSeconds, long intervalSeconds,
+			int purgesPerSecond) {
+		this(controller, Arrays.asList(Client.getInstance(), Node.getInstance(),
+				Keygroup.getInstance()), retentionSeconds, intervalSeconds, purgesPerSecond);
+	}
+
+	/**
+	 * Creates a new collector that only purges the given entity types, e.g., the ones a shard
+	 * owns while the others are replicated from the primary.
+	 *
+	 * @param controller Controller for interfacing with base distributed system
+	 * @param entities The entity types to purge
+	 * @param retentionSeconds Seconds an entity stays tombstoned before it is purged
+	 * @param intervalSeconds Seconds between two collection runs
+	 * @param purgesPerSecond Maximum number of entities purged per second
+	 */
+	public TombstoneCollector(IControllable controller, List<SystemEntity> entities,
+			long retentionSeconds, long intervalSeconds, int purgesPerSecond) {
+		this.controller = controller;
+		this.entities = entities;
+		this.retentionMillis = TimeUnit.SECONDS.toMillis(retentionSeconds);
+		this.intervalMillis = TimeUnit.SECONDS.toMillis(intervalSeconds);
+		this.pauseMillis = purgesPerSecond > 0 ? 1000 / purgesPerSecond : 0;
+	}
+
+	public void start() {
+		SystemEntity.addChangeListener(this);
+		executor.scheduleWithFixedDelay(this::collect, intervalMillis, intervalMillis,
+				TimeUnit.MILLISECONDS);
+		logger.info("Purging tombstoned entities after " + retentionMillis / 1000 + " seconds");
+	}
+
+	public void stop() {
+		SystemEntity.removeChangeListener(this);
+		executor.shutdownNow();
+	}
+
+	@Override
+	public void entityChanged(EntityChange change) {
+		String key = change.getType() + "/" + change.getEntityID();
+		if (EntityChange.Kind.TOMBSTONED.equals(change.getKind())) {
+			tombstonedSince.put(key, change.getTimestamp());
+		} else if (EntityChange.Kind.DESTROYED.equals(change.getKind())) {
+			tombstonedSince.remove(key);
+		}
+	}
+
+	/**
+	 * Runs a single collection over all purged entity types.
+	 *
+	 * @return the statistics of the run
+	 */
+	public CollectionRun collect() {
+		CollectionRun run = new CollectionRun();
+		long now = System.currentTimeMillis();
+		Set<String> seen = new HashSet<String>();
+
+		try {
+			for (SystemEntity entity : entities) {
+				collect(entity, now, run, seen);
+			}
+			
+			// forget entities that were removed by other means
+			tombstonedSince.keySet().retainAll(seen);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			logger.warn("Tombstone collection interrupted");
+		} catch (RuntimeException e) {
+			logger.error("Tombstone collection failed", e);
+			run.failed++;
+		}
+
+		run.durationMillis = System.currentTimeMillis() - now;
+		lastRun = run;
+		logger.info("Tombstone collection: " + run);
+		return run;
+	}
+
+	private void collect(SystemEntity entity, long now, CollectionRun run, Set<String> seen)
+			throws InterruptedException {
+		List<String> ids = entity.getTombstonedIDs(controller);
+		for (String id : ids) {
+			String key = entity.getType() + "/" + id;
+			seen.add(key);
+			run.scanned++;
+
+			Long since = tombstonedSince.putIfAbsent(key, now);
+			if (since == null || now - since < retentionMillis) {
+				continue;
+			}
+
+			Response<Boolean> r = entity.destroyTombstoned(controller, id);
+			if (ResponseCode.SUCCESS.equals(r.getResponseCode())) {
+				run.purged++;
+			} else {
+				run.failed++;
+			}
+
+			if (pauseMillis > 0) {
+				Thread.sleep(pauseMillis);
+			}
+		}
+	}
+
+	/**
+	 * @return the statistics of the last finished run, null if there was none yet
+	 */
+	public CollectionRun getLastRun() {
+		return lastRun;
+	}
+
+	/**
+	 * Statistics of a single collection run.
+	 */
+	public static class CollectionRun {
+
+		private int scanned = 0;
+		private int purged = 0;
+		private int failed = 0;
+		private long durationMillis = 0;
+
+		public int getScanned() {
+			return scanned;
+		}
+
+		public int getPurged() {
+			return purged;
+		}
+
+		public int getFailed() {
+			return failed;
+		}
+
+		public long getDurationMillis() {
+			return durationMillis;
+		}
+
+		@Override
+		public String toString() {
+			return "scanned " + scanned + ", purged " + purged + ", failed " + failed + " in "
+					+ durationMillis + " ms";
+		}
+	}
+
+}
@@ -0,0 +1,321 @@
+package control;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.log4j.Logger;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import communication.TrafficCapture;
+import communication.TrafficCapture.Record;
+import control.LoadGenerator.LoadReport;
+import crypto.AlgorithmAES;
+import metrics.LatencyHistogram;
+import model.data.NodeID;
+import model.messages.Command;
+
+/**
+ * Replays a capture of the {@link TrafficCapture} against a running naming service, usually a
+ * test instance without the captured nodes.
+ *
+ * Every sender of the capture is registered over the network as a {@link SimulatedNode} with a
+ * new key pair by an already registered node, the registrar, and all requests are re-signed
+ * with these keys. Requests captured from the registrar itself are sent with its own keys.
+ * Node configs sent by a captured node about itself are rewritten to carry the new public key,
+ * so the node can still authenticate afterwards. Crypto updates, whose secrets are not
+ * captured, are sent with a newly generated secret.
+ *
+ * Requests are sent at the captured pace multiplied by a speed factor, or as fast as possible.
+ * The requests of a sender are sent in their captured order by one of several threads, so
+ * requests of different senders are sent concurrently as in production. Latencies are measured
+ * from the scheduled send time.
+ *
+ * @author jonathanhasenburg
+ *
+ */
+public class TrafficReplay {
+
+	private static Logger logger = Logger.getLogger(TrafficReplay.class.getName());
+
+	private static final int queueCapacity = 1024;
+
+	private final String address;
+	private final int port;
+	private final String servicePublicKey;
+	private final String captureFile;
+	private final double speed;
+	private final int threads;
+	private final int keySize;
+
+	private final ObjectMapper mapper = new ObjectMapper();
+	private final Map<String, SimulatedNode> senders = new HashMap<String, SimulatedNode>();
+
+	private final Map<Command, LatencyHistogram> latencies = new EnumMap<Command, LatencyHistogram>(Command.class);
+	private final LatencyHistogram total = new LatencyHistogram();
+	private final Map<String, LongAdder> responseCodes = new ConcurrentHashMap<String, LongAdder>();
+
+	/**
+	 * Creates a replay.
+	 *
+	 * @param address The address of the naming service, e.g., tcp://localhost
+	 * @param port The port of the naming service
+	 * @param servicePublicKey The public key of the naming service
+	 * @param captureFile The capture file
+	 * @param speed The factor the captured pace is multiplied with, e.g., 1 for the original
+	 *            pace, 0 to send as fast as possible
+	 * @param threads The number of sending threads
+	 * @param keySize The size of the RSA keys of the replaying nodes
+	 */
+	public TrafficReplay(String address, int port, String servicePublicKey, String captureFile,
+			double speed, int threads, int keySize) {
+		this.address = address;
+		this.port = port;
+		this.servicePublicKey = servicePublicKey;
+		this.captureFile = captureFile;
+		this.speed = speed;
+		this.threads = threads;
+		this.keySize = keySize;
+		for (Command command : Command.values()) {
+			latencies.put(command, new LatencyHistogram());
+		}
+	}
+
+	/**
+	 * Registers a node with a new key pair for every sender of the capture except the registrar.
+	 *
+	 * @param registrarID The ID of a node registered at the naming service
+	 * @param registrarPrivateKey The private key of the registrar
+	 * @throws IOException if the capture cannot be read
+	 * @throws IllegalStateException if a sender could not be registered, e.g., because it
+	 *             already exists
+	 */
+	public void register(NodeID registrarID, String registrarPrivateKey) throws IOException {
+		long start = System.currentTimeMillis();
+		List<String> senderIDs = new ArrayList<String>();
+		try (TrafficCapture.Reader reader = new TrafficCapture.Reader(captureFile)) {
+			for (Record record = next(reader); record != null; record = next(reader)) {
+				if (!senders.containsKey(record.getSenderID())) {
+					senders.put(record.getSenderID(), null);
+					senderIDs.add(record.getSenderID());
+				}
+			}
+		}
+
+		SimulatedNode registrar = new SimulatedNode(registrarID, registrarPrivateKey, address, port,
+				servicePublicKey);
+		senderIDs.remove(registrarID.getID());
+		senders.put(registrarID.getID(), registrar);
+
+		// key generation dominates the registration of many senders
+		List<SimulatedNode> nodes = new ArrayList<SimulatedNode>();
+		senderIDs.parallelStream()
+				.map(id -> new SimulatedNode(new NodeID(id), keySize, address, port, servicePublicKey))
+				.forEachOrdered(nodes::add);
+		try {
+			for (SimulatedNode node : nodes) {
+				node.register(registrar);
+				senders.put(node.getNodeID().getID(), node);
+			}
+		} finally {
+			registrar.disconnect();
+		}
+
+		logger.info("Registered " + senders.size() + " senders in "
+				+ (System.currentTimeMillis() - start) + " ms");
+	}
+
+	/**
+	 * Sends all captured requests. {@link #register(NodeID, String)} must have been called
+	 * before.
+	 *
+	 * @return the report
+	 * @throws IOException if the capture cannot be read
+	 * @throws InterruptedException
+	 */
+	public LoadReport replay() throws IOException, InterruptedException {
+		if (senders.isEmpty()) {
+			throw new IllegalStateException("Senders not registered");
+		}
+
+		List<BlockingQueue<Task>> queues = new ArrayList<BlockingQueue<Task>>();
+		List<Thread> workers = new ArrayList<Thread>();
+		for (int i = 0; i < threads; i++) {
+			BlockingQueue<Task> queue = new ArrayBlockingQueue<Task>(queueCapacity);
+			queues.add(queue);
+			Thread worker = new Thread(() -> send(queue), "TrafficReplay-" + i);
+			workers.add(worker);
+			worker.start();
+		}
+
+		long start = System.nanoTime();
+		try (TrafficCapture.Reader reader = new TrafficCapture.Reader(captureFile)) {
+			for (Record record = next(reader); record != null; record = next(reader)) {
+				long scheduled = 0;
+				if (speed > 0) {
+					scheduled = start + (long) (record.getOffsetNanos() / speed);
+					long wait = scheduled - System.nanoTime();
+					if (wait > 0) {
+						TimeUnit.NANOSECONDS.sleep(wait);
+					}
+				}
+				int index = Math.floorMod(record.getSenderID().hashCode(), threads);
+				queues.get(index).put(new Task(record, scheduled));
+			}
+		} finally {
+			for (BlockingQueue<Task> queue : queues) {
+				queue.put(Task.END);
+			}
+			for (Thread worker : workers) {
+				worker.join();
+			}
+		}
+		long elapsed = System.nanoTime() - start;
+
+		Map<Command, LatencyHistogram> replayed = new EnumMap<Command, LatencyHistogram>(Command.class);
+		latencies.forEach((command, histogram) -> {
+			if (histogram.getCount() > 0) {
+				replayed.put(command, histogram);
+			}
+		});
+		return new LoadReport(elapsed, total, replayed, responseCodes);
+	}
+
+	private void send(BlockingQueue<Task> queue) {
+		List<SimulatedNode> used = new ArrayList<SimulatedNode>();
+		try {
+			for (Task task = queue.take(); task != Task.END; task = queue.take()) {
+				Record record = task.record;
+				SimulatedNode node = senders.get(record.getSenderID());
+				if (!used.contains(node)) {
+					used.add(node);
+				}
+
+				long scheduled = task.scheduled > 0 ? task.scheduled : System.nanoTime();
+				String code = node.request(record.getCommand(), rewrite(record),
+						record.getTextualInfo());
+
+				long latency = System.nanoTime() - scheduled;
+				if (record.getCommand() != null) {
+					latencies.get(record.getCommand()).record(latency);
+				}
+				total.record(latency);
+				responseCodes.computeIfAbsent(record.getCommand() + " " + code, k -> new LongAdder())
+						.increment();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			used.forEach(SimulatedNode::disconnect);
+		}
+	}
+
+	/**
+	 * Replaces the public key in node configs a captured node sends about itself and the
+	 * redacted secret of crypto updates.
+	 */
+	private String rewrite(Record record) {
+		if (Command.KEYGROUP_CONFIG_UPDATE_CRYPTO.equals(record.getCommand())) {
+			return withNewSecret(record);
+		}
+		if (!Command.NODE_CONFIG_CREATE.equals(record.getCommand())
+				&& !Command.NODE_CONFIG_UPDATE.equals(record.getCommand())) {
+			return record.getContent();
+		}
+
+		try {
+			JsonNode config = mapper.readTree(record.getContent());
+			String nodeID = config.path("nodeID").path("nodeID").asText();
+			SimulatedNode node = senders.get(nodeID);
+			if (node == null || node.config == null || !(config instanceof ObjectNode)) {
+				return record.getContent();
+			}
+			((ObjectNode) config).put("publicKey", node.config.getPublicKey());
+			return mapper.writeValueAsString(config);
+		} catch (IOException e) {
+			logger.debug("Cannot rewrite node config " + record.getContent(), e);
+			return record.getContent();
+		}
+	}
+
+	private String withNewSecret(Record record) {
+		if (record.getContent() == null) {
+			return null;
+		}
+		try {
+			JsonNode update = mapper.readTree(record.getContent());
+			if (!(update instanceof ObjectNode)) {
+				return record.getContent();
+			}
+			((ObjectNode) update).put(TrafficCapture.SECRET_FIELD, AlgorithmAES.generateNewSecret());
+			return mapper.writeValueAsString(update);
+		} catch (IOException e) {
+			logger.debug("Cannot rewrite crypto update " + record.getContent(), e);
+			return record.getContent();
+		}
+	}
+
+	private static Record next(TrafficCapture.Reader reader) throws IOException {
+		try {
+			return reader.next();
+		} catch (EOFException e) {
+			logger.warn("Capture ends with an incomplete record, it was not closed properly");
+			return null;
+		}
+	}
+
+	private static class Task {
+
+		static final Task END = new Task(null, 0);
+
+		private final Record record;
+
+		/**
+		 * The {@link System#nanoTime()} the request should be sent at, 0 for as soon as possible
+		 */
+		private final long scheduled;
+
+		Task(Record record, long scheduled) {
+			this.record = record;
+			this.scheduled = scheduled;
+		}
+	}
+
+	/**
+	 * Replays a capture against a running naming service.
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 7) {
+			System.out.println("Usage: TrafficReplay <address> <port> <service public key file> "
+					+ "<registrar node ID> <registrar private key file> <capture file> "
+					+ "<speed: 1, N or max> [threads] [key size]");
+			System.exit(1);
+		}
+
+		String servicePublicKey = LoadGenerator.readKey(args[2]);
+		NodeID registrarID = new NodeID(args[3]);
+		String registrarPrivateKey = LoadGenerator.readKey(args[4]);
+		double speed = "max".equals(args[6]) ? 0 : Double.parseDouble(args[6]);
+		int threads = args.length > 7 ? Integer.parseInt(args[7]) : Runtime.getRuntime().availableProcessors();
+		int keySize = args.length > 8 ? Integer.parseInt(args[8]) : 2048;
+
+		TrafficReplay replay = new TrafficReplay(args[0], Integer.parseInt(args[1]), servicePublicKey,
+				args[5], speed, threads, keySize);
+		replay.register(registrarID, registrarPrivateKey);
+		System.out.println(replay.replay());
+		System.exit(0);
+	}
+
+}
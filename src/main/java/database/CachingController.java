@@ -0,0 +1,259 @@
+package database;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.apache.log4j.Logger;
+
+import metrics.MetricsRegistry;
+
+/**
+ * An {@link IControllable} that keeps the data of all nodes it has read or written in memory
+ * and forwards everything else to another controller. Reads of cached nodes do not access the
+ * underlying data storage; misses are read from it and added to the cache.
+ *
+ * All writes must go through this controller, modifications by other processes are not
+ * noticed. The cache can be filled in advance with {@link #warmUp(List, int)}, which may run
+ * while the controller is in use.
+ *
+ * @author jonathanhasenburg
+ *
+ */
+public class CachingController implements IControllable {
+
+	private static Logger logger = Logger.getLogger(CachingController.class.getName());
+
+	/**
+	 * Names of the counters of cache hits and misses in the {@link MetricsRegistry}
+	 */
+	public static final String HITS = "cache.hits";
+	public static final String MISSES = "cache.misses";
+
+	private final MetricsRegistry metrics = MetricsRegistry.getInstance();
+	private final IControllable delegate;
+	private final Map<String, String> cache = new ConcurrentHashMap<String, String>();
+
+	/**
+	 * Incremented on every modification, reads only fill the cache if no modification happened
+	 * while they accessed the data storage
+	 */
+	private long modifications = 0;
+
+	public CachingController(IControllable delegate) {
+		this.delegate = delegate;
+	}
+
+	/**
+	 * @return the controller used to access the data storage
+	 */
+	public IControllable getDelegate() {
+		return delegate;
+	}
+
+	/**
+	 * @return the number of cached nodes
+	 */
+	public int size() {
+		return cache.size();
+	}
+
+	@Override
+	public void addNode(String path, String data) throws IllegalArgumentException, InterruptedException {
+		delegate.addNode(path, data);
+		invalidate(path, false);
+	}
+
+	@Override
+	public String readNode(String path) throws IllegalArgumentException, InterruptedException {
+		String data = cache.get(path);
+		if (data == null) {
+			metrics.increment(MISSES);
+			data = load(path);
+		} else {
+			metrics.increment(HITS);
+		}
+		return data;
+	}
+
+	@Override
+	public void updateNode(String path, String data) throws IllegalArgumentException, InterruptedException {
+		delegate.updateNode(path, data);
+		invalidate(path, false);
+	}
+
+	/**
+	 * Compares with the data of the delegate, the cached data is dropped in any case, as it
+	 * may be outdated if the comparison fails.
+	 */
+	@Override
+	public boolean updateNodeIfUnchanged(String path, String expectedData, String data) throws IllegalArgumentException, InterruptedException {
+		try {
+			return delegate.updateNodeIfUnchanged(path, expectedData, data);
+		} finally {
+			invalidate(path, false);
+		}
+	}
+
+	@Override
+	public void deleteNodeRecursive(String path) throws IOException {
+		try {
+			delegate.deleteNodeRecursive(path);
+		} finally {
+			invalidate(path, true);
+		}
+	}
+
+	@Override
+	public void deleteNode(String path) throws IllegalArgumentException, InterruptedException {
+		delegate.deleteNode(path);
+		invalidate(path, false);
+	}
+
+	@Override
+	public List<String> getChildren(String path) throws IllegalArgumentException, InterruptedException {
+		return delegate.getChildren(path);
+	}
+
+	@Override
+	public boolean exists(String path) throws IllegalArgumentException, InterruptedException {
+		return cache.containsKey(path) || delegate.exists(path);
+	}
+
+	@Override
+	public void addNodes(Map<String, String> nodes) throws IllegalArgumentException, InterruptedException {
+		try {
+			delegate.addNodes(nodes);
+		} finally {
+			for (String path : nodes.keySet()) {
+				invalidate(path, false);
+			}
+		}
+	}
+
+	@Override
+	public List<String> addNodesIfAbsent(List<String> paths, String data) throws IllegalArgumentException, InterruptedException {
+		try {
+			return delegate.addNodesIfAbsent(paths, data);
+		} finally {
+			for (String path : paths) {
+				invalidate(path, false);
+			}
+		}
+	}
+
+	/**
+	 * Reads the nodes below the given paths from the data storage and caches them. Each path is
+	 * scanned by its own task, and each task forks a task per child node.
+	 *
+	 * @param paths The paths to scan, they are not cached themselves
+	 * @param parallelism The number of threads used for scanning
+	 * @return the number of cached nodes
+	 * @throws InterruptedException
+	 */
+	public int warmUp(List<String> paths, int parallelism) throws InterruptedException {
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			List<ScanTask> tasks = new ArrayList<ScanTask>();
+			for (String path : paths) {
+				tasks.add(new ScanTask(path, false));
+			}
+			int loaded = 0;
+			for (ScanTask task : tasks) {
+				loaded += pool.invoke(task);
+			}
+			return loaded;
+		} catch (IllegalStateException e) {
+			// the pool may wrap the exception thrown by a task once more
+			for (Throwable t = e; t != null; t = t.getCause()) {
+				if (t instanceof InterruptedException) {
+					throw (InterruptedException) t;
+				}
+			}
+			throw e;
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Reads a node from the data storage and caches it if it was not modified meanwhile.
+	 */
+	private String load(String path) throws IllegalArgumentException, InterruptedException {
+		long before;
+		synchronized (this) {
+			before = modifications;
+		}
+		String data = delegate.readNode(path);
+		synchronized (this) {
+			if (before == modifications && data != null) {
+				cache.putIfAbsent(path, data);
+			}
+		}
+		return data;
+	}
+
+	private synchronized void invalidate(String path, boolean recursive) {
+		modifications++;
+		cache.remove(path);
+		if (recursive) {
+			String prefix = path.endsWith("/") ? path : path + "/";
+			cache.keySet().removeIf(p -> p.startsWith(prefix));
+		}
+	}
+
+	/**
+	 * Caches a node (unless it is the root of the scan) and all nodes below it.
+	 */
+	private class ScanTask extends RecursiveTask<Integer> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String path;
+		private final boolean cacheNode;
+
+		ScanTask(String path, boolean cacheNode) {
+			this.path = path;
+			this.cacheNode = cacheNode;
+		}
+
+		@Override
+		protected Integer compute() {
+			try {
+				int loaded = 0;
+				if (cacheNode && !cache.containsKey(path)) {
+					try {
+						load(path);
+						loaded++;
+					} catch (IllegalArgumentException e) {
+						// intermediate nodes, e.g., of keygroup apps, may have no data
+						logger.debug("Not caching " + path + ": " + e.getMessage());
+					}
+				}
+
+				List<ScanTask> children = new ArrayList<ScanTask>();
+				for (String child : delegate.getChildren(path)) {
+					ScanTask task = new ScanTask(path + "/" + child, true);
+					task.fork();
+					children.add(task);
+				}
+				for (ScanTask task : children) {
+					loaded += task.join();
+				}
+				return loaded;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(e);
+			} catch (IllegalArgumentException e) {
+				// removed while scanning
+				logger.debug("Skipping children of " + path + ": " + e.getMessage());
+				return 0;
+			}
+		}
+	}
+
+}
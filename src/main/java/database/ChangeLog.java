@@ -0,0 +1,225 @@
+package database;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.log4j.Logger;
+
+import database.StorageChange.Operation;
+
+/**
+ * An {@link IControllable} that forwards all operations to another controller and numbers
+ * every successful write in the order it was applied. The most recent changes are kept in
+ * memory, so that followers can catch up by applying them in the same order. Followers that
+ * fell further behind start over with a snapshot of the whole data storage.
+ *
+ * Writes are serialized, so that the order of the sequence numbers is the order in which the
+ * writes were applied to the data storage. Reads are not affected.
+ *
+ * @author jonathanhasenburg
+ *
+ */
+public class ChangeLog implements IControllable {
+
+	private static Logger logger = Logger.getLogger(ChangeLog.class.getName());
+
+	private final IControllable delegate;
+	private final List<String> roots;
+
+	/**
+	 * Identifies this log, sequence numbers of logs with different epochs are not comparable
+	 */
+	private final long epoch = ThreadLocalRandom.current().nextLong(Long.MAX_VALUE);
+
+	/**
+	 * The most recent changes, the change with sequence s is at index s % length
+	 */
+	private final StorageChange[] retained;
+
+	/**
+	 * The sequence number of the last change
+	 */
+	private long sequence = 0;
+
+	/**
+	 * Creates a change log.
+	 *
+	 * @param delegate The data storage
+	 * @param roots The paths of the top level nodes, snapshots contain these and all nodes
+	 *            below them
+	 * @param capacity The number of changes kept in memory
+	 */
+	public ChangeLog(IControllable delegate, List<String> roots, int capacity) {
+		this.delegate = delegate;
+		this.roots = roots;
+		this.retained = new StorageChange[capacity];
+	}
+
+	@Override
+	public synchronized void addNode(String path, String data) throws IllegalArgumentException, InterruptedException {
+		delegate.addNode(path, data);
+		append(Operation.ADD, path, data);
+	}
+
+	@Override
+	public String readNode(String path) throws IllegalArgumentException, InterruptedException {
+		return delegate.readNode(path);
+	}
+
+	@Override
+	public synchronized void updateNode(String path, String data) throws IllegalArgumentException, InterruptedException {
+		delegate.updateNode(path, data);
+		append(Operation.UPDATE, path, data);
+	}
+
+	@Override
+	public synchronized boolean updateNodeIfUnchanged(String path, String expectedData, String data) throws IllegalArgumentException, InterruptedException {
+		boolean updated = delegate.updateNodeIfUnchanged(path, expectedData, data);
+		if (updated) {
+			append(Operation.UPDATE, path, data);
+		}
+		return updated;
+	}
+
+	@Override
+	public synchronized void deleteNodeRecursive(String path) throws IOException {
+		try {
+			delegate.deleteNodeRecursive(path);
+		} finally {
+			// a recursive deletion may fail after deleting some nodes
+			append(Operation.DELETE_RECURSIVE, path, null);
+		}
+	}
+
+	@Override
+	public synchronized void deleteNode(String path) throws IllegalArgumentException, InterruptedException {
+		delegate.deleteNode(path);
+		append(Operation.DELETE, path, null);
+	}
+
+	@Override
+	public List<String> getChildren(String path) throws IllegalArgumentException, InterruptedException {
+		return delegate.getChildren(path);
+	}
+
+	@Override
+	public boolean exists(String path) throws IllegalArgumentException, InterruptedException {
+		return delegate.exists(path);
+	}
+
+	@Override
+	public synchronized void addNodes(Map<String, String> nodes) throws IllegalArgumentException, InterruptedException {
+		// the delegate may fail after adding some of the nodes
+		Set<String> existing = new HashSet<String>();
+		for (String path : nodes.keySet()) {
+			if (delegate.exists(path)) {
+				existing.add(path);
+			}
+		}
+		try {
+			delegate.addNodes(nodes);
+		} finally {
+			for (Map.Entry<String, String> node : nodes.entrySet()) {
+				if (!existing.contains(node.getKey()) && delegate.exists(node.getKey())) {
+					append(Operation.ADD, node.getKey(), node.getValue());
+				}
+			}
+		}
+	}
+
+	@Override
+	public synchronized List<String> addNodesIfAbsent(List<String> paths, String data) throws IllegalArgumentException, InterruptedException {
+		List<String> created = delegate.addNodesIfAbsent(paths, data);
+		for (String path : created) {
+			append(Operation.ADD, path, data);
+		}
+		return created;
+	}
+
+	private void append(Operation operation, String path, String data) {
+		sequence++;
+		retained[(int) (sequence % retained.length)] = new StorageChange(sequence, operation, path, data);
+	}
+
+	/**
+	 * @return the identifier of this log
+	 */
+	public long getEpoch() {
+		return epoch;
+	}
+
+	/**
+	 * @return the sequence number of the last change, 0 if nothing changed yet
+	 */
+	public synchronized long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * Returns the changes following the given sequence number.
+	 *
+	 * @param epoch The epoch of the log the sequence number belongs to
+	 * @param after The sequence number of the last change the caller knows
+	 * @param max The maximum number of returned changes
+	 * @return the changes in order, null if they are not retained anymore or the caller's
+	 *         sequence number belongs to another log
+	 */
+	public synchronized List<StorageChange> getChangesAfter(long epoch, long after, int max) {
+		if (epoch != this.epoch || after < 0 || after > sequence || sequence - after > retained.length) {
+			return null;
+		}
+
+		List<StorageChange> changes = new ArrayList<StorageChange>();
+		for (long s = after + 1; s <= sequence && changes.size() < max; s++) {
+			changes.add(retained[(int) (s % retained.length)]);
+		}
+		return changes;
+	}
+
+	/**
+	 * Reads all nodes below the roots while no writes are applied. Applying the returned changes
+	 * in order to an empty data storage recreates the current state.
+	 *
+	 * @return the nodes as additions, all with the current sequence number
+	 * @throws InterruptedException
+	 */
+	public synchronized List<StorageChange> snapshot() throws InterruptedException {
+		long start = System.currentTimeMillis();
+		Map<String, String> nodes = new LinkedHashMap<String, String>();
+		for (String root : roots) {
+			collect(root, nodes);
+		}
+
+		List<StorageChange> changes = new ArrayList<StorageChange>(nodes.size());
+		for (Map.Entry<String, String> node : nodes.entrySet()) {
+			changes.add(new StorageChange(sequence, Operation.ADD, node.getKey(), node.getValue()));
+		}
+		logger.info("Took snapshot of " + changes.size() + " nodes at sequence " + sequence + " in "
+				+ (System.currentTimeMillis() - start) + " ms");
+		return changes;
+	}
+
+	private void collect(String path, Map<String, String> nodes) throws InterruptedException {
+		if (!delegate.exists(path)) {
+			return;
+		}
+		String data;
+		try {
+			data = delegate.readNode(path);
+		} catch (IllegalArgumentException e) {
+			// intermediate nodes, e.g., of keygroup apps, may have no data
+			data = null;
+		}
+		nodes.put(path, data != null ? data : "");
+		for (String child : delegate.getChildren(path)) {
+			collect(path + "/" + child, nodes);
+		}
+	}
+
+}
@@ -1,7 +1,9 @@
 package database;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 public interface IControllable {
 
@@ -20,5 +22,68 @@ public interface IControllable {
 	public void deleteNode(String path) throws IllegalArgumentException, InterruptedException;
 	public List<String> getChildren(String path) throws IllegalArgumentException, InterruptedException;
 	public boolean exists(String path) throws IllegalArgumentException, InterruptedException;
+	
+	/**
+	 * Adds all given nodes in iteration order, so parents must come before their children.
+	 * Implementations may apply the batch atomically and with fewer round trips than single
+	 * calls of {@link #addNode(String, String)}; the default implementation does not.
+	 * 
+	 * @param nodes Map from path to data of the nodes to add
+	 * @throws IllegalArgumentException if a node already exists or a parent is missing
+	 * @throws InterruptedException
+	 */
+	public default void addNodes(Map<String, String> nodes) throws IllegalArgumentException, InterruptedException {
+		for (Map.Entry<String, String> node : nodes.entrySet()) {
+			addNode(node.getKey(), node.getValue());
+		}
+	}
+	
+	/**
+	 * Adds all given nodes that do not exist yet, without checking their existence first.
+	 * Paths are created in list order, so parents must come before their children.
+	 * Implementations may send all requests at once and wait for their results, so that the
+	 * batch takes a single round trip; the default implementation does not.
+	 * 
+	 * @param paths The paths of the nodes to add
+	 * @param data The data of each added node
+	 * @return the paths of the nodes that did not exist before
+	 * @throws IllegalArgumentException if a parent is missing
+	 * @throws InterruptedException
+	 */
+	public default List<String> addNodesIfAbsent(List<String> paths, String data) throws IllegalArgumentException, InterruptedException {
+		List<String> created = new ArrayList<String>();
+		for (String path : paths) {
+			try {
+				addNode(path, data);
+				created.add(path);
+			} catch (IllegalArgumentException e) {
+				if (!exists(path)) {
+					throw e;
+				}
+			}
+		}
+		return created;
+	}
+
+	/**
+	 * Updates the node only if it still has the expected data, so that naming services
+	 * sharing the data storage can update a node based on its previous data without
+	 * overwriting each other. Data storages that are shared must apply the comparison and the
+	 * update atomically; the default implementation reads and updates the node without a lock.
+	 *
+	 * @param path The path of the node
+	 * @param expectedData The data read before
+	 * @param data The new data
+	 * @return true, if the node was updated, false if it has other data
+	 * @throws IllegalArgumentException if the node does not exist
+	 * @throws InterruptedException
+	 */
+	public default boolean updateNodeIfUnchanged(String path, String expectedData, String data) throws IllegalArgumentException, InterruptedException {
+		if (!expectedData.equals(readNode(path))) {
+			return false;
+		}
+		updateNode(path, data);
+		return true;
+	}
 
 }
@@ -0,0 +1,179 @@
+package database;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import metrics.MetricsRegistry;
+import metrics.StorageEvent;
+
+/**
+ * An {@link IControllable} that forwards all operations to another controller and records
+ * their latency in the {@link MetricsRegistry}. Each operation type has a histogram named
+ * {@value MetricsRegistry#STORAGE_PREFIX}&lt;operation&gt;; failed operations are also
+ * counted in &lt;histogram name&gt;.errors. Each call is also reported as a {@link StorageEvent}
+ * to the flight recorder.
+ *
+ * @author jonathanhasenburg
+ *
+ */
+public class InstrumentedController implements IControllable {
+
+	private final IControllable delegate;
+	private final MetricsRegistry metrics = MetricsRegistry.getInstance();
+
+	public InstrumentedController(IControllable delegate) {
+		this.delegate = delegate;
+	}
+
+	@Override
+	public void addNode(String path, String data) throws IllegalArgumentException, InterruptedException {
+		StorageEvent event = begin();
+		long start = System.nanoTime();
+		boolean success = false;
+		try {
+			delegate.addNode(path, data);
+			success = true;
+		} finally {
+			record("addNode", path, start, success, event);
+		}
+	}
+
+	@Override
+	public String readNode(String path) throws IllegalArgumentException, InterruptedException {
+		StorageEvent event = begin();
+		long start = System.nanoTime();
+		boolean success = false;
+		try {
+			String data = delegate.readNode(path);
+			success = true;
+			return data;
+		} finally {
+			record("readNode", path, start, success, event);
+		}
+	}
+
+	@Override
+	public void updateNode(String path, String data) throws IllegalArgumentException, InterruptedException {
+		StorageEvent event = begin();
+		long start = System.nanoTime();
+		boolean success = false;
+		try {
+			delegate.updateNode(path, data);
+			success = true;
+		} finally {
+			record("updateNode", path, start, success, event);
+		}
+	}
+
+	@Override
+	public boolean updateNodeIfUnchanged(String path, String expectedData, String data) throws IllegalArgumentException, InterruptedException {
+		StorageEvent event = begin();
+		long start = System.nanoTime();
+		boolean success = false;
+		try {
+			boolean updated = delegate.updateNodeIfUnchanged(path, expectedData, data);
+			success = true;
+			return updated;
+		} finally {
+			record("updateNodeIfUnchanged", path, start, success, event);
+		}
+	}
+
+	@Override
+	public void deleteNodeRecursive(String path) throws IOException {
+		StorageEvent event = begin();
+		long start = System.nanoTime();
+		boolean success = false;
+		try {
+			delegate.deleteNodeRecursive(path);
+			success = true;
+		} finally {
+			record("deleteNodeRecursive", path, start, success, event);
+		}
+	}
+
+	@Override
+	public void deleteNode(String path) throws IllegalArgumentException, InterruptedException {
+		StorageEvent event = begin();
+		long start = System.nanoTime();
+		boolean success = false;
+		try {
+			delegate.deleteNode(path);
+			success = true;
+		} finally {
+			record("deleteNode", path, start, success, event);
+		}
+	}
+
+	@Override
+	public List<String> getChildren(String path) throws IllegalArgumentException, InterruptedException {
+		StorageEvent event = begin();
+		long start = System.nanoTime();
+		boolean success = false;
+		try {
+			List<String> children = delegate.getChildren(path);
+			success = true;
+			return children;
+		} finally {
+			record("getChildren", path, start, success, event);
+		}
+	}
+
+	@Override
+	public boolean exists(String path) throws IllegalArgumentException, InterruptedException {
+		StorageEvent event = begin();
+		long start = System.nanoTime();
+		boolean success = false;
+		try {
+			boolean exists = delegate.exists(path);
+			success = true;
+			return exists;
+		} finally {
+			record("exists", path, start, success, event);
+		}
+	}
+
+	@Override
+	public void addNodes(Map<String, String> nodes) throws IllegalArgumentException, InterruptedException {
+		StorageEvent event = begin();
+		long start = System.nanoTime();
+		boolean success = false;
+		try {
+			delegate.addNodes(nodes);
+			success = true;
+		} finally {
+			record("addNodes", nodes.size() + " nodes", start, success, event);
+		}
+	}
+
+	@Override
+	public List<String> addNodesIfAbsent(List<String> paths, String data) throws IllegalArgumentException, InterruptedException {
+		StorageEvent event = begin();
+		long start = System.nanoTime();
+		boolean success = false;
+		try {
+			List<String> created = delegate.addNodesIfAbsent(paths, data);
+			success = true;
+			return created;
+		} finally {
+			record("addNodesIfAbsent", paths.size() + " nodes", start, success, event);
+		}
+	}
+
+	private static StorageEvent begin() {
+		StorageEvent event = new StorageEvent();
+		event.begin();
+		return event;
+	}
+
+	private void record(String operation, String path, long start, boolean success, StorageEvent event) {
+		String name = MetricsRegistry.STORAGE_PREFIX + operation;
+		metrics.record(name, System.nanoTime() - start);
+		if (!success) {
+			metrics.increment(name + ".errors");
+		}
+		event.finish(operation, path, success);
+	}
+
+}
@@ -0,0 +1,300 @@
+package database;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.log4j.Logger;
+
+import metrics.MetricsRegistry;
+
+/**
+ * An {@link IControllable} that caches the nodes read from another controller for the
+ * duration of a lease. Unlike the {@link CachingController}, it does not assume that all
+ * writes go through it: the data storage may be modified by others, who must call
+ * {@link #invalidate(String)} for each modified node. The lease bounds how long a node is
+ * served after a missed invalidation.
+ *
+ * Missing nodes are cached as well, so existence checks followed by a read cost a single
+ * access of the data storage. Concurrent misses of the same node share one read. If a node
+ * cannot be read again after its lease expired, the expired data is served until the data
+ * storage is reachable again, but at most for the max staleness after the lease. Only then,
+ * or once a read succeeds, expired data is removed.
+ *
+ * @author jonathanhasenburg
+ *
+ */
+public class LeasedCachingController implements IControllable {
+
+	private static Logger logger = Logger.getLogger(LeasedCachingController.class.getName());
+
+	/**
+	 * Names of the counters of misses that joined a read in flight and of reads served with
+	 * expired data in the {@link MetricsRegistry}
+	 */
+	public static final String COALESCED = "cache.coalesced";
+	public static final String STALE = "cache.stale";
+
+	private final MetricsRegistry metrics = MetricsRegistry.getInstance();
+	private final IControllable delegate;
+	private final long leaseMillis;
+	private final long maxStalenessMillis;
+	private final Map<String, Entry> cache = new ConcurrentHashMap<String, Entry>();
+
+	/**
+	 * Reads of the data storage in flight, by path
+	 */
+	private final Map<String, CompletableFuture<Entry>> loading = new ConcurrentHashMap<String, CompletableFuture<Entry>>();
+
+	/**
+	 * Incremented on every invalidation, reads only fill the cache if no invalidation happened
+	 * while they accessed the data storage
+	 */
+	private long invalidations = 0;
+
+	/**
+	 * Creates a controller.
+	 *
+	 * @param delegate The controller used to access the data storage
+	 * @param leaseMillis Milliseconds a read node is served from the cache
+	 * @param maxStalenessMillis Milliseconds after its lease a node is still served if the data
+	 *            storage cannot be read
+	 */
+	public LeasedCachingController(IControllable delegate, long leaseMillis, long maxStalenessMillis) {
+		this.delegate = delegate;
+		this.leaseMillis = leaseMillis;
+		this.maxStalenessMillis = maxStalenessMillis;
+	}
+
+	/**
+	 * @return the controller used to access the data storage
+	 */
+	public IControllable getDelegate() {
+		return delegate;
+	}
+
+	/**
+	 * @return the number of cached nodes, including missing ones
+	 */
+	public int size() {
+		return cache.size();
+	}
+
+	/**
+	 * Returns the cached data of a node without accessing the data storage.
+	 *
+	 * @param path The path of the node
+	 * @return the data, null if the node is not cached or missing
+	 */
+	public String getCached(String path) {
+		Entry entry = cache.get(path);
+		return entry != null ? entry.data : null;
+	}
+
+	/**
+	 * Removes a node from the cache, the next read accesses the data storage.
+	 *
+	 * @param path The path of the node
+	 */
+	public synchronized void invalidate(String path) {
+		invalidations++;
+		cache.remove(path);
+	}
+
+	/**
+	 * Finds the nodes whose lease expired since the last call. Expired nodes stay cached, so
+	 * they can be served while the data storage is unreachable; only nodes that exceeded the
+	 * max staleness are removed.
+	 *
+	 * @return the paths of the nodes whose lease expired since the last call
+	 */
+	public List<String> collectExpired() {
+		long now = System.currentTimeMillis();
+		List<String> expired = new ArrayList<String>();
+		for (Iterator<Map.Entry<String, Entry>> it = cache.entrySet().iterator(); it.hasNext();) {
+			Map.Entry<String, Entry> e = it.next();
+			Entry entry = e.getValue();
+			if (entry.expires > now) {
+				continue;
+			}
+			if (!entry.collected) {
+				entry.collected = true;
+				expired.add(e.getKey());
+			}
+			if (entry.expires + maxStalenessMillis <= now) {
+				cache.remove(e.getKey(), entry);
+			}
+		}
+		return expired;
+	}
+
+	@Override
+	public String readNode(String path) throws IllegalArgumentException, InterruptedException {
+		Entry entry = read(path);
+		if (entry.data == null) {
+			throw new IllegalArgumentException("Path '" + path + "' does not exist");
+		}
+		return entry.data;
+	}
+
+	@Override
+	public boolean exists(String path) throws IllegalArgumentException, InterruptedException {
+		return read(path).data != null;
+	}
+
+	@Override
+	public List<String> getChildren(String path) throws IllegalArgumentException, InterruptedException {
+		return delegate.getChildren(path);
+	}
+
+	@Override
+	public void addNode(String path, String data) throws IllegalArgumentException, InterruptedException {
+		try {
+			delegate.addNode(path, data);
+		} finally {
+			invalidate(path);
+		}
+	}
+
+	@Override
+	public void updateNode(String path, String data) throws IllegalArgumentException, InterruptedException {
+		try {
+			delegate.updateNode(path, data);
+		} finally {
+			invalidate(path);
+		}
+	}
+
+	@Override
+	public boolean updateNodeIfUnchanged(String path, String expectedData, String data) throws IllegalArgumentException, InterruptedException {
+		try {
+			return delegate.updateNodeIfUnchanged(path, expectedData, data);
+		} finally {
+			invalidate(path);
+		}
+	}
+
+	@Override
+	public void deleteNodeRecursive(String path) throws IOException {
+		try {
+			delegate.deleteNodeRecursive(path);
+		} finally {
+			synchronized (this) {
+				invalidations++;
+				String prefix = path.endsWith("/") ? path : path + "/";
+				cache.keySet().removeIf(p -> p.equals(path) || p.startsWith(prefix));
+			}
+		}
+	}
+
+	@Override
+	public void deleteNode(String path) throws IllegalArgumentException, InterruptedException {
+		try {
+			delegate.deleteNode(path);
+		} finally {
+			invalidate(path);
+		}
+	}
+
+	/**
+	 * Returns the cached entry of a node, or reads it if it is not cached or its lease expired.
+	 */
+	private Entry read(String path) throws InterruptedException {
+		long now = System.currentTimeMillis();
+		Entry entry = cache.get(path);
+		if (entry != null && entry.expires > now) {
+			metrics.increment(CachingController.HITS);
+			return entry;
+		}
+
+		metrics.increment(CachingController.MISSES);
+		try {
+			return load(path);
+		} catch (RuntimeException e) {
+			if (entry == null || entry.expires + maxStalenessMillis <= now) {
+				throw e;
+			}
+			metrics.increment(STALE);
+			logger.warn("Serving expired data of " + path + ": " + e.getMessage());
+			return entry;
+		}
+	}
+
+	/**
+	 * Reads a node from the data storage, or waits for a read of the same node in flight. The
+	 * result is cached if no invalidation happened meanwhile.
+	 */
+	private Entry load(String path) throws InterruptedException {
+		CompletableFuture<Entry> future = new CompletableFuture<Entry>();
+		CompletableFuture<Entry> inFlight = loading.putIfAbsent(path, future);
+		if (inFlight != null) {
+			metrics.increment(COALESCED);
+			return await(inFlight);
+		}
+
+		try {
+			long before;
+			synchronized (this) {
+				before = invalidations;
+			}
+			String data;
+			try {
+				data = delegate.readNode(path);
+			} catch (IllegalArgumentException e) {
+				data = null;
+			}
+			Entry entry = new Entry(data, System.currentTimeMillis() + leaseMillis);
+			synchronized (this) {
+				if (before == invalidations) {
+					cache.put(path, entry);
+				}
+			}
+			future.complete(entry);
+			return entry;
+		} catch (InterruptedException | RuntimeException e) {
+			future.completeExceptionally(e);
+			throw e;
+		} finally {
+			loading.remove(path, future);
+		}
+	}
+
+	private static Entry await(CompletableFuture<Entry> future) throws InterruptedException {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			if (e.getCause() instanceof InterruptedException) {
+				throw new IllegalStateException("Read of the data storage interrupted", e.getCause());
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	private static class Entry {
+
+		/**
+		 * The data of the node, null if it does not exist
+		 */
+		private final String data;
+		private final long expires;
+
+		/**
+		 * Whether the expiry was reported by {@link LeasedCachingController#collectExpired()}
+		 */
+		private volatile boolean collected = false;
+
+		Entry(String data, long expires) {
+			this.data = data;
+			this.expires = expires;
+		}
+	}
+
+}
@@ -0,0 +1,117 @@
+package database;
+
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+
+import model.JSONable;
+
+/**
+ * A single write operation on a data storage, as recorded by the {@link ChangeLog}.
+ *
+ * @author jonathanhasenburg
+ *
+ */
+public class StorageChange implements JSONable {
+
+	public enum Operation {
+		ADD, UPDATE, DELETE, DELETE_RECURSIVE
+	}
+
+	/**
+	 * The position of the change in the change log, starting at 1
+	 */
+	private long sequence;
+
+	private Operation operation;
+
+	private String path;
+
+	/**
+	 * The data of added or updated nodes, null otherwise
+	 */
+	private String data;
+
+	public StorageChange() {
+
+	}
+
+	public StorageChange(long sequence, Operation operation, String path, String data) {
+		this.sequence = sequence;
+		this.operation = operation;
+		this.path = path;
+		this.data = data;
+	}
+
+	/**
+	 * Applies the change to the given data storage. Changes are applied idempotently: added
+	 * nodes that exist are updated, updated nodes that do not exist are added, and deleting
+	 * missing nodes is ignored. This way, changes that were already part of a snapshot can be
+	 * applied once more.
+	 *
+	 * @param controller The data storage
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public void applyTo(IControllable controller) throws IOException, InterruptedException {
+		switch (operation) {
+		case ADD:
+		case UPDATE:
+			if (controller.exists(path)) {
+				controller.updateNode(path, data);
+			} else {
+				controller.addNode(path, data);
+			}
+			break;
+		case DELETE:
+			if (controller.exists(path)) {
+				controller.deleteNode(path);
+			}
+			break;
+		case DELETE_RECURSIVE:
+			try {
+				controller.deleteNodeRecursive(path);
+			} catch (NoSuchFileException e) {
+				// already deleted
+			}
+			break;
+		}
+	}
+
+	public long getSequence() {
+		return sequence;
+	}
+
+	public void setSequence(long sequence) {
+		this.sequence = sequence;
+	}
+
+	public Operation getOperation() {
+		return operation;
+	}
+
+	public void setOperation(Operation operation) {
+		this.operation = operation;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	public void setPath(String path) {
+		this.path = path;
+	}
+
+	public String getData() {
+		return data;
+	}
+
+	public void setData(String data) {
+		this.data = data;
+	}
+
+	@Override
+	public String toString() {
+		return sequence + " " + operation + " " + path;
+	}
+
+}
@@ -93,7 +93,8 @@ public class LocalFileController implements IControllable {
 		File file = new File(rootDir, path + dataFileName);
 		File dir = new File(rootDir, path);
 		
-		if(dir.exists() == false || file.exists() == false) {
+		// parents created by addNode with mkdirs have no data file, but exist as well
+		if(dir.exists() == false) {
 			throw new IllegalArgumentException("Path '" + path + "' doesn't exist.");
 		}
 		
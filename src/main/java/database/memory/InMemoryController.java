@@ -0,0 +1,136 @@
+package database.memory;
+
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import database.IControllable;
+
+/**
+ * Keeps all nodes in memory. Like ZooKeeper, nodes can only be added below existing nodes and
+ * only nodes without children can be deleted. Data is lost when the process ends, so this
+ * controller is meant for benchmarks and tests.
+ *
+ * Reads are lock-free, writes are serialized.
+ *
+ * @author jonathanhasenburg
+ *
+ */
+public class InMemoryController implements IControllable {
+
+	private static final String ROOT = "";
+
+	private final Map<String, String> data = new ConcurrentHashMap<String, String>();
+	private final Map<String, Set<String>> children = new ConcurrentHashMap<String, Set<String>>();
+
+	public InMemoryController() {
+		children.put(ROOT, ConcurrentHashMap.newKeySet());
+	}
+
+	@Override
+	public synchronized void addNode(String path, String data) throws IllegalArgumentException {
+		if (this.data.containsKey(path)) {
+			throw new IllegalArgumentException("Path '" + path + "' already exists.");
+		}
+		Set<String> siblings = children.get(parentOf(path));
+		if (siblings == null) {
+			throw new IllegalArgumentException("Intermediate node in path '" + path + "' does not exist.");
+		}
+
+		this.data.put(path, data);
+		children.put(path, ConcurrentHashMap.newKeySet());
+		siblings.add(nameOf(path));
+	}
+
+	@Override
+	public String readNode(String path) throws IllegalArgumentException {
+		String value = data.get(path);
+		if (value == null) {
+			throw new IllegalArgumentException("Path '" + path + "' does not exist");
+		}
+		return value;
+	}
+
+	@Override
+	public synchronized void updateNode(String path, String data) throws IllegalArgumentException {
+		if (!this.data.containsKey(path)) {
+			throw new IllegalArgumentException("Path '" + path + "' doesn't exist.");
+		}
+		this.data.put(path, data);
+	}
+
+	@Override
+	public synchronized void deleteNodeRecursive(String path) throws IOException {
+		if (!data.containsKey(path)) {
+			throw new NoSuchFileException(path);
+		}
+		for (String child : new ArrayList<String>(children.get(path))) {
+			deleteNodeRecursive(path + "/" + child);
+		}
+		remove(path);
+	}
+
+	@Override
+	public synchronized void deleteNode(String path) throws IllegalArgumentException {
+		Set<String> nodeChildren = children.get(path);
+		if (nodeChildren == null || !data.containsKey(path)) {
+			throw new IllegalArgumentException("Path '" + path + "' doesn't exist.");
+		}
+		if (!nodeChildren.isEmpty()) {
+			throw new IllegalArgumentException("Directory not empty for '" + path + "'");
+		}
+		remove(path);
+	}
+
+	@Override
+	public List<String> getChildren(String path) throws IllegalArgumentException {
+		Set<String> nodeChildren = children.get(path);
+		if (nodeChildren == null) {
+			throw new IllegalArgumentException("Intermediate node in path '" + path + "' does not exist.");
+		}
+		return new ArrayList<String>(nodeChildren);
+	}
+
+	@Override
+	public boolean exists(String path) {
+		return data.containsKey(path);
+	}
+
+	/**
+	 * @return the number of stored nodes
+	 */
+	public int size() {
+		return data.size();
+	}
+
+	/**
+	 * @return an unmodifiable view of all nodes by path
+	 */
+	public Map<String, String> getNodes() {
+		return Collections.unmodifiableMap(data);
+	}
+
+	private void remove(String path) {
+		data.remove(path);
+		children.remove(path);
+		Set<String> siblings = children.get(parentOf(path));
+		if (siblings != null) {
+			siblings.remove(nameOf(path));
+		}
+	}
+
+	private static String parentOf(String path) {
+		int index = path.lastIndexOf('/');
+		return index <= 0 ? ROOT : path.substring(0, index);
+	}
+
+	private static String nameOf(String path) {
+		return path.substring(path.lastIndexOf('/') + 1);
+	}
+
+}
@@ -0,0 +1,276 @@
+package database.mvstore;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.apache.log4j.Logger;
+import org.h2.mvstore.MVStore;
+import org.h2.mvstore.tx.Transaction;
+import org.h2.mvstore.tx.TransactionMap;
+import org.h2.mvstore.tx.TransactionStore;
+import org.h2.mvstore.type.StringDataType;
+
+import database.IControllable;
+
+/**
+ * Stores all nodes in a single file with the embedded MVStore of H2, a transactional key-value
+ * store. The path of each node is its key, so the children of a node are found by a range
+ * scan over the keys that start with its path. Like ZooKeeper, nodes can only be added below
+ * existing nodes and only nodes without children can be deleted.
+ *
+ * Every operation runs in its own transaction, so batches and recursive deletes are applied
+ * atomically and readers never see them half done. Reads are lock-free, writes are serialized.
+ * Committed transactions are written to the file in the background within the commit delay,
+ * or before the write returns if the delay is 0. A crash loses the writes of the last commit
+ * delay, but never a part of a transaction.
+ *
+ * @author jonathanhasenburg
+ *
+ */
+public class MVStoreController implements IControllable {
+
+	private static Logger logger = Logger.getLogger(MVStoreController.class.getName());
+
+	private static final String MAP_NAME = "nodes";
+	private static final String ROOT = "";
+	/**
+	 * The character following '/', all descendants of a node sort before its path plus this
+	 */
+	private static final char AFTER_SEPARATOR = '/' + 1;
+
+	private final int commitDelay;
+	private final MVStore store;
+	private final TransactionStore transactions;
+	/**
+	 * The map as seen by the transaction that opened it, other transactions use
+	 * {@link TransactionMap#getInstance(Transaction)}
+	 */
+	private final TransactionMap<String, String> nodes;
+
+	/**
+	 * Opens the store in the given file, it is created if it does not exist. Transactions that
+	 * were not committed when the store was last closed are rolled back.
+	 *
+	 * @param file The file of the store
+	 * @param commitDelay Maximum milliseconds until a write is written to the file, 0 to write
+	 *            it before it returns, which makes writes about 25 times slower
+	 */
+	public MVStoreController(File file, int commitDelay) {
+		this.commitDelay = commitDelay;
+		File parent = file.getAbsoluteFile().getParentFile();
+		if (parent != null) {
+			parent.mkdirs();
+		}
+		store = new MVStore.Builder().fileName(file.getPath()).open();
+		store.setAutoCommitDelay(commitDelay);
+		transactions = new TransactionStore(store);
+		transactions.init();
+		transactions.endLeftoverTransactions();
+
+		Transaction transaction = transactions.begin();
+		nodes = transaction.openMap(MAP_NAME, StringDataType.INSTANCE, StringDataType.INSTANCE);
+		transaction.commit();
+		logger.info("Opened store " + file.getPath() + " with " + size() + " nodes");
+	}
+
+	@Override
+	public void addNode(String path, String data) throws IllegalArgumentException {
+		write(map -> {
+			add(map, path, data);
+			return null;
+		});
+	}
+
+	/**
+	 * Adds all nodes in one transaction, so either all or none of them are added.
+	 */
+	@Override
+	public void addNodes(Map<String, String> nodes) throws IllegalArgumentException {
+		write(map -> {
+			for (Map.Entry<String, String> node : nodes.entrySet()) {
+				add(map, node.getKey(), node.getValue());
+			}
+			return null;
+		});
+	}
+
+	/**
+	 * Adds all missing nodes in one transaction, so none of them are added if a parent is
+	 * missing.
+	 */
+	@Override
+	public List<String> addNodesIfAbsent(List<String> paths, String data) throws IllegalArgumentException {
+		return write(map -> {
+			List<String> created = new ArrayList<String>();
+			for (String path : paths) {
+				if (!map.containsKey(path)) {
+					add(map, path, data);
+					created.add(path);
+				}
+			}
+			return created;
+		});
+	}
+
+	@Override
+	public String readNode(String path) throws IllegalArgumentException {
+		String value = read(map -> map.get(path));
+		if (value == null) {
+			throw new IllegalArgumentException("Path '" + path + "' does not exist");
+		}
+		return value;
+	}
+
+	@Override
+	public void updateNode(String path, String data) throws IllegalArgumentException {
+		write(map -> {
+			if (!map.containsKey(path)) {
+				throw new IllegalArgumentException("Path '" + path + "' doesn't exist.");
+			}
+			return map.put(path, data);
+		});
+	}
+
+	@Override
+	public void deleteNodeRecursive(String path) throws IOException {
+		boolean deleted = write(map -> {
+			if (!map.containsKey(path)) {
+				return false;
+			}
+			String prefix = path + "/";
+			List<String> descendants = new ArrayList<String>();
+			Iterator<String> keys = map.keyIterator(prefix, path + AFTER_SEPARATOR);
+			while (keys.hasNext()) {
+				String key = keys.next();
+				if (key.startsWith(prefix)) {
+					descendants.add(key);
+				}
+			}
+			for (String descendant : descendants) {
+				map.remove(descendant);
+			}
+			map.remove(path);
+			return true;
+		});
+		if (!deleted) {
+			throw new NoSuchFileException(path);
+		}
+	}
+
+	@Override
+	public void deleteNode(String path) throws IllegalArgumentException {
+		write(map -> {
+			if (!map.containsKey(path)) {
+				throw new IllegalArgumentException("Path '" + path + "' doesn't exist.");
+			}
+			String firstChild = map.ceilingKey(path + "/");
+			if (firstChild != null && firstChild.startsWith(path + "/")) {
+				throw new IllegalArgumentException("Directory not empty for '" + path + "'");
+			}
+			return map.remove(path);
+		});
+	}
+
+	/**
+	 * Scans the keys that start with the path of the node and skips the descendants of each
+	 * child it finds, so the time depends on the number of children rather than descendants.
+	 * Children are returned in the order of their names.
+	 */
+	@Override
+	public List<String> getChildren(String path) throws IllegalArgumentException {
+		List<String> children = read(map -> {
+			if (!ROOT.equals(path) && !map.containsKey(path)) {
+				return null;
+			}
+			String prefix = path + "/";
+			List<String> names = new ArrayList<String>();
+			String key = map.ceilingKey(prefix);
+			while (key != null && key.startsWith(prefix)) {
+				int separator = key.indexOf('/', prefix.length());
+				if (separator < 0) {
+					names.add(key.substring(prefix.length()));
+					key = map.higherKey(key);
+				} else {
+					key = map.ceilingKey(key.substring(0, separator) + AFTER_SEPARATOR);
+				}
+			}
+			return names;
+		});
+		if (children == null) {
+			throw new IllegalArgumentException("Intermediate node in path '" + path + "' does not exist.");
+		}
+		return children;
+	}
+
+	@Override
+	public boolean exists(String path) {
+		return read(map -> map.containsKey(path));
+	}
+
+	/**
+	 * @return the number of stored nodes
+	 */
+	public long size() {
+		return read(map -> map.sizeAsLong());
+	}
+
+	/**
+	 * Writes all changes to the file and closes it.
+	 */
+	public void close() {
+		transactions.close();
+		store.close();
+	}
+
+	private void add(TransactionMap<String, String> map, String path, String data) {
+		if (map.containsKey(path)) {
+			throw new IllegalArgumentException("Path '" + path + "' already exists.");
+		}
+		String parent = parentOf(path);
+		if (!ROOT.equals(parent) && !map.containsKey(parent)) {
+			throw new IllegalArgumentException("Intermediate node in path '" + path + "' does not exist.");
+		}
+		map.put(path, data);
+	}
+
+	private <T> T read(Function<TransactionMap<String, String>, T> operation) {
+		Transaction transaction = transactions.begin();
+		try {
+			return operation.apply(nodes.getInstance(transaction));
+		} finally {
+			transaction.commit();
+		}
+	}
+
+	/**
+	 * Applies the operation in a new transaction and commits it, or rolls it back if the
+	 * operation throws an exception.
+	 */
+	private synchronized <T> T write(Function<TransactionMap<String, String>, T> operation) {
+		Transaction transaction = transactions.begin();
+		try {
+			T result = operation.apply(nodes.getInstance(transaction));
+			transaction.commit();
+			if (commitDelay == 0) {
+				store.commit();
+			}
+			return result;
+		} finally {
+			if (transaction.getStatus() == Transaction.STATUS_OPEN) {
+				transaction.rollback();
+			}
+		}
+	}
+
+	private static String parentOf(String path) {
+		int index = path.lastIndexOf('/');
+		return index <= 0 ? ROOT : path.substring(0, index);
+	}
+
+}
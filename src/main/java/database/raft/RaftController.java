@@ -0,0 +1,137 @@
+package database.raft;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import database.IControllable;
+import database.raft.RaftEntry.Kind;
+
+/**
+ * An {@link IControllable} whose data storage is replicated by a {@link RaftNode} across
+ * several naming service processes, so that the naming service stays available as long as a
+ * majority of them is running, without an external ZooKeeper ensemble.
+ *
+ * Writes are committed to the replicated log and return once this replica applied them,
+ * including failures such as an already existing node. Reads are linearizable: they are served
+ * from the local copy of the data storage, by the leader while it holds its lease and by
+ * followers once they applied the leader's commit index. Operations that cannot be completed
+ * within the request timeout of the replica, e.g., because no majority is reachable, fail with
+ * an {@link IllegalStateException}.
+ *
+ * @author jonathanhasenburg
+ *
+ */
+public class RaftController implements IControllable {
+
+	private final RaftNode node;
+
+	/**
+	 * Creates a controller, the replica must be started separately.
+	 *
+	 * @param node The replica
+	 */
+	public RaftController(RaftNode node) {
+		this.node = node;
+	}
+
+	@Override
+	public void addNode(String path, String data) throws IllegalArgumentException, InterruptedException {
+		write(new RaftEntry(Kind.ADD, path, data));
+	}
+
+	@Override
+	public String readNode(String path) throws IllegalArgumentException, InterruptedException {
+		node.awaitReadable();
+		return node.getState().readNode(path);
+	}
+
+	@Override
+	public void updateNode(String path, String data) throws IllegalArgumentException, InterruptedException {
+		write(new RaftEntry(Kind.UPDATE, path, data));
+	}
+
+	@Override
+	public void deleteNodeRecursive(String path) throws IOException {
+		try {
+			node.propose(new RaftEntry(Kind.DELETE_RECURSIVE, path, null));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while deleting " + path, e);
+		}
+	}
+
+	@Override
+	public void deleteNode(String path) throws IllegalArgumentException, InterruptedException {
+		write(new RaftEntry(Kind.DELETE, path, null));
+	}
+
+	@Override
+	public List<String> getChildren(String path) throws IllegalArgumentException, InterruptedException {
+		node.awaitReadable();
+		return node.getState().getChildren(path);
+	}
+
+	@Override
+	public boolean exists(String path) throws IllegalArgumentException, InterruptedException {
+		node.awaitReadable();
+		return node.getState().exists(path);
+	}
+
+	/**
+	 * Adds all nodes with a single entry, so the batch is committed with one round trip.
+	 */
+	@Override
+	public void addNodes(Map<String, String> nodes) throws IllegalArgumentException, InterruptedException {
+		RaftEntry entry = new RaftEntry(Kind.ADD_ALL, null, null);
+		entry.setNodes(new LinkedHashMap<String, String>(nodes));
+		write(entry);
+	}
+
+	/**
+	 * Adds all absent nodes with a single entry, so the batch is committed with one round trip.
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public List<String> addNodesIfAbsent(List<String> paths, String data) throws IllegalArgumentException, InterruptedException {
+		RaftEntry entry = new RaftEntry(Kind.ADD_IF_ABSENT, null, data);
+		entry.setPaths(new ArrayList<String>(paths));
+		return (List<String>) write(entry);
+	}
+
+	/**
+	 * Compares and updates the node with a single entry, so the comparison is applied by every
+	 * replica in log order and concurrent updates of other replicas cannot be overwritten.
+	 */
+	@Override
+	public boolean updateNodeIfUnchanged(String path, String expectedData, String data) throws IllegalArgumentException, InterruptedException {
+		RaftEntry entry = new RaftEntry(Kind.UPDATE_IF_UNCHANGED, path, data);
+		entry.setExpectedData(expectedData);
+		return (Boolean) write(entry);
+	}
+
+	/**
+	 * @return the replica of this controller
+	 */
+	public RaftNode getNode() {
+		return node;
+	}
+
+	/**
+	 * Stops the replica.
+	 */
+	public void close() {
+		node.stop();
+	}
+
+	private Object write(RaftEntry entry) throws InterruptedException {
+		try {
+			return node.propose(entry);
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not apply " + entry.getKind(), e);
+		}
+	}
+
+}
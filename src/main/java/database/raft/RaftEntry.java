@@ -0,0 +1,197 @@
+package database.raft;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import database.IControllable;
+import model.JSONable;
+
+/**
+ * An entry of the replicated log of a {@link RaftNode}. Each entry describes one write
+ * operation of an {@link IControllable}, which every replica applies to its copy of the data
+ * storage once the entry is committed.
+ *
+ * @author jonathanhasenburg
+ *
+ */
+public class RaftEntry implements JSONable {
+
+	public enum Kind {
+		/**
+		 * Appended by every new leader, so that it can commit the entries of earlier terms
+		 */
+		NOOP,
+		ADD, UPDATE, DELETE, DELETE_RECURSIVE, ADD_ALL, ADD_IF_ABSENT,
+		/**
+		 * Updates the node only if it has the expected data when the entry is applied
+		 */
+		UPDATE_IF_UNCHANGED,
+		/**
+		 * Never appended to the log, reported to the replicated entry listener after a snapshot
+		 * of the leader replaced the local copy of the data storage
+		 */
+		SNAPSHOT
+	}
+
+	private long term;
+	private long index;
+
+	/**
+	 * The replica that proposed the entry and the ID of its request, the proposing replica
+	 * reports the result of applying the entry to its caller
+	 */
+	private String origin;
+	private long requestId;
+
+	private Kind kind;
+	private String path;
+	private String data;
+
+	/**
+	 * The data an UPDATE_IF_UNCHANGED entry expects
+	 */
+	private String expectedData;
+
+	/**
+	 * The paths of ADD_IF_ABSENT entries
+	 */
+	private List<String> paths;
+
+	/**
+	 * The nodes of ADD_ALL entries, in the order they are added
+	 */
+	private Map<String, String> nodes;
+
+	public RaftEntry() {
+
+	}
+
+	public RaftEntry(Kind kind, String path, String data) {
+		this.kind = kind;
+		this.path = path;
+		this.data = data;
+	}
+
+	/**
+	 * Applies the operation of the entry to a data storage. All replicas apply the same entries
+	 * in the same order, so they reach the same state and the same result.
+	 *
+	 * @param controller The data storage
+	 * @return the result of the operation, null if it has none
+	 * @throws IllegalArgumentException as thrown by the data storage
+	 * @throws IOException as thrown by the data storage
+	 * @throws InterruptedException
+	 */
+	public Object applyTo(IControllable controller) throws IOException, InterruptedException {
+		switch (kind) {
+		case ADD:
+			controller.addNode(path, data);
+			return null;
+		case UPDATE:
+			controller.updateNode(path, data);
+			return null;
+		case DELETE:
+			controller.deleteNode(path);
+			return null;
+		case DELETE_RECURSIVE:
+			controller.deleteNodeRecursive(path);
+			return null;
+		case ADD_ALL:
+			controller.addNodes(nodes);
+			return null;
+		case ADD_IF_ABSENT:
+			return controller.addNodesIfAbsent(paths, data);
+		case UPDATE_IF_UNCHANGED:
+			return controller.updateNodeIfUnchanged(path, expectedData, data);
+		default:
+			return null;
+		}
+	}
+
+	public long getTerm() {
+		return term;
+	}
+
+	public void setTerm(long term) {
+		this.term = term;
+	}
+
+	public long getIndex() {
+		return index;
+	}
+
+	public void setIndex(long index) {
+		this.index = index;
+	}
+
+	public String getOrigin() {
+		return origin;
+	}
+
+	public void setOrigin(String origin) {
+		this.origin = origin;
+	}
+
+	public long getRequestId() {
+		return requestId;
+	}
+
+	public void setRequestId(long requestId) {
+		this.requestId = requestId;
+	}
+
+	public Kind getKind() {
+		return kind;
+	}
+
+	public void setKind(Kind kind) {
+		this.kind = kind;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	public void setPath(String path) {
+		this.path = path;
+	}
+
+	public String getData() {
+		return data;
+	}
+
+	public void setData(String data) {
+		this.data = data;
+	}
+
+	public String getExpectedData() {
+		return expectedData;
+	}
+
+	public void setExpectedData(String expectedData) {
+		this.expectedData = expectedData;
+	}
+
+	public List<String> getPaths() {
+		return paths;
+	}
+
+	public void setPaths(List<String> paths) {
+		this.paths = paths;
+	}
+
+	public Map<String, String> getNodes() {
+		return nodes;
+	}
+
+	public void setNodes(Map<String, String> nodes) {
+		this.nodes = nodes;
+	}
+
+	@Override
+	public String toString() {
+		return index + "@" + term + " " + kind + (path != null ? " " + path : "");
+	}
+
+}
@@ -0,0 +1,391 @@
+package database.raft;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.log4j.Logger;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+
+import model.JSONable;
+
+/**
+ * The persistent log of a {@link RaftNode}, stored in a directory. Entries are appended to
+ * the log file as one JSON object per line and kept in memory as well. The current term and
+ * the vote of that term are stored in a separate meta file, which is replaced atomically.
+ *
+ * Appended entries are only durable after {@link #sync()}, so that several entries can be
+ * written with one disk flush. A line that was only partially written before a crash is
+ * dropped when the log is opened.
+ *
+ * The log is compacted by storing a snapshot of the data storage at an applied index in a
+ * snapshot file, which is replaced atomically, and removing all entries up to that index.
+ * The snapshot file holds the last entry it includes in its first line and the nodes by path
+ * in its second line. Entries the snapshot includes are skipped when the log is opened, in
+ * case the log file was not rewritten after the snapshot was stored.
+ *
+ * @author jonathanhasenburg
+ *
+ */
+public class RaftLog {
+
+	private static Logger logger = Logger.getLogger(RaftLog.class.getName());
+
+	private static final String LOG_FILE = "log";
+	private static final String META_FILE = "meta";
+	private static final String SNAPSHOT_FILE = "snapshot";
+
+	private final File logFile;
+	private final File metaFile;
+	private final File snapshotFile;
+
+	/**
+	 * The entry with index i is at position i - snapshotIndex - 1
+	 */
+	private final List<RaftEntry> entries = new ArrayList<RaftEntry>();
+
+	/**
+	 * Index and term of the last entry included in the snapshot, 0 if there is no snapshot
+	 */
+	private long snapshotIndex = 0;
+	private long snapshotTerm = 0;
+
+	private long currentTerm = 0;
+	private int votedFor = -1;
+
+	private FileOutputStream stream;
+	private Writer writer;
+
+	/**
+	 * Opens the log stored in a directory, the directory is created if it does not exist.
+	 *
+	 * @param directory The directory
+	 * @throws IOException if the log cannot be read
+	 */
+	public RaftLog(File directory) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Cannot create raft directory " + directory);
+		}
+		logFile = new File(directory, LOG_FILE);
+		metaFile = new File(directory, META_FILE);
+		snapshotFile = new File(directory, SNAPSHOT_FILE);
+
+		if (metaFile.exists()) {
+			Properties meta = new Properties();
+			try (FileInputStream in = new FileInputStream(metaFile)) {
+				meta.load(in);
+			}
+			currentTerm = Long.parseLong(meta.getProperty("term", "0"));
+			votedFor = Integer.parseInt(meta.getProperty("votedFor", "-1"));
+		}
+
+		if (snapshotFile.exists()) {
+			try (BufferedReader reader = openReader(snapshotFile)) {
+				RaftEntry last = JSONable.fromJSON(reader.readLine(), RaftEntry.class);
+				snapshotIndex = last.getIndex();
+				snapshotTerm = last.getTerm();
+			}
+		}
+
+		boolean rewrite = false;
+		if (logFile.exists()) {
+			try (BufferedReader reader = openReader(logFile)) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					RaftEntry entry = line.isEmpty() ? null : JSONable.fromJSON(line, RaftEntry.class);
+					if (entry != null && entry.getIndex() <= snapshotIndex) {
+						// included in the snapshot, the log was not rewritten afterwards
+						rewrite = true;
+						if (entry.getIndex() == snapshotIndex && entry.getTerm() != snapshotTerm) {
+							// the snapshot of a leader replaced a conflicting log
+							logger.warn("Dropping entries conflicting with the snapshot of " + logFile);
+							break;
+						}
+						continue;
+					}
+					if (entry == null || entry.getIndex() != lastIndex() + 1) {
+						logger.warn("Dropping incomplete entries after index " + lastIndex()
+								+ " of " + logFile);
+						rewrite = true;
+						break;
+					}
+					entries.add(entry);
+				}
+			}
+		}
+		if (rewrite) {
+			rewrite();
+		} else {
+			open();
+		}
+		logger.info("Opened raft log with snapshot at index " + snapshotIndex + " and "
+				+ entries.size() + " entries, term " + currentTerm);
+	}
+
+	/**
+	 * @return the index of the last entry, 0 if the log is empty
+	 */
+	public long lastIndex() {
+		return snapshotIndex + entries.size();
+	}
+
+	/**
+	 * @return the index of the last entry included in the snapshot, 0 if there is none
+	 */
+	public long snapshotIndex() {
+		return snapshotIndex;
+	}
+
+	/**
+	 * @return the term of the last entry, 0 if the log is empty
+	 */
+	public long lastTerm() {
+		return termAt(lastIndex());
+	}
+
+	/**
+	 * @param index The index of an entry, not below the snapshot index
+	 * @return the term of the entry, 0 for index 0
+	 */
+	public long termAt(long index) {
+		return index == snapshotIndex ? snapshotTerm : get(index).getTerm();
+	}
+
+	/**
+	 * @param index The index of an entry after the snapshot index
+	 * @return the entry
+	 * @throws IllegalArgumentException if the entry is included in the snapshot
+	 */
+	public RaftEntry get(long index) {
+		if (index <= snapshotIndex) {
+			throw new IllegalArgumentException("Entry " + index + " is included in the snapshot at "
+					+ snapshotIndex);
+		}
+		return entries.get((int) (index - snapshotIndex - 1));
+	}
+
+	/**
+	 * Returns consecutive entries.
+	 *
+	 * @param index The index of the first entry, after the snapshot index
+	 * @param max The maximum number of entries
+	 * @return the entries, empty if the log has no entry with the given index
+	 */
+	public List<RaftEntry> entriesFrom(long index, int max) {
+		if (index > lastIndex()) {
+			return new ArrayList<RaftEntry>();
+		}
+		int from = (int) (index - snapshotIndex - 1);
+		return new ArrayList<RaftEntry>(entries.subList(from, Math.min(entries.size(), from + max)));
+	}
+
+	/**
+	 * Appends entries, their indices must continue the log. The entries are durable after the
+	 * next {@link #sync()}.
+	 *
+	 * @param appended The entries
+	 * @throws IOException
+	 */
+	public void append(List<RaftEntry> appended) throws IOException {
+		for (RaftEntry entry : appended) {
+			if (entry.getIndex() != lastIndex() + 1) {
+				throw new IllegalArgumentException("Entry " + entry + " does not continue log at "
+						+ lastIndex());
+			}
+			writer.write(JSONable.toJSON(entry));
+			writer.write('\n');
+			entries.add(entry);
+		}
+	}
+
+	/**
+	 * Makes all appended entries durable.
+	 *
+	 * @throws IOException
+	 */
+	public void sync() throws IOException {
+		writer.flush();
+		stream.getChannel().force(false);
+	}
+
+	/**
+	 * Removes the entry with the given index and all following entries, e.g., because they
+	 * conflict with the log of a new leader. The log file is rewritten, so this is expensive.
+	 *
+	 * @param index The index of the first removed entry, after the snapshot index
+	 * @throws IOException
+	 */
+	public void truncateFrom(long index) throws IOException {
+		if (index > lastIndex()) {
+			return;
+		}
+		logger.info("Removing raft log entries from index " + index + " to " + lastIndex());
+		entries.subList((int) (index - snapshotIndex - 1), entries.size()).clear();
+		writer.close();
+		rewrite();
+	}
+
+	/**
+	 * Stores a snapshot of the data storage after applying the entry with the given index and
+	 * removes that entry and all entries before it. The log file is rewritten, so this should
+	 * only happen every few thousand entries.
+	 *
+	 * @param index The index of the last applied entry
+	 * @param nodes The nodes of the data storage by path after applying the entry
+	 * @throws IOException
+	 */
+	public void compact(long index, Map<String, String> nodes) throws IOException {
+		if (index <= snapshotIndex) {
+			return;
+		}
+		RaftEntry last = get(index);
+		writeSnapshot(last, nodes);
+		entries.subList(0, (int) (index - snapshotIndex)).clear();
+		snapshotIndex = index;
+		snapshotTerm = last.getTerm();
+		writer.close();
+		rewrite();
+		logger.info("Compacted raft log up to index " + index + ", " + entries.size()
+				+ " entries remain");
+	}
+
+	/**
+	 * Replaces the log up to the given entry with a snapshot received from the leader. The
+	 * following entries are kept if the log contains the given entry, otherwise all entries
+	 * are removed.
+	 *
+	 * @param index The index of the last entry included in the snapshot
+	 * @param term The term of that entry
+	 * @param nodes The nodes of the data storage by path after applying that entry
+	 * @throws IOException
+	 */
+	public void installSnapshot(long index, long term, Map<String, String> nodes) throws IOException {
+		RaftEntry last = new RaftEntry(RaftEntry.Kind.NOOP, null, null);
+		last.setIndex(index);
+		last.setTerm(term);
+		writeSnapshot(last, nodes);
+		if (index <= lastIndex() && termAt(index) == term) {
+			entries.subList(0, (int) (index - snapshotIndex)).clear();
+		} else {
+			entries.clear();
+		}
+		snapshotIndex = index;
+		snapshotTerm = term;
+		writer.close();
+		rewrite();
+		logger.info("Installed raft snapshot at index " + index + ", " + entries.size()
+				+ " entries remain");
+	}
+
+	/**
+	 * @return the nodes of the data storage by path stored with the snapshot, empty if there is
+	 *         no snapshot
+	 * @throws IOException if the snapshot cannot be read
+	 */
+	public Map<String, String> readSnapshot() throws IOException {
+		if (snapshotIndex == 0) {
+			return new HashMap<String, String>();
+		}
+		try (BufferedReader reader = openReader(snapshotFile)) {
+			reader.readLine();
+			return JSONable.fromJSON(reader.readLine(), new TypeReference<Map<String, String>>() {});
+		}
+	}
+
+	public long getCurrentTerm() {
+		return currentTerm;
+	}
+
+	/**
+	 * @return the replica voted for in the current term, -1 if none
+	 */
+	public int getVotedFor() {
+		return votedFor;
+	}
+
+	/**
+	 * Durably stores the current term and the vote of that term.
+	 *
+	 * @param term The current term
+	 * @param votedFor The replica voted for in the term, -1 if none
+	 * @throws IOException
+	 */
+	public void setTermAndVote(long term, int votedFor) throws IOException {
+		Properties meta = new Properties();
+		meta.setProperty("term", String.valueOf(term));
+		meta.setProperty("votedFor", String.valueOf(votedFor));
+
+		File temp = new File(metaFile.getParentFile(), META_FILE + ".tmp");
+		try (FileOutputStream out = new FileOutputStream(temp)) {
+			meta.store(out, null);
+			out.getChannel().force(true);
+		}
+		Files.move(temp.toPath(), metaFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		this.currentTerm = term;
+		this.votedFor = votedFor;
+	}
+
+	public void close() throws IOException {
+		writer.close();
+	}
+
+	private void writeSnapshot(RaftEntry last, Map<String, String> nodes) throws IOException {
+		File temp = new File(snapshotFile.getParentFile(), SNAPSHOT_FILE + ".tmp");
+		try (FileOutputStream out = new FileOutputStream(temp)) {
+			Writer tempWriter = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+			tempWriter.write(JSONable.toJSON(last));
+			tempWriter.write('\n');
+			tempWriter.write(JSONable.toJSON(nodes));
+			tempWriter.write('\n');
+			tempWriter.flush();
+			out.getChannel().force(true);
+		}
+		Files.move(temp.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static BufferedReader openReader(File file) throws IOException {
+		return new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Replaces the log file with the entries held in memory.
+	 */
+	private void rewrite() throws IOException {
+		File temp = new File(logFile.getParentFile(), LOG_FILE + ".tmp");
+		try (FileOutputStream out = new FileOutputStream(temp)) {
+			Writer tempWriter = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+			for (RaftEntry entry : entries) {
+				tempWriter.write(JSONable.toJSON(entry));
+				tempWriter.write('\n');
+			}
+			tempWriter.flush();
+			out.getChannel().force(true);
+		}
+		Files.move(temp.toPath(), logFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		open();
+	}
+
+	private void open() throws IOException {
+		stream = new FileOutputStream(logFile, true);
+		writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+	}
+
+}
@@ -0,0 +1,221 @@
+package database.raft;
+
+import java.util.List;
+import java.util.Map;
+
+import model.JSONable;
+
+/**
+ * A message exchanged by the replicas of a {@link RaftNode}. All messages are one-way, replies
+ * are separate messages, so a replica can send further messages before receiving a reply.
+ * Which fields are set depends on the type.
+ *
+ * @author jonathanhasenburg
+ *
+ */
+public class RaftMessage implements JSONable {
+
+	public enum Type {
+		/**
+		 * Entries and commit index sent by the leader, also used as heartbeat
+		 */
+		APPEND, APPEND_RESPONSE,
+		/**
+		 * A snapshot of the data storage sent by the leader instead of entries it removed from
+		 * its log, the follower answers with an APPEND_RESPONSE
+		 */
+		INSTALL_SNAPSHOT,
+		VOTE, VOTE_RESPONSE,
+		/**
+		 * An entry proposed by a follower, appended by the leader
+		 */
+		PROPOSE,
+		/**
+		 * Asks the leader for its commit index, the follower may serve reads once it applied
+		 * the entries up to that index
+		 */
+		READ_INDEX, READ_INDEX_RESPONSE
+	}
+
+	private Type type;
+	private long term;
+	private int from;
+
+	// APPEND, INSTALL_SNAPSHOT
+	/**
+	 * The entry before the sent entries, or the last entry included in a snapshot
+	 */
+	private long prevIndex;
+	private long prevTerm;
+	private List<RaftEntry> entries;
+	private long commitIndex;
+
+	/**
+	 * The nodes of the data storage by path after applying the entry at prevIndex
+	 */
+	private Map<String, String> snapshot;
+
+	/**
+	 * Time the leader sent an APPEND or INSTALL_SNAPSHOT, returned with the response to extend the leader's lease
+	 */
+	private long sendTime;
+
+	// APPEND_RESPONSE, VOTE_RESPONSE
+	private boolean success;
+
+	/**
+	 * The index of the last entry matching the leader's log, or a hint where to continue if
+	 * an APPEND was rejected
+	 */
+	private long matchIndex;
+
+	// VOTE
+	private long lastLogIndex;
+	private long lastLogTerm;
+
+	// PROPOSE
+	private RaftEntry entry;
+
+	// READ_INDEX, READ_INDEX_RESPONSE
+	private long requestId;
+	private long readIndex;
+
+	public RaftMessage() {
+
+	}
+
+	public RaftMessage(Type type, long term, int from) {
+		this.type = type;
+		this.term = term;
+		this.from = from;
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	public void setType(Type type) {
+		this.type = type;
+	}
+
+	public long getTerm() {
+		return term;
+	}
+
+	public void setTerm(long term) {
+		this.term = term;
+	}
+
+	public int getFrom() {
+		return from;
+	}
+
+	public void setFrom(int from) {
+		this.from = from;
+	}
+
+	public long getPrevIndex() {
+		return prevIndex;
+	}
+
+	public void setPrevIndex(long prevIndex) {
+		this.prevIndex = prevIndex;
+	}
+
+	public long getPrevTerm() {
+		return prevTerm;
+	}
+
+	public void setPrevTerm(long prevTerm) {
+		this.prevTerm = prevTerm;
+	}
+
+	public List<RaftEntry> getEntries() {
+		return entries;
+	}
+
+	public void setEntries(List<RaftEntry> entries) {
+		this.entries = entries;
+	}
+
+	public Map<String, String> getSnapshot() {
+		return snapshot;
+	}
+
+	public void setSnapshot(Map<String, String> snapshot) {
+		this.snapshot = snapshot;
+	}
+
+	public long getCommitIndex() {
+		return commitIndex;
+	}
+
+	public void setCommitIndex(long commitIndex) {
+		this.commitIndex = commitIndex;
+	}
+
+	public long getSendTime() {
+		return sendTime;
+	}
+
+	public void setSendTime(long sendTime) {
+		this.sendTime = sendTime;
+	}
+
+	public boolean isSuccess() {
+		return success;
+	}
+
+	public void setSuccess(boolean success) {
+		this.success = success;
+	}
+
+	public long getMatchIndex() {
+		return matchIndex;
+	}
+
+	public void setMatchIndex(long matchIndex) {
+		this.matchIndex = matchIndex;
+	}
+
+	public long getLastLogIndex() {
+		return lastLogIndex;
+	}
+
+	public void setLastLogIndex(long lastLogIndex) {
+		this.lastLogIndex = lastLogIndex;
+	}
+
+	public long getLastLogTerm() {
+		return lastLogTerm;
+	}
+
+	public void setLastLogTerm(long lastLogTerm) {
+		this.lastLogTerm = lastLogTerm;
+	}
+
+	public RaftEntry getEntry() {
+		return entry;
+	}
+
+	public void setEntry(RaftEntry entry) {
+		this.entry = entry;
+	}
+
+	public long getRequestId() {
+		return requestId;
+	}
+
+	public void setRequestId(long requestId) {
+		this.requestId = requestId;
+	}
+
+	public long getReadIndex() {
+		return readIndex;
+	}
+
+	public void setReadIndex(long readIndex) {
+		this.readIndex = readIndex;
+	}
+
+}
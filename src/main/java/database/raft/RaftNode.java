@@ -0,0 +1,872 @@
+package database.raft;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.apache.log4j.Logger;
+import org.zeromq.ZMQ;
+import org.zeromq.ZMQ.Context;
+import org.zeromq.ZMQ.Socket;
+
+import database.IControllable;
+import database.memory.InMemoryController;
+import database.raft.RaftEntry.Kind;
+import database.raft.RaftMessage.Type;
+import model.JSONable;
+
+/**
+ * A replica of a data storage that is replicated with the Raft consensus algorithm across
+ * three or five naming service processes. Writes are appended to the replicated log by the
+ * leader and applied by every replica to its in-memory copy of the data storage once a
+ * majority stored them. The copy is rebuilt from the persistent {@link RaftLog} on restart.
+ *
+ * Every few thousand applied entries, a replica stores a snapshot of its copy and removes the
+ * entries the snapshot includes from its log, so a restart only applies the entries after the
+ * snapshot. A follower that needs entries the leader removed receives a snapshot of the copy
+ * of the leader instead, which replaces its own copy. Writes of a follower that are included
+ * in such a snapshot are reported as not committed within the request timeout.
+ *
+ * Replicas exchange one-way messages: each replica binds a ZMQ PULL socket at its address
+ * and pushes messages to the other replicas without waiting for replies. This allows the
+ * leader to pipeline replication, i.e., to send further entries to a follower before the
+ * previous ones are acknowledged, up to a window of entries in flight. If a follower rejects
+ * entries, e.g., because a message was dropped, the leader continues at the index the
+ * follower returned. Proposed writes are batched, all writes proposed since the last round
+ * are appended with a single disk flush.
+ *
+ * Reads are served from the local copy once it is up to date. The leader holds a lease while
+ * a majority acknowledged its messages within the last 90% of the minimum election timeout;
+ * followers do not vote for another replica while they hear from a leader, so no other leader
+ * can be elected while the lease is valid and the leader serves reads without contacting the
+ * followers. Followers ask the leader for its commit index and wait until they applied it.
+ * Leases assume that the clocks of the replicas advance at roughly the same rate.
+ *
+ * Messages are neither signed nor encrypted, so replicas must communicate via a trusted
+ * network.
+ *
+ * @author jonathanhasenburg
+ *
+ */
+public class RaftNode {
+
+	private static Logger logger = Logger.getLogger(RaftNode.class.getName());
+
+	public enum Role {
+		FOLLOWER, CANDIDATE, LEADER
+	}
+
+	/**
+	 * Milliseconds the raft thread waits for messages before checking its timers and sending
+	 * proposed entries
+	 */
+	private static final int tickMillis = 2;
+
+	/**
+	 * Maximum number of entries per append message
+	 */
+	private static final int maxBatchSize = 500;
+
+	/**
+	 * Maximum number of entries sent to a follower but not acknowledged yet
+	 */
+	private static final int maxInFlight = 5000;
+
+	/**
+	 * Maximum number of messages queued for a replica, further messages are dropped
+	 */
+	private static final int sendHighWaterMark = 1000;
+
+	/**
+	 * Maximum number of received messages processed before the timers are checked
+	 */
+	private static final int maxMessagesPerTick = 1000;
+
+	private final int id;
+	private final List<String> peers;
+	private final int majority;
+	private final RaftLog log;
+	private final int snapshotInterval;
+	private final long electionTimeoutNanos;
+	private final long heartbeatNanos;
+	private final long leaseNanos;
+	private final long requestTimeout;
+
+	/**
+	 * Identifies entries proposed by this incarnation of the replica
+	 */
+	private final String origin;
+
+	/**
+	 * Informed about each entry of other replicas after it was applied, null if none
+	 */
+	private volatile Consumer<RaftEntry> replicatedEntryListener;
+
+	private final AtomicLong requestIds = new AtomicLong();
+	private final Queue<RaftEntry> proposals = new ConcurrentLinkedQueue<RaftEntry>();
+	private final Map<Long, CompletableFuture<Object>> pendingProposals = new ConcurrentHashMap<Long, CompletableFuture<Object>>();
+	private final Map<Long, CompletableFuture<Long>> pendingReads = new ConcurrentHashMap<Long, CompletableFuture<Long>>();
+
+	/**
+	 * The ID of the latest read waiting for the commit index of the leader
+	 */
+	private final AtomicLong readRequested = new AtomicLong();
+
+	/**
+	 * The local copy of the data storage, replaced when a snapshot of the leader is installed
+	 */
+	private volatile InMemoryController state = new InMemoryController();
+
+	// guarded by this
+	private Role role = Role.FOLLOWER;
+	private int leader = -1;
+	private long commitIndex = 0;
+	private long lastApplied = 0;
+	private long electionDeadline;
+	private long lastLeaderContact;
+	private long readSent = 0;
+	private final Set<Integer> votes = new HashSet<Integer>();
+
+	// leader state, guarded by this
+	private long termStartIndex;
+	private final long[] nextIndex;
+	private final long[] matchIndex;
+	private final long[] lastSendTime;
+	private final long[] ackedSendTime;
+	private final long[] rewindTime;
+
+	private Context context;
+	private Socket inbox;
+	private Socket[] outboxes;
+	private Thread thread;
+	private volatile boolean running;
+
+	/**
+	 * Creates a replica, its snapshot and log are read from the given directory.
+	 *
+	 * @param id The position of this replica in the list of replicas
+	 * @param peers The addresses of all replicas, e.g., tcp://localhost:54340
+	 * @param directory The directory of the persistent log of this replica
+	 * @param snapshotInterval The number of applied entries after which the log is compacted
+	 * @param electionTimeout The minimum number of milliseconds without messages from a leader
+	 *            before a follower starts an election, the actual timeout is up to twice as
+	 *            long
+	 * @param heartbeatInterval The maximum number of milliseconds between two messages of the
+	 *            leader to a follower, must be well below the election timeout
+	 * @param requestTimeout The maximum number of milliseconds to wait for a write being
+	 *            committed or a read being possible
+	 * @throws IOException if the log cannot be read
+	 */
+	public RaftNode(int id, List<String> peers, File directory, int snapshotInterval,
+			long electionTimeout, long heartbeatInterval, long requestTimeout) throws IOException {
+		if (id < 0 || id >= peers.size()) {
+			throw new IllegalArgumentException("Raft index " + id + " is not in the list of "
+					+ peers.size() + " replicas");
+		}
+		if (snapshotInterval < 1) {
+			throw new IllegalArgumentException("Raft snapshot interval must be positive, is "
+					+ snapshotInterval);
+		}
+		this.id = id;
+		this.peers = Collections.unmodifiableList(new ArrayList<String>(peers));
+		this.majority = peers.size() / 2 + 1;
+		this.log = new RaftLog(directory);
+		this.snapshotInterval = snapshotInterval;
+		if (log.snapshotIndex() > 0) {
+			state = restore(log.readSnapshot());
+			commitIndex = lastApplied = log.snapshotIndex();
+		}
+		this.electionTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(electionTimeout);
+		this.heartbeatNanos = TimeUnit.MILLISECONDS.toNanos(heartbeatInterval);
+		this.leaseNanos = electionTimeoutNanos * 9 / 10;
+		this.requestTimeout = requestTimeout;
+		this.origin = id + ":" + ThreadLocalRandom.current().nextLong(Long.MAX_VALUE);
+
+		nextIndex = new long[peers.size()];
+		matchIndex = new long[peers.size()];
+		lastSendTime = new long[peers.size()];
+		ackedSendTime = new long[peers.size()];
+		rewindTime = new long[peers.size()];
+	}
+
+	public void start() {
+		synchronized (this) {
+			// a restarted replica may have acknowledged the lease of the current leader
+			lastLeaderContact = System.nanoTime();
+			resetElectionDeadline(lastLeaderContact);
+		}
+		running = true;
+		thread = new Thread(this::run, "RaftNode-" + id);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops the replica, pending requests fail.
+	 */
+	public void stop() {
+		running = false;
+		if (thread != null) {
+			try {
+				thread.join(1000);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		try {
+			log.close();
+		} catch (IOException e) {
+			logger.error("Could not close raft log", e);
+		}
+		IllegalStateException stopped = new IllegalStateException("Raft replica " + id + " stopped");
+		pendingProposals.values().forEach(f -> f.completeExceptionally(stopped));
+		pendingReads.values().forEach(f -> f.completeExceptionally(stopped));
+	}
+
+	/**
+	 * Appends an entry to the replicated log and blocks until it has been applied by this
+	 * replica. If the timeout expires, the entry may still be applied later.
+	 *
+	 * @param entry The entry, its term, index and origin are set by this method
+	 * @return the result of applying the entry
+	 * @throws IllegalArgumentException if applying the entry failed with it
+	 * @throws IOException if applying the entry failed with it
+	 * @throws IllegalStateException if the entry was not applied within the request timeout
+	 * @throws InterruptedException
+	 */
+	public Object propose(RaftEntry entry) throws IOException, InterruptedException {
+		long requestId = requestIds.incrementAndGet();
+		entry.setOrigin(origin);
+		entry.setRequestId(requestId);
+		CompletableFuture<Object> future = new CompletableFuture<Object>();
+		pendingProposals.put(requestId, future);
+		proposals.add(entry);
+		try {
+			return future.get(requestTimeout, TimeUnit.MILLISECONDS);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IllegalArgumentException) {
+				throw (IllegalArgumentException) e.getCause();
+			} else if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			} else if (e.getCause() instanceof IllegalStateException) {
+				throw (IllegalStateException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		} catch (TimeoutException e) {
+			throw new IllegalStateException(entry.getKind() + " was not committed within "
+					+ requestTimeout + " ms, leader is " + getLeader());
+		} finally {
+			pendingProposals.remove(requestId);
+		}
+	}
+
+	/**
+	 * Blocks until the local copy of the data storage contains all writes committed before
+	 * this method was called, so that reads of the copy are linearizable.
+	 *
+	 * @throws IllegalStateException if no leader confirmed its commit index within the request
+	 *             timeout
+	 * @throws InterruptedException
+	 */
+	public void awaitReadable() throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(requestTimeout);
+		while (System.nanoTime() < deadline) {
+			boolean leading;
+			synchronized (this) {
+				if (role == Role.LEADER && leaseValid(System.nanoTime())) {
+					// the leader applies entries as soon as they are committed
+					return;
+				}
+				leading = role == Role.LEADER;
+			}
+			if (leading) {
+				// waiting for the acknowledgments of the next heartbeats
+				Thread.sleep(tickMillis);
+				continue;
+			}
+
+			long requestId = requestIds.incrementAndGet();
+			CompletableFuture<Long> future = new CompletableFuture<Long>();
+			pendingReads.put(requestId, future);
+			readRequested.accumulateAndGet(requestId, Math::max);
+			try {
+				long readIndex = future.get(Math.min(deadline - System.nanoTime(), 2 * heartbeatNanos),
+						TimeUnit.NANOSECONDS);
+				synchronized (this) {
+					long remaining;
+					while (lastApplied < readIndex && (remaining = deadline - System.nanoTime()) > 0) {
+						TimeUnit.NANOSECONDS.timedWait(this, remaining);
+					}
+					if (lastApplied >= readIndex) {
+						return;
+					}
+				}
+			} catch (TimeoutException e) {
+				// no leader or the request was dropped, asking again
+			} catch (ExecutionException e) {
+				throw (IllegalStateException) e.getCause();
+			} finally {
+				pendingReads.remove(requestId);
+			}
+		}
+		throw new IllegalStateException("Raft replica " + id + " cannot serve reads, leader is "
+				+ getLeader());
+	}
+
+	/**
+	 * @return the local copy of the data storage, it must only be read after
+	 *         {@link #awaitReadable()}
+	 */
+	public IControllable getState() {
+		return state;
+	}
+
+	/**
+	 * Sets the listener that is informed about each entry proposed by another replica, or by
+	 * an earlier incarnation of this replica, after it was applied without failure, and with
+	 * an entry of kind {@link Kind#SNAPSHOT} after a snapshot of the leader replaced the local
+	 * copy. The listener is called by the thread of the replica and must return quickly.
+	 *
+	 * @param listener The listener, null to remove it
+	 */
+	public void setReplicatedEntryListener(Consumer<RaftEntry> listener) {
+		this.replicatedEntryListener = listener;
+	}
+
+	public int getId() {
+		return id;
+	}
+
+	public synchronized Role getRole() {
+		return role;
+	}
+
+	/**
+	 * @return the position of the current leader in the list of replicas, -1 if unknown
+	 */
+	public synchronized int getLeader() {
+		return leader;
+	}
+
+	public synchronized long getTerm() {
+		return log.getCurrentTerm();
+	}
+
+	public synchronized long getCommitIndex() {
+		return commitIndex;
+	}
+
+	public synchronized long getLastApplied() {
+		return lastApplied;
+	}
+
+	/**
+	 * @return the index of the last entry included in the snapshot, 0 if there is none
+	 */
+	public synchronized long getSnapshotIndex() {
+		return log.snapshotIndex();
+	}
+
+	private void run() {
+		context = ZMQ.context(1);
+		inbox = context.socket(ZMQ.PULL);
+		inbox.setLinger(0);
+		inbox.setReceiveTimeOut(tickMillis);
+		String address = peers.get(id);
+		inbox.bind("tcp://*:" + address.substring(address.lastIndexOf(':') + 1));
+		outboxes = new Socket[peers.size()];
+		for (int p = 0; p < peers.size(); p++) {
+			if (p != id) {
+				outboxes[p] = context.socket(ZMQ.PUSH);
+				outboxes[p].setLinger(0);
+				outboxes[p].setSndHWM(sendHighWaterMark);
+				outboxes[p].connect(peers.get(p));
+			}
+		}
+		logger.info("Raft replica " + id + " of " + peers.size() + " listening on " + address);
+
+		try {
+			while (running) {
+				String received = inbox.recvStr();
+				for (int i = 0; received != null && i < maxMessagesPerTick; i++) {
+					RaftMessage message = JSONable.fromJSON(received, RaftMessage.class);
+					if (message != null) {
+						handle(message);
+					}
+					received = inbox.recvStr(ZMQ.DONTWAIT);
+				}
+				tick();
+			}
+		} catch (IOException e) {
+			logger.fatal("Raft log of replica " + id + " not writable, stopping replica", e);
+			running = false;
+		} finally {
+			inbox.close();
+			for (Socket outbox : outboxes) {
+				if (outbox != null) {
+					outbox.close();
+				}
+			}
+			context.term();
+		}
+	}
+
+	private synchronized void handle(RaftMessage message) throws IOException {
+		if (message.getType() != Type.VOTE && message.getTerm() > log.getCurrentTerm()) {
+			becomeFollower(message.getTerm(), -1);
+		}
+		switch (message.getType()) {
+		case APPEND:
+			onAppend(message);
+			break;
+		case APPEND_RESPONSE:
+			onAppendResponse(message);
+			break;
+		case INSTALL_SNAPSHOT:
+			onInstallSnapshot(message);
+			break;
+		case VOTE:
+			onVote(message);
+			break;
+		case VOTE_RESPONSE:
+			onVoteResponse(message);
+			break;
+		case PROPOSE:
+			if (role == Role.LEADER && message.getEntries() != null) {
+				appendAsLeader(message.getEntries());
+			} else {
+				logger.debug("Dropping entries proposed by " + message.getFrom() + ", not leader");
+			}
+			break;
+		case READ_INDEX:
+			if (role == Role.LEADER && leaseValid(System.nanoTime())) {
+				RaftMessage reply = new RaftMessage(Type.READ_INDEX_RESPONSE, log.getCurrentTerm(), id);
+				reply.setRequestId(message.getRequestId());
+				reply.setReadIndex(commitIndex);
+				send(message.getFrom(), reply);
+			}
+			break;
+		case READ_INDEX_RESPONSE:
+			if (message.getTerm() == log.getCurrentTerm()) {
+				for (Map.Entry<Long, CompletableFuture<Long>> read : pendingReads.entrySet()) {
+					// reads requested earlier are served by the same commit index
+					if (read.getKey() <= message.getRequestId()) {
+						read.getValue().complete(message.getReadIndex());
+					}
+				}
+			}
+			break;
+		}
+	}
+
+	private void onAppend(RaftMessage message) throws IOException {
+		RaftMessage reply = new RaftMessage(Type.APPEND_RESPONSE, log.getCurrentTerm(), id);
+		reply.setSendTime(message.getSendTime());
+		if (message.getTerm() < log.getCurrentTerm()) {
+			send(message.getFrom(), reply);
+			return;
+		}
+
+		follow(message);
+
+		long prevIndex = message.getPrevIndex();
+		long prevTerm = message.getPrevTerm();
+		List<RaftEntry> entries = message.getEntries() != null
+				? new ArrayList<RaftEntry>(message.getEntries()) : new ArrayList<RaftEntry>();
+		if (prevIndex < log.snapshotIndex()) {
+			// the entries included in the snapshot are committed, so they match
+			long snapshotIndex = log.snapshotIndex();
+			entries.removeIf(entry -> entry.getIndex() <= snapshotIndex);
+			prevIndex = snapshotIndex;
+			prevTerm = log.termAt(snapshotIndex);
+		}
+		if (prevIndex > log.lastIndex()) {
+			reply.setMatchIndex(log.lastIndex() + 1);
+		} else if (log.termAt(prevIndex) != prevTerm) {
+			// continue with the first entry of the conflicting term
+			long conflictingTerm = log.termAt(prevIndex);
+			long hint = prevIndex;
+			while (hint > commitIndex + 1 && log.termAt(hint - 1) == conflictingTerm) {
+				hint--;
+			}
+			reply.setMatchIndex(hint);
+		} else {
+			List<RaftEntry> fresh = new ArrayList<RaftEntry>();
+			for (RaftEntry entry : entries) {
+				if (fresh.isEmpty() && entry.getIndex() <= log.lastIndex()) {
+					if (log.termAt(entry.getIndex()) == entry.getTerm()) {
+						continue;
+					}
+					log.truncateFrom(entry.getIndex());
+				}
+				fresh.add(entry);
+			}
+			if (!fresh.isEmpty()) {
+				log.append(fresh);
+				log.sync();
+			}
+
+			long match = prevIndex + entries.size();
+			reply.setSuccess(true);
+			reply.setMatchIndex(match);
+			if (message.getCommitIndex() > commitIndex) {
+				commitIndex = Math.max(commitIndex, Math.min(message.getCommitIndex(), match));
+				apply();
+			}
+		}
+		send(message.getFrom(), reply);
+	}
+
+	private void onInstallSnapshot(RaftMessage message) throws IOException {
+		RaftMessage reply = new RaftMessage(Type.APPEND_RESPONSE, log.getCurrentTerm(), id);
+		reply.setSendTime(message.getSendTime());
+		if (message.getTerm() < log.getCurrentTerm()) {
+			send(message.getFrom(), reply);
+			return;
+		}
+		follow(message);
+
+		long index = message.getPrevIndex();
+		if (index > lastApplied) {
+			InMemoryController installed = restore(message.getSnapshot());
+			log.installSnapshot(index, message.getPrevTerm(), message.getSnapshot());
+			state = installed;
+			commitIndex = lastApplied = index;
+			notifyAll();
+			informListener(new RaftEntry(Kind.SNAPSHOT, null, null));
+		}
+		// entries up to the index are committed, so they match the log of the leader
+		reply.setSuccess(true);
+		reply.setMatchIndex(index);
+		send(message.getFrom(), reply);
+	}
+
+	private void follow(RaftMessage message) {
+		if (role != Role.FOLLOWER || leader != message.getFrom()) {
+			logger.info("Raft replica " + id + " follows " + message.getFrom() + " in term "
+					+ message.getTerm());
+			role = Role.FOLLOWER;
+			leader = message.getFrom();
+		}
+		lastLeaderContact = System.nanoTime();
+		resetElectionDeadline(lastLeaderContact);
+	}
+
+	private void onAppendResponse(RaftMessage message) {
+		if (role != Role.LEADER || message.getTerm() != log.getCurrentTerm()) {
+			return;
+		}
+		int p = message.getFrom();
+		ackedSendTime[p] = Math.max(ackedSendTime[p], message.getSendTime());
+		if (message.isSuccess()) {
+			matchIndex[p] = Math.max(matchIndex[p], message.getMatchIndex());
+			nextIndex[p] = Math.max(nextIndex[p], matchIndex[p] + 1);
+			advanceCommit();
+		} else if (message.getSendTime() >= rewindTime[p]) {
+			// rejections of messages sent before the last rewind are outdated
+			nextIndex[p] = Math.max(matchIndex[p] + 1, Math.min(message.getMatchIndex(), nextIndex[p]));
+			rewindTime[p] = System.nanoTime();
+		}
+	}
+
+	private void onVote(RaftMessage message) throws IOException {
+		long now = System.nanoTime();
+		RaftMessage reply = new RaftMessage(Type.VOTE_RESPONSE, log.getCurrentTerm(), id);
+		boolean leaderAlive = role == Role.LEADER || now - lastLeaderContact < electionTimeoutNanos;
+		if (message.getTerm() < log.getCurrentTerm() || leaderAlive) {
+			// rejecting votes while a leader is alive protects its lease
+			send(message.getFrom(), reply);
+			return;
+		}
+
+		if (message.getTerm() > log.getCurrentTerm()) {
+			becomeFollower(message.getTerm(), -1);
+		}
+		boolean upToDate = message.getLastLogTerm() > log.lastTerm()
+				|| (message.getLastLogTerm() == log.lastTerm() && message.getLastLogIndex() >= log.lastIndex());
+		int votedFor = log.getVotedFor();
+		if (upToDate && (votedFor == -1 || votedFor == message.getFrom())) {
+			log.setTermAndVote(log.getCurrentTerm(), message.getFrom());
+			resetElectionDeadline(now);
+			reply.setSuccess(true);
+		}
+		reply.setTerm(log.getCurrentTerm());
+		send(message.getFrom(), reply);
+	}
+
+	private void onVoteResponse(RaftMessage message) throws IOException {
+		if (role == Role.CANDIDATE && message.getTerm() == log.getCurrentTerm() && message.isSuccess()) {
+			votes.add(message.getFrom());
+			if (votes.size() >= majority) {
+				becomeLeader();
+			}
+		}
+	}
+
+	private synchronized void tick() throws IOException {
+		long now = System.nanoTime();
+		if (role != Role.LEADER && now >= electionDeadline) {
+			startElection(now);
+		}
+
+		if (!proposals.isEmpty() && (role == Role.LEADER || leader >= 0)) {
+			List<RaftEntry> batch = new ArrayList<RaftEntry>();
+			RaftEntry entry;
+			while (batch.size() < maxInFlight && (entry = proposals.poll()) != null) {
+				batch.add(entry);
+			}
+			if (role == Role.LEADER) {
+				appendAsLeader(batch);
+			} else {
+				RaftMessage propose = new RaftMessage(Type.PROPOSE, log.getCurrentTerm(), id);
+				propose.setEntries(batch);
+				send(leader, propose);
+			}
+		}
+
+		long requested = readRequested.get();
+		if (requested > readSent && role == Role.FOLLOWER && leader >= 0) {
+			RaftMessage read = new RaftMessage(Type.READ_INDEX, log.getCurrentTerm(), id);
+			read.setRequestId(requested);
+			send(leader, read);
+			readSent = requested;
+		}
+
+		if (role == Role.LEADER) {
+			replicate(now);
+		}
+
+		if (lastApplied - log.snapshotIndex() >= snapshotInterval) {
+			log.compact(lastApplied, state.getNodes());
+		}
+	}
+
+	/**
+	 * Sends new entries to all followers as long as their window of entries in flight allows,
+	 * and heartbeats to followers that did not receive a message within the heartbeat interval.
+	 * Followers that need entries included in the snapshot receive the local copy instead.
+	 */
+	private void replicate(long now) {
+		for (int p = 0; p < peers.size(); p++) {
+			if (p == id) {
+				continue;
+			}
+			boolean sent = false;
+			if (nextIndex[p] <= log.snapshotIndex()) {
+				sendSnapshot(p, now);
+				sent = true;
+			}
+			while (nextIndex[p] <= log.lastIndex() && nextIndex[p] - 1 - matchIndex[p] < maxInFlight) {
+				List<RaftEntry> entries = log.entriesFrom(nextIndex[p], maxBatchSize);
+				sendAppend(p, entries, now);
+				nextIndex[p] += entries.size();
+				sent = true;
+			}
+			if (!sent && now - lastSendTime[p] >= heartbeatNanos) {
+				sendAppend(p, Collections.<RaftEntry> emptyList(), now);
+			}
+		}
+	}
+
+	private void sendAppend(int p, List<RaftEntry> entries, long now) {
+		RaftMessage append = new RaftMessage(Type.APPEND, log.getCurrentTerm(), id);
+		append.setPrevIndex(nextIndex[p] - 1);
+		append.setPrevTerm(log.termAt(nextIndex[p] - 1));
+		append.setEntries(entries);
+		append.setCommitIndex(commitIndex);
+		append.setSendTime(now);
+		send(p, append);
+		lastSendTime[p] = now;
+	}
+
+	private void sendSnapshot(int p, long now) {
+		logger.info("Sending snapshot at index " + lastApplied + " to raft replica " + p
+				+ ", which needs entry " + nextIndex[p]);
+		RaftMessage install = new RaftMessage(Type.INSTALL_SNAPSHOT, log.getCurrentTerm(), id);
+		install.setPrevIndex(lastApplied);
+		install.setPrevTerm(log.termAt(lastApplied));
+		install.setSnapshot(state.getNodes());
+		install.setSendTime(now);
+		send(p, install);
+		lastSendTime[p] = now;
+		nextIndex[p] = lastApplied + 1;
+	}
+
+	private void appendAsLeader(List<RaftEntry> entries) throws IOException {
+		long index = log.lastIndex();
+		for (RaftEntry entry : entries) {
+			entry.setTerm(log.getCurrentTerm());
+			entry.setIndex(++index);
+		}
+		log.append(entries);
+		log.sync();
+		advanceCommit();
+	}
+
+	/**
+	 * Commits the entries stored by a majority, if the last of them is from the current term.
+	 */
+	private void advanceCommit() {
+		long[] matched = matchIndex.clone();
+		matched[id] = log.lastIndex();
+		Arrays.sort(matched);
+		long majorityIndex = matched[peers.size() - majority];
+		if (majorityIndex > commitIndex && log.termAt(majorityIndex) == log.getCurrentTerm()) {
+			commitIndex = majorityIndex;
+			apply();
+			// followers learn the new commit index with the next heartbeat
+			Arrays.fill(lastSendTime, System.nanoTime() - heartbeatNanos);
+		}
+	}
+
+	private void apply() {
+		while (lastApplied < commitIndex) {
+			RaftEntry entry = log.get(++lastApplied);
+			Object result = null;
+			Exception failure = null;
+			try {
+				result = entry.applyTo(state);
+			} catch (Exception e) {
+				// the same failure happens on every replica
+				failure = e;
+			}
+			if (origin.equals(entry.getOrigin())) {
+				CompletableFuture<Object> future = pendingProposals.remove(entry.getRequestId());
+				if (future != null) {
+					if (failure != null) {
+						future.completeExceptionally(failure);
+					} else {
+						future.complete(result);
+					}
+				}
+			} else if (failure == null && entry.getKind() != Kind.NOOP) {
+				informListener(entry);
+			}
+		}
+		notifyAll();
+	}
+
+	private void informListener(RaftEntry entry) {
+		Consumer<RaftEntry> listener = replicatedEntryListener;
+		if (listener != null) {
+			try {
+				listener.accept(entry);
+			} catch (RuntimeException e) {
+				logger.error("Listener failed for entry " + entry, e);
+			}
+		}
+	}
+
+	/**
+	 * @param nodes The nodes of a snapshot by path
+	 * @return a copy of the data storage holding the nodes
+	 */
+	private static InMemoryController restore(Map<String, String> nodes) {
+		InMemoryController restored = new InMemoryController();
+		// parents sort before their children
+		for (Map.Entry<String, String> node : new TreeMap<String, String>(nodes).entrySet()) {
+			restored.addNode(node.getKey(), node.getValue());
+		}
+		return restored;
+	}
+
+	private boolean leaseValid(long now) {
+		if (commitIndex < termStartIndex) {
+			// the leader does not know which entries of earlier terms are committed
+			return false;
+		}
+		if (majority == 1) {
+			return true;
+		}
+		long[] acked = new long[peers.size() - 1];
+		for (int p = 0, i = 0; p < peers.size(); p++) {
+			if (p != id) {
+				acked[i++] = ackedSendTime[p];
+			}
+		}
+		Arrays.sort(acked);
+		// the leader and the followers with the latest acknowledgments form a majority
+		long leaseStart = acked[acked.length - (majority - 1)];
+		return leaseStart != Long.MIN_VALUE && now - leaseStart < leaseNanos;
+	}
+
+	private void startElection(long now) throws IOException {
+		role = Role.CANDIDATE;
+		leader = -1;
+		log.setTermAndVote(log.getCurrentTerm() + 1, id);
+		votes.clear();
+		votes.add(id);
+		resetElectionDeadline(now);
+		logger.info("Raft replica " + id + " starts election for term " + log.getCurrentTerm());
+		if (votes.size() >= majority) {
+			becomeLeader();
+			return;
+		}
+
+		RaftMessage vote = new RaftMessage(Type.VOTE, log.getCurrentTerm(), id);
+		vote.setLastLogIndex(log.lastIndex());
+		vote.setLastLogTerm(log.lastTerm());
+		for (int p = 0; p < peers.size(); p++) {
+			if (p != id) {
+				send(p, vote);
+			}
+		}
+	}
+
+	private void becomeLeader() throws IOException {
+		logger.info("Raft replica " + id + " is leader in term " + log.getCurrentTerm());
+		role = Role.LEADER;
+		leader = id;
+		Arrays.fill(nextIndex, log.lastIndex() + 1);
+		Arrays.fill(matchIndex, 0);
+		Arrays.fill(lastSendTime, System.nanoTime() - heartbeatNanos);
+		Arrays.fill(ackedSendTime, Long.MIN_VALUE);
+		Arrays.fill(rewindTime, Long.MIN_VALUE);
+
+		// committing an entry of the new term also commits all entries of earlier terms
+		RaftEntry noop = new RaftEntry(Kind.NOOP, null, null);
+		termStartIndex = log.lastIndex() + 1;
+		appendAsLeader(Collections.singletonList(noop));
+		replicate(System.nanoTime());
+	}
+
+	private void becomeFollower(long term, int leader) throws IOException {
+		if (term > log.getCurrentTerm()) {
+			log.setTermAndVote(term, -1);
+		}
+		if (role != Role.FOLLOWER) {
+			logger.info("Raft replica " + id + " steps down in term " + term);
+		}
+		role = Role.FOLLOWER;
+		this.leader = leader;
+	}
+
+	private void resetElectionDeadline(long now) {
+		electionDeadline = now + electionTimeoutNanos
+				+ ThreadLocalRandom.current().nextLong(electionTimeoutNanos);
+	}
+
+	private void send(int p, RaftMessage message) {
+		if (!outboxes[p].send(JSONable.toJSON(message), ZMQ.DONTWAIT)) {
+			logger.debug("Dropped " + message.getType() + " to raft replica " + p);
+		}
+	}
+
+}
@@ -1,34 +1,121 @@
 package database.zookeeper;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.log4j.Logger;
 import org.apache.zookeeper.CreateMode;
 import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.Op;
+import org.apache.zookeeper.Watcher;
 import org.apache.zookeeper.ZooKeeper;
 import org.apache.zookeeper.KeeperException.BadArgumentsException;
+import org.apache.zookeeper.KeeperException.BadVersionException;
 import org.apache.zookeeper.KeeperException.NoNodeException;
 import org.apache.zookeeper.KeeperException.NodeExistsException;
 import org.apache.zookeeper.KeeperException.NotEmptyException;
+import org.apache.zookeeper.KeeperException.SessionExpiredException;
 import org.apache.zookeeper.ZooDefs.Ids;
+import org.apache.zookeeper.data.Stat;
 
 import database.IControllable;
 
+/**
+ * An {@link IControllable} that stores nodes as znodes of ZooKeeper.
+ *
+ * Unless disabled, read znodes are kept in a {@link ZkTreeCache} and repeated reads are served
+ * locally. The cache watches every znode it holds, so modifications by other sessions are
+ * noticed as well.
+ *
+ * The controller either uses a single session, or the sessions of a {@link ZkSessionPool}, in
+ * which case reads are spread across the sessions and operations that fail because their
+ * session expired are repeated once with the session that replaced it.
+ *
+ * Each operation takes a single round trip to ZooKeeper. Updates and deletes apply to any
+ * version of a znode unless an expected version is given, missing znodes are reported by the
+ * failed operation itself.
+ *
+ * @author jonathanhasenburg
+ *
+ */
 public class ZkController implements IControllable {
 	
 	private static Logger logger = Logger.getLogger(ZkController.class.getName());
 	
-	private ZooKeeper zk;
+	/**
+	 * The expected version that matches any version of a znode
+	 */
+	public static final int ANY_VERSION = -1;
+	
+	/**
+	 * The session, null if a pool is used
+	 */
+	private final ZooKeeper zk;
+	
+	/**
+	 * The sessions, null if a single session is used
+	 */
+	private final ZkSessionPool pool;
+	
+	/**
+	 * The cache, null if disabled
+	 */
+	private final ZkTreeCache cache;
 	
 	public ZkController(ZooKeeper zk) {
+		this(zk, true);
+	}
+	
+	/**
+	 * @param zk The connected session
+	 * @param cached If true, read znodes are cached until ZooKeeper reports a modification
+	 */
+	public ZkController(ZooKeeper zk, boolean cached) {
 		this.zk = zk;
+		this.pool = null;
+		this.cache = cached ? new ZkTreeCache() : null;
+	}
+	
+	/**
+	 * @param pool The connected sessions
+	 * @param cached If true, read znodes are cached until ZooKeeper reports a modification
+	 */
+	public ZkController(ZkSessionPool pool, boolean cached) {
+		this.zk = null;
+		this.pool = pool;
+		this.cache = cached ? new ZkTreeCache() : null;
+		if (cache != null) {
+			pool.addReplacementListener(cache::sessionReplaced);
+		}
+	}
+	
+	/**
+	 * @return the session pool, null if a single session is used
+	 */
+	public ZkSessionPool getPool() {
+		return pool;
+	}
+	
+	/**
+	 * @return the cache, null if disabled
+	 */
+	public ZkTreeCache getCache() {
+		return cache;
 	}
 	
 	@Override
 	public void addNode(String path, String data) throws IllegalArgumentException {
 		try {
-			zk.create(path, data.getBytes(), Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+			write(session -> session.create(path, data.getBytes(), Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT));
+			invalidateCreated(path);
 		} catch (KeeperException e) {
 			if(e instanceof NodeExistsException) {
 				throw new IllegalArgumentException("Path '" + path + "' already exists.");
@@ -43,11 +130,101 @@ public class ZkController implements IControllable {
 		}
 	}
 	
+	/**
+	 * Adds all nodes in one multi operation, so either all or none of them are added.
+	 *
+	 * @throws IllegalStateException if ZooKeeper fails otherwise, e.g., because the connection
+	 *             was lost, in which case the nodes may or may not have been added
+	 */
+	@Override
+	public void addNodes(Map<String, String> nodes) throws IllegalArgumentException, InterruptedException {
+		List<Op> ops = new ArrayList<Op>(nodes.size());
+		for (Map.Entry<String, String> node : nodes.entrySet()) {
+			ops.add(Op.create(node.getKey(), node.getValue().getBytes(), Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT));
+		}
+		
+		try {
+			write(session -> session.multi(ops));
+			for (String path : nodes.keySet()) {
+				invalidateCreated(path);
+			}
+		} catch (KeeperException e) {
+			if(e instanceof NodeExistsException) {
+				throw new IllegalArgumentException("Path '" + e.getPath() + "' already exists.");
+			} else if(e instanceof NoNodeException) {
+				throw new IllegalArgumentException("Intermediate node in path '" + e.getPath() + "' does not exist.");
+			} else {
+				throw new IllegalStateException("Could not add " + nodes.size() + " nodes", e);
+			}
+		}
+	}
+	
+	@Override
+	public List<String> addNodesIfAbsent(List<String> paths, String data) throws IllegalArgumentException, InterruptedException {
+		List<String> created = Collections.synchronizedList(new ArrayList<String>());
+		CountDownLatch pending = new CountDownLatch(paths.size());
+		AtomicReference<KeeperException> error = new AtomicReference<KeeperException>();
+		
+		// requests of one session are processed in order, so parents are created first
+		ZooKeeper session = pool != null ? pool.getWriteSession() : zk;
+		for (String path : paths) {
+			session.create(path, data.getBytes(), Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT, (rc, p, ctx, name) -> {
+				Code code = Code.get(rc);
+				if (code == Code.OK) {
+					created.add(p);
+				} else if (code != Code.NODEEXISTS) {
+					error.compareAndSet(null, KeeperException.create(code, p));
+				}
+				pending.countDown();
+			}, null);
+		}
+		
+		pending.await();
+		writeCompleted();
+		
+		for (String path : created) {
+			invalidateCreated(path);
+		}
+		if (error.get() instanceof NoNodeException) {
+			throw new IllegalArgumentException("Intermediate node in path '" + error.get().getPath() + "' does not exist.");
+		} else if (error.get() != null) {
+			logger.error("Error in controller", error.get());
+		}
+		return created;
+	}
+	
 	@Override
 	public String readNode(String path) throws IllegalArgumentException {
+		return readNode(path, null);
+	}
+	
+	/**
+	 * Reads a znode and its stat in one round trip. If a stat is requested, the znode is read
+	 * from ZooKeeper even if it is cached, as the cache does not keep stats.
+	 *
+	 * @param path The path of the znode
+	 * @param stat Filled with the stat of the znode, e.g., to get the version for
+	 *            {@link #updateNode(String, String, int)}; null if not needed
+	 * @return the data of the znode
+	 * @throws IllegalArgumentException if the znode does not exist
+	 */
+	public String readNode(String path, Stat stat) throws IllegalArgumentException {
+		if (cache != null && stat == null) {
+			String cached = cache.getData(path);
+			if (cached == ZkTreeCache.ABSENT) {
+				throw new IllegalArgumentException("Path '" + path + "' does not exist");
+			} else if (cached != null) {
+				return cached;
+			}
+		}
+		
+		long invalidations = cache != null ? cache.getInvalidations() : 0;
 		byte[] data = null;
 		try {
-			data = zk.getData(path, true, zk.exists(path, true));
+			data = read(session -> session.getData(path, watcher(session), stat));
+			if (cache != null) {
+				cache.fillData(path, new String(data), invalidations);
+			}
 		} catch (KeeperException e) {
 			if(e instanceof NoNodeException) {
 				throw new IllegalArgumentException("Path '" + path + "' does not exist");
@@ -64,42 +241,122 @@ public class ZkController implements IControllable {
 	
 	@Override
 	public void updateNode(String path, String data) throws IllegalArgumentException {
+		updateNode(path, data, ANY_VERSION);
+	}
+	
+	/**
+	 * Updates a znode if it still has the expected version.
+	 *
+	 * @param path The path of the znode
+	 * @param data The new data
+	 * @param expectedVersion The version read before, or {@link #ANY_VERSION}
+	 * @throws IllegalArgumentException if the znode does not exist or has another version
+	 */
+	public void updateNode(String path, String data, int expectedVersion) throws IllegalArgumentException {
 		try {
-			zk.setData(path, data.getBytes(), zk.exists(path, true).getVersion());
+			write(session -> session.setData(path, data.getBytes(), expectedVersion));
+			if (cache != null) {
+				cache.invalidateData(path);
+			}
 		} catch (KeeperException e) {
+			if(e instanceof NoNodeException) {
+				throw new IllegalArgumentException("Path '" + path + "' does not exist");
+			} else if(e instanceof BadVersionException) {
+				throw new IllegalArgumentException("Path '" + path + "' does not have version " + expectedVersion);
+			} else {
+				logger.error("Error in controller", e);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
 			logger.error("Error in controller", e);
+		}
+	}
+	
+	/**
+	 * Compares the data and updates the znode with the version that was read, so the update
+	 * fails if another session modified the znode in between.
+	 */
+	@Override
+	public boolean updateNodeIfUnchanged(String path, String expectedData, String data) throws IllegalArgumentException {
+		Stat stat = new Stat();
+		if (!expectedData.equals(readNode(path, stat))) {
+			return false;
+		}
+		try {
+			write(session -> session.setData(path, data.getBytes(), stat.getVersion()));
+			if (cache != null) {
+				cache.invalidateData(path);
+			}
+			return true;
+		} catch (KeeperException e) {
+			if(e instanceof NoNodeException) {
+				throw new IllegalArgumentException("Path '" + path + "' does not exist");
+			} else if(e instanceof BadVersionException) {
+				return false;
+			} else {
+				logger.error("Error in controller", e);
+			}
 		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
 			logger.error("Error in controller", e);
-		} catch (NullPointerException e){
-			throw new IllegalArgumentException("Argument evalutates to null path");
 		}
+		return false;
 	}
 	
 	@Override
 	public void deleteNode(String path) throws IllegalArgumentException {
+		deleteNode(path, ANY_VERSION);
+	}
+	
+	/**
+	 * Deletes a znode if it still has the expected version.
+	 *
+	 * @param path The path of the znode
+	 * @param expectedVersion The version read before, or {@link #ANY_VERSION}
+	 * @throws IllegalArgumentException if the znode does not exist, has another version or has
+	 *             children
+	 */
+	public void deleteNode(String path, int expectedVersion) throws IllegalArgumentException {
 		try {
-			zk.delete(path, zk.exists(path, true).getVersion());
+			write(session -> {
+				session.delete(path, expectedVersion);
+				return null;
+			});
+			invalidateDeleted(path);
 		} catch (InterruptedException e) {
 			Thread.currentThread().interrupt();
 			logger.error("Error in controller", e);
 		} catch (KeeperException e) {
-			if(e instanceof NotEmptyException) {
+			if(e instanceof NoNodeException) {
+				throw new IllegalArgumentException("Path '" + path + "' does not exist");
+			} else if(e instanceof BadVersionException) {
+				throw new IllegalArgumentException("Path '" + path + "' does not have version " + expectedVersion);
+			} else if(e instanceof NotEmptyException) {
 				throw new IllegalArgumentException("Directory not empty for '" + path + "'");
 			} else if(e instanceof BadArgumentsException) {
 				throw new IllegalArgumentException("Invalid delete path");
 			} else {
 				logger.error("Error in controller", e);
 			}
-		} catch (NullPointerException e){
-			throw new IllegalArgumentException("Argument evalutates to null path");
-		} 
+		}
 	}
 	
 	@Override
 	public List<String> getChildren(String path) throws IllegalArgumentException {
+		if (cache != null) {
+			List<String> cached = cache.getChildren(path);
+			if (cached != null) {
+				return cached;
+			}
+		}
+		
+		long invalidations = cache != null ? cache.getInvalidations() : 0;
 		List<String> znodeList = null;
 		try {
-			znodeList = zk.getChildren(path, true);
+			znodeList = read(session -> session.getChildren(path, watcher(session)));
+			if (cache != null) {
+				cache.fillChildren(path, znodeList, invalidations);
+			}
 		} catch (KeeperException e) {
 			if(e instanceof NoNodeException) {
 				throw new IllegalArgumentException("Intermediate node in path '" + path + "' does not exist.");
@@ -116,8 +373,40 @@ public class ZkController implements IControllable {
 	
 	@Override
 	public boolean exists(String path) {
+		if (cache == null) {
+			try {
+				return (read(session -> session.exists(path, false)) != null) ? true : false;
+			} catch (KeeperException e) {
+				logger.error("Error in controller", e);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				logger.error("Error in controller", e);
+			}
+			return false;
+		}
+		
+		String cached = cache.getData(path);
+		if (cached != null) {
+			return cached != ZkTreeCache.ABSENT;
+		}
+		
+		// existing znodes are usually read next, so their data is cached right away
+		long invalidations = cache.getInvalidations();
 		try {
-			return (zk.exists(path, true) != null) ? true : false;
+			String data = read(session -> {
+				try {
+					return new String(session.getData(path, watcher(session), null));
+				} catch (NoNodeException e) {
+					// the znode does not exist, exists watches its creation
+					return session.exists(path, watcher(session)) == null ? ZkTreeCache.ABSENT : null;
+				}
+			});
+			if (data == null) {
+				// created in the meantime
+				return true;
+			}
+			cache.fillData(path, data, invalidations);
+			return data != ZkTreeCache.ABSENT;
 		} catch (KeeperException e) {
 			logger.error("Error in controller", e);
 		} catch (InterruptedException e) {
@@ -128,10 +417,136 @@ public class ZkController implements IControllable {
 		return false;
 	}
 
+	/**
+	 * Deletes a znode and all its descendants. The tree is listed level by level, and then
+	 * deleted from the leaves to the root without waiting for each delete, as requests of one
+	 * session are processed in order. Znodes created below the path in the meantime make the
+	 * delete of their parent fail.
+	 *
+	 * @throws NoSuchFileException if the znode does not exist
+	 * @throws IOException if a znode could not be deleted
+	 */
 	@Override
 	public void deleteNodeRecursive(String path) throws IOException {
-		// TODO Implement Functionality
-		throw new IllegalArgumentException("Not yet implemented");
+		try {
+			List<String> tree = new ArrayList<String>();
+			tree.add(path);
+			for (int i = 0; i < tree.size(); i++) {
+				String parent = tree.get(i);
+				// listed by the write session, which sees all earlier writes of this process
+				for (String child : call(pool != null ? pool.getWriteSession() : zk, session -> session.getChildren(parent, false))) {
+					tree.add(parent.equals("/") ? "/" + child : parent + "/" + child);
+				}
+			}
+			
+			ZooKeeper session = pool != null ? pool.getWriteSession() : zk;
+			CountDownLatch pending = new CountDownLatch(tree.size());
+			AtomicReference<KeeperException> error = new AtomicReference<KeeperException>();
+			for (int i = tree.size() - 1; i >= 0; i--) {
+				session.delete(tree.get(i), ANY_VERSION, (rc, p, ctx) -> {
+					Code code = Code.get(rc);
+					if (code != Code.OK && code != Code.NONODE) {
+						error.compareAndSet(null, KeeperException.create(code, p));
+					}
+					pending.countDown();
+				}, null);
+			}
+			pending.await();
+			writeCompleted();
+			
+			for (String deleted : tree) {
+				invalidateDeleted(deleted);
+			}
+			if (error.get() != null) {
+				throw new IOException("Could not delete '" + error.get().getPath() + "'", error.get());
+			}
+		} catch (NoNodeException e) {
+			if (e.getPath() == null || e.getPath().equals(path)) {
+				throw new NoSuchFileException(path);
+			}
+			// a descendant was deleted in the meantime
+			deleteNodeRecursive(path);
+		} catch (KeeperException e) {
+			throw new IOException("Could not delete '" + path + "'", e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while deleting '" + path + "'");
+		}
+	}
+	
+	/**
+	 * An operation of a single session.
+	 */
+	private interface ZkCall<T> {
+		T call(ZooKeeper session) throws KeeperException, InterruptedException;
+	}
+	
+	private <T> T read(ZkCall<T> call) throws KeeperException, InterruptedException {
+		return call(pool != null ? pool.getReadSession() : zk, call);
+	}
+	
+	private <T> T write(ZkCall<T> call) throws KeeperException, InterruptedException {
+		try {
+			return call(pool != null ? pool.getWriteSession() : zk, call);
+		} finally {
+			writeCompleted();
+		}
+	}
+	
+	/**
+	 * Makes the following reads of other sessions of the pool see the completed write.
+	 */
+	private void writeCompleted() {
+		if (pool != null) {
+			pool.writeCompleted();
+		}
+	}
+	
+	private <T> T call(ZooKeeper session, ZkCall<T> call) throws KeeperException, InterruptedException {
+		try {
+			return call.call(session);
+		} catch (SessionExpiredException e) {
+			if (pool == null) {
+				throw e;
+			}
+			// an expired session does not send requests anymore, so the operation was not applied
+			return call.call(pool.replace(session));
+		}
+	}
+	
+	/**
+	 * @return the watcher for reads of a session, null if the cache is disabled
+	 */
+	private Watcher watcher(ZooKeeper session) {
+		return cache != null ? cache.getWatcher(session) : null;
+	}
+	
+	/**
+	 * Drops the cached state a successful create by this session has changed, without waiting
+	 * for the watch events.
+	 */
+	private void invalidateCreated(String path) {
+		if (cache != null) {
+			cache.invalidateData(path);
+			cache.invalidateChildren(parentOf(path));
+		}
+	}
+	
+	/**
+	 * Drops the cached state a successful delete by this session has changed, without waiting
+	 * for the watch events.
+	 */
+	private void invalidateDeleted(String path) {
+		if (cache != null) {
+			cache.invalidateData(path);
+			cache.invalidateChildren(path);
+			cache.invalidateChildren(parentOf(path));
+		}
+	}
+	
+	private static String parentOf(String path) {
+		int index = path.lastIndexOf('/');
+		return index <= 0 ? "/" : path.substring(0, index);
 	}
 
 }
@@ -0,0 +1,260 @@
+package database.zookeeper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+import org.apache.log4j.Logger;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.KeeperException.NodeExistsException;
+import org.apache.zookeeper.Watcher.Event.EventType;
+import org.apache.zookeeper.Watcher.Event.KeeperState;
+import org.apache.zookeeper.ZooDefs.Ids;
+import org.apache.zookeeper.ZooKeeper;
+
+/**
+ * A fixed number of ZooKeeper sessions shared by a {@link ZkController}. Reads are spread
+ * across all sessions, writes use the first session, so writes of this process are applied in
+ * the order they were issued.
+ *
+ * ZooKeeper only orders the requests of each session, and the sessions may be connected to
+ * different servers, which apply writes with a short delay. So after a write completed, the
+ * next read of each other session is preceded by a sync, which makes its server catch up with
+ * the leader before it serves the read. The sync is not awaited, requests of a session are
+ * processed in order, so reads still see all completed writes of this process.
+ *
+ * An expired session cannot be used anymore, so it is replaced by a new one as soon as its
+ * expiry is noticed, and listeners are notified, e.g., to drop state that depended on the
+ * watches of the old session. Other connection problems are handled by the ZooKeeper client,
+ * which reconnects on its own within the session timeout.
+ *
+ * @author jonathanhasenburg
+ *
+ */
+public class ZkSessionPool implements Closeable {
+
+	private static Logger logger = Logger.getLogger(ZkSessionPool.class.getName());
+
+	private final String connectString;
+	private final String chroot;
+	private final int sessionTimeout;
+	private final int connectionTimeout;
+
+	private final AtomicReferenceArray<ZooKeeper> sessions;
+	private final AtomicInteger next = new AtomicInteger();
+	/**
+	 * The number of completed writes, and per session the number when it last issued a sync
+	 */
+	private final AtomicLong writes = new AtomicLong();
+	private final AtomicLongArray synced;
+	private final List<Consumer<ZooKeeper>> replacementListeners = new CopyOnWriteArrayList<Consumer<ZooKeeper>>();
+	private volatile boolean closed = false;
+
+	/**
+	 * Creates a pool, its sessions are opened with {@link #connect()}.
+	 *
+	 * @param connectString The comma separated host:port pairs of the ZooKeeper servers
+	 * @param chroot The znode all paths are relative to, e.g., /fbase, or an empty string to
+	 *            use the root; it is created if it does not exist
+	 * @param sessionTimeout The session timeout in milliseconds
+	 * @param connectionTimeout Milliseconds to wait for the sessions to connect
+	 * @param size The number of sessions
+	 */
+	public ZkSessionPool(String connectString, String chroot, int sessionTimeout,
+			int connectionTimeout, int size) {
+		if (size < 1) {
+			throw new IllegalArgumentException("A session pool needs at least one session");
+		}
+		if (!chroot.isEmpty() && (!chroot.startsWith("/") || chroot.endsWith("/"))) {
+			throw new IllegalArgumentException("Invalid chroot '" + chroot + "'");
+		}
+		this.connectString = connectString;
+		this.chroot = chroot;
+		this.sessionTimeout = sessionTimeout;
+		this.connectionTimeout = connectionTimeout;
+		this.sessions = new AtomicReferenceArray<ZooKeeper>(size);
+		this.synced = new AtomicLongArray(size);
+	}
+
+	/**
+	 * Creates the chroot, if needed, and opens all sessions.
+	 *
+	 * @throws IOException if a session could not be connected within the connection timeout
+	 * @throws InterruptedException
+	 */
+	public void connect() throws IOException, InterruptedException {
+		if (!chroot.isEmpty()) {
+			createChroot();
+		}
+		for (int i = 0; i < sessions.length(); i++) {
+			CountDownLatch connected = new CountDownLatch(1);
+			sessions.set(i, open(i, connected));
+			if (!connected.await(connectionTimeout, TimeUnit.MILLISECONDS)) {
+				close();
+				throw new IOException("Could not connect to " + connectString);
+			}
+		}
+		logger.info("Opened " + sessions.length() + " ZooKeeper sessions to " + connectString + chroot);
+	}
+
+	/**
+	 * Returns the session to read with, the sessions take turns. Reads of the session see all
+	 * writes that completed before.
+	 *
+	 * @return the session
+	 */
+	public ZooKeeper getReadSession() {
+		int index = Math.floorMod(next.getAndIncrement(), sessions.length());
+		ZooKeeper session = sessions.get(index);
+		long completed = writes.get();
+		if (index != 0 && synced.get(index) < completed) {
+			// the sync must be issued before other readers skip it
+			session.sync("/", (rc, path, ctx) -> {
+			}, null);
+			synced.accumulateAndGet(index, completed, Math::max);
+		}
+		return session;
+	}
+
+	/**
+	 * Must be called after each write with the write session completed, so that the following
+	 * reads of other sessions see it.
+	 */
+	public void writeCompleted() {
+		writes.incrementAndGet();
+	}
+
+	/**
+	 * @return the session to write with
+	 */
+	public ZooKeeper getWriteSession() {
+		return sessions.get(0);
+	}
+
+	/**
+	 * @return the number of sessions
+	 */
+	public int size() {
+		return sessions.length();
+	}
+
+	/**
+	 * Registers a listener that is called with the expired session after it was replaced.
+	 *
+	 * @param listener The listener
+	 */
+	public void addReplacementListener(Consumer<ZooKeeper> listener) {
+		replacementListeners.add(listener);
+	}
+
+	/**
+	 * Replaces a session that has expired with a new one. Does nothing if the session was
+	 * already replaced, so everyone who notices the expiry may call it.
+	 *
+	 * @param expired The expired session
+	 * @return the session that replaced it
+	 */
+	public ZooKeeper replace(ZooKeeper expired) {
+		for (int i = 0; i < sessions.length(); i++) {
+			ZooKeeper current = sessions.get(i);
+			if (current == expired) {
+				return replace(i, expired);
+			}
+		}
+		// already replaced, so any session will do
+		return getReadSession();
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		for (int i = 0; i < sessions.length(); i++) {
+			ZooKeeper session = sessions.getAndSet(i, null);
+			if (session != null) {
+				try {
+					session.close();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+	}
+
+	private synchronized ZooKeeper replace(int index, ZooKeeper expired) {
+		if (sessions.get(index) != expired || closed) {
+			return sessions.get(index);
+		}
+		try {
+			// the new session connects in the background, requests wait until it is connected
+			ZooKeeper session = open(index, null);
+			// the new session may be connected to a server that is behind
+			synced.set(index, -1);
+			sessions.set(index, session);
+			expired.close();
+			logger.warn("ZooKeeper session " + index + " expired, replaced it with a new session");
+		} catch (IOException e) {
+			logger.error("Cannot replace expired ZooKeeper session " + index, e);
+			return expired;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		for (Consumer<ZooKeeper> listener : replacementListeners) {
+			listener.accept(expired);
+		}
+		return sessions.get(index);
+	}
+
+	private ZooKeeper open(int index, CountDownLatch connected) throws IOException {
+		AtomicReference<ZooKeeper> self = new AtomicReference<ZooKeeper>();
+		ZooKeeper session = new ZooKeeper(connectString + chroot, sessionTimeout, event -> {
+			if (event.getType() != EventType.None) {
+				return;
+			}
+			if (event.getState() == KeeperState.SyncConnected && connected != null) {
+				connected.countDown();
+			} else if (event.getState() == KeeperState.Expired && !closed && self.get() != null) {
+				replace(index, self.get());
+			}
+		});
+		self.set(session);
+		return session;
+	}
+
+	private void createChroot() throws IOException, InterruptedException {
+		CountDownLatch connected = new CountDownLatch(1);
+		ZooKeeper zk = new ZooKeeper(connectString, sessionTimeout, event -> {
+			if (event.getState() == KeeperState.SyncConnected) {
+				connected.countDown();
+			}
+		});
+		try {
+			if (!connected.await(connectionTimeout, TimeUnit.MILLISECONDS)) {
+				throw new IOException("Could not connect to " + connectString);
+			}
+			StringBuilder path = new StringBuilder();
+			for (String name : chroot.substring(1).split("/")) {
+				path.append('/').append(name);
+				try {
+					zk.create(path.toString(), new byte[0], Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+				} catch (NodeExistsException e) {
+					// created before
+				}
+			}
+		} catch (KeeperException e) {
+			throw new IOException("Cannot create chroot " + chroot, e);
+		} finally {
+			zk.close();
+		}
+	}
+
+}
@@ -0,0 +1,245 @@
+package database.zookeeper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.log4j.Logger;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.Watcher.Event.EventType;
+import org.apache.zookeeper.ZooKeeper;
+
+import metrics.MetricsRegistry;
+
+/**
+ * The local copy of the znodes read by a {@link ZkController}, kept consistent by ZooKeeper
+ * watches. Every read that fills the cache sets a watch with the watcher of its session, and
+ * the entry is dropped as soon as the watch fires, so the next read fetches the new state from ZooKeeper.
+ * Entries are not refreshed from the event thread, as a read there would delay all other
+ * events of the session.
+ *
+ * While a session is disconnected, watch events may be missed, so the cache is cleared and
+ * not used until the session is connected again. If a session expires, ZooKeeper drops all
+ * its watches and the cache stays disabled until the session is replaced with
+ * {@link #sessionReplaced(ZooKeeper)}.
+ *
+ * @author jonathanhasenburg
+ *
+ */
+public class ZkTreeCache {
+
+	private static Logger logger = Logger.getLogger(ZkTreeCache.class.getName());
+
+	/**
+	 * Names of the counters in the {@link MetricsRegistry}
+	 */
+	public static final String HITS = "zk.cache.hits";
+	public static final String MISSES = "zk.cache.misses";
+	public static final String INVALIDATIONS = "zk.cache.invalidations";
+	public static final String SKIPPED_FILLS = "zk.cache.skippedFills";
+	public static final String RESETS = "zk.cache.resets";
+
+	/**
+	 * Cached for znodes that do not exist, compared by identity
+	 */
+	static final String ABSENT = new String("absent");
+
+	private final MetricsRegistry metrics = MetricsRegistry.getInstance();
+	private final Map<String, String> data = new ConcurrentHashMap<String, String>();
+	private final Map<String, List<String>> children = new ConcurrentHashMap<String, List<String>>();
+
+	/**
+	 * Incremented on every invalidation, reads only fill the cache if no invalidation happened
+	 * while they accessed ZooKeeper
+	 */
+	private long invalidations = 0;
+
+	private final Map<ZooKeeper, Watcher> watchers = new ConcurrentHashMap<ZooKeeper, Watcher>();
+
+	/**
+	 * Sessions that are disconnected or expired, the cache is only used if there are none
+	 */
+	private final Set<ZooKeeper> disconnected = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Sessions that were replaced, their late events are ignored
+	 */
+	private final Set<ZooKeeper> replaced = Collections.newSetFromMap(new WeakHashMap<ZooKeeper, Boolean>());
+
+	/**
+	 * @return true, if the cache may be used
+	 */
+	public boolean isConnected() {
+		return disconnected.isEmpty();
+	}
+
+	/**
+	 * @param session The session that reads with the watcher
+	 * @return the watcher to read with, always the same one for a session, as ZooKeeper only
+	 *         calls each watcher of a znode once
+	 */
+	public Watcher getWatcher(ZooKeeper session) {
+		return watchers.computeIfAbsent(session, s -> event -> process(s, event));
+	}
+
+	/**
+	 * Drops all entries and stops tracking a session, e.g., after it expired and was replaced.
+	 *
+	 * @param session The replaced session
+	 */
+	public synchronized void sessionReplaced(ZooKeeper session) {
+		replaced.add(session);
+		watchers.remove(session);
+		disconnected.remove(session);
+		clear();
+	}
+
+	/**
+	 * @return the number of cached znodes and children lists
+	 */
+	public int size() {
+		return data.size() + children.size();
+	}
+
+	/**
+	 * @return the value to pass to the fill methods after the read from ZooKeeper
+	 */
+	public synchronized long getInvalidations() {
+		return invalidations;
+	}
+
+	/**
+	 * @param path The path of the znode
+	 * @return the data of the znode, {@link #ABSENT} if it does not exist, or null if it is not
+	 *         cached
+	 */
+	public String getData(String path) {
+		return count(isConnected() ? data.get(path) : null);
+	}
+
+	/**
+	 * @param path The path of the znode
+	 * @return the names of the children of the znode, or null if they are not cached
+	 */
+	public List<String> getChildren(String path) {
+		List<String> names = count(isConnected() ? children.get(path) : null);
+		return names == null ? null : new ArrayList<String>(names);
+	}
+
+	/**
+	 * Caches the data of a znode read with this watcher.
+	 *
+	 * @param path The path of the znode
+	 * @param value The data, or {@link #ABSENT}
+	 * @param invalidationsBefore The invalidations before the read
+	 */
+	public synchronized void fillData(String path, String value, long invalidationsBefore) {
+		if (isConnected() && invalidations == invalidationsBefore) {
+			data.put(path, value);
+		} else {
+			metrics.increment(SKIPPED_FILLS);
+		}
+	}
+
+	/**
+	 * Caches the children of a znode read with this watcher.
+	 *
+	 * @param path The path of the znode
+	 * @param names The names of the children
+	 * @param invalidationsBefore The invalidations before the read
+	 */
+	public synchronized void fillChildren(String path, List<String> names, long invalidationsBefore) {
+		if (isConnected() && invalidations == invalidationsBefore) {
+			children.put(path, Collections.unmodifiableList(new ArrayList<String>(names)));
+		} else {
+			metrics.increment(SKIPPED_FILLS);
+		}
+	}
+
+	/**
+	 * Drops the data of a znode.
+	 *
+	 * @param path The path of the znode
+	 */
+	public synchronized void invalidateData(String path) {
+		invalidations++;
+		if (data.remove(path) != null) {
+			metrics.increment(INVALIDATIONS);
+		}
+	}
+
+	/**
+	 * Drops the children of a znode.
+	 *
+	 * @param path The path of the znode
+	 */
+	public synchronized void invalidateChildren(String path) {
+		invalidations++;
+		if (children.remove(path) != null) {
+			metrics.increment(INVALIDATIONS);
+		}
+	}
+
+	/**
+	 * Drops all entries.
+	 */
+	public synchronized void clear() {
+		invalidations++;
+		data.clear();
+		children.clear();
+		metrics.increment(RESETS);
+	}
+
+	private synchronized void process(ZooKeeper session, WatchedEvent event) {
+		if (event.getType() == EventType.None) {
+			if (replaced.contains(session)) {
+				return;
+			}
+			switch (event.getState()) {
+			case SyncConnected:
+				if (disconnected.remove(session)) {
+					logger.info("ZooKeeper session reconnected");
+				}
+				break;
+			case Disconnected:
+			case AuthFailed:
+				logger.warn("ZooKeeper session " + event.getState() + ", clearing the cache");
+				disconnect(session);
+				break;
+			case Expired:
+				logger.warn("ZooKeeper session expired, the cache is disabled until it is replaced");
+				disconnect(session);
+				break;
+			default:
+				break;
+			}
+			return;
+		}
+
+		String path = event.getPath();
+		if (event.getType() == EventType.NodeChildrenChanged) {
+			invalidateChildren(path);
+		} else {
+			invalidateData(path);
+			if (event.getType() == EventType.NodeDeleted) {
+				invalidateChildren(path);
+			}
+		}
+	}
+
+	private void disconnect(ZooKeeper session) {
+		disconnected.add(session);
+		clear();
+	}
+
+	private <T> T count(T value) {
+		metrics.increment(value == null ? MISSES : HITS);
+		return value;
+	}
+
+}
@@ -0,0 +1,49 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of a command executed by the MessageParser.
+ *
+ * @author jonathanhasenburg
+ *
+ */
+@Name("fbase.namingservice.Command")
+@Label("Command")
+@Category({ "FBase", "Naming Service" })
+@Description("A command executed on the namespace")
+@StackTrace(false)
+public class CommandEvent extends Event {
+
+	@Label("Command")
+	String command;
+
+	@Label("Sender")
+	String sender;
+
+	@Label("Response Code")
+	String responseCode;
+
+	/**
+	 * Commits the event if it is enabled and exceeds its threshold.
+	 *
+	 * @param command The executed command
+	 * @param sender The ID of the sender
+	 * @param responseCode The response code, null if the command failed with an exception
+	 */
+	public void finish(Object command, Object sender, Object responseCode) {
+		if (!shouldCommit()) {
+			return;
+		}
+		this.command = String.valueOf(command);
+		this.sender = String.valueOf(sender);
+		this.responseCode = String.valueOf(responseCode);
+		commit();
+	}
+
+}
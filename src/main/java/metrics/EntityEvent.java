@@ -0,0 +1,55 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of a create, read, update or delete operation on a client, node or
+ * keygroup.
+ *
+ * @author jonathanhasenburg
+ *
+ */
+@Name("fbase.namingservice.Entity")
+@Label("Entity Operation")
+@Category({ "FBase", "Naming Service" })
+@Description("A create, read, update or delete operation on a namespace entity")
+@StackTrace(false)
+public class EntityEvent extends Event {
+
+	@Label("Entity Type")
+	String type;
+
+	@Label("Operation")
+	String operation;
+
+	@Label("Entity ID")
+	String entityID;
+
+	@Label("Response Code")
+	String responseCode;
+
+	/**
+	 * Commits the event if it is enabled and exceeds its threshold.
+	 *
+	 * @param type The entity type
+	 * @param operation The operation, e.g., create
+	 * @param entityID The ID of the entity
+	 * @param responseCode The response code of the operation
+	 */
+	public void finish(String type, String operation, Object entityID, Object responseCode) {
+		if (!shouldCommit()) {
+			return;
+		}
+		this.type = type;
+		this.operation = operation;
+		this.entityID = String.valueOf(entityID);
+		this.responseCode = String.valueOf(responseCode);
+		commit();
+	}
+
+}
@@ -0,0 +1,158 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free latency histogram with logarithmic buckets. Each power of two is split into
+ * {@value #SUB_BUCKETS} linear sub-buckets, so recorded values are kept with a relative error
+ * of about 3% over the whole range of long values, while recording costs a few atomic
+ * increments and no allocation.
+ *
+ * @author jonathanhasenburg
+ *
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(indexOf(Long.MAX_VALUE) + 1);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	/**
+	 * Records a single value.
+	 *
+	 * @param value The value, e.g., a duration in nanoseconds; negative values are recorded as 0
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		buckets.incrementAndGet(indexOf(value));
+		count.increment();
+		sum.add(value);
+		max.accumulate(value);
+	}
+
+	/**
+	 * @return the number of recorded values
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * @return the largest recorded value
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * @return the sum of all recorded values
+	 */
+	public long getSum() {
+		return sum.sum();
+	}
+
+	/**
+	 * Counts the recorded values that are at most as large as each of the given bounds. Values
+	 * are counted by bucket, so a value may be counted for a bound slightly smaller than the
+	 * value itself.
+	 *
+	 * @param bounds The bounds in ascending order
+	 * @param counts Receives the number of values per bound, must be as long as bounds
+	 */
+	public void countAtMost(long[] bounds, long[] counts) {
+		int bound = 0;
+		long seen = 0;
+		for (int i = 0; i < buckets.length(); i++) {
+			long lowerBound = i == 0 ? 0 : upperBoundOf(i - 1) + 1;
+			while (bound < bounds.length && lowerBound > bounds[bound]) {
+				counts[bound++] = seen;
+			}
+			if (bound == bounds.length) {
+				return;
+			}
+			seen += buckets.get(i);
+		}
+		while (bound < bounds.length) {
+			counts[bound++] = seen;
+		}
+	}
+
+	/**
+	 * @return the mean of all recorded values, 0 if no value was recorded
+	 */
+	public double getMean() {
+		long n = count.sum();
+		return n == 0 ? 0 : (double) sum.sum() / n;
+	}
+
+	/**
+	 * Returns the value below or at which the given fraction of recorded values lies. The
+	 * result is the upper bound of the bucket containing the percentile, but never larger than
+	 * the largest recorded value.
+	 *
+	 * @param fraction The fraction, e.g., 0.99 for the 99th percentile
+	 * @return the percentile, 0 if no value was recorded
+	 */
+	public long getPercentile(double fraction) {
+		long total = 0;
+		long[] snapshot = new long[buckets.length()];
+		for (int i = 0; i < snapshot.length; i++) {
+			snapshot[i] = buckets.get(i);
+			total += snapshot[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+
+		long target = Math.max(1, (long) Math.ceil(fraction * total));
+		long seen = 0;
+		for (int i = 0; i < snapshot.length; i++) {
+			seen += snapshot[i];
+			if (seen >= target) {
+				return Math.min(upperBoundOf(i), getMax());
+			}
+		}
+		return getMax();
+	}
+
+	/**
+	 * Removes all recorded values.
+	 */
+	public void reset() {
+		for (int i = 0; i < buckets.length(); i++) {
+			buckets.set(i, 0);
+		}
+		count.reset();
+		sum.reset();
+		max.reset();
+	}
+
+	static int indexOf(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		int subBucket = (int) (value >>> shift);
+		return (shift + 1) * SUB_BUCKETS + subBucket - SUB_BUCKETS;
+	}
+
+	static long upperBoundOf(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int shift = index / SUB_BUCKETS - 1;
+		long subBucket = index % SUB_BUCKETS + SUB_BUCKETS;
+		long upper = ((subBucket + 1) << shift) - 1;
+		// the last bucket ends at Long.MAX_VALUE
+		return upper < 0 ? Long.MAX_VALUE : upper;
+	}
+
+}
@@ -0,0 +1,228 @@
+package metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.apache.log4j.Logger;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * The MetricsRegistry collects counters and latency histograms of the naming service. Metrics
+ * are created on first use and identified by dot separated names; updating them is lock-free.
+ *
+ * Latencies of processed requests are recorded in histograms named
+ * {@value #COMMAND_PREFIX}&lt;command&gt;, their results in counters named
+ * {@value #COMMAND_PREFIX}&lt;command&gt;.&lt;response code&gt;.
+ *
+ * @author jonathanhasenburg
+ *
+ */
+public class MetricsRegistry implements MetricsRegistryMXBean {
+
+	private static Logger logger = Logger.getLogger(MetricsRegistry.class.getName());
+
+	public static final String OBJECT_NAME = "namingservice:type=Metrics";
+
+	/**
+	 * Textual info of a request message without command that asks for {@link #toJSON()}
+	 */
+	public static final String STATS_REQUEST = "STATS";
+
+	public static final String COMMAND_PREFIX = "command.";
+	public static final String STORAGE_PREFIX = "storage.";
+
+	private static MetricsRegistry instance;
+
+	private final Map<String, LongAdder> counters = new ConcurrentHashMap<String, LongAdder>();
+	private final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<String, LatencyHistogram>();
+	private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<String, LongSupplier>();
+
+	private volatile long since = System.currentTimeMillis();
+
+	public static synchronized MetricsRegistry getInstance() {
+		if (instance == null) {
+			instance = new MetricsRegistry();
+		}
+		return instance;
+	}
+
+	private MetricsRegistry() {
+
+	}
+
+	/**
+	 * Increments a counter by one.
+	 *
+	 * @param name The name of the counter
+	 */
+	public void increment(String name) {
+		counters.computeIfAbsent(name, n -> new LongAdder()).increment();
+	}
+
+	/**
+	 * Records a duration in a histogram.
+	 *
+	 * @param name The name of the histogram
+	 * @param nanos The duration in nanoseconds
+	 */
+	public void record(String name, long nanos) {
+		histogram(name).record(nanos);
+	}
+
+	/**
+	 * Registers a gauge, replacing any gauge with the same name. The supplier is called
+	 * whenever the metrics are read and must not block.
+	 *
+	 * @param name The name of the gauge
+	 * @param supplier Supplies the current value
+	 */
+	public void registerGauge(String name, LongSupplier supplier) {
+		gauges.put(name, supplier);
+	}
+
+	/**
+	 * @param name The name of the gauge to remove
+	 */
+	public void removeGauge(String name) {
+		gauges.remove(name);
+	}
+
+	/**
+	 * @param name The name of the histogram
+	 * @return the histogram, created if it did not exist
+	 */
+	public LatencyHistogram histogram(String name) {
+		return histograms.computeIfAbsent(name, n -> new LatencyHistogram());
+	}
+
+	/**
+	 * @param name The name of the counter
+	 * @return the value of the counter, 0 if it does not exist
+	 */
+	public long getCount(String name) {
+		LongAdder counter = counters.get(name);
+		return counter == null ? 0 : counter.sum();
+	}
+
+	/**
+	 * @return the names and histograms of all histograms
+	 */
+	public Map<String, LatencyHistogram> getHistograms() {
+		return new TreeMap<String, LatencyHistogram>(histograms);
+	}
+
+	@Override
+	public Map<String, Long> getCounters() {
+		Map<String, Long> values = new TreeMap<String, Long>();
+		for (Map.Entry<String, LongAdder> counter : counters.entrySet()) {
+			values.put(counter.getKey(), counter.getValue().sum());
+		}
+		return values;
+	}
+
+	@Override
+	public Map<String, Long> getGauges() {
+		Map<String, Long> values = new TreeMap<String, Long>();
+		for (Map.Entry<String, LongSupplier> gauge : gauges.entrySet()) {
+			values.put(gauge.getKey(), gauge.getValue().getAsLong());
+		}
+		return values;
+	}
+
+	@Override
+	public Map<String, Double> getLatencies() {
+		Map<String, Double> values = new TreeMap<String, Double>();
+		for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+			for (Map.Entry<String, Double> statistic : summarize(entry.getValue()).entrySet()) {
+				values.put(entry.getKey() + "." + statistic.getKey(), statistic.getValue());
+			}
+		}
+		return values;
+	}
+
+	@Override
+	public double getRequestsPerSecond() {
+		long requests = 0;
+		for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+			if (entry.getKey().startsWith(COMMAND_PREFIX)) {
+				requests += entry.getValue().getCount();
+			}
+		}
+		return requests * 1000.0 / Math.max(1, System.currentTimeMillis() - since);
+	}
+
+	@Override
+	public void reset() {
+		counters.clear();
+		for (LatencyHistogram histogram : histograms.values()) {
+			histogram.reset();
+		}
+		since = System.currentTimeMillis();
+	}
+
+	/**
+	 * @return all metrics as JSON, latencies are given in milliseconds
+	 */
+	public String toJSON() {
+		Map<String, Object> stats = new LinkedHashMap<String, Object>();
+		stats.put("since", since);
+		stats.put("requestsPerSecond", getRequestsPerSecond());
+		stats.put("counters", getCounters());
+		stats.put("gauges", getGauges());
+
+		Map<String, Object> latencies = new TreeMap<String, Object>();
+		for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+			latencies.put(entry.getKey(), summarize(entry.getValue()));
+		}
+		stats.put("latencies", latencies);
+
+		try {
+			return new ObjectMapper().writeValueAsString(stats);
+		} catch (JsonProcessingException e) {
+			logger.error("Could not serialize metrics", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Registers the registry with the platform MBean server, if not done before.
+	 */
+	public void registerMBean() {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+			logger.info("Registered metrics as " + OBJECT_NAME);
+		} catch (InstanceAlreadyExistsException e) {
+			logger.debug("Metrics already registered");
+		} catch (JMException e) {
+			logger.error("Could not register metrics", e);
+		}
+	}
+
+	private static Map<String, Double> summarize(LatencyHistogram histogram) {
+		Map<String, Double> summary = new LinkedHashMap<String, Double>();
+		summary.put("count", (double) histogram.getCount());
+		summary.put("mean", toMillis(histogram.getMean()));
+		summary.put("p50", toMillis(histogram.getPercentile(0.5)));
+		summary.put("p99", toMillis(histogram.getPercentile(0.99)));
+		summary.put("p999", toMillis(histogram.getPercentile(0.999)));
+		summary.put("max", toMillis(histogram.getMax()));
+		return summary;
+	}
+
+	private static double toMillis(double nanos) {
+		return nanos / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+}
@@ -0,0 +1,40 @@
+package metrics;
+
+import java.util.Map;
+
+/**
+ * Management interface of the {@link MetricsRegistry}, registered with the platform MBean
+ * server as {@value MetricsRegistry#OBJECT_NAME}.
+ *
+ * @author jonathanhasenburg
+ *
+ */
+public interface MetricsRegistryMXBean {
+
+	/**
+	 * @return all counters by name
+	 */
+	public Map<String, Long> getCounters();
+
+	/**
+	 * @return the current values of all gauges by name
+	 */
+	public Map<String, Long> getGauges();
+
+	/**
+	 * @return count, mean, p50, p99, p999 and max in milliseconds of all histograms, keyed by
+	 *         histogram name and statistic, e.g., "command.NODE_CONFIG_READ.p99"
+	 */
+	public Map<String, Double> getLatencies();
+
+	/**
+	 * @return the number of processed requests per second since the last reset
+	 */
+	public double getRequestsPerSecond();
+
+	/**
+	 * Resets all counters and histograms.
+	 */
+	public void reset();
+
+}
@@ -0,0 +1,266 @@
+package metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryUsage;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.log4j.Logger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves the metrics of the {@link MetricsRegistry} and of the JVM in the Prometheus text
+ * format on http://&lt;host&gt;:&lt;port&gt;/metrics.
+ *
+ * Metrics are only read when a scrape arrives. Reading them does not lock anything the request
+ * path uses, and all scrapes are rendered by a single thread into one reused buffer.
+ *
+ * Registry names are mapped to Prometheus metrics as follows:
+ * <ul>
+ * <li>histogram command.&lt;command&gt; to namingservice_command_latency_seconds{command}</li>
+ * <li>histogram storage.&lt;operation&gt; to namingservice_storage_latency_seconds{operation}</li>
+ * <li>histogram receiver.&lt;phase&gt; to namingservice_request_phase_seconds{phase}</li>
+ * <li>counter command.&lt;command&gt;.&lt;code&gt; to namingservice_command_results_total{command,code}</li>
+ * <li>counter storage.&lt;operation&gt;.errors to namingservice_storage_errors_total{operation}</li>
+ * <li>other counters and gauges to namingservice_&lt;name&gt;[_total] with dots replaced by
+ * underscores</li>
+ * </ul>
+ *
+ * @author jonathanhasenburg
+ *
+ */
+public class PrometheusExporter {
+
+	private static Logger logger = Logger.getLogger(PrometheusExporter.class.getName());
+
+	private static final String PREFIX = "namingservice_";
+
+	/**
+	 * Bucket bounds of all histograms in seconds
+	 */
+	private static final double[] bucketSeconds = { 0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005,
+			0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10 };
+	private static final long[] bucketNanos = new long[bucketSeconds.length];
+	private static final String[] bucketLabels = new String[bucketSeconds.length];
+
+	static {
+		for (int i = 0; i < bucketSeconds.length; i++) {
+			bucketNanos[i] = (long) (bucketSeconds[i] * 1e9);
+			bucketLabels[i] = Double.toString(bucketSeconds[i]);
+		}
+	}
+
+	private final MetricsRegistry registry;
+	private final int port;
+
+	private final StringBuilder buffer = new StringBuilder(16 * 1024);
+	private final long[] bucketCounts = new long[bucketSeconds.length];
+
+	private HttpServer server;
+	private ExecutorService executor;
+
+	public PrometheusExporter(MetricsRegistry registry, int port) {
+		this.registry = registry;
+		this.port = port;
+	}
+
+	/**
+	 * Starts the HTTP listener.
+	 *
+	 * @throws IOException if the port cannot be bound
+	 */
+	public void start() throws IOException {
+		server = HttpServer.create(new InetSocketAddress(port), 0);
+		executor = Executors.newSingleThreadExecutor(r -> {
+			Thread t = new Thread(r, "PrometheusExporter");
+			t.setDaemon(true);
+			return t;
+		});
+		server.setExecutor(executor);
+		server.createContext("/metrics", this::handle);
+		server.start();
+		logger.info("Serving metrics on port " + port);
+	}
+
+	public void stop() {
+		if (server != null) {
+			server.stop(0);
+			executor.shutdownNow();
+			server = null;
+		}
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			byte[] body = render().getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Renders all metrics. Must only be called by one thread at a time.
+	 *
+	 * @return the metrics in the Prometheus text format
+	 */
+	String render() {
+		buffer.setLength(0);
+
+		renderHistograms("command.", "command_latency_seconds", "command",
+				"Latency of processed commands");
+		renderHistograms("storage.", "storage_latency_seconds", "operation",
+				"Latency of data storage calls");
+		renderHistograms(RequestTimer.PREFIX, "request_phase_seconds", "phase",
+				"Duration of the phases of sampled requests");
+		renderCounters();
+		renderGauges();
+		renderJvm();
+
+		return buffer.toString();
+	}
+
+	private void renderHistograms(String prefix, String name, String label, String help) {
+		boolean headerWritten = false;
+		for (Map.Entry<String, LatencyHistogram> entry : registry.getHistograms().entrySet()) {
+			if (!entry.getKey().startsWith(prefix)) {
+				continue;
+			}
+			if (!headerWritten) {
+				header(name, "histogram", help);
+				headerWritten = true;
+			}
+
+			String value = entry.getKey().substring(prefix.length());
+			LatencyHistogram histogram = entry.getValue();
+			long count = histogram.getCount();
+			histogram.countAtMost(bucketNanos, bucketCounts);
+
+			for (int i = 0; i < bucketCounts.length; i++) {
+				sample(name + "_bucket", label, value, "le", bucketLabels[i]).append(bucketCounts[i]).append('\n');
+			}
+			sample(name + "_bucket", label, value, "le", "+Inf").append(count).append('\n');
+			sample(name + "_sum", label, value, null, null).append(histogram.getSum() / 1e9).append('\n');
+			sample(name + "_count", label, value, null, null).append(count).append('\n');
+		}
+	}
+
+	private void renderCounters() {
+		Map<String, Long> counters = registry.getCounters();
+
+		// group by family, so each family has a single header
+		Map<String, StringBuilder> families = new TreeMap<String, StringBuilder>();
+		for (Map.Entry<String, Long> counter : counters.entrySet()) {
+			String name = counter.getKey();
+			String family;
+			String labels;
+			int dot = name.lastIndexOf('.');
+			if (name.startsWith("command.") && dot > "command.".length()) {
+				family = "command_results_total";
+				labels = "command=\"" + escape(name.substring("command.".length(), dot)) + "\",code=\""
+						+ escape(name.substring(dot + 1)) + "\"";
+			} else if (name.startsWith("storage.") && name.endsWith(".errors") && dot > "storage.".length()) {
+				family = "storage_errors_total";
+				labels = "operation=\"" + escape(name.substring("storage.".length(), dot)) + "\"";
+			} else {
+				family = sanitize(name) + "_total";
+				labels = null;
+			}
+
+			StringBuilder samples = families.get(family);
+			if (samples == null) {
+				samples = new StringBuilder();
+				families.put(family, samples);
+			}
+			samples.append(PREFIX).append(family);
+			if (labels != null) {
+				samples.append('{').append(labels).append('}');
+			}
+			samples.append(' ').append(counter.getValue()).append('\n');
+		}
+
+		for (Map.Entry<String, StringBuilder> family : families.entrySet()) {
+			buffer.append("# TYPE ").append(PREFIX).append(family.getKey()).append(" counter\n");
+			buffer.append(family.getValue());
+		}
+	}
+
+	private void renderGauges() {
+		for (Map.Entry<String, Long> gauge : registry.getGauges().entrySet()) {
+			String name = sanitize(gauge.getKey());
+			buffer.append("# TYPE ").append(PREFIX).append(name).append(" gauge\n");
+			buffer.append(PREFIX).append(name).append(' ').append(gauge.getValue()).append('\n');
+		}
+
+		header("requests_per_second", "gauge", "Processed requests per second since the last reset");
+		buffer.append(PREFIX).append("requests_per_second ").append(registry.getRequestsPerSecond()).append('\n');
+	}
+
+	private void renderJvm() {
+		MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		buffer.append("# HELP jvm_memory_bytes_used Used bytes of a given JVM memory area\n");
+		buffer.append("# TYPE jvm_memory_bytes_used gauge\n");
+		memory("jvm_memory_bytes_used", memory.getHeapMemoryUsage().getUsed(), memory.getNonHeapMemoryUsage().getUsed());
+		buffer.append("# TYPE jvm_memory_bytes_committed gauge\n");
+		memory("jvm_memory_bytes_committed", memory.getHeapMemoryUsage().getCommitted(),
+				memory.getNonHeapMemoryUsage().getCommitted());
+		MemoryUsage heap = memory.getHeapMemoryUsage();
+		buffer.append("# TYPE jvm_memory_bytes_max gauge\n");
+		buffer.append("jvm_memory_bytes_max{area=\"heap\"} ").append(heap.getMax()).append('\n');
+
+		buffer.append("# HELP jvm_gc_collection_seconds Time spent in a given JVM garbage collector\n");
+		buffer.append("# TYPE jvm_gc_collection_seconds summary\n");
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			String name = escape(gc.getName());
+			buffer.append("jvm_gc_collection_seconds_count{gc=\"").append(name).append("\"} ")
+					.append(gc.getCollectionCount()).append('\n');
+			buffer.append("jvm_gc_collection_seconds_sum{gc=\"").append(name).append("\"} ")
+					.append(gc.getCollectionTime() / 1000.0).append('\n');
+		}
+	}
+
+	private void memory(String name, long heap, long nonHeap) {
+		buffer.append(name).append("{area=\"heap\"} ").append(heap).append('\n');
+		buffer.append(name).append("{area=\"nonheap\"} ").append(nonHeap).append('\n');
+	}
+
+	private void header(String name, String type, String help) {
+		buffer.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+		buffer.append("# TYPE ").append(PREFIX).append(name).append(' ').append(type).append('\n');
+	}
+
+	private StringBuilder sample(String name, String label, String value, String extraLabel,
+			String extraValue) {
+		buffer.append(PREFIX).append(name).append('{').append(label).append("=\"").append(escape(value)).append('"');
+		if (extraLabel != null) {
+			buffer.append(',').append(extraLabel).append("=\"").append(extraValue).append('"');
+		}
+		return buffer.append("} ");
+	}
+
+	private static String sanitize(String name) {
+		return name.replaceAll("[^a-zA-Z0-9_]", "_");
+	}
+
+	private static String escape(String value) {
+		if (value.indexOf('"') < 0 && value.indexOf('\\') < 0 && value.indexOf('\n') < 0) {
+			return value;
+		}
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+
+}
@@ -0,0 +1,99 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+import metrics.RequestTimer.Phase;
+
+/**
+ * Flight recorder event of a request processed by the receiver, including the durations of
+ * its phases as measured by a {@link RequestTimer}.
+ *
+ * @author jonathanhasenburg
+ *
+ */
+@Name("fbase.namingservice.Request")
+@Label("Request")
+@Category({ "FBase", "Naming Service" })
+@Description("A request processed by the naming service receiver")
+@StackTrace(false)
+public class RequestEvent extends Event {
+
+	@Label("Command")
+	String command;
+
+	@Label("Sender")
+	String sender;
+
+	@Label("Response Code")
+	String responseCode;
+
+	@Label("Decrypt")
+	@Timespan(Timespan.NANOSECONDS)
+	long decrypt;
+
+	@Label("Sender Lookup")
+	@Timespan(Timespan.NANOSECONDS)
+	long lookup;
+
+	@Label("Sender Parse")
+	@Timespan(Timespan.NANOSECONDS)
+	long parse;
+
+	@Label("Verify")
+	@Timespan(Timespan.NANOSECONDS)
+	long verify;
+
+	@Label("Execute")
+	@Timespan(Timespan.NANOSECONDS)
+	long execute;
+
+	@Label("Sign")
+	@Timespan(Timespan.NANOSECONDS)
+	long sign;
+
+	@Label("Encrypt")
+	@Timespan(Timespan.NANOSECONDS)
+	long encrypt;
+
+	@Label("Serialize")
+	@Timespan(Timespan.NANOSECONDS)
+	long serialize;
+
+	@Label("Send")
+	@Timespan(Timespan.NANOSECONDS)
+	long send;
+
+	/**
+	 * Commits the event if it is enabled and exceeds its threshold. The fields are only filled
+	 * in that case.
+	 *
+	 * @param command The requested command
+	 * @param sender The ID of the sender
+	 * @param responseCode The response code, null if no response was sent
+	 * @param timer The timer of the request
+	 */
+	public void finish(Object command, Object sender, Object responseCode, RequestTimer timer) {
+		if (!shouldCommit()) {
+			return;
+		}
+		this.command = String.valueOf(command);
+		this.sender = String.valueOf(sender);
+		this.responseCode = String.valueOf(responseCode);
+		decrypt = timer.getDuration(Phase.DECRYPT);
+		lookup = timer.getDuration(Phase.LOOKUP);
+		parse = timer.getDuration(Phase.PARSE);
+		verify = timer.getDuration(Phase.VERIFY);
+		execute = timer.getDuration(Phase.EXECUTE);
+		sign = timer.getDuration(Phase.SIGN);
+		encrypt = timer.getDuration(Phase.ENCRYPT);
+		serialize = timer.getDuration(Phase.SERIALIZE);
+		send = timer.getDuration(Phase.SEND);
+		commit();
+	}
+
+}
@@ -0,0 +1,113 @@
+package metrics;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the duration of the phases of a single request with monotonic timestamps. Each call
+ * of {@link #mark(Phase)} attributes the time since the previous mark to the given phase. A
+ * timer can be reused for consecutive requests, but must not be shared between threads.
+ *
+ * @author jonathanhasenburg
+ *
+ */
+public class RequestTimer {
+
+	/**
+	 * Histograms of the phases are named {@value #PREFIX}&lt;phase&gt;
+	 */
+	public static final String PREFIX = "receiver.";
+
+	public enum Phase {
+		DECRYPT, LOOKUP, PARSE, VERIFY, EXECUTE, SIGN, ENCRYPT, SERIALIZE, SEND
+	}
+
+	private static final Phase[] phases = Phase.values();
+	private static final String[] metricNames = new String[phases.length];
+	private static final String totalMetricName = PREFIX + "total";
+
+	static {
+		for (Phase phase : phases) {
+			metricNames[phase.ordinal()] = PREFIX + phase.name().toLowerCase(Locale.ROOT);
+		}
+	}
+
+	private final long[] durations = new long[phases.length];
+	private final boolean[] measured = new boolean[phases.length];
+	private long start;
+	private long last;
+
+	/**
+	 * Starts timing a new request and clears all durations of the previous one.
+	 */
+	public void start() {
+		Arrays.fill(durations, 0);
+		Arrays.fill(measured, false);
+		start = System.nanoTime();
+		last = start;
+	}
+
+	/**
+	 * Ends a phase.
+	 *
+	 * @param phase The phase that ended
+	 */
+	public void mark(Phase phase) {
+		long now = System.nanoTime();
+		durations[phase.ordinal()] += now - last;
+		measured[phase.ordinal()] = true;
+		last = now;
+	}
+
+	/**
+	 * @param phase The phase
+	 * @return the duration of the phase in nanoseconds, 0 if it was not measured
+	 */
+	public long getDuration(Phase phase) {
+		return durations[phase.ordinal()];
+	}
+
+	/**
+	 * @return the time between the start and the last mark in nanoseconds
+	 */
+	public long getTotal() {
+		return last - start;
+	}
+
+	/**
+	 * Records the durations of all measured phases and the total duration in histograms.
+	 *
+	 * @param registry The registry containing the histograms
+	 */
+	public void recordInto(MetricsRegistry registry) {
+		for (int i = 0; i < phases.length; i++) {
+			if (measured[i]) {
+				registry.record(metricNames[i], durations[i]);
+			}
+		}
+		registry.record(totalMetricName, getTotal());
+	}
+
+	/**
+	 * @return the durations of all measured phases in milliseconds, e.g., "decrypt=1.52
+	 *         lookup=0.08 ..."
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < phases.length; i++) {
+			if (measured[i]) {
+				sb.append(phases[i].name().toLowerCase(Locale.ROOT)).append('=')
+						.append(String.format(Locale.ROOT, "%.2f", toMillis(durations[i]))).append(' ');
+			}
+		}
+		return sb.append("total=").append(String.format(Locale.ROOT, "%.2f", toMillis(getTotal())))
+				.toString();
+	}
+
+	private static double toMillis(long nanos) {
+		return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+}
@@ -0,0 +1,47 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event of a data storage call.
+ *
+ * @author jonathanhasenburg
+ *
+ */
+@Name("fbase.namingservice.Storage")
+@Label("Storage Call")
+@Category({ "FBase", "Naming Service" })
+@Description("A call of the data storage controller")
+public class StorageEvent extends Event {
+
+	@Label("Operation")
+	String operation;
+
+	@Label("Path")
+	String path;
+
+	@Label("Success")
+	boolean success;
+
+	/**
+	 * Commits the event if it is enabled and exceeds its threshold.
+	 *
+	 * @param operation The name of the called method
+	 * @param path The path of the call, or a description of the paths of a batch
+	 * @param success false, if the call threw an exception
+	 */
+	public void finish(String operation, String path, boolean success) {
+		if (!shouldCommit()) {
+			return;
+		}
+		this.operation = operation;
+		this.path = path;
+		this.success = success;
+		commit();
+	}
+
+}
@@ -0,0 +1,298 @@
+package namespace;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.apache.log4j.Logger;
+
+import model.JSONable;
+
+/**
+ * Records every successful modification of a {@link SystemEntity} in a sequenced stream, so
+ * that downstream systems, e.g., for auditing, can follow all changes of clients, nodes and
+ * keygroups without comparing the data storage.
+ *
+ * Each change is assigned the next offset, starting at 1, in the order the changes are
+ * reported. Changes are reported after they were written to the data storage and without a
+ * lock per entity, so concurrent changes of the same entity may appear in another order than
+ * their versions; consumers that need the latest state must compare the versions. The most
+ * recent changes are kept in memory. All changes are also written to segment files of a
+ * directory, one line "&lt;offset&gt; &lt;change&gt;" per change and each segment named after its
+ * first offset, so offsets continue after a restart and older changes can be read from disk.
+ * Only the most recent segments are retained. Lines are handed to the operating system
+ * immediately, but not forced to disk.
+ *
+ * @author jonathanhasenburg
+ *
+ */
+public class ChangeStream implements EntityChangeListener {
+
+	private static Logger logger = Logger.getLogger(ChangeStream.class.getName());
+
+	private static final String SEGMENT_SUFFIX = ".log";
+
+	public static final int DEFAULT_CAPACITY = 10000;
+	public static final int DEFAULT_SEGMENT_SIZE = 10000;
+
+	private final File directory;
+	private final int segmentSize;
+	private final int retainedSegments;
+
+	/**
+	 * The most recent changes, the change with offset o is at index o % length
+	 */
+	private final EntityChange[] retained;
+
+	/**
+	 * Segment files by their first offset
+	 */
+	private final TreeMap<Long, File> segments = new TreeMap<Long, File>();
+
+	/**
+	 * The offset the next change is assigned
+	 */
+	private long nextOffset = 1;
+
+	/**
+	 * The smallest offset kept in memory
+	 */
+	private long firstRetained;
+
+	private Writer writer;
+	private int segmentChanges = 0;
+
+	/**
+	 * Opens a change stream with the default capacity and segment size.
+	 *
+	 * @param directory The directory of the segment files, created if it does not exist
+	 * @param retainedSegments The number of segments kept on disk
+	 * @throws IOException if the segments cannot be read
+	 */
+	public ChangeStream(File directory, int retainedSegments) throws IOException {
+		this(directory, DEFAULT_CAPACITY, DEFAULT_SEGMENT_SIZE, retainedSegments);
+	}
+
+	/**
+	 * Opens a change stream.
+	 *
+	 * @param directory The directory of the segment files, created if it does not exist
+	 * @param capacity The number of changes kept in memory
+	 * @param segmentSize The number of changes per segment file
+	 * @param retainedSegments The number of segments kept on disk
+	 * @throws IOException if the segments cannot be read
+	 */
+	public ChangeStream(File directory, int capacity, int segmentSize, int retainedSegments)
+			throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Cannot create change stream directory " + directory);
+		}
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.retainedSegments = Math.max(1, retainedSegments);
+		this.retained = new EntityChange[capacity];
+
+		for (File file : directory.listFiles((dir, name) -> name.endsWith(SEGMENT_SUFFIX))) {
+			String name = file.getName();
+			segments.put(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())), file);
+		}
+		if (!segments.isEmpty()) {
+			Map.Entry<Long, File> last = segments.lastEntry();
+			truncateToLastLine(last.getValue());
+			nextOffset = last.getKey();
+			for (String line : readLines(last.getValue())) {
+				nextOffset = offsetOf(line) + 1;
+				segmentChanges++;
+			}
+		}
+		firstRetained = nextOffset;
+		logger.info("Opened change stream in " + directory + " at offset " + nextOffset);
+	}
+
+	@Override
+	public synchronized void entityChanged(EntityChange change) {
+		long offset = nextOffset++;
+		retained[(int) (offset % retained.length)] = change;
+		if (offset - firstRetained >= retained.length) {
+			firstRetained = offset - retained.length + 1;
+		}
+
+		try {
+			if (writer == null || segmentChanges >= segmentSize) {
+				openSegment(offset);
+			}
+			writer.write(offset + " " + JSONable.toJSON(change) + "\n");
+			writer.flush();
+			segmentChanges++;
+		} catch (IOException e) {
+			logger.error("Cannot write change " + offset + " to " + directory, e);
+		}
+	}
+
+	/**
+	 * Reads consecutive changes. Offsets of changes that could not be written are skipped.
+	 *
+	 * @param offset The offset of the first change
+	 * @param max The maximum number of changes
+	 * @return the changes by their offset, starting with the first available change at or
+	 *         after the given offset, empty if there is none
+	 * @throws IOException if the changes cannot be read from disk
+	 */
+	public SortedMap<Long, EntityChange> read(long offset, int max) throws IOException {
+		SortedMap<Long, EntityChange> changes = new TreeMap<Long, EntityChange>();
+		long next = offset;
+		while (changes.size() < max) {
+			File segment;
+			long segmentEnd;
+			synchronized (this) {
+				if (next >= nextOffset) {
+					break;
+				}
+				if (next >= firstRetained) {
+					for (; next < nextOffset && changes.size() < max; next++) {
+						changes.put(next, retained[(int) (next % retained.length)]);
+					}
+					break;
+				}
+				Map.Entry<Long, File> floor = segments.floorEntry(next);
+				if (floor == null) {
+					// older changes are not retained anymore
+					next = segments.isEmpty() ? firstRetained : segments.firstKey();
+					continue;
+				}
+				segment = floor.getValue();
+				Long higher = segments.higherKey(floor.getKey());
+				// segments only grow at their end, so lines before the head are complete
+				segmentEnd = higher != null ? higher : nextOffset;
+			}
+
+			try {
+				for (String line : readLines(segment)) {
+					long o = offsetOf(line);
+					if (o >= next && o < segmentEnd && changes.size() < max) {
+						EntityChange change = JSONable.fromJSON(line.substring(line.indexOf(' ') + 1),
+								EntityChange.class);
+						if (change != null) {
+							changes.put(o, change);
+						}
+					}
+				}
+			} catch (FileNotFoundException e) {
+				// deleted by the retention in the meantime
+				synchronized (this) {
+					segments.values().remove(segment);
+				}
+				continue;
+			}
+			next = segmentEnd;
+		}
+		return changes;
+	}
+
+	/**
+	 * @return the smallest offset that can still be read
+	 */
+	public synchronized long getFirstOffset() {
+		return segments.isEmpty() ? firstRetained : Math.min(firstRetained, segments.firstKey());
+	}
+
+	/**
+	 * @return the offset the next change will be assigned
+	 */
+	public synchronized long getNextOffset() {
+		return nextOffset;
+	}
+
+	public synchronized void close() {
+		if (writer != null) {
+			try {
+				writer.close();
+			} catch (IOException e) {
+				logger.error("Cannot close change stream", e);
+			}
+			writer = null;
+		}
+	}
+
+	/**
+	 * Opens the segment the next change is written to. A new segment is started if the last
+	 * one is full, and the oldest segments beyond the retention are deleted.
+	 */
+	private void openSegment(long offset) throws IOException {
+		if (writer != null) {
+			writer.close();
+		}
+		File file;
+		if (!segments.isEmpty() && segmentChanges < segmentSize) {
+			// continuing the last segment after a restart
+			file = segments.lastEntry().getValue();
+		} else {
+			file = new File(directory, String.format("%020d", offset) + SEGMENT_SUFFIX);
+			segments.put(offset, file);
+			segmentChanges = 0;
+			while (segments.size() > retainedSegments) {
+				File oldest = segments.pollFirstEntry().getValue();
+				if (!oldest.delete()) {
+					logger.warn("Cannot delete change stream segment " + oldest);
+				}
+			}
+		}
+		writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true),
+				StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Removes a partial last line, e.g., after a crash while it was written, so that the next
+	 * change does not continue it.
+	 */
+	private static void truncateToLastLine(File file) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			long length = raf.length();
+			long end = length;
+			while (end > 0) {
+				raf.seek(end - 1);
+				if (raf.read() == '\n') {
+					break;
+				}
+				end--;
+			}
+			if (end < length) {
+				logger.warn("Removing " + (length - end) + " bytes of a partial change from " + file);
+				raf.setLength(end);
+			}
+		}
+	}
+
+	private static List<String> readLines(File file) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new FileInputStream(file), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.indexOf(' ') > 0) {
+					lines.add(line);
+				}
+			}
+		}
+		return lines;
+	}
+
+	private static long offsetOf(String line) {
+		return Long.parseLong(line.substring(0, line.indexOf(' ')));
+	}
+
+}
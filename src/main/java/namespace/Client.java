@@ -55,6 +55,20 @@ public class Client extends SystemEntity {
 		return readEntity(controller, id);
 	}
 	
+	/**
+	 * Responds with all information about the client, or with NOT_MODIFIED if the client
+	 * still has the version known by the sender
+	 * 
+	 * @param controller Controller for interfacing with base distributed system
+	 * @param id ID of client to get information from
+	 * @param knownVersion The version known by the sender, null if none is known
+	 * @return Response object with String containing the Client information or NOT_MODIFIED
+	 */
+	public Response<String> readClient(IControllable controller, ClientID id, Integer knownVersion) {
+		logger.debug("Reading client " + id + " if modified since version " + knownVersion);
+		return readEntityIfModified(controller, id, knownVersion);
+	}
+	
 	/**
 	 * Updates information kept on the client with the matching client ID
 	 * 
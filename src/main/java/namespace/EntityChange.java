@@ -0,0 +1,101 @@
+package namespace;
+
+import model.JSONable;
+
+/**
+ * Describes a single change of an entity stored by the naming service. Changes are
+ * handed to all registered {@link EntityChangeListener}s after the storage operation
+ * succeeded.
+ *
+ * @author jonathanhasenburg
+ *
+ */
+public class EntityChange implements JSONable {
+
+	/**
+	 * The kind of modification that happened to the entity
+	 */
+	public enum Kind {
+		CREATED, UPDATED, TOMBSTONED, DESTROYED
+	}
+
+	/**
+	 * The type of the entity, e.g., client, node or keygroup
+	 */
+	private String type;
+
+	/**
+	 * The string representation of the entity's ConfigID
+	 */
+	private String entityID;
+
+	private Kind kind;
+
+	/**
+	 * The version of the entity's config after the change
+	 */
+	private int version;
+
+	/**
+	 * Time of the change in milliseconds since the epoch
+	 */
+	private long timestamp;
+
+	public EntityChange() {
+
+	}
+
+	public EntityChange(String type, String entityID, Kind kind, int version) {
+		this.type = type;
+		this.entityID = entityID;
+		this.kind = kind;
+		this.version = version;
+		this.timestamp = System.currentTimeMillis();
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	public void setType(String type) {
+		this.type = type;
+	}
+
+	public String getEntityID() {
+		return entityID;
+	}
+
+	public void setEntityID(String entityID) {
+		this.entityID = entityID;
+	}
+
+	public Kind getKind() {
+		return kind;
+	}
+
+	public void setKind(Kind kind) {
+		this.kind = kind;
+	}
+
+	public int getVersion() {
+		return version;
+	}
+
+	public void setVersion(int version) {
+		this.version = version;
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public void setTimestamp(long timestamp) {
+		this.timestamp = timestamp;
+	}
+
+	@Override
+	public String toString() {
+		return kind + " " + type + " " + entityID + " (version " + version + ")";
+	}
+
+}
@@ -0,0 +1,16 @@
+package namespace;
+
+/**
+ * Listener that is informed about every successful modification of a {@link SystemEntity}.
+ *
+ * Listeners are called synchronously by the thread that modified the entity, so
+ * implementations must return quickly and hand expensive work to their own threads.
+ *
+ * @author jonathanhasenburg
+ *
+ */
+public interface EntityChangeListener {
+
+	public void entityChanged(EntityChange change);
+
+}
@@ -0,0 +1,227 @@
+package namespace;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.log4j.Logger;
+
+import database.IControllable;
+
+/**
+ * The IDAllocator hands out collision-free IDs from blocks that are leased from a counter
+ * persisted in the data storage. Only leasing a new block requires storage round trips, all
+ * other allocations are served from memory.
+ *
+ * IDs that were leased but not handed out before a restart are skipped, the counter is never
+ * decremented. The counter is only updated if it was not modified since it was read, so
+ * naming services sharing a data storage that compares and updates atomically, e.g.,
+ * ZooKeeper or Raft, never lease the same block.
+ *
+ * IDs are consecutive, so they are predictable and reveal roughly how many IDs were handed
+ * out. This is acceptable as they only name entries of the data storage: nodes and clients
+ * authenticate with their key pairs, and reading an entity does not require knowing an ID
+ * that could not also be listed. IDs must not be used as secrets.
+ *
+ * @author jonathanhasenburg
+ *
+ */
+public class IDAllocator {
+
+	private static Logger logger = Logger.getLogger(IDAllocator.class.getName());
+
+	/**
+	 * System path of the node storing the next unleased counter value
+	 */
+	public static final String COUNTER_PATH = "/id";
+
+	/**
+	 * Default number of IDs leased at once
+	 */
+	public static final int DEFAULT_BLOCK_SIZE = 1000;
+
+	/**
+	 * The lease of each controller, shared by its allocators. Leases do not reference their
+	 * controller, so controllers that are not used anymore can be collected.
+	 */
+	private static final Map<IControllable, Lease> leases = new WeakHashMap<IControllable, Lease>();
+
+	private final IControllable controller;
+	private final int blockSize;
+	private final Lease lease;
+
+	/**
+	 * The counter values leased, but not handed out yet
+	 */
+	private static class Lease {
+
+		/**
+		 * Next counter value to hand out
+		 */
+		private long next = 0;
+
+		/**
+		 * First counter value that is not part of the lease
+		 */
+		private long end = 0;
+
+	}
+
+	/**
+	 * Returns an allocator that shares its lease with all other allocators returned for the
+	 * given controller.
+	 *
+	 * @param controller Controller for interfacing with base distributed system
+	 * @return the allocator
+	 */
+	public static IDAllocator forController(IControllable controller) {
+		Lease lease;
+		synchronized (leases) {
+			lease = leases.computeIfAbsent(controller, c -> new Lease());
+		}
+		return new IDAllocator(controller, DEFAULT_BLOCK_SIZE, lease);
+	}
+
+	/**
+	 * Creates an allocator with its own lease.
+	 *
+	 * @param controller Controller for interfacing with base distributed system
+	 * @param blockSize The number of IDs leased at once
+	 */
+	public IDAllocator(IControllable controller, int blockSize) {
+		this(controller, blockSize, new Lease());
+	}
+
+	private IDAllocator(IControllable controller, int blockSize, Lease lease) {
+		if (blockSize < 1) {
+			throw new IllegalArgumentException("Block size must be positive");
+		}
+		this.controller = controller;
+		this.blockSize = blockSize;
+		this.lease = lease;
+	}
+
+	/**
+	 * Raises the persisted counter to at least the given value, e.g., after importing the
+	 * entities of another data storage, so that the IDs handed out there are not handed out
+	 * again. The counter is never decreased.
+	 *
+	 * @param controller Controller for interfacing with base distributed system
+	 * @param value The minimum value of the counter
+	 * @throws InterruptedException
+	 */
+	public static void advanceCounter(IControllable controller, long value) throws InterruptedException {
+		while (true) {
+			if (!controller.exists(COUNTER_PATH)) {
+				try {
+					controller.addNode(COUNTER_PATH, Long.toString(value));
+					return;
+				} catch (IllegalArgumentException e) {
+					logger.debug("Counter was created concurrently");
+					continue;
+				}
+			}
+			String data = controller.readNode(COUNTER_PATH);
+			if (!data.trim().isEmpty() && Long.parseLong(data.trim()) >= value) {
+				return;
+			}
+			if (controller.updateNodeIfUnchanged(COUNTER_PATH, data, Long.toString(value))) {
+				return;
+			}
+			logger.debug("Counter was leased concurrently, reading it again");
+		}
+	}
+
+	/**
+	 * Allocates a single ID.
+	 *
+	 * @param length The minimum length of the ID, shorter IDs are padded with zeros
+	 * @return the ID
+	 * @throws InterruptedException
+	 */
+	public String allocate(int length) throws InterruptedException {
+		return allocate(1, length).get(0);
+	}
+
+	/**
+	 * Allocates multiple IDs with at most one storage round trip.
+	 *
+	 * @param count The number of IDs to allocate
+	 * @param length The minimum length of each ID, shorter IDs are padded with zeros
+	 * @return the IDs
+	 * @throws InterruptedException
+	 */
+	public List<String> allocate(int count, int length) throws InterruptedException {
+		if (count < 1) {
+			throw new IllegalArgumentException("Count must be positive");
+		}
+
+		synchronized (lease) {
+			if (lease.end - lease.next < count) {
+				lease(Math.max(blockSize, count));
+			}
+
+			List<String> ids = new ArrayList<String>(count);
+			for (int i = 0; i < count; i++) {
+				ids.add(format(lease.next++, length));
+			}
+			return ids;
+		}
+	}
+
+	/**
+	 * Leases a new block from the persisted counter, must be called while holding the lock of
+	 * the lease. Remaining IDs of the current lease are discarded.
+	 *
+	 * @param size The number of IDs to lease
+	 * @throws InterruptedException
+	 */
+	private void lease(int size) throws InterruptedException {
+		long start;
+		while (true) {
+			if (!controller.exists(COUNTER_PATH)) {
+				try {
+					controller.addNode(COUNTER_PATH, Long.toString(lease.end + size));
+					start = lease.end;
+					break;
+				} catch (IllegalArgumentException e) {
+					logger.debug("Counter was created concurrently");
+					continue;
+				}
+			}
+			String data = controller.readNode(COUNTER_PATH);
+			// never go below the current lease, even if the counter was wiped
+			start = data.trim().isEmpty() ? lease.end : Math.max(lease.end, Long.parseLong(data.trim()));
+			if (controller.updateNodeIfUnchanged(COUNTER_PATH, data, Long.toString(start + size))) {
+				break;
+			}
+			logger.debug("Counter was leased concurrently, reading it again");
+		}
+
+		lease.next = start;
+		lease.end = start + size;
+		logger.debug("Leased IDs " + start + " to " + (lease.end - 1));
+	}
+
+	/**
+	 * Converts a counter value into an alphanumeric ID.
+	 *
+	 * @param value The counter value
+	 * @param length The minimum length of the ID
+	 * @return the ID
+	 */
+	private static String format(long value, int length) {
+		String id = Long.toString(value, 36);
+		if (id.length() >= length) {
+			return id;
+		}
+
+		StringBuilder sb = new StringBuilder(length);
+		for (int i = id.length(); i < length; i++) {
+			sb.append('0');
+		}
+		return sb.append(id).toString();
+	}
+
+}
@@ -1,5 +1,6 @@
 package namespace;
 
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.function.BiConsumer;
 
@@ -247,6 +248,26 @@ public class Keygroup extends SystemEntity {
 	 * @return Response object with String containing the Keygroup information
 	 */
 	Response<String> readKeygroup(IControllable controller, KeygroupID keygroupID, NodeID senderID) {
+		return readKeygroup(controller, keygroupID, senderID, null);
+	}
+	
+	/**
+	 * Responds with all information about the Keygroup, or with NOT_MODIFIED if the Keygroup
+	 * still has the version known by the sender. Only in the latter case, the stored config
+	 * does not need to be read and stripped of its encryption information.
+	 * 
+	 * @param controller Controller for interfacing with base distributed system
+	 * @param keygroupID The ID to the Keygroup to get information from
+	 * @param senderID The ID of the sending node
+	 * @param knownVersion The version known by the sender, null if none is known
+	 * @return Response object with String containing the Keygroup information or NOT_MODIFIED
+	 */
+	Response<String> readKeygroup(IControllable controller, KeygroupID keygroupID, NodeID senderID, Integer knownVersion) {
+		if (isNotModified(controller, keygroupID, knownVersion)) {
+			logger.debug("Keygroup " + keygroupID + " not modified since version " + knownVersion);
+			return new Response<String>(NOT_MODIFIED, ResponseCode.SUCCESS);
+		}
+		
 		logger.debug("Reading keygroup " + keygroupID);
 
 		Response<String> r = readEntity(controller, keygroupID);
@@ -447,6 +468,50 @@ public class Keygroup extends SystemEntity {
 		return updateEntity(controller, keygroupID, keygroup);
 	}
 	
+	/**
+	 * Keygroups are stored below their app and tenant nodes, so IDs have the form app/tenant/group.
+	 */
+	@Override
+	protected int idDepth() {
+		return 3;
+	}
+	
+	/**
+	 * Creates the tombstoned app and tenant nodes if necessary, like the active ones are
+	 * created with the keygroup. Data storages such as ZooKeeper only add nodes below existing
+	 * parents.
+	 */
+	@Override
+	protected void createTombstonedParents(IControllable controller, String suffix) throws InterruptedException {
+		String tenantPath = suffix.substring(0, suffix.lastIndexOf('/'));
+		String appPath = tenantPath.substring(0, tenantPath.lastIndexOf('/'));
+		
+		controller.addNodesIfAbsent(Arrays.asList(tombstonedPath(appPath), tombstonedPath(tenantPath)), "");
+	}
+	
+	/**
+	 * Removes the tombstoned tenant and app nodes if they have no children. They are deleted
+	 * non-recursively, so a keygroup that is tombstoned into the tenant meanwhile is never
+	 * removed with them. Nodes that have children or were already removed are left as they are.
+	 */
+	@Override
+	protected void deleteEmptyTombstonedParents(IControllable controller, String suffix) throws InterruptedException {
+		String tenantPath = suffix.substring(0, suffix.lastIndexOf('/'));
+		String appPath = tenantPath.substring(0, tenantPath.lastIndexOf('/'));
+		
+		deleteIfEmpty(controller, tombstonedPath(tenantPath));
+		deleteIfEmpty(controller, tombstonedPath(appPath));
+	}
+	
+	private void deleteIfEmpty(IControllable controller, String path) throws InterruptedException {
+		try {
+			controller.deleteNode(path);
+		} catch (IllegalArgumentException e) {
+			// not empty or already removed
+			logger.debug("Keeping " + path + ": " + e.getMessage());
+		}
+	}
+	
 	/**
 	 * Permanently removes Keygroup and all empty parents from system
 	 * 
@@ -467,14 +532,9 @@ public class Keygroup extends SystemEntity {
 		controller.deleteNode(tombstonedPath(keygroupID));
 		
 		// Remove higher level nodes if necessary
-		if(controller.getChildren(tombstonedPath(keygroupID.getTenantPath())).isEmpty()) {
-			controller.deleteNode(tombstonedPath(keygroupID.getTenantPath()));
-			
-			if(controller.getChildren(tombstonedPath(keygroupID.getAppPath())).isEmpty()) {
-				controller.deleteNode(tombstonedPath(keygroupID.getAppPath()));
-			}
-		}
+		deleteEmptyTombstonedParents(controller, keygroupID.toString());
 		
+		fireChange(EntityChange.Kind.DESTROYED, keygroupID, keygroup.getVersion());
 		return new Response<String>(data, ResponseCode.SUCCESS);
 	}
 }
@@ -6,6 +6,8 @@ import com.fasterxml.jackson.core.type.TypeReference;
 
 import crypto.CryptoProvider.EncryptionAlgorithm;
 import database.IControllable;
+import metrics.CommandEvent;
+import metrics.MetricsRegistry;
 import model.JSONable;
 import model.config.ClientConfig;
 import model.config.KeygroupConfig;
@@ -29,10 +31,29 @@ public class MessageParser {
 	private static Logger logger = Logger.getLogger(MessageParser.class.getName());
 	
 	public static Response<?> runCommand(IControllable controller, Envelope envelope) {
+		CommandEvent event = new CommandEvent();
+		event.begin();
+		long start = System.nanoTime();
+		Command command = envelope.getMessage().getCommand();
+		String metric = MetricsRegistry.COMMAND_PREFIX + command;
+		Response<?> response = null;
+		try {
+			response = execute(controller, envelope);
+			return response;
+		} finally {
+			MetricsRegistry metrics = MetricsRegistry.getInstance();
+			metrics.record(metric, System.nanoTime() - start);
+			metrics.increment(metric + "." + (response != null ? response.getResponseCode() : "EXCEPTION"));
+			event.finish(command, envelope.getConfigID(), response != null ? response.getResponseCode() : null);
+		}
+	}
+	
+	private static Response<?> execute(IControllable controller, Envelope envelope) {
 		NodeID senderID = envelope.getNodeID();
 		Message message = envelope.getMessage();
 		Command command = message.getCommand();
 		String content = message.getContent();
+		RequestOptions options = RequestOptions.parse(message.getTextualInfo());
 		
 		logger.debug("Running " + command);
 		
@@ -40,7 +61,7 @@ public class MessageParser {
 			case CLIENT_CONFIG_CREATE:
 				return clientCreate(controller, content);
 			case CLIENT_CONFIG_READ:
-				return clientRead(controller, content);
+				return clientRead(controller, content, options);
 			case CLIENT_CONFIG_UPDATE:
 				return clientUpdate(controller, content);
 			case CLIENT_CONFIG_DELETE:
@@ -48,7 +69,7 @@ public class MessageParser {
 			case NODE_CONFIG_CREATE:
 				return nodeCreate(controller, content);
 			case NODE_CONFIG_READ:
-				return nodeRead(controller, content);
+				return nodeRead(controller, content, options);
 			case NODE_CONFIG_UPDATE:
 				return nodeUpdate(controller, content, senderID);
 			case NODE_CONFIG_DELETE:
@@ -62,7 +83,7 @@ public class MessageParser {
 			case KEYGROUP_CONFIG_ADD_TRIGGER_NODE:
 				return keygroupAddTriggerNode(controller, content, senderID);
 			case KEYGROUP_CONFIG_READ:
-				return keygroupRead(controller, content, senderID);
+				return keygroupRead(controller, content, senderID, options);
 			case KEYGROUP_CONFIG_UPDATE_CRYPTO:
 				return keygroupUpdateCrypto(controller, content, senderID);
 			case KEYGROUP_CONFIG_DELETE:
@@ -81,9 +102,9 @@ public class MessageParser {
 		return Client.getInstance().createClient(controller, client);
 	}
 	
-	private static Response<String> clientRead(IControllable controller, String content) {
+	private static Response<String> clientRead(IControllable controller, String content, RequestOptions options) {
 		ClientID clientID = JSONable.fromJSON(content, ClientID.class);
-		return Client.getInstance().readClient(controller, clientID);
+		return Client.getInstance().readClient(controller, clientID, options.getKnownVersion());
 	}
 	
 	private static Response<Boolean> clientUpdate(IControllable controller, String content) {
@@ -101,9 +122,9 @@ public class MessageParser {
 		return Node.getInstance().createNode(controller, node);
 	}
 	
-	private static Response<String> nodeRead(IControllable controller, String content) {
+	private static Response<String> nodeRead(IControllable controller, String content, RequestOptions options) {
 		NodeID nodeID = JSONable.fromJSON(content, NodeID.class);
-		return Node.getInstance().readNode(controller, nodeID);
+		return Node.getInstance().readNode(controller, nodeID, options.getKnownVersion());
 	}
 	
 	private static Response<Boolean> nodeUpdate(IControllable controller, String content, NodeID senderID) {
@@ -185,9 +206,9 @@ public class MessageParser {
 		}
 	}
 	
-	private static Response<String> keygroupRead(IControllable controller, String content, NodeID senderID) {
+	private static Response<String> keygroupRead(IControllable controller, String content, NodeID senderID, RequestOptions options) {
 		KeygroupID keygroupID = JSONable.fromJSON(content, KeygroupID.class);
-		return Keygroup.getInstance().readKeygroup(controller, keygroupID, senderID);
+		return Keygroup.getInstance().readKeygroup(controller, keygroupID, senderID, options.getKnownVersion());
 	}
 	
 	private static Response<String> keygroupUpdateCrypto(IControllable controller, String content, NodeID senderID) {
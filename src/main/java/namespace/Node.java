@@ -53,6 +53,20 @@ public class Node extends SystemEntity {
 		return readEntity(controller, id);
 	}
 	
+	/**
+	 * Responds with all information about the node, or with NOT_MODIFIED if the node
+	 * still has the version known by the sender
+	 * 
+	 * @param controller Controller for interfacing with base distributed system
+	 * @param id ID of node to get information from
+	 * @param knownVersion The version known by the sender, null if none is known
+	 * @return Response object with String containing the Node information or NOT_MODIFIED
+	 */
+	public Response<String> readNode(IControllable controller, NodeID id, Integer knownVersion) {
+		logger.debug("Reading node " + id + " if modified since version " + knownVersion);
+		return readEntityIfModified(controller, id, knownVersion);
+	}
+	
 	/**
 	 * Updates information kept on the node with the matching node ID
 	 * 
@@ -0,0 +1,91 @@
+package namespace;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Optional parameters of a request. Commands and their content are defined by FBaseCommons, so
+ * options are transported in the textual info of the request message as semicolon separated
+ * key=value pairs, e.g., "knownVersion=3". Unknown keys and malformed values are ignored.
+ *
+ * @author jonathanhasenburg
+ *
+ */
+public class RequestOptions {
+
+	private static Logger logger = Logger.getLogger(RequestOptions.class.getName());
+
+	public static final String KNOWN_VERSION = "knownVersion";
+	public static final String MIN_SEQUENCE = "minSequence";
+
+	/**
+	 * Key of the sequence number appended to the textual info of responses to requests with a
+	 * {@link #MIN_SEQUENCE}
+	 */
+	public static final String SEQUENCE = "sequence";
+
+	private static final RequestOptions NONE = new RequestOptions();
+
+	/**
+	 * The version of the requested config the sender already knows, null if unknown
+	 */
+	private Integer knownVersion = null;
+
+	/**
+	 * The sequence number of the last change the sender must see, null if the sender does not
+	 * need to read its own writes
+	 */
+	private Long minSequence = null;
+
+	/**
+	 * Parses the options from the textual info of a request message.
+	 *
+	 * @param textualInfo The textual info, may be null
+	 * @return the parsed options
+	 */
+	public static RequestOptions parse(String textualInfo) {
+		if (textualInfo == null || textualInfo.isEmpty()) {
+			return NONE;
+		}
+
+		RequestOptions options = new RequestOptions();
+		for (String pair : textualInfo.split(";")) {
+			int index = pair.indexOf('=');
+			if (index < 0) {
+				continue;
+			}
+
+			String key = pair.substring(0, index).trim();
+			String value = pair.substring(index + 1).trim();
+			try {
+				if (KNOWN_VERSION.equals(key)) {
+					options.knownVersion = Integer.parseInt(value);
+				} else if (MIN_SEQUENCE.equals(key)) {
+					options.minSequence = Long.parseLong(value);
+				}
+			} catch (NumberFormatException e) {
+				logger.debug("Ignoring malformed request option " + pair);
+			}
+		}
+		return options;
+	}
+
+	public Integer getKnownVersion() {
+		return knownVersion;
+	}
+
+	public Long getMinSequence() {
+		return minSequence;
+	}
+
+	/**
+	 * Appends a sequence number to the textual info of a response, e.g., "SUCCESS;sequence=42".
+	 *
+	 * @param textualInfo The textual info of the response
+	 * @param sequence The sequence number of the last change visible to the response
+	 * @return the extended textual info
+	 */
+	public static String withSequence(String textualInfo, long sequence) {
+		return textualInfo + ";" + SEQUENCE + "=" + sequence;
+	}
+
+}
@@ -0,0 +1,180 @@
+package namespace;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.log4j.Logger;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import model.JSONable;
+import model.data.KeygroupID;
+import model.messages.Command;
+import model.messages.Message;
+
+/**
+ * Partitions the keygroups of a sharded deployment across several naming service instances.
+ *
+ * Keygroups are assigned by their app and tenant, so all keygroups of a tenant are stored by
+ * the same shard, using consistent hashing: each shard owns many points of a hash ring, and a
+ * tenant belongs to the shard owning the first point following the tenant's hash. Adding or
+ * removing a shard therefore only moves the tenants of the affected points.
+ *
+ * Clients and nodes are global entities owned by the first shard, the global shard. All other
+ * shards replicate them, as they need the configs of nodes to authenticate requests and to
+ * check keygroup members.
+ *
+ * @author jonathanhasenburg
+ *
+ */
+public class ShardMap {
+
+	private static Logger logger = Logger.getLogger(ShardMap.class.getName());
+
+	private static final ObjectMapper mapper = new ObjectMapper();
+
+	/**
+	 * Default number of points each shard owns on the hash ring
+	 */
+	public static final int DEFAULT_VIRTUAL_NODES = 128;
+
+	/**
+	 * Paths of the top level nodes storing global entities
+	 */
+	public static final List<String> GLOBAL_ROOTS = Collections.unmodifiableList(
+			Arrays.asList("/client", "/node"));
+
+	private final List<String> shards;
+	private final TreeMap<Long, String> ring = new TreeMap<Long, String>();
+
+	/**
+	 * Creates a shard map.
+	 *
+	 * @param shards The addresses of the shards, e.g., tcp://host:54321, the first is the
+	 *            global shard
+	 */
+	public ShardMap(List<String> shards) {
+		this(shards, DEFAULT_VIRTUAL_NODES);
+	}
+
+	/**
+	 * Creates a shard map.
+	 *
+	 * @param shards The addresses of the shards, e.g., tcp://host:54321, the first is the
+	 *            global shard
+	 * @param virtualNodes The number of points each shard owns on the hash ring
+	 */
+	public ShardMap(List<String> shards, int virtualNodes) {
+		if (shards.isEmpty()) {
+			throw new IllegalArgumentException("A shard map needs at least one shard");
+		}
+		this.shards = Collections.unmodifiableList(new ArrayList<String>(shards));
+		for (String shard : shards) {
+			for (int i = 0; i < virtualNodes; i++) {
+				ring.put(hash(shard + "#" + i), shard);
+			}
+		}
+	}
+
+	/**
+	 * @return the addresses of all shards
+	 */
+	public List<String> getShards() {
+		return shards;
+	}
+
+	/**
+	 * @return the address of the shard owning clients and nodes
+	 */
+	public String getGlobalShard() {
+		return shards.get(0);
+	}
+
+	/**
+	 * Returns the shard storing a keygroup.
+	 *
+	 * @param keygroupID The ID of the keygroup
+	 * @return the address of the shard
+	 */
+	public String ownerOf(KeygroupID keygroupID) {
+		return ownerOfTenant(keygroupID.getApp() + "/" + keygroupID.getTenant());
+	}
+
+	/**
+	 * Returns the shard storing the keygroups of a tenant.
+	 *
+	 * @param tenantPath The app and tenant, separated by a slash
+	 * @return the address of the shard
+	 */
+	public String ownerOfTenant(String tenantPath) {
+		Map.Entry<Long, String> point = ring.ceilingEntry(hash(tenantPath));
+		return point != null ? point.getValue() : ring.firstEntry().getValue();
+	}
+
+	/**
+	 * Returns the shard that must process a request. Keygroup commands are processed by the
+	 * shard storing the keygroup, all other commands by the global shard, which also gives
+	 * senders read-your-writes consistency for clients and nodes.
+	 *
+	 * @param message The request
+	 * @return the address of the shard
+	 */
+	public String route(Message message) {
+		KeygroupID keygroupID = keygroupOf(message);
+		return keygroupID != null ? ownerOf(keygroupID) : getGlobalShard();
+	}
+
+	/**
+	 * @param command A command
+	 * @return true, if the command concerns clients or nodes rather than keygroups
+	 */
+	public static boolean isGlobal(Command command) {
+		return command != null && !command.name().startsWith("KEYGROUP_");
+	}
+
+	/**
+	 * Extracts the ID of the keygroup a keygroup command concerns. The content of these
+	 * commands is either a keygroup ID, or a config or wrapper with a keygroupID field.
+	 *
+	 * @param message The request
+	 * @return the keygroup ID, null if the message has no keygroup command or cannot be parsed
+	 */
+	public static KeygroupID keygroupOf(Message message) {
+		if (message.getCommand() == null || isGlobal(message.getCommand())
+				|| message.getContent() == null) {
+			return null;
+		}
+		try {
+			JsonNode content = mapper.readTree(message.getContent());
+			JsonNode id = content.has("keygroupID") ? content.get("keygroupID") : content;
+			return JSONable.fromJSON(id.toString(), KeygroupID.class);
+		} catch (IOException | RuntimeException e) {
+			logger.warn("Cannot read keygroup of " + message.getCommand() + ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	private static long hash(String key) {
+		try {
+			byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+			long hash = 0;
+			for (int i = 0; i < 8; i++) {
+				hash = (hash << 8) | (digest[i] & 0xff);
+			}
+			return hash;
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform supports MD5
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
@@ -1,7 +1,16 @@
 package namespace;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
 import org.apache.log4j.Logger;
 import org.apache.zookeeper.KeeperException;
@@ -12,6 +21,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
 import database.IControllable;
+import metrics.EntityEvent;
 import model.JSONable;
 import model.config.Config;
 import model.data.ConfigID;
@@ -28,6 +38,11 @@ public abstract class SystemEntity {
 	
 	private static Logger logger = Logger.getLogger(SystemEntity.class.getName());
 	
+	/**
+	 * Value of read responses if the config still has the version known by the sender
+	 */
+	public static final String NOT_MODIFIED = "NOT_MODIFIED";
+	
 	/**
 	 * System prefix for location of all active SystemEntities
 	 */
@@ -39,7 +54,7 @@ public abstract class SystemEntity {
 	protected final String pathPrefixTombstoned;
 	
 	/**
-	 * Length of random strings generated in getUnusedNodeID()
+	 * Length of IDs generated in getUnusedID()
 	 */
 	private static final int randomIDLength = 32;
 	
@@ -48,6 +63,24 @@ public abstract class SystemEntity {
 	 */
 	private final String type;
 	
+	/**
+	 * Versions of the active entities, per controller. The map only contains versions written
+	 * or read by this naming service, it never contains tombstoned entities.
+	 */
+	private final Map<IControllable, Map<String, Integer>> activeVersions =
+			Collections.synchronizedMap(new WeakHashMap<IControllable, Map<String, Integer>>());
+	
+	/**
+	 * Controllers whose data storage is modified by other naming services without notice
+	 */
+	private static final Set<IControllable> sharedStorages =
+			Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<IControllable, Boolean>()));
+	
+	/**
+	 * Listeners informed about successful modifications of any SystemEntity
+	 */
+	private static final List<EntityChangeListener> changeListeners = new CopyOnWriteArrayList<EntityChangeListener>();
+	
 	/**
 	 * Constructor for SystemEntity
 	 * 
@@ -60,55 +93,160 @@ public abstract class SystemEntity {
 	}
 
 	/**
-	 * Responds with a random string unused by any node at the time of the call
+	 * @return the name of the entity type, e.g., client, node or keygroup
+	 */
+	public String getType() {
+		return type;
+	}
+	
+	/**
+	 * Registers a listener that is informed about all successful entity modifications
+	 * 
+	 * @param listener The listener to register
+	 */
+	public static void addChangeListener(EntityChangeListener listener) {
+		changeListeners.add(listener);
+	}
+	
+	/**
+	 * Removes a previously registered listener
+	 * 
+	 * @param listener The listener to remove
+	 */
+	public static void removeChangeListener(EntityChangeListener listener) {
+		changeListeners.remove(listener);
+	}
+	
+	/**
+	 * Informs all registered listeners about a change of an entity
+	 * 
+	 * @param kind The kind of change
+	 * @param entityID The ID of the changed entity
+	 * @param version The version of the entity after the change
+	 */
+	protected void fireChange(EntityChange.Kind kind, ConfigID entityID, int version) {
+		fireChange(kind, entityID.toString(), version);
+	}
+	
+	/**
+	 * Informs all registered listeners about a change of an entity
+	 * 
+	 * @param kind The kind of change
+	 * @param entityID The string representation of the changed entity's ID
+	 * @param version The version of the entity after the change
+	 */
+	protected void fireChange(EntityChange.Kind kind, String entityID, int version) {
+		if (changeListeners.isEmpty()) {
+			return;
+		}
+		
+		EntityChange change = new EntityChange(type, entityID, kind, version);
+		for (EntityChangeListener listener : changeListeners) {
+			try {
+				listener.entityChanged(change);
+			} catch (RuntimeException e) {
+				logger.error("Change listener failed for " + change, e);
+			}
+		}
+	}
+	
+	/**
+	 * Returns the known versions of the active entities of the given controller
+	 * 
+	 * @param controller Controller for interfacing with base distributed system
+	 * @return Map from entity ID to version
+	 */
+	private Map<String, Integer> activeVersions(IControllable controller) {
+		return activeVersions.computeIfAbsent(controller, c -> new ConcurrentHashMap<String, Integer>());
+	}
+	
+	/**
+	 * Forgets all known versions of the given controller. Must be called whenever the data
+	 * storage is modified without using a SystemEntity, e.g., when it is wiped.
 	 * 
 	 * @param controller Controller for interfacing with base distributed system
-	 * @return Response object with String containing an unused node ID
+	 */
+	public static void forgetVersions(IControllable controller) {
+		for (SystemEntity entity : new SystemEntity[] { Client.getInstance(), Node.getInstance(), Keygroup.getInstance() }) {
+			entity.activeVersions.remove(controller);
+		}
+	}
+
+	/**
+	 * Marks the data storage of the given controller as shared with other naming services
+	 * whose modifications are not reported, e.g., via a ZooKeeper ensemble. Reads with a known
+	 * version are then always answered from the data storage.
+	 * 
+	 * @param controller Controller for interfacing with base distributed system
+	 */
+	public static void setSharedStorage(IControllable controller) {
+		sharedStorages.add(controller);
+	}
+
+	/**
+	 * Forgets the known version of a single entity of the given controller. Must be called
+	 * whenever the entity is modified without using this naming service, e.g., by an upstream
+	 * naming service whose data storage is cached.
+	 *
+	 * @param controller Controller for interfacing with base distributed system
+	 * @param type The type of the entity, e.g., client, node or keygroup
+	 * @param entityID The string representation of the entity's ID
+	 */
+	public static void forgetVersion(IControllable controller, String type, String entityID) {
+		for (SystemEntity entity : new SystemEntity[] { Client.getInstance(), Node.getInstance(), Keygroup.getInstance() }) {
+			if (entity.type.equals(type)) {
+				entity.activeVersions(controller).remove(entityID);
+			}
+		}
+	}
+	
+	/**
+	 * Responds with an ID that has never been handed out before and therefore is unused
+	 * 
+	 * @param controller Controller for interfacing with base distributed system
+	 * @return Response object with String containing an unused ID
 	 */
 	Response<String> getUnusedID(IControllable controller) {
-		logger.debug("Creating random ID");
+		logger.debug("Allocating ID");
 		return getUnusedID(controller, randomIDLength);
 	}
 	
 	/**
-	 * Responds with a random string unused by any node at the time of the call
+	 * Responds with an ID that has never been handed out before and therefore is unused
 	 * 
 	 * @param controller Controller for interfacing with base distributed system
-	 * @param length The length of the random string
-	 * @return Response object with String containing an unused node I
+	 * @param length The minimum length of the ID
+	 * @return Response object with String containing an unused ID
 	 */
 	Response<String> getUnusedID(IControllable controller, int length) {
 		try {
-			String nodeID = null;
-			
-			// Create new random strings until an unused one is found
-			do {
-				char[] random = new char[length];
-				
-				// Loop making random chars until string length
-				for(int i = 0; i < random.length; i++) {
-					// Get random number 0 - 35 (36 possibilities = 0 to 9 + a to z)
-					int randomAlphaNum = (int) Math.floor(Math.random() * 36);
-					
-					// Use single digit or if double digit, convert to ASCII letter
-					if(randomAlphaNum > 9) {
-						randomAlphaNum += 87;
-					}
-					
-					random[i] = (char) randomAlphaNum;
-				}
-				
-				nodeID = random.toString();
-			} while(exists(controller, nodeID));
-			
-			return new Response<String>(nodeID, ResponseCode.SUCCESS);
+			String id = IDAllocator.forController(controller).allocate(length);
+			return new Response<String>(id, ResponseCode.SUCCESS);
 		} catch (InterruptedException e) {
 			Thread.currentThread().interrupt();
-			logger.error("Error creating random ID", e);
+			logger.error("Error creating ID", e);
 			return new Response<String>(null, ResponseCode.ERROR_INTERNAL);
 		}
 	}
 	
+	/**
+	 * Responds with IDs that have never been handed out before and therefore are unused
+	 * 
+	 * @param controller Controller for interfacing with base distributed system
+	 * @param count The number of IDs
+	 * @return Response object with the list of unused IDs
+	 */
+	Response<List<String>> getUnusedIDs(IControllable controller, int count) {
+		try {
+			List<String> ids = IDAllocator.forController(controller).allocate(count, randomIDLength);
+			return new Response<List<String>>(ids, ResponseCode.SUCCESS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			logger.error("Error creating IDs", e);
+			return new Response<List<String>>(null, ResponseCode.ERROR_INTERNAL);
+		}
+	}
+	
 	/**
 	 * Creates an entity in the FBase system
 	 * 
@@ -118,6 +256,14 @@ public abstract class SystemEntity {
 	 * @return Response object with Boolean containing the success or failure of operation
 	 */
 	protected Response<String> createEntity(IControllable controller, ConfigID entityID, Config entity) {
+		EntityEvent event = new EntityEvent();
+		event.begin();
+		Response<String> response = doCreateEntity(controller, entityID, entity);
+		event.finish(type, "create", entityID, response.getResponseCode());
+		return response;
+	}
+	
+	private Response<String> doCreateEntity(IControllable controller, ConfigID entityID, Config entity) {
 		// Set version for new entity to 1
 		entity.setVersion(1);
 		
@@ -138,6 +284,8 @@ public abstract class SystemEntity {
 			}
 			
 			controller.addNode(activePath(entityID), data);
+			activeVersions(controller).put(entityID.toString(), entity.getVersion());
+			fireChange(EntityChange.Kind.CREATED, entityID, entity.getVersion());
 			return new Response<String>(data, ResponseCode.SUCCESS);
 		} catch (InterruptedException e) {
 			Thread.currentThread().interrupt();
@@ -154,11 +302,20 @@ public abstract class SystemEntity {
 	 * @return Response object with String containing the Client information
 	 */
 	protected Response<String> readEntity(IControllable controller, ConfigID entityID) {
+		EntityEvent event = new EntityEvent();
+		event.begin();
+		Response<String> response = doReadEntity(controller, entityID);
+		event.finish(type, "read", entityID, response.getResponseCode());
+		return response;
+	}
+	
+	private Response<String> doReadEntity(IControllable controller, ConfigID entityID) {
 		try {
 			String data = null;
 			if(isActive(controller, entityID)) {
 				data = controller.readNode(activePath(entityID)).toString();
 				logger.debug("Reading " + entityID + " from active directory.");
+				rememberVersion(controller, entityID, data);
 			} else if (isTombstoned(controller, entityID.toString())) {
 				data = controller.readNode(tombstonedPath(entityID)).toString();
 				logger.debug("Reading " + entityID + " from tombstoned directory.");
@@ -175,6 +332,55 @@ public abstract class SystemEntity {
 		}
 	}
 	
+	/**
+	 * Responds with all information about the entity, or with {@link #NOT_MODIFIED} if the
+	 * entity is active and still has the version known by the sender. The latter is answered
+	 * from memory without accessing the data storage.
+	 * 
+	 * @param controller Controller for interfacing with base distributed system
+	 * @param entityID ID of entity to get information from
+	 * @param knownVersion The version known by the sender, null if none is known
+	 * @return Response object with String containing the entity information or NOT_MODIFIED
+	 */
+	protected Response<String> readEntityIfModified(IControllable controller, ConfigID entityID, Integer knownVersion) {
+		if (isNotModified(controller, entityID, knownVersion)) {
+			logger.debug(entityID + " not modified since version " + knownVersion);
+			return new Response<String>(NOT_MODIFIED, ResponseCode.SUCCESS);
+		}
+		return readEntity(controller, entityID);
+	}
+	
+	/**
+	 * Checks whether the entity is active and still has the version known by the sender
+	 * 
+	 * @param controller Controller for interfacing with base distributed system
+	 * @param entityID ID of the entity
+	 * @param knownVersion The version known by the sender, null if none is known
+	 * @return true, if the entity was not modified since the known version
+	 */
+	protected boolean isNotModified(IControllable controller, ConfigID entityID, Integer knownVersion) {
+		return knownVersion != null && !sharedStorages.contains(controller)
+				&& knownVersion.equals(activeVersions(controller).get(entityID.toString()));
+	}
+	
+	/**
+	 * Stores the version of an active entity that was read, if no version is known yet
+	 * 
+	 * @param controller Controller for interfacing with base distributed system
+	 * @param entityID ID of the entity
+	 * @param data The JSON representation of the entity
+	 */
+	private void rememberVersion(IControllable controller, ConfigID entityID, String data) {
+		Map<String, Integer> versions = activeVersions(controller);
+		if (!versions.containsKey(entityID.toString())) {
+			int version = parseVersionQuietly(data);
+			if (version > 0) {
+				// do not overwrite the version of a concurrent update
+				versions.putIfAbsent(entityID.toString(), version);
+			}
+		}
+	}
+	
 	/**
 	 * Updates information kept on the entity with the matching ID
 	 * 
@@ -184,14 +390,20 @@ public abstract class SystemEntity {
 	 * @return Response object with Boolean containing the success or failure of operation
 	 */
 	protected Response<String> updateEntity(IControllable controller, ConfigID entityID, Config entity) {
+		EntityEvent event = new EntityEvent();
+		event.begin();
+		Response<String> response = doUpdateEntity(controller, entityID, entity);
+		event.finish(type, "update", entityID, response.getResponseCode());
+		return response;
+	}
+	
+	private Response<String> doUpdateEntity(IControllable controller, ConfigID entityID, Config entity) {
 		// Set proper version number
 		try {
 			String json = readEntity(controller, entityID).getValue();
-			HashMap<String,Object> o = new ObjectMapper().readValue(json, new TypeReference<HashMap<String,Object>>() {});
-			int version = Integer.parseInt((o.get("version").toString()));
 			
 			// Increment version for entity
-			entity.setVersion(version + 1);
+			entity.setVersion(parseVersion(json) + 1);
 		} catch (NumberFormatException | IOException e) {
 			logger.error("Error parsing version from system", e);
 			return new Response<String>(null, ResponseCode.ERROR_INTERNAL);
@@ -209,7 +421,9 @@ public abstract class SystemEntity {
 				
 				// Add client to system
 				controller.updateNode(activePath(entityID), data);
+				activeVersions(controller).put(entityID.toString(), entity.getVersion());
 				logger.debug("Updating " + entityID + " from active directory");
+				fireChange(EntityChange.Kind.UPDATED, entityID, entity.getVersion());
 				return new Response<String>(data, ResponseCode.SUCCESS);
 			} else if (isTombstoned(controller, entityID)) {
 				logger.warn("Can't update " + entityID + " because it is tombstoned");
@@ -234,6 +448,14 @@ public abstract class SystemEntity {
 	 * @return Response object with Boolean containing the success or failure of operation
 	 */
 	protected Response<Boolean> deleteEntity(IControllable controller, ConfigID entityID) {
+		EntityEvent event = new EntityEvent();
+		event.begin();
+		Response<Boolean> response = doDeleteEntity(controller, entityID);
+		event.finish(type, "delete", entityID, response.getResponseCode());
+		return response;
+	}
+	
+	private Response<Boolean> doDeleteEntity(IControllable controller, ConfigID entityID) {
 		try {
 			if (controller.exists(activePath(entityID))) {
 				logger.debug("Tombstoning " + entityID);
@@ -242,11 +464,14 @@ public abstract class SystemEntity {
 				String data = controller.readNode(activePath(entityID));
 				
 				// Copy client to tombstoned path
+				createTombstonedParents(controller, entityID.toString());
 				controller.addNode(tombstonedPath(entityID), data);
 				
 				// Delete client from active path
 				controller.deleteNode(activePath(entityID));
+				activeVersions(controller).remove(entityID.toString());
 				
+				fireChange(EntityChange.Kind.TOMBSTONED, entityID, parseVersionQuietly(data));
 				return new Response<Boolean>(true, ResponseCode.SUCCESS);
 			} else if (controller.exists(tombstonedPath(entityID))) {
 				logger.warn(capitalize(type) + " " + entityID + " already tombstoned");
@@ -259,6 +484,150 @@ public abstract class SystemEntity {
 			Thread.currentThread().interrupt();
 			logger.error("Error tombstoning " + entityID, e);
 			return new Response<Boolean>(false, ResponseCode.ERROR_INTERNAL);
+		} catch (IllegalArgumentException e) {
+			logger.error("Error tombstoning " + entityID, e);
+			return new Response<Boolean>(false, ResponseCode.ERROR_INTERNAL);
+		}
+	}
+	
+	/**
+	 * Lists the IDs of all tombstoned entities
+	 * 
+	 * @param controller Controller for interfacing with base distributed system
+	 * @return the string representations of the tombstoned entities' IDs
+	 * @throws InterruptedException
+	 */
+	public List<String> getTombstonedIDs(IControllable controller) throws InterruptedException {
+		List<String> ids = new ArrayList<String>();
+		forEachID(controller, true, ids::add);
+		return ids;
+	}
+	
+	/**
+	 * Passes the IDs of all active or tombstoned entities to the given consumer. Only the
+	 * children of one level of the storage tree are held in memory at a time.
+	 * 
+	 * @param controller Controller for interfacing with base distributed system
+	 * @param tombstoned true, to visit tombstoned entities, false to visit active entities
+	 * @param consumer Consumer of the string representations of the entities' IDs
+	 * @throws InterruptedException
+	 */
+	public void forEachID(IControllable controller, boolean tombstoned, Consumer<String> consumer) throws InterruptedException {
+		String prefix = tombstoned ? pathPrefixTombstoned : pathPrefixActive;
+		forEachID(controller, prefix, "", idDepth(), consumer);
+	}
+	
+	private void forEachID(IControllable controller, String prefix, String suffix, int depth, Consumer<String> consumer) throws InterruptedException {
+		String path = prefix + suffix;
+		for (String child : controller.getChildren(path.substring(0, path.length() - 1))) {
+			if (depth == 1) {
+				consumer.accept(suffix + child);
+			} else {
+				forEachID(controller, prefix, suffix + child + "/", depth - 1, consumer);
+			}
+		}
+	}
+	
+	/**
+	 * Entities are stored directly below the active and tombstoned paths by default.
+	 * 
+	 * @return the number of path segments an ID of this entity type consists of
+	 */
+	protected int idDepth() {
+		return 1;
+	}
+	
+	/**
+	 * Creates the system path of an entity
+	 * 
+	 * @param suffix The string representation of the entity's ID
+	 * @param tombstoned true, if the path of the tombstoned entity is requested
+	 * @return Proper system path to SystemEntity
+	 */
+	public String entityPath(String suffix, boolean tombstoned) {
+		return tombstoned ? tombstonedPath(suffix) : activePath(suffix);
+	}
+	
+	/**
+	 * Permanently removes a tombstoned entity from the system
+	 * 
+	 * @param controller Controller for interfacing with base distributed system
+	 * @param suffix The string representation of the entity's ID
+	 * @return Response object with Boolean containing the success or failure of operation
+	 */
+	public Response<Boolean> destroyTombstoned(IControllable controller, String suffix) {
+		try {
+			if (!isTombstoned(controller, suffix)) {
+				logger.warn(capitalize(type) + " " + suffix + " is not tombstoned");
+				return new Response<Boolean>(false, ResponseCode.ERROR_DOESNT_EXIST);
+			}
+			
+			int version = parseVersionQuietly(controller.readNode(tombstonedPath(suffix)));
+			logger.debug("Permanently destroying " + type + " " + suffix);
+			controller.deleteNode(tombstonedPath(suffix));
+			deleteEmptyTombstonedParents(controller, suffix);
+			
+			fireChange(EntityChange.Kind.DESTROYED, suffix, version);
+			return new Response<Boolean>(true, ResponseCode.SUCCESS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			logger.error("Error destroying " + suffix, e);
+			return new Response<Boolean>(false, ResponseCode.ERROR_INTERNAL);
+		} catch (IllegalArgumentException e) {
+			logger.error("Error destroying " + suffix, e);
+			return new Response<Boolean>(false, ResponseCode.ERROR_INTERNAL);
+		}
+	}
+	
+	/**
+	 * Creates the parent nodes an entity is tombstoned into, if they are missing. Entities are
+	 * stored directly below the tombstoned path by default, so nothing is to be done.
+	 * 
+	 * @param controller Controller for interfacing with base distributed system
+	 * @param suffix The string representation of the tombstoned entity's ID
+	 * @throws InterruptedException
+	 */
+	protected void createTombstonedParents(IControllable controller, String suffix) throws InterruptedException {
+		
+	}
+	
+	/**
+	 * Removes parent nodes of a destroyed entity that became empty. Entities are stored
+	 * directly below the tombstoned path by default, so nothing is to be done.
+	 * 
+	 * @param controller Controller for interfacing with base distributed system
+	 * @param suffix The string representation of the destroyed entity's ID
+	 * @throws InterruptedException
+	 */
+	protected void deleteEmptyTombstonedParents(IControllable controller, String suffix) throws InterruptedException {
+		
+	}
+	
+	/**
+	 * Parses the version number from the JSON representation of a config
+	 * 
+	 * @param json The JSON representation of the config
+	 * @return The version of the config
+	 * @throws IOException if the JSON cannot be parsed
+	 * @throws NumberFormatException if the version is not a number
+	 */
+	protected static int parseVersion(String json) throws IOException, NumberFormatException {
+		HashMap<String,Object> o = new ObjectMapper().readValue(json, new TypeReference<HashMap<String,Object>>() {});
+		return Integer.parseInt((o.get("version").toString()));
+	}
+	
+	/**
+	 * Parses the version number from the JSON representation of a config
+	 * 
+	 * @param json The JSON representation of the config
+	 * @return The version of the config, or 0 if it cannot be parsed
+	 */
+	protected static int parseVersionQuietly(String json) {
+		try {
+			return parseVersion(json);
+		} catch (NumberFormatException | IOException | NullPointerException e) {
+			logger.warn("Could not parse version from config", e);
+			return 0;
 		}
 	}
 	
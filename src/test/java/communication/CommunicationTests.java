@@ -8,6 +8,7 @@ import java.io.File;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 
 import org.javatuples.Pair;
@@ -16,6 +17,7 @@ import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.zeromq.ZMQ;
 
 import control.Configuration;
 import control.NamingService;
@@ -24,13 +26,19 @@ import crypto.RSAHelper;
 import database.IControllable;
 import database.localfiles.LocalFileController;
 import model.JSONable;
+import model.config.KeygroupConfig;
 import model.config.NodeConfig;
+import model.config.ReplicaNodeConfig;
+import model.config.TriggerNodeConfig;
+import model.data.ClientID;
+import model.data.KeygroupID;
 import model.data.NodeID;
 import model.messages.Command;
 import model.messages.Envelope;
 import model.messages.Message;
 import model.messages.Response;
 import model.messages.ResponseCode;
+import namespace.EntityChange;
 import namespace.TestUtil;
 
 public class CommunicationTests {
@@ -157,6 +165,35 @@ public class CommunicationTests {
 		assertEquals("Proper message received", "true", response);
 	}
 
+	@Test
+	public void testKeygroupChangePublished() throws Exception {
+		KeygroupID keygroupID = new KeygroupID("app", "tenant", "group");
+		KeygroupConfig keygroup = new KeygroupConfig(keygroupID, new HashSet<ClientID>(),
+				new HashSet<ReplicaNodeConfig>(), new HashSet<TriggerNodeConfig>(), null, null);
+
+		ZMQ.Context context = ZMQ.context(1);
+		ZMQ.Socket subscriber = context.socket(ZMQ.SUB);
+		subscriber.setReceiveTimeOut(5000);
+		subscriber.connect("tcp://localhost:" + ns.configuration.getPublisherPort());
+		subscriber.subscribe(keygroupID.toString().getBytes());
+		// give the subscription time to reach the publisher
+		Thread.sleep(500);
+
+		TestUtil.run(Command.KEYGROUP_CONFIG_CREATE, keygroup, thisNode.getID(), controller);
+
+		String topic = subscriber.recvStr();
+		Message m = JSONable.fromJSON(subscriber.recvStr(), Message.class);
+		subscriber.close();
+		context.term();
+
+		assertEquals("Topic is keygroup ID", keygroupID.toString(), topic);
+		assertTrue("Event signed by naming service",
+				m.verifyMessage(ns.configuration.getPublicKey(), EncryptionAlgorithm.RSA));
+		EntityChange change = JSONable.fromJSON(m.getContent(), EntityChange.class);
+		assertEquals("Proper kind", EntityChange.Kind.CREATED, change.getKind());
+		assertEquals("Proper version", 1, change.getVersion());
+	}
+
 	private void createNode(NodeConfig c) throws IllegalArgumentException, InterruptedException {
 		assertFalse("Node not active at start", controller.exists(nodeActivePath + c.getNodeID()));
 		assertFalse("Node not in tombstoned at start", controller.exists(nodeTombstonedPath + c.getNodeID()));
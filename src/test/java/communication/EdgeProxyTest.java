@@ -0,0 +1,184 @@
+package communication;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.javatuples.Pair;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import control.Configuration;
+import database.LeasedCachingController;
+import database.memory.InMemoryController;
+import control.NamingService;
+import crypto.CryptoProvider.EncryptionAlgorithm;
+import crypto.RSAHelper;
+import database.localfiles.LocalFileController;
+import model.JSONable;
+import model.config.NodeConfig;
+import model.data.NodeID;
+import model.messages.Command;
+import model.messages.Envelope;
+import model.messages.Message;
+import model.messages.ResponseCode;
+import namespace.TestUtil;
+
+public class EdgeProxyTest {
+
+	private NamingService upstream;
+	private NamingService proxy;
+
+	private NodeConfig node;
+	private String publicKey;
+	private String privateKey;
+	private NamespaceSender sender;
+
+	@Before
+	public void setUp() throws Exception {
+		Pair<PublicKey, PrivateKey> proxyKeys = RSAHelper.generateKeyPair(512);
+		String proxyPublicKey = RSAHelper.getEncodedStringFromKey(proxyKeys.getValue0());
+		String proxyPrivateKey = RSAHelper.getEncodedStringFromKey(proxyKeys.getValue1());
+
+		Configuration upstreamConfiguration = TestUtil.configuration("port", "54351",
+				"publisherPort", "54352", "replicationPort", "54353", "proxyPublicKeys",
+				proxyPublicKey);
+		File root = new File(upstreamConfiguration.getRoot());
+		TestUtil.deleteDir(new File(root, "client"));
+		TestUtil.deleteDir(new File(root, "node"));
+		TestUtil.deleteDir(new File(root, "keygroup"));
+		upstream = new NamingService(new LocalFileController(root,
+				upstreamConfiguration.getFolderSeparator()), upstreamConfiguration);
+		upstream.start(false);
+
+		Pair<PublicKey, PrivateKey> keys = RSAHelper.generateKeyPair(512);
+		publicKey = RSAHelper.getEncodedStringFromKey(keys.getValue0());
+		privateKey = RSAHelper.getEncodedStringFromKey(keys.getValue1());
+		node = nodeConfig("edge_proxy_test_node", "before");
+		TestUtil.run(Command.NODE_CONFIG_CREATE, node, node.getID(), upstream.controller);
+
+		Configuration proxyConfiguration = TestUtil.configuration("port", "54361",
+				"publisherPort", "0", "upstreamAddress", "tcp://localhost", "upstreamPort", "54351",
+				"upstreamReplicationPort", "54353", "upstreamPublisherPort", "54352", "proxyLease",
+				"60000", "publicKey", proxyPublicKey, "privateKey", proxyPrivateKey,
+				"upstreamPublicKey", upstreamConfiguration.getPublicKey());
+		proxy = new NamingService(null, proxyConfiguration);
+		proxy.start(false);
+		// give the subscription time to reach the publisher
+		Thread.sleep(500);
+
+		sender = new NamespaceSender("tcp://localhost", 54361, proxyConfiguration.getPublicKey(),
+				privateKey);
+	}
+
+	@After
+	public void tearDown() {
+		sender.shutdown();
+		proxy.tearDown();
+		upstream.tearDown();
+	}
+
+	@Test
+	public void testInvalidation() throws Exception {
+		assertEquals("Read through proxy", "before", readDescription());
+
+		NodeConfig updated = nodeConfig(node.getNodeID().getID(), "after");
+		TestUtil.run(Command.NODE_CONFIG_UPDATE, updated, node.getID(), upstream.controller);
+
+		// the lease is much longer, so only an invalidation removes the cached config
+		String description = readDescription();
+		for (int i = 0; i < 50 && !"after".equals(description); i++) {
+			Thread.sleep(100);
+			description = readDescription();
+		}
+		assertEquals("Update pushed to proxy", "after", description);
+	}
+
+	@Test
+	public void testWriteForwarded() throws Exception {
+		NodeConfig created = nodeConfig("edge_proxy_test_node_2", "created");
+		Message write = new Message(Command.NODE_CONFIG_CREATE, JSONable.toJSON(created));
+		Message reply = sender.sendMessage(new Envelope(node.getID(), write));
+
+		assertNotNull("Reply received", reply);
+		assertEquals(ResponseCode.SUCCESS.toString(), reply.getTextualInfo());
+		assertTrue("Written by upstream",
+				upstream.controller.exists("/node/active/" + created.getNodeID()));
+	}
+
+	@Test
+	public void testSecretsNotReadByProxy() throws Exception {
+		String path = "/keygroup/active/edge_proxy_test_app";
+		upstream.controller.addNode(path, "{\"encryptionSecret\":\"secret\",\"version\":1}");
+
+		assertFalse("Secret stripped", proxy.controller.readNode(path).contains("secret"));
+		assertTrue("Keygroup reads forwarded",
+				proxy.edgeProxy.mustForward(Command.KEYGROUP_CONFIG_READ, null));
+	}
+
+	@Test
+	public void testStaleWhileUpstreamUnreachable() throws Exception {
+		long lease = 100;
+		FailingController storage = new FailingController();
+		storage.addNode("/node", "");
+		storage.addNode("/node/active", "");
+		storage.addNode("/node/active/n", "data");
+		LeasedCachingController cache = new LeasedCachingController(storage, lease, 60000);
+		EdgeProxy edgeProxy = new EdgeProxy(cache, "tcp://localhost", 54399, 0,
+				upstream.configuration.getPublicKey(), lease);
+		edgeProxy.start();
+		try {
+			assertEquals("data", cache.readNode("/node/active/n"));
+			storage.fail = true;
+
+			// several sweeps run meanwhile
+			Thread.sleep(10 * lease);
+			assertEquals("Expired node served after sweeps", "data", cache.readNode("/node/active/n"));
+
+			storage.fail = false;
+			storage.updateNode("/node/active/n", "updated");
+			assertEquals("Replaced once reachable", "updated", cache.readNode("/node/active/n"));
+		} finally {
+			edgeProxy.stop();
+		}
+	}
+
+	private String readDescription() throws Exception {
+		Message read = new Message(Command.NODE_CONFIG_READ, JSONable.toJSON(node.getID()));
+		Message reply = sender.sendMessage(new Envelope(node.getID(), read));
+		assertNotNull("Reply received", reply);
+		return JSONable.fromJSON(reply.getContent(), NodeConfig.class).getDescription();
+	}
+
+	private NodeConfig nodeConfig(String nodeID, String description) {
+		List<String> machines = new ArrayList<>();
+		machines.add("m1");
+		return new NodeConfig(new NodeID(nodeID), publicKey, EncryptionAlgorithm.RSA, machines,
+				1001, 2001, 3001, "location", description);
+	}
+
+	/**
+	 * An upstream data storage that can be made unreachable
+	 */
+	private static class FailingController extends InMemoryController {
+
+		private volatile boolean fail = false;
+
+		@Override
+		public String readNode(String path) throws IllegalArgumentException {
+			if (fail) {
+				throw new IllegalStateException("Upstream naming service did not reply");
+			}
+			return super.readNode(path);
+		}
+	}
+
+}
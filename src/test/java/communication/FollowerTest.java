@@ -0,0 +1,174 @@
+package communication;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.javatuples.Pair;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.zeromq.ZMQ;
+import org.zeromq.ZMQ.Context;
+import org.zeromq.ZMQ.Socket;
+
+import control.Configuration;
+import control.NamingService;
+import crypto.CryptoProvider.EncryptionAlgorithm;
+import crypto.RSAHelper;
+import database.localfiles.LocalFileController;
+import model.JSONable;
+import model.config.NodeConfig;
+import model.data.NodeID;
+import model.messages.Command;
+import model.messages.Envelope;
+import model.messages.Message;
+import model.messages.ResponseCode;
+import namespace.RequestOptions;
+import namespace.TestUtil;
+
+public class FollowerTest {
+
+	private NamingService primary;
+	private NamingService follower;
+	private File primaryRoot;
+	private File followerRoot;
+
+	private NodeConfig node;
+	private String privateKey;
+	private NamespaceSender sender;
+
+	@Before
+	public void setUp() throws Exception {
+		Configuration primaryConfiguration = TestUtil.configuration("replicationPort", "54333", "port",
+				"54331", "publisherPort", "0");
+		primaryRoot = new File(primaryConfiguration.getRoot());
+		deleteData(primaryRoot);
+		primary = new NamingService(new LocalFileController(primaryRoot,
+				primaryConfiguration.getFolderSeparator()), primaryConfiguration);
+		primary.start(false);
+
+		Pair<PublicKey, PrivateKey> keys = RSAHelper.generateKeyPair(512);
+		privateKey = RSAHelper.getEncodedStringFromKey(keys.getValue1());
+		List<String> machines = new ArrayList<>();
+		machines.add("m1");
+		node = new NodeConfig(new NodeID("follower_test_node"),
+				RSAHelper.getEncodedStringFromKey(keys.getValue0()), EncryptionAlgorithm.RSA,
+				machines, 1001, 2001, 3001, "location", "description");
+		TestUtil.run(Command.NODE_CONFIG_CREATE, node, node.getID(), primary.controller);
+
+		Configuration followerConfiguration = TestUtil.configuration("port", "54341", "publisherPort", "0",
+				"root", "nsFollowerData/", "primaryAddress", "tcp://localhost", "primaryPort",
+				"54331", "primaryReplicationPort", "54333");
+		followerRoot = new File(followerConfiguration.getRoot());
+		TestUtil.deleteDir(followerRoot);
+		followerRoot.mkdirs();
+		follower = new NamingService(new LocalFileController(followerRoot,
+				followerConfiguration.getFolderSeparator()), followerConfiguration);
+		follower.start(false);
+
+		sender = new NamespaceSender("tcp://localhost", 54341, followerConfiguration.getPublicKey(),
+				privateKey);
+	}
+
+	@After
+	public void tearDown() {
+		sender.shutdown();
+		follower.tearDown();
+		primary.tearDown();
+		TestUtil.deleteDir(followerRoot);
+	}
+
+	@Test
+	public void testSnapshot() throws Exception {
+		assertTrue("Follower synchronized", follower.getSequence() >= 0);
+		assertTrue("Node copied", follower.controller.exists("/node/active/" + node.getNodeID()));
+	}
+
+	@Test
+	public void testReadYourWrites() throws Exception {
+		List<String> machines = new ArrayList<>();
+		machines.add("m1");
+		NodeConfig created = new NodeConfig(new NodeID("follower_test_node_2"), "key",
+				EncryptionAlgorithm.RSA, machines, 1001, 2001, 3001, "location", "description");
+
+		// writes are forwarded to the primary
+		Message write = new Message(Command.NODE_CONFIG_CREATE, JSONable.toJSON(created));
+		write.setTextualInfo(RequestOptions.MIN_SEQUENCE + "=0");
+		Message reply = sender.sendMessage(new Envelope(node.getID(), write));
+		assertNotNull("Reply received", reply);
+		assertTrue("Written by primary",
+				primary.controller.exists("/node/active/" + created.getNodeID()));
+		long sequence = sequenceOf(reply);
+		assertEquals("Primary reports its sequence", primary.getSequence(), sequence);
+
+		// reads are answered by the follower once it applied the write
+		Message read = new Message(Command.NODE_CONFIG_READ, JSONable.toJSON(created.getID()));
+		read.setTextualInfo(RequestOptions.MIN_SEQUENCE + "=" + sequence);
+		reply = sender.sendMessage(new Envelope(node.getID(), read));
+		assertNotNull("Reply received", reply);
+		assertTrue("Read own write", reply.getTextualInfo().startsWith(ResponseCode.SUCCESS.toString()));
+		assertTrue("Follower reached the sequence", sequenceOf(reply) >= sequence);
+		assertEquals(created.getNodeID(), JSONable.fromJSON(reply.getContent(), NodeConfig.class).getNodeID());
+	}
+
+	@Test
+	public void testPollAuthentication() throws Exception {
+		Context context = ZMQ.context(1);
+		Socket socket = context.socket(ZMQ.REQ);
+		socket.setLinger(0);
+		socket.setReceiveTimeOut(10000);
+		socket.connect("tcp://localhost:54333");
+		try {
+			socket.send("");
+			assertEquals("Unsigned poll rejected", "", socket.recvStr());
+
+			socket.send(ReplicationServer.createPoll("", privateKey));
+			assertEquals("Poll signed by a node rejected", "", socket.recvStr());
+
+			socket.send(ReplicationServer.createPoll("", primary.configuration.getPrivateKey()));
+			String reply = socket.recvStr();
+			assertFalse("Snapshot sent", reply.isEmpty());
+			assertFalse("Snapshot encrypted", reply.contains(node.getNodeID().getID()));
+		} finally {
+			socket.close();
+			context.term();
+		}
+	}
+
+	@Test
+	public void testShardRetriesSequence() throws Exception {
+		Follower shard = new Follower(follower.controller, Arrays.asList("/client", "/node"),
+				"tcp://localhost", 54331, 54333, primary.configuration.getPublicKey(),
+				primary.configuration.getPrivateKey(), 20);
+
+		assertFalse("Keygroups processed by the shard",
+				shard.mustForward(Command.KEYGROUP_CONFIG_CREATE, Long.MAX_VALUE));
+		assertTrue("Sequence not applied", shard.mustRetry(Command.KEYGROUP_CONFIG_CREATE, Long.MAX_VALUE));
+		assertFalse("No retry without sequence", shard.mustRetry(Command.KEYGROUP_CONFIG_CREATE, null));
+		assertFalse("Nodes are forwarded", shard.mustRetry(Command.NODE_CONFIG_READ, Long.MAX_VALUE));
+		assertTrue("Reads of later sequences forwarded", shard.mustForward(Command.NODE_CONFIG_READ, Long.MAX_VALUE));
+		assertTrue("Nodes forwarded", shard.mustForward(Command.NODE_CONFIG_CREATE, null));
+	}
+
+	private static long sequenceOf(Message reply) {
+		String prefix = ";" + RequestOptions.SEQUENCE + "=";
+		String info = reply.getTextualInfo();
+		return Long.parseLong(info.substring(info.indexOf(prefix) + prefix.length()));
+	}
+
+	private static void deleteData(File root) {
+		TestUtil.deleteDir(new File(root, "client"));
+		TestUtil.deleteDir(new File(root, "node"));
+		TestUtil.deleteDir(new File(root, "keygroup"));
+	}
+
+}
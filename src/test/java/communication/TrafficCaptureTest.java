@@ -0,0 +1,103 @@
+package communication;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import communication.TrafficCapture.Record;
+import model.messages.Command;
+import model.messages.Message;
+
+public class TrafficCaptureTest {
+
+	private File file;
+
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("capture", ".gz");
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		long start = System.nanoTime();
+		StringBuilder large = new StringBuilder();
+		for (int i = 0; i < 10000; i++) {
+			large.append("client").append(i).append(',');
+		}
+
+		try (TrafficCapture capture = new TrafficCapture(file.getPath())) {
+			capture.record(start, "N1", new Message(Command.NODE_CONFIG_READ, "{\"nodeID\":\"N2\"}"));
+			Message stats = new Message();
+			stats.setTextualInfo("STATS");
+			capture.record(start + 1000, "N2", stats);
+			capture.record(start + 5000, "N1", new Message(Command.KEYGROUP_CONFIG_CREATE, large.toString()));
+		}
+
+		try (TrafficCapture.Reader reader = new TrafficCapture.Reader(file.getPath())) {
+			assertTrue("Start time recorded", reader.getStartMillis() > 0);
+
+			Record first = reader.next();
+			assertEquals("N1", first.getSenderID());
+			assertEquals(Command.NODE_CONFIG_READ, first.getCommand());
+			assertEquals("{\"nodeID\":\"N2\"}", first.getContent());
+			assertNull(first.getTextualInfo());
+
+			Record second = reader.next();
+			assertEquals("Offsets keep their distance", 1000,
+					second.getOffsetNanos() - first.getOffsetNanos());
+			assertNull(second.getCommand());
+			assertEquals("STATS", second.getTextualInfo());
+
+			Record third = reader.next();
+			assertEquals(5000, third.getOffsetNanos() - first.getOffsetNanos());
+			assertEquals("Large content kept", large.toString(), third.getContent());
+
+			assertNull("End of capture", reader.next());
+		}
+	}
+
+	@Test
+	public void testRedactSecrets() throws IOException {
+		String update = "{\"keygroupID\":{\"app\":\"a\",\"tenant\":\"t\",\"group\":\"g\"},"
+				+ "\"encryptionSecret\":\"secret\",\"encryptionAlgorithm\":\"AES\"}";
+		String nested = "{\"config\":{\"encryptionSecret\":\"secret\"},\"other\":\"value\"}";
+
+		try (TrafficCapture capture = new TrafficCapture(file.getPath())) {
+			capture.record(0, "N1", new Message(Command.KEYGROUP_CONFIG_UPDATE_CRYPTO, update));
+			capture.record(0, "N1", new Message(Command.KEYGROUP_CONFIG_CREATE, nested));
+			capture.record(0, "N1", new Message(Command.KEYGROUP_CONFIG_CREATE, "encryptionSecret=secret"));
+		}
+
+		try (TrafficCapture.Reader reader = new TrafficCapture.Reader(file.getPath())) {
+			Record first = reader.next();
+			assertFalse("Secret removed", first.getContent().contains("\"secret\""));
+			assertTrue("Other fields kept", first.getContent().contains("\"AES\""));
+			assertTrue(first.getContent().contains("\"encryptionSecret\":null"));
+
+			Record second = reader.next();
+			assertFalse("Nested secret removed", second.getContent().contains("\"secret\""));
+			assertTrue(second.getContent().contains("\"value\""));
+
+			assertNull("Content without JSON dropped", reader.next().getContent());
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testNoCapture() throws IOException {
+		new TrafficCapture.Reader(file.getPath()).close();
+	}
+
+}
@@ -0,0 +1,91 @@
+package control;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.javatuples.Pair;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import control.LoadGenerator.LoadReport;
+import crypto.CryptoProvider.EncryptionAlgorithm;
+import crypto.RSAHelper;
+import database.localfiles.LocalFileController;
+import model.config.NodeConfig;
+import model.data.NodeID;
+import model.messages.Command;
+import namespace.Node;
+import namespace.TestUtil;
+
+public class LoadGeneratorTest {
+
+	private static final NodeID registrarID = new NodeID("load_registrar");
+
+	private NamingService ns;
+	private String registrarPrivateKey;
+
+	@Before
+	public void setUp() {
+		Configuration configuration = new Configuration();
+		File root = new File(configuration.getRoot());
+		TestUtil.deleteDir(new File(root, "client"));
+		TestUtil.deleteDir(new File(root, "node"));
+		TestUtil.deleteDir(new File(root, "keygroup"));
+
+		ns = new NamingService(new LocalFileController(root, configuration.getFolderSeparator()),
+				configuration);
+		ns.start(false);
+
+		// the registrar is the only node registered without the load generator
+		Pair<PublicKey, PrivateKey> keys = RSAHelper.generateKeyPair(512);
+		registrarPrivateKey = RSAHelper.getEncodedStringFromKey(keys.getValue1());
+		Node.getInstance().createNode(ns.controller, new NodeConfig(registrarID,
+				RSAHelper.getEncodedStringFromKey(keys.getValue0()), EncryptionAlgorithm.RSA,
+				new ArrayList<String>(), 1001, 2001, 3001, "localhost", "registrar"));
+	}
+
+	@After
+	public void tearDown() {
+		ns.tearDown();
+	}
+
+	@Test
+	public void testRun() throws InterruptedException {
+		LoadGenerator generator = new LoadGenerator("tcp://localhost", ns.configuration.getPort(),
+				ns.configuration.getPublicKey(), 4, 2, 50, 512, LoadGenerator.defaultMix());
+		generator.register(registrarID, registrarPrivateKey);
+		LoadReport report = generator.run(2, TimeUnit.SECONDS);
+
+		assertTrue("Requests sent", report.getRequests() > 0);
+		assertTrue("Rate not exceeded", report.getThroughput() < 60);
+		for (Map.Entry<String, Long> code : report.getResponseCodes().entrySet()) {
+			assertTrue("Replies received for " + code.getKey(),
+					!code.getKey().endsWith(LoadGenerator.NO_REPLY)
+							&& !code.getKey().endsWith(LoadGenerator.FAILED));
+		}
+	}
+
+	@Test
+	public void testParseMix() {
+		Map<Command, Integer> mix = LoadGenerator.parseMix("NODE_CONFIG_READ=9, NODE_CONFIG_UPDATE=1");
+		assertEquals(2, mix.size());
+		assertEquals(9, (int) mix.get(Command.NODE_CONFIG_READ));
+		assertEquals(1, (int) mix.get(Command.NODE_CONFIG_UPDATE));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnsupportedCommand() {
+		Map<Command, Integer> mix = LoadGenerator.parseMix("NODE_CONFIG_DELETE=1");
+		new LoadGenerator("tcp://localhost", ns.configuration.getPort(), ns.configuration.getPublicKey(),
+				1, 1, 0, 512, mix);
+	}
+
+}
@@ -0,0 +1,122 @@
+package control;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import crypto.CryptoProvider.EncryptionAlgorithm;
+import database.IControllable;
+import database.localfiles.LocalFileController;
+import database.memory.InMemoryController;
+import model.config.ClientConfig;
+import model.data.ClientID;
+import model.data.NodeID;
+import model.messages.Command;
+import namespace.Client;
+import namespace.IDAllocator;
+import namespace.TestUtil;
+
+public class NamespaceExportImportTest {
+
+	private IControllable source;
+	private IControllable target;
+	private File targetRoot;
+	private NamingService ns;
+
+	@Before
+	public void setUp() throws Exception {
+		Configuration configuration = new Configuration();
+		File root = new File(configuration.getRoot());
+		TestUtil.deleteDir(new File(root, "client"));
+		TestUtil.deleteDir(new File(root, "node"));
+		TestUtil.deleteDir(new File(root, "keygroup"));
+
+		source = new LocalFileController(root, configuration.getFolderSeparator());
+		ns = new NamingService(source, configuration);
+		ns.initializeDataStorage(true);
+
+		targetRoot = Files.createTempDirectory("nsImport").toFile();
+		target = new LocalFileController(targetRoot, configuration.getFolderSeparator());
+	}
+
+	@After
+	public void tearDown() {
+		ns.tearDown();
+		TestUtil.deleteDir(targetRoot);
+	}
+
+	@Test
+	public void exportImportTest() throws Exception {
+		testRoundTrip(false);
+	}
+
+	@Test
+	public void parallelExportImportTest() throws Exception {
+		testRoundTrip(true);
+	}
+
+	@Test
+	public void parallelImportFailureTest() throws Exception {
+		// a data storage that lost its connection
+		IControllable failing = new InMemoryController() {
+			@Override
+			public void addNodes(Map<String, String> nodes) {
+				throw new IllegalStateException("Connection lost");
+			}
+		};
+		String export = "{\"type\":\"client\",\"state\":\"active\",\"id\":\"client\",\"data\":{\"version\":1}}\n";
+
+		try {
+			new NamespaceImporter(failing, 1, true).importFrom(new StringReader(export));
+			fail("Import of a batch that was not written succeeded");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		assertFalse("Client not imported", failing.exists("/client/active/client"));
+	}
+
+	private void testRoundTrip(boolean parallel) throws Exception {
+		ClientID active = new ClientID("active_client");
+		ClientID tombstoned = new ClientID("tombstoned_client");
+		Client.getInstance().createClient(source, new ClientConfig(active, "key", EncryptionAlgorithm.AES));
+		Client.getInstance().createClient(source, new ClientConfig(tombstoned, "key", EncryptionAlgorithm.AES));
+		TestUtil.run(Command.CLIENT_CONFIG_DELETE, tombstoned, new NodeID("sender"), source);
+		new IDAllocator(source, 10).allocate(8);
+
+		StringWriter out = new StringWriter();
+		long exported = new NamespaceExporter(source).export(out);
+
+		// the initial node and client as well as both test clients
+		assertEquals("All entities exported", 4, exported);
+		assertEquals("One line per entity and the ID counter", 5,
+				out.toString().trim().split("\n").length);
+
+		NamespaceImporter.ImportResult result =
+				new NamespaceImporter(target, 1, parallel).importFrom(new StringReader(out.toString()));
+
+		assertEquals("All entities imported", exported, result.getImported());
+		assertEquals("No entity failed", 0, result.getFailed());
+		assertTrue("Active client imported", target.exists("/client/active/" + active));
+		assertTrue("Tombstoned client imported", target.exists("/client/tombstoned/" + tombstoned));
+		assertEquals("Same version", 1, new ObjectMapper()
+				.readTree(target.readNode("/client/active/" + active)).path("version").asInt());
+		assertEquals("ID counter imported", source.readNode(IDAllocator.COUNTER_PATH),
+				target.readNode(IDAllocator.COUNTER_PATH));
+
+		// importing again, e.g., after an interruption
+		result = new NamespaceImporter(target, 2, parallel).importFrom(new StringReader(out.toString()));
+		assertEquals("Existing entities imported", exported, result.getImported());
+		assertEquals("No entity failed", 0, result.getFailed());
+	}
+
+}
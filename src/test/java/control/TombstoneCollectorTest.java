@@ -0,0 +1,101 @@
+package control;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import crypto.CryptoProvider.EncryptionAlgorithm;
+import database.IControllable;
+import database.localfiles.LocalFileController;
+import model.config.ClientConfig;
+import model.data.ClientID;
+import model.data.NodeID;
+import model.messages.Command;
+import namespace.Client;
+import namespace.Keygroup;
+import namespace.TestUtil;
+
+public class TombstoneCollectorTest {
+
+	private static final String tombstonedPath = "/client/tombstoned/";
+
+	private IControllable controller;
+	private NamingService ns;
+	private TombstoneCollector collector;
+
+	@Before
+	public void setUp() throws Exception {
+		Configuration configuration = new Configuration();
+		File root = new File(configuration.getRoot());
+		TestUtil.deleteDir(new File(root, "client"));
+		TestUtil.deleteDir(new File(root, "node"));
+		TestUtil.deleteDir(new File(root, "keygroup"));
+
+		controller = new LocalFileController(root, configuration.getFolderSeparator());
+		ns = new NamingService(controller, configuration);
+		ns.initializeDataStorage(true);
+
+		// retention of 0 seconds, the collector is run manually
+		collector = new TombstoneCollector(controller, 0, 3600, 0);
+	}
+
+	@After
+	public void tearDown() {
+		collector.stop();
+		ns.tearDown();
+	}
+
+	@Test
+	public void purgeTombstonedClientTest() throws Exception {
+		collector.start();
+		ClientID id = tombstoneClient("purged_client");
+
+		TombstoneCollector.CollectionRun run = collector.collect();
+
+		assertEquals("Client purged", 1, run.getPurged());
+		assertEquals("Nothing failed", 0, run.getFailed());
+		assertFalse("Client not in tombstoned", controller.exists(tombstonedPath + id));
+	}
+
+	@Test
+	public void keepClientTombstonedBeforeStartTest() throws Exception {
+		ClientID id = tombstoneClient("unknown_client");
+		collector.start();
+
+		TombstoneCollector.CollectionRun first = collector.collect();
+		assertEquals("Client scanned", 1, first.getScanned());
+		assertEquals("Client not purged in first run", 0, first.getPurged());
+		assertTrue("Client in tombstoned", controller.exists(tombstonedPath + id));
+
+		TombstoneCollector.CollectionRun second = collector.collect();
+		assertEquals("Client purged in second run", 1, second.getPurged());
+		assertFalse("Client not in tombstoned", controller.exists(tombstonedPath + id));
+	}
+
+	@Test
+	public void purgeOnlyGivenEntitiesTest() throws Exception {
+		collector.stop();
+		collector = new TombstoneCollector(controller, Arrays.asList(Keygroup.getInstance()), 0,
+				3600, 0);
+		collector.start();
+		ClientID id = tombstoneClient("replicated_client");
+
+		TombstoneCollector.CollectionRun run = collector.collect();
+
+		assertEquals("Client not scanned", 0, run.getScanned());
+		assertTrue("Client in tombstoned", controller.exists(tombstonedPath + id));
+	}
+
+	private ClientID tombstoneClient(String name) {
+		ClientID id = new ClientID(name);
+		Client.getInstance().createClient(controller, new ClientConfig(id, "my_public_key", EncryptionAlgorithm.AES));
+		TestUtil.run(Command.CLIENT_CONFIG_DELETE, id, new NodeID("sender"), controller);
+		return id;
+	}
+
+}
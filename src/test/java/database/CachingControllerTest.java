@@ -0,0 +1,65 @@
+package database;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import control.Configuration;
+import database.localfiles.LocalFileController;
+import namespace.TestUtil;
+
+public class CachingControllerTest {
+
+	private File root;
+	private IControllable storage;
+	private CachingController controller;
+
+	@Before
+	public void setUp() throws InterruptedException {
+		Configuration configuration = new Configuration();
+		root = new File(configuration.getRoot());
+		TestUtil.deleteDir(new File(root, "cache"));
+
+		storage = new LocalFileController(root, configuration.getFolderSeparator());
+		storage.addNode("/cache", "");
+		storage.addNode("/cache/a", "A");
+		storage.addNode("/cache/b", "B");
+		storage.addNode("/cache/b/c", "C");
+
+		controller = new CachingController(storage);
+	}
+
+	@After
+	public void tearDown() {
+		TestUtil.deleteDir(new File(root, "cache"));
+	}
+
+	@Test
+	public void warmUpTest() throws InterruptedException {
+		int loaded = controller.warmUp(Arrays.asList("/cache"), 2);
+
+		assertEquals("All nodes below the path loaded", 3, loaded);
+		assertEquals("All nodes cached", 3, controller.size());
+
+		// served from the cache, even though the storage changed behind its back
+		storage.updateNode("/cache/b/c", "D");
+		assertEquals("C", controller.readNode("/cache/b/c").trim());
+	}
+
+	@Test
+	public void writeInvalidatesTest() throws InterruptedException {
+		assertEquals("A", controller.readNode("/cache/a").trim());
+
+		controller.updateNode("/cache/a", "A2");
+		assertEquals("Updated data read", "A2", controller.readNode("/cache/a").trim());
+
+		controller.deleteNode("/cache/a");
+		assertFalse("Deleted node not cached", controller.exists("/cache/a"));
+	}
+
+}
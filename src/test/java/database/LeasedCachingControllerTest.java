@@ -0,0 +1,156 @@
+package database;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import database.memory.InMemoryController;
+
+public class LeasedCachingControllerTest {
+
+	private static final long lease = 200;
+	private static final long maxStaleness = 300;
+
+	private CountingController storage;
+	private LeasedCachingController controller;
+
+	@Before
+	public void setUp() throws InterruptedException {
+		storage = new CountingController();
+		storage.addNode("/cache", "");
+		storage.addNode("/cache/a", "A");
+
+		controller = new LeasedCachingController(storage, lease, maxStaleness);
+	}
+
+	@After
+	public void tearDown() {
+		storage.release.countDown();
+	}
+
+	@Test
+	public void leaseTest() throws InterruptedException {
+		assertEquals("A", controller.readNode("/cache/a"));
+
+		// served from the cache, even though the storage changed behind its back
+		storage.updateNode("/cache/a", "A2");
+		assertEquals("A", controller.readNode("/cache/a"));
+		assertEquals("Single storage read", 1, storage.reads.get());
+
+		Thread.sleep(lease + 50);
+		assertEquals("Read again after the lease", "A2", controller.readNode("/cache/a"));
+		assertEquals(2, storage.reads.get());
+	}
+
+	@Test
+	public void invalidateTest() throws InterruptedException {
+		assertEquals("A", controller.readNode("/cache/a"));
+
+		storage.updateNode("/cache/a", "A2");
+		controller.invalidate("/cache/a");
+		assertEquals("Read again after invalidation", "A2", controller.readNode("/cache/a"));
+	}
+
+	@Test
+	public void missingNodeTest() throws InterruptedException {
+		assertFalse(controller.exists("/cache/b"));
+		assertFalse(controller.exists("/cache/b"));
+		try {
+			controller.readNode("/cache/b");
+			fail("Missing node read");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		assertEquals("Missing node cached", 1, storage.reads.get());
+
+		storage.addNode("/cache/b", "B");
+		controller.invalidate("/cache/b");
+		assertTrue(controller.exists("/cache/b"));
+		assertEquals("B", controller.readNode("/cache/b"));
+	}
+
+	@Test
+	public void coalescingTest() throws Exception {
+		storage.block = true;
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Future<String> first = executor.submit(() -> controller.readNode("/cache/a"));
+			assertTrue("First read reached the storage", storage.blocked.await(5, TimeUnit.SECONDS));
+			Future<String> second = executor.submit(() -> controller.readNode("/cache/a"));
+			// give the second read time to join the first
+			Thread.sleep(100);
+			storage.release.countDown();
+
+			assertEquals("A", first.get(5, TimeUnit.SECONDS));
+			assertEquals("A", second.get(5, TimeUnit.SECONDS));
+			assertEquals("Misses share one storage read", 1, storage.reads.get());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void staleOnErrorTest() throws InterruptedException {
+		assertEquals("A", controller.readNode("/cache/a"));
+
+		Thread.sleep(lease + 50);
+		storage.fail = true;
+		assertEquals("Expired data served", "A", controller.readNode("/cache/a"));
+
+		assertTrue("Expiry reported", controller.collectExpired().contains("/cache/a"));
+		assertTrue("Expiry reported once", controller.collectExpired().isEmpty());
+		assertEquals("Expired data kept", "A", controller.readNode("/cache/a"));
+
+		Thread.sleep(maxStaleness);
+		try {
+			controller.readNode("/cache/a");
+			fail("Read beyond the max staleness succeeded");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		controller.collectExpired();
+		assertEquals("Node beyond the max staleness removed", 0, controller.size());
+
+		storage.fail = false;
+		assertEquals("Read again once reachable", "A", controller.readNode("/cache/a"));
+	}
+
+	/**
+	 * Counts reads and can block or fail them
+	 */
+	private static class CountingController extends InMemoryController {
+
+		private final AtomicInteger reads = new AtomicInteger();
+		private final CountDownLatch blocked = new CountDownLatch(1);
+		private final CountDownLatch release = new CountDownLatch(1);
+		private volatile boolean block = false;
+		private volatile boolean fail = false;
+
+		@Override
+		public String readNode(String path) throws IllegalArgumentException {
+			reads.incrementAndGet();
+			if (fail) {
+				throw new IllegalStateException("Storage not reachable");
+			}
+			if (block) {
+				blocked.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			return super.readNode(path);
+		}
+	}
+
+}
@@ -0,0 +1,153 @@
+package database.mvstore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import namespace.TestUtil;
+
+public class MVStoreControllerTest {
+
+	private File dataDir;
+	private File file;
+	private MVStoreController controller;
+
+	@Before
+	public void setUp() throws Exception {
+		dataDir = Files.createTempDirectory("mvstore").toFile();
+		file = new File(dataDir, "fbase.mv.db");
+		controller = new MVStoreController(file, 0);
+		controller.addNode("/test", "data");
+	}
+
+	@After
+	public void tearDown() {
+		controller.close();
+		TestUtil.deleteDir(dataDir);
+	}
+
+	@Test
+	public void testNodes() throws Exception {
+		assertEquals("data", controller.readNode("/test"));
+		controller.updateNode("/test", "updated");
+		assertEquals("updated", controller.readNode("/test"));
+
+		try {
+			controller.addNode("/test", "again");
+			fail("Adding an existing node succeeded");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			controller.addNode("/missing/child", "data");
+			fail("Adding a node below a missing node succeeded");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			controller.readNode("/missing");
+			fail("Read of missing node succeeded");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+
+		controller.addNode("/test/child", "child");
+		try {
+			controller.deleteNode("/test");
+			fail("Delete of node with children succeeded");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		controller.deleteNode("/test/child");
+		controller.deleteNode("/test");
+		assertFalse(controller.exists("/test"));
+	}
+
+	@Test
+	public void testGetChildren() throws Exception {
+		// siblings whose names sort before and after the separator of the descendants
+		controller.addNode("/test/a", "");
+		controller.addNode("/test/a/b", "");
+		controller.addNode("/test/a/b/c", "");
+		controller.addNode("/test/a-b", "");
+		controller.addNode("/test/a0", "");
+		controller.addNode("/test0", "");
+
+		assertEquals(Arrays.asList("a", "a-b", "a0"), controller.getChildren("/test"));
+		assertEquals(Arrays.asList("b"), controller.getChildren("/test/a"));
+		assertTrue(controller.getChildren("/test/a0").isEmpty());
+		assertEquals(Arrays.asList("test", "test0"), controller.getChildren(""));
+		try {
+			controller.getChildren("/missing");
+			fail("Listing a missing node succeeded");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testAtomicBatch() throws Exception {
+		Map<String, String> nodes = new LinkedHashMap<String, String>();
+		nodes.put("/test/a", "a");
+		nodes.put("/test/a/b", "b");
+		nodes.put("/test", "exists");
+		try {
+			controller.addNodes(nodes);
+			fail("Adding an existing node succeeded");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		assertFalse(controller.exists("/test/a"));
+		assertEquals("data", controller.readNode("/test"));
+
+		nodes.remove("/test");
+		controller.addNodes(nodes);
+		assertEquals("b", controller.readNode("/test/a/b"));
+
+		assertEquals(Arrays.asList("/test/c"),
+				controller.addNodesIfAbsent(Arrays.asList("/test", "/test/a", "/test/c"), ""));
+	}
+
+	@Test
+	public void testDeleteNodeRecursive() throws Exception {
+		controller.addNode("/test/a", "a");
+		controller.addNode("/test/a/b", "b");
+		controller.addNode("/test0", "sibling");
+
+		controller.deleteNodeRecursive("/test");
+		assertFalse(controller.exists("/test"));
+		assertFalse(controller.exists("/test/a/b"));
+		assertTrue(controller.exists("/test0"));
+		assertEquals(1, controller.size());
+
+		try {
+			controller.deleteNodeRecursive("/test");
+			fail("Delete of missing node succeeded");
+		} catch (NoSuchFileException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testReopen() throws Exception {
+		controller.addNode("/test/a", "a");
+		controller.close();
+
+		controller = new MVStoreController(file, 0);
+		assertEquals("a", controller.readNode("/test/a"));
+		assertEquals(Arrays.asList("a"), controller.getChildren("/test"));
+	}
+
+}
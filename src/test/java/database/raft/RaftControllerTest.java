@@ -0,0 +1,253 @@
+package database.raft;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import control.NamingService;
+import database.raft.RaftEntry.Kind;
+import database.raft.RaftNode.Role;
+import namespace.IDAllocator;
+import namespace.KeygroupLifecycleTest;
+import namespace.TestUtil;
+
+public class RaftControllerTest {
+
+	static final List<String> peers = Arrays.asList("tcp://localhost:54371",
+			"tcp://localhost:54372", "tcp://localhost:54373");
+
+	static final long electionTimeout = 300;
+	static final long heartbeatInterval = 50;
+	static final long requestTimeout = 5000;
+	static final int snapshotInterval = 100;
+
+	private File root;
+	private RaftController[] controllers = new RaftController[peers.size()];
+
+	@Before
+	public void setUp() throws Exception {
+		root = Files.createTempDirectory("raft").toFile();
+		for (int i = 0; i < peers.size(); i++) {
+			start(i);
+		}
+	}
+
+	@After
+	public void tearDown() {
+		for (RaftController controller : controllers) {
+			if (controller != null) {
+				controller.close();
+			}
+		}
+		TestUtil.deleteDir(root);
+	}
+
+	@Test
+	public void testReplicatedWrites() throws Exception {
+		int leader = awaitLeader();
+		int follower = (leader + 1) % peers.size();
+
+		controllers[leader].addNode("/client", "");
+		controllers[follower].addNode("/client/a", "data");
+		controllers[leader].updateNode("/client/a", "updated");
+
+		for (RaftController controller : controllers) {
+			assertEquals("updated", controller.readNode("/client/a"));
+			assertEquals(Arrays.asList("a"), controller.getChildren("/client"));
+		}
+
+		try {
+			controllers[follower].addNode("/client/a", "again");
+			fail("Adding an existing node must fail");
+		} catch (IllegalArgumentException e) {
+			// expected, as for every other controller
+		}
+
+		controllers[follower].deleteNode("/client/a");
+		for (RaftController controller : controllers) {
+			assertFalse(controller.exists("/client/a"));
+		}
+	}
+
+	@Test
+	public void testBatches() throws Exception {
+		int leader = awaitLeader();
+		Map<String, String> nodes = new LinkedHashMap<String, String>();
+		nodes.put("/node", "");
+		nodes.put("/node/active", "");
+		controllers[leader].addNodes(nodes);
+
+		List<String> created = controllers[(leader + 1) % peers.size()].addNodesIfAbsent(
+				Arrays.asList("/node", "/node/active", "/node/tombstoned"), "");
+		assertEquals(Arrays.asList("/node/tombstoned"), created);
+	}
+
+	@Test
+	public void testConcurrentWrites() throws Exception {
+		int leader = awaitLeader();
+		controllers[leader].addNode("/keygroup", "");
+
+		ExecutorService executor = Executors.newFixedThreadPool(16);
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (int i = 0; i < 500; i++) {
+			RaftController controller = controllers[i % peers.size()];
+			String path = "/keygroup/k" + i;
+			futures.add(executor.submit(() -> {
+				controller.addNode(path, path);
+				return null;
+			}));
+		}
+		for (Future<?> future : futures) {
+			future.get();
+		}
+		executor.shutdown();
+
+		for (RaftController controller : controllers) {
+			assertEquals(500, controller.getChildren("/keygroup").size());
+		}
+	}
+
+	@Test
+	public void testFailover() throws Exception {
+		int leader = awaitLeader();
+		controllers[leader].addNode("/client", "");
+		controllers[leader].close();
+		controllers[leader] = null;
+
+		int newLeader = awaitLeader();
+		assertTrue(newLeader != leader);
+		controllers[newLeader].addNode("/client/b", "data");
+		for (RaftController controller : controllers) {
+			if (controller != null) {
+				assertEquals("data", controller.readNode("/client/b"));
+			}
+		}
+
+		// the restarted replica recovers its log and catches up
+		start(leader);
+		assertEquals("data", controllers[leader].readNode("/client/b"));
+	}
+
+	@Test
+	public void testSnapshots() throws Exception {
+		int leader = awaitLeader();
+		int follower = (leader + 1) % peers.size();
+		controllers[follower].close();
+		controllers[follower] = null;
+
+		controllers[leader].addNode("/keygroup", "");
+		for (int i = 0; i < 3 * snapshotInterval; i++) {
+			controllers[leader].addNode("/keygroup/k" + i, "data" + i);
+		}
+		assertTrue("Leader compacted its log", controllers[leader].getNode().getSnapshotIndex() > 0);
+
+		// the entries the follower missed were removed, so it installs the snapshot of the leader
+		start(follower);
+		assertEquals(3 * snapshotInterval, controllers[follower].getChildren("/keygroup").size());
+		assertTrue(controllers[follower].getNode().getSnapshotIndex() > 0);
+
+		// a restarted replica recovers from its own snapshot
+		controllers[leader].close();
+		start(leader);
+		assertEquals("data0", controllers[leader].readNode("/keygroup/k0"));
+		assertEquals(3 * snapshotInterval, controllers[leader].getChildren("/keygroup").size());
+	}
+
+	@Test
+	public void testUpdateIfUnchanged() throws Exception {
+		int leader = awaitLeader();
+		int follower = (leader + 1) % peers.size();
+		controllers[leader].addNode("/id", "0");
+
+		assertTrue(controllers[follower].updateNodeIfUnchanged("/id", "0", "10"));
+		assertFalse(controllers[leader].updateNodeIfUnchanged("/id", "0", "20"));
+		for (RaftController controller : controllers) {
+			assertEquals("10", controller.readNode("/id"));
+		}
+	}
+
+	@Test
+	public void testConcurrentIDAllocation() throws Exception {
+		awaitLeader();
+		ExecutorService executor = Executors.newFixedThreadPool(peers.size());
+		List<Future<List<String>>> futures = new ArrayList<Future<List<String>>>();
+		for (RaftController controller : controllers) {
+			IDAllocator allocator = new IDAllocator(controller, 10);
+			futures.add(executor.submit(() -> {
+				List<String> ids = new ArrayList<String>();
+				for (int i = 0; i < 100; i++) {
+					ids.add(allocator.allocate(8));
+				}
+				return ids;
+			}));
+		}
+		Set<String> ids = new HashSet<String>();
+		for (Future<List<String>> future : futures) {
+			ids.addAll(future.get());
+		}
+		executor.shutdown();
+		assertEquals("IDs are unique", 100 * peers.size(), ids.size());
+	}
+
+	@Test
+	public void testReplicatedEntryListener() throws Exception {
+		int leader = awaitLeader();
+		int follower = (leader + 1) % peers.size();
+		List<RaftEntry> replicated = new CopyOnWriteArrayList<RaftEntry>();
+		controllers[follower].getNode().setReplicatedEntryListener(replicated::add);
+
+		controllers[leader].addNode("/client", "");
+		controllers[follower].addNode("/client/a", "data");
+		// the follower applied the entry of the leader before its own one
+		assertEquals(1, replicated.size());
+		assertEquals(Kind.ADD, replicated.get(0).getKind());
+		assertEquals("/client", replicated.get(0).getPath());
+	}
+
+	@Test
+	public void testTombstoneKeygroups() throws Exception {
+		int leader = awaitLeader();
+		controllers[leader].addNodesIfAbsent(NamingService.SYSTEM_NODE_PATHS, "");
+		KeygroupLifecycleTest.assertTombstoneKeygroups(controllers[(leader + 1) % peers.size()]);
+	}
+
+	private void start(int i) throws Exception {
+		RaftNode node = new RaftNode(i, peers, new File(root, "replica" + i), snapshotInterval,
+				electionTimeout, heartbeatInterval, requestTimeout);
+		node.start();
+		controllers[i] = new RaftController(node);
+	}
+
+	private int awaitLeader() throws InterruptedException {
+		long deadline = System.currentTimeMillis() + requestTimeout;
+		while (System.currentTimeMillis() < deadline) {
+			for (int i = 0; i < controllers.length; i++) {
+				if (controllers[i] != null && controllers[i].getNode().getRole() == Role.LEADER) {
+					return i;
+				}
+			}
+			Thread.sleep(20);
+		}
+		throw new AssertionError("No leader elected");
+	}
+
+}
@@ -0,0 +1,97 @@
+package database.raft;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import namespace.TestUtil;
+
+/**
+ * Runs each replica in its own JVM on localhost, as in a deployment of several naming
+ * services.
+ */
+public class RaftProcessTest {
+
+	private static final List<String> peers = Arrays.asList("tcp://localhost:54381",
+			"tcp://localhost:54382", "tcp://localhost:54383");
+
+	private File root;
+	private Process[] processes = new Process[peers.size()];
+	private PrintWriter[] inputs = new PrintWriter[peers.size()];
+	private BufferedReader[] outputs = new BufferedReader[peers.size()];
+
+	@Before
+	public void setUp() throws Exception {
+		root = Files.createTempDirectory("raftProcesses").toFile();
+		for (int i = 0; i < peers.size(); i++) {
+			String java = System.getProperty("java.home") + File.separator + "bin" + File.separator
+					+ "java";
+			processes[i] = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+					RaftReplicaProcess.class.getName(), String.valueOf(i), String.join(",", peers),
+					new File(root, "replica" + i).getPath())
+					.redirectError(ProcessBuilder.Redirect.INHERIT).start();
+			inputs[i] = new PrintWriter(processes[i].getOutputStream(), true);
+			outputs[i] = new BufferedReader(new InputStreamReader(processes[i].getInputStream()));
+			assertEquals("started", outputs[i].readLine());
+		}
+	}
+
+	@After
+	public void tearDown() {
+		for (Process process : processes) {
+			if (process != null) {
+				process.destroyForcibly();
+			}
+		}
+		TestUtil.deleteDir(root);
+	}
+
+	@Test
+	public void testReplicationAcrossProcesses() throws Exception {
+		int leader = awaitLeader();
+		int follower = (leader + 1) % peers.size();
+		assertEquals("ok", request(follower, "add /client "));
+		assertEquals("ok", request(leader, "add /client/a data"));
+		for (int i = 0; i < peers.size(); i++) {
+			assertEquals("data", request(i, "read /client/a"));
+		}
+
+		processes[leader].destroyForcibly().waitFor();
+		processes[leader] = null;
+		int newLeader = awaitLeader();
+		assertTrue(newLeader != leader);
+		assertEquals("ok", request(follower, "add /client/b more"));
+		assertEquals("more", request(newLeader, "read /client/b"));
+	}
+
+	private String request(int i, String command) throws IOException {
+		inputs[i].println(command);
+		return outputs[i].readLine();
+	}
+
+	private int awaitLeader() throws Exception {
+		long deadline = System.currentTimeMillis() + RaftControllerTest.requestTimeout;
+		while (System.currentTimeMillis() < deadline) {
+			for (int i = 0; i < processes.length; i++) {
+				if (processes[i] != null && "LEADER".equals(request(i, "role"))) {
+					return i;
+				}
+			}
+			Thread.sleep(50);
+		}
+		throw new AssertionError("No leader elected");
+	}
+
+}
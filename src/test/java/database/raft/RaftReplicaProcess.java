@@ -0,0 +1,64 @@
+package database.raft;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.Arrays;
+
+/**
+ * Runs a raft replica in its own JVM for {@link RaftProcessTest}. Reads commands from standard
+ * input and prints one line per command to standard output, log messages go to standard error:
+ *
+ * <pre>
+ * add path data -> ok | error message
+ * read path     -> data | error message
+ * role          -> FOLLOWER | CANDIDATE | LEADER
+ * </pre>
+ *
+ * Arguments: index, comma-separated peers, log directory.
+ *
+ * @author jonathanhasenburg
+ *
+ */
+public class RaftReplicaProcess {
+
+	public static void main(String[] args) throws Exception {
+		// log messages must not mix with replies
+		PrintStream replies = System.out;
+		System.setOut(System.err);
+
+		RaftNode node = new RaftNode(Integer.parseInt(args[0]), Arrays.asList(args[1].split(",")),
+				new File(args[2]), RaftControllerTest.snapshotInterval, RaftControllerTest.electionTimeout,
+				RaftControllerTest.heartbeatInterval, RaftControllerTest.requestTimeout);
+		node.start();
+		RaftController controller = new RaftController(node);
+		replies.println("started");
+
+		BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+		String line;
+		while ((line = in.readLine()) != null) {
+			String[] command = line.split(" ", 3);
+			try {
+				switch (command[0]) {
+				case "add":
+					controller.addNode(command[1], command[2]);
+					replies.println("ok");
+					break;
+				case "read":
+					replies.println(controller.readNode(command[1]));
+					break;
+				case "role":
+					replies.println(node.getRole());
+					break;
+				default:
+					replies.println("error unknown command " + command[0]);
+				}
+			} catch (RuntimeException e) {
+				replies.println("error " + e.getMessage());
+			}
+		}
+		controller.close();
+	}
+
+}
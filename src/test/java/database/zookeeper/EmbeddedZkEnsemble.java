@@ -0,0 +1,135 @@
+package database.zookeeper;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.apache.zookeeper.Watcher.Event.KeeperState;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.server.ServerCnxnFactory;
+import org.apache.zookeeper.server.quorum.QuorumPeer;
+import org.apache.zookeeper.server.quorum.QuorumPeer.LearnerType;
+import org.apache.zookeeper.server.quorum.QuorumPeer.QuorumServer;
+
+/**
+ * A ZooKeeper ensemble whose servers all run inside the current process on localhost ports,
+ * for benchmarks and tests of the {@link ZkController} that need replication, i.e., writes
+ * that must be acknowledged by a majority of servers.
+ *
+ * @author jonathanhasenburg
+ *
+ */
+public class EmbeddedZkEnsemble implements Closeable {
+
+	private static Logger logger = Logger.getLogger(EmbeddedZkEnsemble.class.getName());
+
+	private static final int tickTime = 2000;
+	private static final int initLimit = 10;
+	private static final int syncLimit = 5;
+	private static final int maxConnections = 100;
+	/**
+	 * The fast leader election, the only one that is not deprecated
+	 */
+	private static final int electionType = 3;
+
+	private final File dataDir;
+	private final int size;
+
+	private final List<QuorumPeer> peers = new ArrayList<QuorumPeer>();
+	private final List<Integer> clientPorts = new ArrayList<Integer>();
+
+	/**
+	 * Creates a new ensemble, it is started with {@link #start()}.
+	 *
+	 * @param dataDir Directory for the snapshots and transaction logs of all servers
+	 * @param size The number of servers, usually 3
+	 */
+	public EmbeddedZkEnsemble(File dataDir, int size) {
+		this.dataDir = dataDir;
+		this.size = size;
+	}
+
+	public void start() throws IOException {
+		Map<Long, QuorumServer> servers = new HashMap<Long, QuorumServer>();
+		for (long id = 1; id <= size; id++) {
+			servers.put(id, new QuorumServer(id, "127.0.0.1", freePort(), freePort(), LearnerType.PARTICIPANT));
+			clientPorts.add(freePort());
+		}
+
+		for (long id = 1; id <= size; id++) {
+			File peerDir = new File(dataDir, "server" + id);
+			peerDir.mkdirs();
+			ServerCnxnFactory factory = ServerCnxnFactory.createFactory(
+					new InetSocketAddress("127.0.0.1", clientPorts.get((int) id - 1)), maxConnections);
+			QuorumPeer peer = new QuorumPeer(servers, peerDir, peerDir, electionType, id, tickTime,
+					initLimit, syncLimit, factory);
+			peer.start();
+			peers.add(peer);
+		}
+		logger.info("Started embedded ZooKeeper ensemble on " + getConnectString());
+	}
+
+	/**
+	 * @return the connect string of the ensemble, e.g., 127.0.0.1:2181,127.0.0.1:2182
+	 */
+	public String getConnectString() {
+		StringBuilder connectString = new StringBuilder();
+		for (int port : clientPorts) {
+			if (connectString.length() > 0) {
+				connectString.append(',');
+			}
+			connectString.append("127.0.0.1:").append(port);
+		}
+		return connectString.toString();
+	}
+
+	/**
+	 * Opens a new session and waits until it is connected, which includes waiting for the
+	 * ensemble to elect a leader.
+	 *
+	 * @param sessionTimeout The session timeout in milliseconds
+	 * @return the connected client
+	 * @throws IOException if the session could not be connected within the session timeout
+	 * @throws InterruptedException
+	 */
+	public ZooKeeper connect(int sessionTimeout) throws IOException, InterruptedException {
+		CountDownLatch connected = new CountDownLatch(1);
+		ZooKeeper zk = new ZooKeeper(getConnectString(), sessionTimeout, event -> {
+			if (event.getState() == KeeperState.SyncConnected) {
+				connected.countDown();
+			}
+		});
+		if (!connected.await(sessionTimeout, TimeUnit.MILLISECONDS)) {
+			zk.close();
+			throw new IOException("Could not connect to " + getConnectString());
+		}
+		return zk;
+	}
+
+	@Override
+	public void close() {
+		for (QuorumPeer peer : peers) {
+			peer.shutdown();
+		}
+		peers.clear();
+	}
+
+	/**
+	 * @return a port that was free a moment ago
+	 */
+	private static int freePort() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		}
+	}
+
+}
@@ -0,0 +1,97 @@
+package database.zookeeper;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.apache.zookeeper.Watcher.Event.KeeperState;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.server.NIOServerCnxnFactory;
+import org.apache.zookeeper.server.ServerCnxnFactory;
+import org.apache.zookeeper.server.ZooKeeperServer;
+
+/**
+ * A standalone ZooKeeper server running inside the current process, for benchmarks and tests
+ * of the {@link ZkController}.
+ *
+ * @author jonathanhasenburg
+ *
+ */
+public class EmbeddedZkServer implements Closeable {
+
+	private static Logger logger = Logger.getLogger(EmbeddedZkServer.class.getName());
+
+	private static final int tickTime = 2000;
+	private static final int maxConnections = 100;
+
+	private final File dataDir;
+	private final int port;
+
+	private ZooKeeperServer server;
+	private ServerCnxnFactory factory;
+
+	/**
+	 * Creates a new server, it is started with {@link #start()}.
+	 *
+	 * @param dataDir Directory for snapshots and transaction logs
+	 * @param port The client port, 0 to use any free port
+	 */
+	public EmbeddedZkServer(File dataDir, int port) {
+		this.dataDir = dataDir;
+		this.port = port;
+	}
+
+	public void start() throws IOException, InterruptedException {
+		dataDir.mkdirs();
+		server = new ZooKeeperServer(dataDir, dataDir, tickTime);
+		factory = NIOServerCnxnFactory.createFactory(new InetSocketAddress("127.0.0.1", port), maxConnections);
+		factory.startup(server);
+		logger.info("Started embedded ZooKeeper on " + getConnectString());
+	}
+
+	/**
+	 * @return the connect string of the server, e.g., 127.0.0.1:2181
+	 */
+	public String getConnectString() {
+		return "127.0.0.1:" + factory.getLocalPort();
+	}
+
+	/**
+	 * Opens a new session and waits until it is connected.
+	 *
+	 * @param sessionTimeout The session timeout in milliseconds
+	 * @return the connected client
+	 * @throws IOException if the session could not be connected within the session timeout
+	 * @throws InterruptedException
+	 */
+	public ZooKeeper connect(int sessionTimeout) throws IOException, InterruptedException {
+		CountDownLatch connected = new CountDownLatch(1);
+		ZooKeeper zk = new ZooKeeper(getConnectString(), sessionTimeout, event -> {
+			if (event.getState() == KeeperState.SyncConnected) {
+				connected.countDown();
+			}
+		});
+		if (!connected.await(sessionTimeout, TimeUnit.MILLISECONDS)) {
+			zk.close();
+			throw new IOException("Could not connect to " + getConnectString());
+		}
+		return zk;
+	}
+
+	@Override
+	public void close() {
+		if (factory != null) {
+			factory.shutdown();
+			factory = null;
+		}
+		if (server != null) {
+			server.shutdown();
+			server = null;
+		}
+	}
+
+}
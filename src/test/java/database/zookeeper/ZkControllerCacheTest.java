@@ -0,0 +1,117 @@
+package database.zookeeper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+
+import org.apache.zookeeper.ZooKeeper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import metrics.MetricsRegistry;
+import namespace.TestUtil;
+
+public class ZkControllerCacheTest {
+
+	private static final int sessionTimeout = 10000;
+	private static final long eventTimeout = 5000;
+
+	private File dataDir;
+	private EmbeddedZkServer server;
+	private ZooKeeper zk;
+	private ZooKeeper otherZk;
+	private ZkController controller;
+	private ZkController other;
+
+	@Before
+	public void setUp() throws Exception {
+		dataDir = Files.createTempDirectory("zookeeper").toFile();
+		server = new EmbeddedZkServer(dataDir, 0);
+		server.start();
+		zk = server.connect(sessionTimeout);
+		otherZk = server.connect(sessionTimeout);
+		controller = new ZkController(zk);
+		// a second session, its modifications are only noticed through watches
+		other = new ZkController(otherZk, false);
+		other.addNode("/test", "data");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		zk.close();
+		otherZk.close();
+		server.close();
+		TestUtil.deleteDir(dataDir);
+	}
+
+	@Test
+	public void testRepeatedReadsAreCached() throws Exception {
+		MetricsRegistry metrics = MetricsRegistry.getInstance();
+		long misses = metrics.getCount(ZkTreeCache.MISSES);
+		long hits = metrics.getCount(ZkTreeCache.HITS);
+
+		assertEquals("data", controller.readNode("/test"));
+		assertEquals("data", controller.readNode("/test"));
+		assertEquals("data", controller.readNode("/test"));
+		assertEquals(misses + 1, metrics.getCount(ZkTreeCache.MISSES));
+		assertEquals(hits + 2, metrics.getCount(ZkTreeCache.HITS));
+	}
+
+	@Test
+	public void testOwnWritesAreVisible() throws Exception {
+		assertEquals("data", controller.readNode("/test"));
+		controller.updateNode("/test", "new");
+		assertEquals("new", controller.readNode("/test"));
+
+		assertTrue(controller.getChildren("/test").isEmpty());
+		controller.addNode("/test/a", "a");
+		assertEquals(Arrays.asList("a"), controller.getChildren("/test"));
+		controller.deleteNode("/test/a");
+		assertFalse(controller.exists("/test/a"));
+	}
+
+	@Test
+	public void testModificationsOfOtherSessions() throws Exception {
+		assertEquals("data", controller.readNode("/test"));
+		other.updateNode("/test", "new");
+		await(() -> "new".equals(controller.readNode("/test")));
+
+		assertTrue(controller.getChildren("/test").isEmpty());
+		other.addNode("/test/a", "a");
+		await(() -> controller.getChildren("/test").size() == 1);
+
+		assertFalse(controller.exists("/test/b"));
+		assertFalse(controller.exists("/test/b"));
+		other.addNode("/test/b", "b");
+		await(() -> controller.exists("/test/b"));
+
+		other.deleteNode("/test/b");
+		await(() -> !controller.exists("/test/b"));
+	}
+
+	@Test
+	public void testDisconnectClearsCache() throws Exception {
+		assertEquals("data", controller.readNode("/test"));
+		assertTrue(controller.getCache().size() > 0);
+
+		server.close();
+		await(() -> !controller.getCache().isConnected());
+		assertEquals(0, controller.getCache().size());
+	}
+
+	private static void await(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + eventTimeout;
+		while (!condition.getAsBoolean()) {
+			assertTrue("Condition not met within " + eventTimeout + "ms",
+					System.currentTimeMillis() < deadline);
+			Thread.sleep(10);
+		}
+	}
+
+}
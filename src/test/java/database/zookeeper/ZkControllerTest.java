@@ -0,0 +1,118 @@
+package database.zookeeper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import namespace.TestUtil;
+
+public class ZkControllerTest {
+
+	private static final int sessionTimeout = 10000;
+
+	private File dataDir;
+	private EmbeddedZkServer server;
+	private ZooKeeper zk;
+	private ZkController controller;
+
+	@Before
+	public void setUp() throws Exception {
+		dataDir = Files.createTempDirectory("zookeeper").toFile();
+		server = new EmbeddedZkServer(dataDir, 0);
+		server.start();
+		zk = server.connect(sessionTimeout);
+		controller = new ZkController(zk);
+		controller.addNode("/test", "data");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		zk.close();
+		server.close();
+		TestUtil.deleteDir(dataDir);
+	}
+
+	@Test
+	public void testExpectedVersion() throws Exception {
+		Stat stat = new Stat();
+		assertEquals("data", controller.readNode("/test", stat));
+		controller.updateNode("/test", "first", stat.getVersion());
+
+		try {
+			controller.updateNode("/test", "second", stat.getVersion());
+			fail("Update of outdated version succeeded");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		assertEquals("first", controller.readNode("/test", stat));
+
+		try {
+			controller.deleteNode("/test", stat.getVersion() - 1);
+			fail("Delete of outdated version succeeded");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		controller.deleteNode("/test", stat.getVersion());
+		assertFalse(controller.exists("/test"));
+	}
+
+	@Test
+	public void testUpdateIfUnchanged() throws Exception {
+		assertTrue(controller.updateNodeIfUnchanged("/test", "data", "first"));
+		assertFalse(controller.updateNodeIfUnchanged("/test", "data", "second"));
+		assertEquals("first", controller.readNode("/test"));
+	}
+
+	@Test
+	public void testDeleteNodeRecursive() throws Exception {
+		controller.addNode("/test/a", "a");
+		controller.addNode("/test/a/b", "b");
+		controller.addNode("/test/c", "c");
+		assertEquals(2, controller.getChildren("/test").size());
+
+		controller.deleteNodeRecursive("/test");
+		assertFalse(controller.exists("/test"));
+		assertFalse(controller.exists("/test/a/b"));
+
+		try {
+			controller.deleteNodeRecursive("/test");
+			fail("Delete of missing node succeeded");
+		} catch (NoSuchFileException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testMissingNode() throws Exception {
+		try {
+			controller.readNode("/missing");
+			fail("Read of missing node succeeded");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			controller.updateNode("/missing", "data");
+			fail("Update of missing node succeeded");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			controller.deleteNode("/missing");
+			fail("Delete of missing node succeeded");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+}
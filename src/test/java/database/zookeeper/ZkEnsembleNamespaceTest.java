@@ -0,0 +1,25 @@
+package database.zookeeper;
+
+import org.junit.ClassRule;
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+import org.junit.runners.Suite.SuiteClasses;
+
+import namespace.ClientTest;
+import namespace.NodeTest;
+
+/**
+ * Runs the namespace tests against a {@link ZkController} connected to an ensemble of three
+ * ZooKeeper servers, so every write is replicated.
+ *
+ * @author jonathanhasenburg
+ *
+ */
+@RunWith(Suite.class)
+@SuiteClasses({ ClientTest.class, NodeTest.class })
+public class ZkEnsembleNamespaceTest {
+
+	@ClassRule
+	public static ZkTestServer server = new ZkTestServer(3);
+
+}
@@ -0,0 +1,75 @@
+package database.zookeeper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import control.Configuration;
+import database.IControllable;
+import model.JSONable;
+import model.config.KeygroupConfig;
+import model.config.ReplicaNodeConfig;
+import model.config.TriggerNodeConfig;
+import model.data.ClientID;
+import model.data.KeygroupID;
+import model.data.NodeID;
+import model.messages.Command;
+import model.messages.ConfigIDToKeygroupWrapper;
+import model.messages.ResponseCode;
+import namespace.TestUtil;
+
+/**
+ * Checks that reads see the preceding writes of the same process, although the sessions of a
+ * {@link ZkSessionPool} may be connected to different servers of an ensemble.
+ *
+ * @author jonathanhasenburg
+ *
+ */
+public class ZkEnsembleReadYourWritesTest {
+
+	private static final int clients = 10;
+
+	@ClassRule
+	public static ZkTestServer server = new ZkTestServer(3);
+
+	@Test
+	public void testReadYourWrites() throws Exception {
+		IControllable controller = TestUtil.createController(new Configuration());
+		controller.addNode("/client/active/reader", "0");
+		for (int i = 1; i < 100; i++) {
+			controller.updateNode("/client/active/reader", Integer.toString(i));
+			assertEquals(Integer.toString(i), controller.readNode("/client/active/reader"));
+		}
+	}
+
+	@Test
+	public void testConsecutiveAddClient() throws Exception {
+		IControllable controller = TestUtil.createController(new Configuration());
+
+		NodeID node = new NodeID("ensemble_node");
+		KeygroupID keygroupID = new KeygroupID("app", "tenant", "group");
+		KeygroupConfig keygroup = new KeygroupConfig(keygroupID, new HashSet<ClientID>(),
+				new HashSet<ReplicaNodeConfig>(), new HashSet<TriggerNodeConfig>(), null, null);
+		assertEquals(ResponseCode.SUCCESS,
+				TestUtil.run(Command.KEYGROUP_CONFIG_CREATE, keygroup, node, controller).getResponseCode());
+
+		// each request reads the keygroup the previous one updated
+		for (int i = 0; i < clients; i++) {
+			ConfigIDToKeygroupWrapper<ClientID> wrapper =
+					new ConfigIDToKeygroupWrapper<ClientID>(keygroupID, new ClientID("client" + i));
+			assertEquals(ResponseCode.SUCCESS, TestUtil.run(Command.KEYGROUP_CONFIG_ADD_CLIENT,
+					wrapper, node, controller).getResponseCode());
+		}
+
+		keygroup = JSONable.fromJSON(controller.readNode("/keygroup/active/" + keygroupID),
+				KeygroupConfig.class);
+		for (int i = 0; i < clients; i++) {
+			assertTrue("Keygroup contains client" + i, keygroup.containsClient(new ClientID("client" + i)));
+		}
+	}
+
+}
@@ -0,0 +1,103 @@
+package database.zookeeper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+
+import org.apache.zookeeper.ZooKeeper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import namespace.TestUtil;
+
+public class ZkSessionPoolTest {
+
+	private static final int sessionTimeout = 10000;
+	private static final long eventTimeout = 10000;
+	private static final String chroot = "/fbase/test";
+
+	private File dataDir;
+	private EmbeddedZkServer server;
+	private ZkSessionPool pool;
+	private ZkController controller;
+
+	@Before
+	public void setUp() throws Exception {
+		dataDir = Files.createTempDirectory("zookeeper").toFile();
+		server = new EmbeddedZkServer(dataDir, 0);
+		server.start();
+		pool = new ZkSessionPool(server.getConnectString(), chroot, sessionTimeout, sessionTimeout, 3);
+		pool.connect();
+		controller = new ZkController(pool, true);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		pool.close();
+		server.close();
+		TestUtil.deleteDir(dataDir);
+	}
+
+	@Test
+	public void testChroot() throws Exception {
+		controller.addNode("/a", "data");
+		assertEquals("data", controller.readNode("/a"));
+
+		ZooKeeper zk = server.connect(sessionTimeout);
+		try {
+			assertNotNull(zk.exists(chroot + "/a", false));
+		} finally {
+			zk.close();
+		}
+	}
+
+	@Test
+	public void testReadsSpreadAcrossSessions() throws Exception {
+		Set<ZooKeeper> sessions = new HashSet<ZooKeeper>();
+		for (int i = 0; i < pool.size(); i++) {
+			sessions.add(pool.getReadSession());
+		}
+		assertEquals(pool.size(), sessions.size());
+	}
+
+	@Test
+	public void testExpiredSessionIsReplaced() throws Exception {
+		controller.addNode("/a", "first");
+		assertEquals("first", controller.readNode("/a"));
+
+		ZooKeeper expired = pool.getWriteSession();
+		expire(expired);
+		await(() -> pool.getWriteSession() != expired);
+
+		controller.updateNode("/a", "second");
+		assertEquals("second", controller.readNode("/a"));
+		await(() -> controller.getCache().isConnected());
+	}
+
+	/**
+	 * Expires a session by opening and closing another client with its session ID.
+	 */
+	private void expire(ZooKeeper session) throws Exception {
+		ZooKeeper other = new ZooKeeper(server.getConnectString(), sessionTimeout, event -> {
+		}, session.getSessionId(), session.getSessionPasswd());
+		await(() -> other.getState().isConnected());
+		other.close();
+	}
+
+	private static void await(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + eventTimeout;
+		while (!condition.getAsBoolean()) {
+			assertTrue("Condition not met within " + eventTimeout + "ms",
+					System.currentTimeMillis() < deadline);
+			Thread.sleep(10);
+		}
+	}
+
+}
@@ -0,0 +1,90 @@
+package database.zookeeper;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.junit.rules.ExternalResource;
+
+import namespace.TestUtil;
+
+/**
+ * Runs ZooKeeper inside the test process while a test class or suite runs, either as a single
+ * server or as an ensemble of three servers. Use it as a class rule; while it runs, the tests
+ * that create their controller with {@link TestUtil#createController} use a
+ * {@link ZkController} connected to it.
+ *
+ * @author jonathanhasenburg
+ *
+ */
+public class ZkTestServer extends ExternalResource {
+
+	private static final int sessionTimeout = 10000;
+	private static final int sessions = 2;
+
+	private static volatile ZkTestServer current;
+
+	private final int servers;
+
+	private File dataDir;
+	private EmbeddedZkServer server;
+	private EmbeddedZkEnsemble ensemble;
+	private ZkSessionPool pool;
+	private ZkController controller;
+
+	/**
+	 * @param servers 1 for a single server, 3 for an ensemble
+	 */
+	public ZkTestServer(int servers) {
+		this.servers = servers;
+	}
+
+	/**
+	 * @return the running server, null if there is none
+	 */
+	public static ZkTestServer current() {
+		return current;
+	}
+
+	@Override
+	protected void before() throws Throwable {
+		dataDir = Files.createTempDirectory("zookeeper").toFile();
+		String connectString;
+		if (servers == 1) {
+			server = new EmbeddedZkServer(dataDir, 0);
+			server.start();
+			connectString = server.getConnectString();
+		} else {
+			ensemble = new EmbeddedZkEnsemble(dataDir, servers);
+			ensemble.start();
+			connectString = ensemble.getConnectString();
+		}
+		// the first connection to an ensemble also waits for the leader election
+		pool = new ZkSessionPool(connectString, "", sessionTimeout, 3 * sessionTimeout, sessions);
+		pool.connect();
+		controller = new ZkController(pool, true);
+		current = this;
+	}
+
+	@Override
+	protected void after() {
+		current = null;
+		if (pool != null) {
+			pool.close();
+		}
+		if (server != null) {
+			server.close();
+		}
+		if (ensemble != null) {
+			ensemble.close();
+		}
+		TestUtil.deleteDir(dataDir);
+	}
+
+	/**
+	 * @return the controller connected to the server, shared by all tests
+	 */
+	public ZkController getController() {
+		return controller;
+	}
+
+}
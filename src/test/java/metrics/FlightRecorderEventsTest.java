@@ -0,0 +1,58 @@
+package metrics;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import control.Configuration;
+import database.IControllable;
+import database.localfiles.LocalFileController;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import model.data.NodeID;
+import model.messages.ResponseCode;
+import namespace.Node;
+
+public class FlightRecorderEventsTest {
+
+	private IControllable controller;
+
+	@Before
+	public void setUp() {
+		Configuration configuration = new Configuration();
+		controller = new LocalFileController(new File(configuration.getRoot()), configuration.getFolderSeparator());
+	}
+
+	@Test
+	public void entityEventRecordedTest() throws IOException {
+		Path file = Files.createTempFile("namingservice", ".jfr");
+		try (Recording recording = new Recording()) {
+			recording.enable(EntityEvent.class);
+			recording.start();
+			Node.getInstance().readNode(controller, new NodeID("jfr_missing_node"));
+			recording.stop();
+			recording.dump(file);
+
+			List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+			RecordedEvent event = events.stream()
+					.filter(e -> "jfr_missing_node".equals(e.getString("entityID")))
+					.findFirst().orElse(null);
+
+			assertNotNull("Event recorded", event);
+			assertEquals("node", event.getString("type"));
+			assertEquals("read", event.getString("operation"));
+			assertEquals(ResponseCode.ERROR_DOESNT_EXIST.toString(), event.getString("responseCode"));
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+}
@@ -0,0 +1,56 @@
+package metrics;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void percentileTest() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long i = 1; i <= 100000; i++) {
+			histogram.record(i * 1000);
+		}
+
+		assertEquals(100000, histogram.getCount());
+		assertEquals(100000000, histogram.getMax());
+		assertEquals(50000000, histogram.getPercentile(0.5), 50000000 * 0.04);
+		assertEquals(99000000, histogram.getPercentile(0.99), 99000000 * 0.04);
+		assertEquals(99900000, histogram.getPercentile(0.999), 99900000 * 0.04);
+		assertEquals(100000000, histogram.getPercentile(1.0));
+	}
+
+	@Test
+	public void smallValuesExactTest() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long i = 0; i < 32; i++) {
+			histogram.record(i);
+		}
+
+		assertEquals(15, histogram.getPercentile(0.5));
+		assertEquals(31, histogram.getMax());
+	}
+
+	@Test
+	public void bucketBoundsTest() {
+		for (long value : new long[] { 0, 1, 31, 32, 33, 1000, 123456789, Long.MAX_VALUE }) {
+			int index = LatencyHistogram.indexOf(value);
+			assertTrue("Value within its bucket", value <= LatencyHistogram.upperBoundOf(index));
+			if (index > 0) {
+				assertTrue("Value above previous bucket", value > LatencyHistogram.upperBoundOf(index - 1));
+			}
+		}
+	}
+
+	@Test
+	public void resetTest() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(42);
+		histogram.reset();
+
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getPercentile(0.99));
+	}
+
+}
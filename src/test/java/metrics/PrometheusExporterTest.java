@@ -0,0 +1,28 @@
+package metrics;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class PrometheusExporterTest {
+
+	@Test
+	public void renderTest() {
+		MetricsRegistry registry = MetricsRegistry.getInstance();
+		registry.record("command.PROMETHEUS_TEST", 2000000);
+		registry.increment("command.PROMETHEUS_TEST.SUCCESS");
+		registry.registerGauge("prometheus.test", () -> 7);
+
+		String text = new PrometheusExporter(registry, 0).render();
+		registry.removeGauge("prometheus.test");
+
+		assertTrue(text.contains("# TYPE namingservice_command_latency_seconds histogram\n"));
+		assertTrue(text.contains("namingservice_command_latency_seconds_bucket{command=\"PROMETHEUS_TEST\",le=\"0.001\"} 0\n"));
+		assertTrue(text.contains("namingservice_command_latency_seconds_bucket{command=\"PROMETHEUS_TEST\",le=\"0.0025\"} 1\n"));
+		assertTrue(text.contains("namingservice_command_latency_seconds_count{command=\"PROMETHEUS_TEST\"} 1\n"));
+		assertTrue(text.contains("namingservice_command_results_total{command=\"PROMETHEUS_TEST\",code=\"SUCCESS\"} 1\n"));
+		assertTrue(text.contains("namingservice_prometheus_test 7\n"));
+		assertTrue(text.contains("jvm_memory_bytes_used{area=\"heap\"}"));
+	}
+
+}
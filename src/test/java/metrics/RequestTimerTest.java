@@ -0,0 +1,38 @@
+package metrics;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import metrics.RequestTimer.Phase;
+
+public class RequestTimerTest {
+
+	@Test
+	public void phasesTest() throws InterruptedException {
+		RequestTimer timer = new RequestTimer();
+		timer.start();
+		Thread.sleep(5);
+		timer.mark(Phase.DECRYPT);
+		timer.mark(Phase.LOOKUP);
+
+		assertTrue("Decrypt measured", timer.getDuration(Phase.DECRYPT) >= 5000000);
+		assertEquals("Execute not measured", 0, timer.getDuration(Phase.EXECUTE));
+		assertEquals("Total is sum of phases", timer.getTotal(),
+				timer.getDuration(Phase.DECRYPT) + timer.getDuration(Phase.LOOKUP));
+		assertTrue(timer.toString().startsWith("decrypt="));
+		assertFalse(timer.toString().contains("execute"));
+	}
+
+	@Test
+	public void restartTest() {
+		RequestTimer timer = new RequestTimer();
+		timer.start();
+		timer.mark(Phase.SEND);
+		timer.start();
+
+		assertEquals(0, timer.getDuration(Phase.SEND));
+		assertEquals(0, timer.getTotal());
+	}
+
+}
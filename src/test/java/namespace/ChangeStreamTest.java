@@ -0,0 +1,109 @@
+package namespace;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.SortedMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import namespace.EntityChange.Kind;
+
+public class ChangeStreamTest {
+
+	private File directory;
+	private ChangeStream stream;
+
+	@Before
+	public void setUp() throws Exception {
+		directory = Files.createTempDirectory("changeStream").toFile();
+		// 10 changes in memory, 20 per segment, 3 segments on disk
+		stream = new ChangeStream(directory, 10, 20, 3);
+	}
+
+	@After
+	public void tearDown() {
+		stream.close();
+		TestUtil.deleteDir(directory);
+	}
+
+	@Test
+	public void testOffsets() throws Exception {
+		append(stream, 5);
+		assertEquals(1, stream.getFirstOffset());
+		assertEquals(6, stream.getNextOffset());
+
+		SortedMap<Long, EntityChange> changes = stream.read(2, 2);
+		assertEquals(Arrays.asList(2L, 3L), new ArrayList<Long>(changes.keySet()));
+		assertEquals("node1", changes.get(2L).getEntityID());
+		assertTrue(stream.read(6, 10).isEmpty());
+	}
+
+	@Test
+	public void testReadFromDisk() throws Exception {
+		append(stream, 45);
+
+		// offset 5 is not in memory anymore and spans two segments
+		SortedMap<Long, EntityChange> changes = stream.read(5, 30);
+		assertEquals(30, changes.size());
+		assertEquals(5L, (long) changes.firstKey());
+		assertEquals(34L, (long) changes.lastKey());
+		assertEquals("node33", changes.get(34L).getEntityID());
+	}
+
+	@Test
+	public void testRetention() throws Exception {
+		append(stream, 70);
+
+		// segments start at 1, 21, 41 and 61, the first was deleted
+		assertEquals(21, stream.getFirstOffset());
+		SortedMap<Long, EntityChange> changes = stream.read(1, 5);
+		assertEquals(21L, (long) changes.firstKey());
+	}
+
+	@Test
+	public void testRestart() throws Exception {
+		append(stream, 25);
+		stream.close();
+
+		stream = new ChangeStream(directory, 10, 20, 3);
+		assertEquals(26, stream.getNextOffset());
+		append(stream, 1);
+		assertEquals(26L, (long) stream.read(26, 1).firstKey());
+		assertEquals("node3", stream.read(4, 1).get(4L).getEntityID());
+	}
+
+	@Test
+	public void testRestartAfterPartialLine() throws Exception {
+		append(stream, 25);
+		stream.close();
+		// crashed while writing change 26
+		File last = new File(directory, String.format("%020d", 21) + ".log");
+		Files.write(last.toPath(), "26 {\"type\":".getBytes(StandardCharsets.UTF_8),
+				StandardOpenOption.APPEND);
+
+		stream = new ChangeStream(directory, 10, 20, 3);
+		assertEquals(26, stream.getNextOffset());
+		append(stream, 2);
+		stream.close();
+
+		stream = new ChangeStream(directory, 10, 20, 3);
+		assertEquals(28, stream.getNextOffset());
+		assertEquals("node1", stream.read(27, 1).get(27L).getEntityID());
+	}
+
+	private static void append(ChangeStream stream, int count) {
+		for (int i = 0; i < count; i++) {
+			stream.entityChanged(new EntityChange("node", "node" + i, Kind.CREATED, 1));
+		}
+	}
+
+}
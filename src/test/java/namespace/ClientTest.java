@@ -2,7 +2,6 @@ package namespace;
 
 import static org.junit.Assert.*;
 
-import java.io.File;
 
 import org.junit.After;
 import org.junit.AfterClass;
@@ -14,7 +13,6 @@ import control.Configuration;
 import control.NamingService;
 import crypto.CryptoProvider.EncryptionAlgorithm;
 import database.IControllable;
-import database.localfiles.LocalFileController;
 import model.JSONable;
 import model.config.ClientConfig;
 import model.data.ClientID;
@@ -43,12 +41,7 @@ public class ClientTest {
 	@Before
 	public void setUp() {
 		Configuration configuration = new Configuration();
-		File root = new File(configuration.getRoot());
-		TestUtil.deleteDir(new File(root, "client"));
-		TestUtil.deleteDir(new File(root, "node"));
-		TestUtil.deleteDir(new File(root, "keygroup"));
-
-		controller = new LocalFileController(new File(configuration.getRoot()), configuration.getFolderSeparator());
+		controller = TestUtil.createController(configuration);
 		sender = new NodeID("sender");
 		ns = new NamingService(controller, configuration);
 	}
@@ -0,0 +1,69 @@
+package namespace;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import control.Configuration;
+import database.IControllable;
+import database.localfiles.LocalFileController;
+
+public class IDAllocatorTest {
+
+	private File root;
+	private IControllable controller;
+
+	@Before
+	public void setUp() throws Exception {
+		Configuration configuration = new Configuration();
+		root = Files.createTempDirectory("ids").toFile();
+
+		controller = new LocalFileController(root, configuration.getFolderSeparator());
+	}
+
+	@After
+	public void tearDown() {
+		TestUtil.deleteDir(root);
+	}
+
+	@Test
+	public void allocateUniqueIDsTest() throws InterruptedException {
+		IDAllocator allocator = new IDAllocator(controller, 10);
+		Set<String> ids = new HashSet<String>();
+
+		for (int i = 0; i < 25; i++) {
+			String id = allocator.allocate(32);
+			assertEquals("Proper length", 32, id.length());
+			assertTrue("ID is unique", ids.add(id));
+		}
+	}
+
+	@Test
+	public void allocateBulkTest() throws InterruptedException {
+		IDAllocator allocator = new IDAllocator(controller, 10);
+
+		List<String> ids = allocator.allocate(42, 8);
+
+		assertEquals("Proper number of IDs", 42, ids.size());
+		assertEquals("IDs are unique", 42, new HashSet<String>(ids).size());
+	}
+
+	@Test
+	public void counterPersistedTest() throws InterruptedException {
+		Set<String> ids = new HashSet<String>(new IDAllocator(controller, 10).allocate(5, 8));
+
+		// a new allocator must not hand out IDs leased by the first one
+		for (String id : new IDAllocator(controller, 10).allocate(20, 8)) {
+			assertTrue("ID is unique", ids.add(id));
+		}
+	}
+
+}
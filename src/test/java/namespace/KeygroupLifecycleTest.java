@@ -0,0 +1,116 @@
+package namespace;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.HashSet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import control.Configuration;
+import control.NamingService;
+import database.IControllable;
+import database.localfiles.LocalFileController;
+import database.memory.InMemoryController;
+import database.mvstore.MVStoreController;
+import model.config.KeygroupConfig;
+import model.config.ReplicaNodeConfig;
+import model.config.TriggerNodeConfig;
+import model.data.ClientID;
+import model.data.KeygroupID;
+import model.data.NodeID;
+import model.messages.Command;
+import model.messages.ResponseCode;
+
+public class KeygroupLifecycleTest {
+
+	private static final String tombstonedPath = "/keygroup/tombstoned/";
+
+	private IControllable controller;
+
+	@Before
+	public void setUp() throws Exception {
+		controller = new InMemoryController();
+		controller.addNodesIfAbsent(NamingService.SYSTEM_NODE_PATHS, "");
+	}
+
+	@Test
+	public void testDeleteEmptyTombstonedParents() throws Exception {
+		controller.addNode(tombstonedPath + "app", "");
+		controller.addNode(tombstonedPath + "app/tenant", "");
+		// tombstoned into the tenant after the destroyed keygroup
+		controller.addNode(tombstonedPath + "app/tenant/other", "");
+
+		Keygroup.getInstance().deleteEmptyTombstonedParents(controller, "app/tenant/group");
+		assertTrue(controller.exists(tombstonedPath + "app/tenant/other"));
+		assertTrue(controller.exists(tombstonedPath + "app/tenant"));
+
+		controller.deleteNode(tombstonedPath + "app/tenant/other");
+		Keygroup.getInstance().deleteEmptyTombstonedParents(controller, "app/tenant/other");
+		assertFalse(controller.exists(tombstonedPath + "app/tenant"));
+		assertFalse(controller.exists(tombstonedPath + "app"));
+
+		// already removed parents are no error
+		Keygroup.getInstance().deleteEmptyTombstonedParents(controller, "app/tenant/other");
+	}
+
+	@Test
+	public void testDeleteImplicitTombstonedParents() throws Exception {
+		File root = Files.createTempDirectory("nsData").toFile();
+		try {
+			LocalFileController local = new LocalFileController(root,
+					new Configuration().getFolderSeparator());
+			// the app and tenant folders are created without data files
+			local.addNode(tombstonedPath + "app/tenant/group", "");
+			local.deleteNode(tombstonedPath + "app/tenant/group");
+
+			Keygroup.getInstance().deleteEmptyTombstonedParents(local, "app/tenant/group");
+			assertFalse(local.exists(tombstonedPath + "app/tenant"));
+			assertFalse(local.exists(tombstonedPath + "app"));
+		} finally {
+			TestUtil.deleteDir(root);
+		}
+	}
+
+	@Test
+	public void testTombstoneKeygroup() throws Exception {
+		assertTombstoneKeygroups(controller);
+	}
+
+	@Test
+	public void testTombstoneKeygroupMVStore() throws Exception {
+		File dataDir = Files.createTempDirectory("mvstore").toFile();
+		MVStoreController mvstore = new MVStoreController(new File(dataDir, "fbase.mv.db"), 0);
+		try {
+			mvstore.addNodesIfAbsent(NamingService.SYSTEM_NODE_PATHS, "");
+			assertTombstoneKeygroups(mvstore);
+		} finally {
+			mvstore.close();
+			TestUtil.deleteDir(dataDir);
+		}
+	}
+
+	/**
+	 * Creates and tombstones two keygroups of the same tenant with a data storage that only
+	 * adds nodes below existing parents.
+	 */
+	public static void assertTombstoneKeygroups(IControllable controller) throws Exception {
+		NodeID node = new NodeID("lifecycle_node");
+		for (String group : new String[] { "group", "other" }) {
+			KeygroupID keygroupID = new KeygroupID("app", "tenant", group);
+			KeygroupConfig keygroup = new KeygroupConfig(keygroupID, new HashSet<ClientID>(),
+					new HashSet<ReplicaNodeConfig>(), new HashSet<TriggerNodeConfig>(), null, null);
+			assertEquals(ResponseCode.SUCCESS,
+					TestUtil.run(Command.KEYGROUP_CONFIG_CREATE, keygroup, node, controller).getResponseCode());
+
+			assertEquals("Tombstoned " + group, ResponseCode.SUCCESS,
+					TestUtil.run(Command.KEYGROUP_CONFIG_DELETE, keygroupID, node, controller).getResponseCode());
+			assertTrue(controller.exists(tombstonedPath + "app/tenant/" + group));
+		}
+	}
+
+}
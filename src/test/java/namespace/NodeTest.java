@@ -2,7 +2,6 @@ package namespace;
 
 import static org.junit.Assert.*;
 
-import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -16,7 +15,6 @@ import control.Configuration;
 import control.NamingService;
 import crypto.CryptoProvider.EncryptionAlgorithm;
 import database.IControllable;
-import database.localfiles.LocalFileController;
 import model.JSONable;
 import model.config.NodeConfig;
 import model.data.NodeID;
@@ -44,12 +42,7 @@ public class NodeTest {
 	public void setUp() {
 		Configuration configuration = new Configuration();
 
-		File root = new File(configuration.getRoot());
-		TestUtil.deleteDir(new File(root, "client"));
-		TestUtil.deleteDir(new File(root, "node"));
-		TestUtil.deleteDir(new File(root, "keygroup"));
-
-		controller = new LocalFileController(new File(configuration.getRoot()), configuration.getFolderSeparator());
+		controller = TestUtil.createController(configuration);
 		ns = new NamingService(controller, configuration);
 	}
 
@@ -113,6 +106,25 @@ public class NodeTest {
 		deleteNodeDifferentSender(n.getID());
 	}
 
+	@Test
+	public void readNodeIfModifiedTest() throws IllegalArgumentException, InterruptedException {
+		NodeConfig c = makeStartingNode();
+		NodeConfig u = makeUpdatedNode(c);
+		createNode(c);
+
+		@SuppressWarnings("unchecked")
+		Response<String> notModified = (Response<String>) TestUtil.run(Command.NODE_CONFIG_READ, c.getID(), c.getID(), controller, "knownVersion=1");
+		assertEquals("Not modified", SystemEntity.NOT_MODIFIED, notModified.getValue());
+		assertEquals("Proper response code", ResponseCode.SUCCESS, notModified.getResponseCode());
+
+		TestUtil.run(Command.NODE_CONFIG_UPDATE, u, c.getID(), controller);
+
+		@SuppressWarnings("unchecked")
+		Response<String> modified = (Response<String>) TestUtil.run(Command.NODE_CONFIG_READ, c.getID(), c.getID(), controller, "knownVersion=1");
+		NodeConfig read = JSONable.fromJSON(modified.getValue(), NodeConfig.class);
+		assertEquals("Modified node read", Integer.valueOf(2), read.getVersion());
+	}
+
 	private void createNode(NodeConfig c) throws IllegalArgumentException, InterruptedException {
 		assertFalse("Node not active at start", controller.exists(activePath + c.getNodeID()));
 		assertFalse("Node not in tombstoned at start", controller.exists(tombstonedPath + c.getNodeID()));
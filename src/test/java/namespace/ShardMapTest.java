@@ -0,0 +1,88 @@
+package namespace;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import model.JSONable;
+import model.data.ClientID;
+import model.data.KeygroupID;
+import model.data.NodeID;
+import model.messages.Command;
+import model.messages.ConfigIDToKeygroupWrapper;
+import model.messages.Message;
+
+public class ShardMapTest {
+
+	private static final List<String> shards = Arrays.asList("tcp://shard0:54321",
+			"tcp://shard1:54321", "tcp://shard2:54321");
+
+	private static final int tenants = 3000;
+
+	@Test
+	public void testTenantOwnership() {
+		ShardMap map = new ShardMap(shards);
+		KeygroupID a = new KeygroupID("app", "tenant", "a");
+		KeygroupID b = new KeygroupID("app", "tenant", "b");
+
+		assertEquals("Keygroups of a tenant stored by one shard", map.ownerOf(a), map.ownerOf(b));
+		assertEquals(map.ownerOfTenant("app/tenant"), map.ownerOf(a));
+		assertEquals("Same owner in every shard map", map.ownerOf(a),
+				new ShardMap(shards).ownerOf(a));
+	}
+
+	@Test
+	public void testBalance() {
+		ShardMap map = new ShardMap(shards);
+		Map<String, Integer> owned = new HashMap<String, Integer>();
+		for (int i = 0; i < tenants; i++) {
+			owned.merge(map.ownerOfTenant("app/tenant" + i), 1, Integer::sum);
+		}
+
+		for (String shard : shards) {
+			int count = owned.getOrDefault(shard, 0);
+			assertTrue(shard + " owns " + count + " tenants",
+					count > tenants / shards.size() * 0.7 && count < tenants / shards.size() * 1.3);
+		}
+	}
+
+	@Test
+	public void testAddingShardMovesFewTenants() {
+		ShardMap before = new ShardMap(shards);
+		ShardMap after = new ShardMap(Arrays.asList("tcp://shard0:54321", "tcp://shard1:54321",
+				"tcp://shard2:54321", "tcp://shard3:54321"));
+
+		int moved = 0;
+		for (int i = 0; i < tenants; i++) {
+			String tenant = "app/tenant" + i;
+			if (!before.ownerOfTenant(tenant).equals(after.ownerOfTenant(tenant))) {
+				assertEquals("Tenants only move to the new shard", "tcp://shard3:54321",
+						after.ownerOfTenant(tenant));
+				moved++;
+			}
+		}
+		assertTrue("About a quarter of the tenants moved: " + moved, moved < tenants * 0.35);
+	}
+
+	@Test
+	public void testRoute() {
+		ShardMap map = new ShardMap(shards);
+		KeygroupID keygroupID = new KeygroupID("app", "tenant", "group");
+
+		Message read = new Message(Command.KEYGROUP_CONFIG_READ, JSONable.toJSON(keygroupID));
+		assertEquals(map.ownerOf(keygroupID), map.route(read));
+
+		Message addClient = new Message(Command.KEYGROUP_CONFIG_ADD_CLIENT, JSONable.toJSON(
+				new ConfigIDToKeygroupWrapper<ClientID>(keygroupID, new ClientID("client"))));
+		assertEquals(map.ownerOf(keygroupID), map.route(addClient));
+
+		Message nodeRead = new Message(Command.NODE_CONFIG_READ, JSONable.toJSON(new NodeID("node")));
+		assertEquals("Global entities owned by the first shard", shards.get(0), map.route(nodeRead));
+	}
+
+}
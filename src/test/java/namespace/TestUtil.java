@@ -1,8 +1,18 @@
 package namespace;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.NoSuchFileException;
+import java.util.Properties;
 
+import control.Configuration;
+import control.NamingService;
 import database.IControllable;
+import database.localfiles.LocalFileController;
+import database.zookeeper.ZkTestServer;
 import model.JSONable;
 import model.data.NodeID;
 import model.messages.Command;
@@ -21,10 +31,70 @@ public class TestUtil {
 	    file.delete();
 	}
 	
+	/**
+	 * Creates the controller the namespace tests run against, without any clients, nodes and
+	 * keygroups. While a {@link ZkTestServer} runs, this is its controller, otherwise a
+	 * controller of the root folder of the configuration.
+	 */
+	public static IControllable createController(Configuration configuration) {
+		ZkTestServer zookeeper = ZkTestServer.current();
+		if (zookeeper == null) {
+			File root = new File(configuration.getRoot());
+			deleteDir(new File(root, "client"));
+			deleteDir(new File(root, "node"));
+			deleteDir(new File(root, "keygroup"));
+			return new LocalFileController(root, configuration.getFolderSeparator());
+		}
+		
+		IControllable controller = zookeeper.getController();
+		try {
+			for (String path : NamingService.ROOT_PATHS) {
+				try {
+					controller.deleteNodeRecursive(path);
+				} catch (NoSuchFileException e) {
+					// nothing to delete
+				}
+			}
+			// unlike local folders, znodes need their parents
+			controller.addNodesIfAbsent(NamingService.SYSTEM_NODE_PATHS, "");
+		} catch (IOException | InterruptedException e) {
+			throw new IllegalStateException("Cannot wipe ZooKeeper", e);
+		}
+		SystemEntity.forgetVersions(controller);
+		return controller;
+	}
+	
 	public static Response<?> run(Command command, JSONable payload, NodeID senderNode, IControllable controller) {
+		return run(command, payload, senderNode, controller, null);
+	}
+	
+	public static Response<?> run(Command command, JSONable payload, NodeID senderNode, IControllable controller, String textualInfo) {
 		Message message = new Message(command, JSONable.toJSON(payload));
+		message.setTextualInfo(textualInfo);
 		Envelope envelope = new Envelope(senderNode, message);
 		
 		return MessageParser.runCommand(controller, envelope);
 	}
+	
+	/**
+	 * Creates a configuration from the quickstart configuration with the given properties
+	 * replaced.
+	 */
+	public static Configuration configuration(String... overrides) throws IOException {
+		Properties properties = new Properties();
+		try (InputStream in = Configuration.class.getClassLoader()
+				.getResourceAsStream("quickstart_local.properties")) {
+			properties.load(in);
+		}
+		for (int i = 0; i < overrides.length; i += 2) {
+			properties.setProperty(overrides[i], overrides[i + 1]);
+		}
+		
+		File file = File.createTempFile("namingservice", ".properties");
+		file.deleteOnExit();
+		try (OutputStream out = new FileOutputStream(file)) {
+			properties.store(out, null);
+		}
+		return new Configuration(file.getPath());
+	}
 }